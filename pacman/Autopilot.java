@@ -0,0 +1,500 @@
+package pacman;
+
+import javafx.scene.input.KeyCode;
+import java.util.List;
+
+/**
+ * Pac-Man 自动驾驶机器人
+ * 用于压力测试和长时间运行测试的合成玩家，比随机按键存活得久得多。
+ *
+ * 每次决策从引擎采集一份紧凑的规划状态（三类食物位图、鬼魂和陷阱所在格子），
+ * 在迷宫的格子图上做深度有限的搜索：路径上吃到的食物按距离折扣计分，
+ * 踩到陷阱或可能被未恐慌的鬼魂先到达（按寻路表的最短步数判断）的格子给予惩罚并截断。
+ * 视野内没有食物时沿寻路表走向最近的食物。
+ *
+ * 每次决策最多展开 nodeBudget 个节点，每个逻辑帧最多决策一次，
+ * 单帧耗时有固定上限，可以挂在成千上万个无界面会话上；
+ * 展开数按节点计而不是按时间计，相同种子的对局仍然完全可复现。
+ * 大地图的距离场按需 BFS 计算，每张按可通行格子数计入节点预算（不论是否已缓存，结果与缓存状态无关），
+ * 预算不够时改用忽略传送门的曼哈顿距离近似。
+ * 按键通过 handleKeyInput 发出，与键盘输入走同一路径并录入输入录像
+ *
+ * 用法（与随机按键对比）：java pacman.Autopilot [局数] [节点预算]
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public final class Autopilot {
+    public static final int DEFAULT_NODE_BUDGET = 400;
+
+    private static final int MAX_DEPTH = 14;
+    // 鬼魂比 Pac-Man 早到或只晚这么多格时视为危险
+    private static final int DANGER_MARGIN = 1;
+    // 同一格子上最多隔多少帧重新规划一次
+    private static final int REPLAN_TICKS = 4;
+    private static final double DISCOUNT = 0.9;
+    private static final double FOOD_VALUE = 1;
+    private static final double POWER_VALUE = 3;
+    private static final double SKILL_VALUE = 2;
+    private static final double SCARED_GHOST_VALUE = 5;
+    private static final double DANGER_PENALTY = -100;
+    private static final double TRAP_PENALTY = -30;
+    private static final double[] DISCOUNTS = new double[MAX_DEPTH + 1];
+    private static final KeyCode[] DIRECTION_KEYS = {KeyCode.UP, KeyCode.DOWN, KeyCode.LEFT, KeyCode.RIGHT};
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    static {
+        DISCOUNTS[0] = 1;
+        for (int i = 1; i <= MAX_DEPTH; i++) {
+            DISCOUNTS[i] = DISCOUNTS[i - 1] * DISCOUNT;
+        }
+    }
+
+    private final int nodeBudget;
+    private boolean restartOnGameOver = true;
+
+    // 规划状态：食物位图按引擎的食物变化日志判断是否需要重新采集
+    private GameEngine engine;
+    private int mapVersion = -1;
+    private long journalCount = -1;
+    private long[] food;
+    private long[] power;
+    private long[] skill;
+    private int[] threats = new int[PacManEnv.MAX_GHOSTS * 2];
+    private int[] scared = new int[PacManEnv.MAX_GHOSTS * 2];
+    private int[] traps = new int[PacManEnv.MAX_GHOSTS * 2];
+    private int threatCount;
+    private int scaredCount;
+    private int trapCount;
+    // 每个威胁鬼魂所在格子的距离场，为 null 时按曼哈顿距离近似
+    private short[][] threatFields = new short[PacManEnv.MAX_GHOSTS * 2][];
+    private Maze maze;
+    private PathTable paths;
+    private int remaining;
+    // 本次决策剩余的节点预算
+    private int budget;
+    private final double[] values = new double[DIRECTIONS.length];
+
+    private int lastTile = -1;
+    private long lastPlanTick = Long.MIN_VALUE;
+    private Direction lastDirection;
+    private long decisions;
+    private long nodes;
+
+    /**
+     * 构造方法
+     * @param nodeBudget 每次决策最多展开的搜索节点数
+     */
+    public Autopilot(int nodeBudget) {
+        if (nodeBudget < 4) {
+            throw new IllegalArgumentException("节点预算过小: " + nodeBudget);
+        }
+        this.nodeBudget = nodeBudget;
+    }
+
+    /**
+     * 设置游戏结束后是否自动按空格重开
+     * @param restartOnGameOver true表示自动重开
+     */
+    public void setRestartOnGameOver(boolean restartOnGameOver) {
+        this.restartOnGameOver = restartOnGameOver;
+    }
+
+    /**
+     * 决策并把按键发给引擎，每个逻辑帧调用一次
+     * @param engine 引擎
+     */
+    public void drive(GameEngine engine) {
+        KeyCode key = decide(engine);
+        if (key != null) {
+            engine.handleKeyInput(key);
+        }
+    }
+
+    /**
+     * 决定本帧的按键，可以作为 SessionHost 会话的输入来源
+     * @param engine 引擎
+     * @return 按键，本帧不需要按键时返回 null
+     */
+    public KeyCode decide(GameEngine engine) {
+        if (!engine.isStarted() || engine.isGameOver()) {
+            lastDirection = null;
+            return restartOnGameOver || !engine.isStarted() ? KeyCode.SPACE : null;
+        }
+        if (engine.isPacmanFrozenByIceTrap()) {
+            return KeyCode.V;
+        }
+        PacMan pacman = engine.getPacman();
+        Maze currentMaze = engine.getMaze();
+        int tile = tileOf(currentMaze, pacman.getX(), pacman.getY(), pacman.getWidth(), pacman.getHeight());
+        if (tile < 0) {
+            // 在隧道中，保持方向
+            return null;
+        }
+        boolean stopped = pacman.getVelocityX() == 0 && pacman.getVelocityY() == 0;
+        if (tile == lastTile && !stopped && engine.getTick() - lastPlanTick < REPLAN_TICKS) {
+            return null;
+        }
+        lastTile = tile;
+        lastPlanTick = engine.getTick();
+        capture(engine, currentMaze);
+        Direction direction = plan(tile);
+        if (direction == null || (direction == lastDirection && !stopped)) {
+            return null;
+        }
+        lastDirection = direction;
+        return DIRECTION_KEYS[direction.ordinal()];
+    }
+
+    /**
+     * 采集规划状态：食物位图只在有食物被吃掉或地图变化后重新获取
+     */
+    private void capture(GameEngine engine, Maze currentMaze) {
+        if (engine != this.engine || engine.getMapVersion() != mapVersion
+                || engine.getPelletJournalCount() != journalCount) {
+            this.engine = engine;
+            mapVersion = engine.getMapVersion();
+            journalCount = engine.getPelletJournalCount();
+            food = engine.getPelletBits(food, GameEngine.PELLET_FOOD);
+            power = engine.getPelletBits(power, GameEngine.PELLET_POWER);
+            skill = engine.getPelletBits(skill, GameEngine.PELLET_SKILL);
+        }
+        maze = currentMaze;
+        paths = currentMaze.getPathTable();
+        threatCount = 0;
+        scaredCount = 0;
+        trapCount = 0;
+        List<Ghost> ghosts = engine.getGhosts();
+        // 修改原因：群战模式的鬼魂数量不受 MAX_GHOSTS 限制，原来超出数组长度的鬼魂被直接忽略；
+        // 数组按当前鬼魂数量扩容，只在数量变多时重新分配
+        if (threats.length < ghosts.size()) {
+            threats = new int[ghosts.size()];
+            scared = new int[ghosts.size()];
+            traps = new int[ghosts.size()];
+            threatFields = new short[ghosts.size()][];
+        }
+        for (int i = 0; i < ghosts.size(); i++) {
+            Ghost ghost = ghosts.get(i);
+            int ghostTile = tileOf(maze, ghost.getX(), ghost.getY(), ghost.getWidth(), ghost.getHeight());
+            if (ghostTile >= 0) {
+                if (ghost.isScared()) {
+                    scared[scaredCount++] = ghostTile;
+                } else {
+                    threats[threatCount++] = ghostTile;
+                }
+            }
+            int trapTile = -1;
+            if (ghost instanceof BlueGhost && ((BlueGhost) ghost).isIceTrapSet()) {
+                BlueGhost blue = (BlueGhost) ghost;
+                trapTile = tileOf(maze, blue.getIceTrapX(), blue.getIceTrapY(), GameEngine.TILE_SIZE, GameEngine.TILE_SIZE);
+            } else if (ghost instanceof OrangeGhost && ((OrangeGhost) ghost).isTrapSet()) {
+                OrangeGhost orange = (OrangeGhost) ghost;
+                trapTile = tileOf(maze, orange.getTrapX(), orange.getTrapY(), GameEngine.TILE_SIZE, GameEngine.TILE_SIZE);
+            }
+            if (trapTile >= 0) {
+                traps[trapCount++] = trapTile;
+            }
+        }
+    }
+
+    /**
+     * 对每个可走的方向搜索，预算在各方向间平均分配
+     * @return 最优方向，无路可走时返回 null
+     */
+    private Direction plan(int tile) {
+        decisions++;
+        int children = 0;
+        for (Direction dir : DIRECTIONS) {
+            if (maze.neighbour(tile, dir) >= 0) {
+                children++;
+            }
+        }
+        if (children == 0) {
+            return null;
+        }
+        // 修改原因：原来危险判断对每个新搜索到的格子取一次距离场，大地图上每次都是一次整图 BFS，
+        // 单次决策可达上百毫秒；现在每个鬼魂格子取一张距离场，并按 BFS 的工作量计入预算
+        budget = nodeBudget;
+        int kept = 0;
+        for (int i = 0; i < threatCount; i++) {
+            short[] field = chargeField() ? paths.distancesTo(threats[i]) : null;
+            // 按曼哈顿距离近似时，离得比搜索深度两倍还远的鬼魂不可能让搜索到的格子变危险
+            if (field == null && manhattan(threats[i], tile) > 2 * MAX_DEPTH + DANGER_MARGIN) {
+                continue;
+            }
+            threats[kept] = threats[i];
+            threatFields[kept++] = field;
+        }
+        threatCount = kept;
+        Direction best = null;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        int searchBudget = budget;
+        long searchStart = nodes;
+        for (Direction dir : DIRECTIONS) {
+            int next = maze.neighbour(tile, dir);
+            if (next < 0) {
+                values[dir.ordinal()] = Double.NEGATIVE_INFINITY;
+                continue;
+            }
+            remaining = searchBudget / children;
+            double value = search(next, dir, 1);
+            values[dir.ordinal()] = value;
+            if (value > bestValue) {
+                bestValue = value;
+                best = dir;
+            }
+        }
+        budget = searchBudget - (int) (nodes - searchStart);
+        // 视野内没有食物：只要不比最优方向更危险，就沿最短路走向最近的食物
+        if (bestValue < FOOD_VALUE * DISCOUNTS[MAX_DEPTH]) {
+            Direction toward = towardNearestPellet(tile);
+            if (toward != null && values[toward.ordinal()] >= bestValue) {
+                best = toward;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 为取用一张距离场扣除预算：预计算的地图不扣，否则按可通行格子数扣除
+     * @return 预算足够（可以取用距离场）返回 true
+     */
+    private boolean chargeField() {
+        if (paths.isPrecomputed()) {
+            return true;
+        }
+        int cost = paths.getWalkableCount();
+        if (cost > budget) {
+            return false;
+        }
+        budget -= cost;
+        nodes += cost;
+        return true;
+    }
+
+    /**
+     * 深度优先搜索，返回从该格子出发的最优折扣收益
+     * 不回头走；路过的食物先从位图中取走，返回前放回
+     */
+    private double search(int tile, Direction arrived, int depth) {
+        nodes++;
+        remaining--;
+        double discount = DISCOUNTS[depth];
+        for (int i = 0; i < threatCount; i++) {
+            short[] field = threatFields[i];
+            int distance = field != null ? field[tile] : manhattan(threats[i], tile);
+            if (distance <= depth + DANGER_MARGIN) {
+                return DANGER_PENALTY * discount;
+            }
+        }
+        for (int i = 0; i < trapCount; i++) {
+            if (traps[i] == tile) {
+                return TRAP_PENALTY * discount;
+            }
+        }
+        int word = tile >>> 6;
+        long bit = 1L << tile;
+        double gain = 0;
+        long takenFood = food[word] & bit;
+        long takenPower = power[word] & bit;
+        long takenSkill = skill[word] & bit;
+        if (takenFood != 0) {
+            gain += FOOD_VALUE;
+            food[word] &= ~bit;
+        }
+        if (takenPower != 0) {
+            gain += POWER_VALUE;
+            power[word] &= ~bit;
+        }
+        if (takenSkill != 0) {
+            gain += SKILL_VALUE;
+            skill[word] &= ~bit;
+        }
+        for (int i = 0; i < scaredCount; i++) {
+            if (scared[i] == tile) {
+                gain += SCARED_GHOST_VALUE;
+            }
+        }
+        gain *= discount;
+
+        double best = 0;
+        if (depth < MAX_DEPTH && remaining > 0) {
+            best = Double.NEGATIVE_INFINITY;
+            Direction back = arrived.getOpposite();
+            for (Direction dir : DIRECTIONS) {
+                if (dir == back) {
+                    continue;
+                }
+                int next = maze.neighbour(tile, dir);
+                if (next < 0) {
+                    continue;
+                }
+                best = Math.max(best, search(next, dir, depth + 1));
+                if (remaining <= 0) {
+                    break;
+                }
+            }
+            if (best == Double.NEGATIVE_INFINITY) {
+                // 死胡同：只能原路返回，不额外计分
+                best = 0;
+            }
+        }
+
+        food[word] |= takenFood;
+        power[word] |= takenPower;
+        skill[word] |= takenSkill;
+        return gain + best;
+    }
+
+    /**
+     * 朝最近的剩余食物走一步
+     * 距离场是对称的（见 PathTable.computeField），取 Pac-Man 所在格子的一张距离场即可比较所有食物，
+     * 再从食物沿距离递减走回 Pac-Man 得到第一步；预算不够取距离场时按曼哈顿距离近似
+     * @return 方向，没有食物或不可达时返回 null
+     */
+    private Direction towardNearestPellet(int tile) {
+        short[] field = chargeField() ? paths.distancesTo(tile) : null;
+        int target = -1;
+        int bestDistance = PathTable.UNREACHABLE;
+        for (int word = 0; word < food.length; word++) {
+            for (long w = food[word] | power[word] | skill[word]; w != 0; w &= w - 1) {
+                int pellet = (word << 6) + Long.numberOfTrailingZeros(w);
+                int distance = field != null ? field[pellet] : manhattan(tile, pellet);
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    target = pellet;
+                }
+            }
+        }
+        if (target < 0 || target == tile) {
+            return null;
+        }
+        if (field == null) {
+            // 近似：选使曼哈顿距离最小的相邻格子
+            Direction best = null;
+            int closest = Integer.MAX_VALUE;
+            for (Direction dir : DIRECTIONS) {
+                int next = maze.neighbour(tile, dir);
+                if (next >= 0 && manhattan(next, target) < closest) {
+                    closest = manhattan(next, target);
+                    best = dir;
+                }
+            }
+            return best;
+        }
+        if (paths.isPrecomputed()) {
+            return paths.nextStep(tile, target);
+        }
+        // 从食物沿距离递减走到与 Pac-Man 相邻的格子，不再为食物格子另算一张距离场
+        int current = target;
+        while (field[current] > 1) {
+            int previous = -1;
+            for (Direction dir : DIRECTIONS) {
+                int next = maze.neighbour(current, dir);
+                if (next >= 0 && field[next] == field[current] - 1) {
+                    previous = next;
+                    break;
+                }
+            }
+            if (previous < 0) {
+                return null;
+            }
+            current = previous;
+        }
+        for (Direction dir : DIRECTIONS) {
+            if (maze.neighbour(tile, dir) == current) {
+                return dir;
+            }
+        }
+        return null;
+    }
+
+    private int manhattan(int a, int b) {
+        int width = maze.getWidth();
+        return Math.abs(a % width - b % width) + Math.abs(a / width - b / width);
+    }
+
+    private static int tileOf(Maze maze, double x, double y, double width, double height) {
+        int col = (int) Math.floor((x + width / 2) / GameEngine.TILE_SIZE);
+        int row = (int) Math.floor((y + height / 2) / GameEngine.TILE_SIZE);
+        if (col < 0 || col >= maze.getWidth() || row < 0 || row >= maze.getHeight() || maze.isWall(col, row)) {
+            return -1;
+        }
+        return maze.index(col, row);
+    }
+
+    public int getNodeBudget() {
+        return nodeBudget;
+    }
+
+    public long getDecisions() {
+        return decisions;
+    }
+
+    /**
+     * 获取累计展开的搜索节点数
+     * @return 节点数
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * 主方法：自动驾驶与随机按键各玩若干局，比较存活时间、得分和每帧耗时
+     * @param args [局数] [节点预算]
+     */
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int budget = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_NODE_BUDGET;
+        // 每局最多 5 分钟游戏时间
+        long maxTicks = 5 * 60 * 1000 / GameEngine.TICK_MILLIS;
+        LevelLoader.headless().load(1);
+        KeyCode[] keys = {KeyCode.UP, KeyCode.DOWN, KeyCode.LEFT, KeyCode.RIGHT};
+
+        for (boolean autopilot : new boolean[] {false, true}) {
+            LatencyHistogram tickTime = new LatencyHistogram();
+            long totalTicks = 0;
+            long totalScore = 0;
+            long totalPellets = 0;
+            long nodeCount = 0;
+            long decisionCount = 0;
+            for (int game = 0; game < games; game++) {
+                GameEngine engine = new GameEngine(game);
+                engine.setKeyframeInterval(0);
+                engine.initialize();
+                engine.handleKeyInput(KeyCode.SPACE);
+                Autopilot bot = new Autopilot(budget);
+                bot.setRestartOnGameOver(false);
+                GameRandom random = new GameRandom(~game);
+                while (!engine.isGameOver() && engine.getTick() < maxTicks) {
+                    long begin = System.nanoTime();
+                    if (autopilot) {
+                        bot.drive(engine);
+                    } else if (random.nextInt(30) == 0) {
+                        engine.handleKeyInput(keys[random.nextInt(keys.length)]);
+                    }
+                    long end = System.nanoTime();
+                    if (game > 0) {
+                        tickTime.record(end - begin);
+                    }
+                    engine.update(GameEngine.TICK_MILLIS);
+                }
+                totalTicks += engine.getTick();
+                totalScore += engine.getScore();
+                totalPellets += engine.getPelletsEaten() + engine.getPowerPelletsEaten();
+                nodeCount += bot.getNodes();
+                decisionCount += bot.getDecisions();
+            }
+            System.out.printf("%s: 平均存活 %.1f 秒, 平均得分 %.0f, 平均吃食物 %.0f 个%n",
+                    autopilot ? "自动驾驶" : "随机按键",
+                    totalTicks * GameEngine.TICK_MILLIS / 1000.0 / games,
+                    (double) totalScore / games, (double) totalPellets / games);
+            if (autopilot) {
+                System.out.printf("  节点预算 %d, 平均每次决策展开 %.0f 个节点, 决策耗时（按帧）p50 %.1f us p99 %.1f us max %.1f us%n",
+                        budget, (double) nodeCount / Math.max(1, decisionCount),
+                        tickTime.percentile(50) / 1e3, tickTime.percentile(99) / 1e3, tickTime.getMax() / 1e3);
+            }
+        }
+    }
+}
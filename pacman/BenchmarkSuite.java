@@ -0,0 +1,468 @@
+package pacman;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javafx.scene.input.KeyCode;
+
+/**
+ * 基准场景套件
+ * 每个场景是一行文本描述的数据：地图、鬼魂数量、场上保持的克隆体数量、是否让所有陷阱同时生效、剩余食物数量、
+ * 帧数和种子。场景在无界面引擎上以固定种子和固定帧数运行，只对 GameEngine.update 计时，
+ * 报告每秒逻辑帧数、p99 帧耗时和每帧分配的字节数，用来观察实体数量增长时引擎开销的变化
+ *
+ * 场景格式：名称 参数=值 ...，可用参数：
+ *   maze=classic|crossroads|宽x高  地图；宽x高 生成四周是墙、内部是柱网的大迷宫
+ *   ghosts=N   在随机可达格子上重新放置 N 个鬼魂（红、粉、蓝、橙轮流），不写时保留地图上的鬼魂
+ *   horde=N    开启群战模式，由引擎在每关额外生成每种鬼魂各 N 个
+ *   clones=N   每帧开始前把场上克隆体补到 N 个
+ *   traps=all  每帧开始前让所有蓝色和橙色鬼魂布下陷阱
+ *   pellets=N  只保留 N 个随机食物（另有 Pac-Man 起点一个），不放能量豆
+ *   ticks=N    计时的帧数；warmup=N 计时前的预热帧数；seed=N 随机数种子
+ *
+ * 玩家输入由同一种子驱动：每隔几帧随机按一个方向键，游戏结束后按空格重开。
+ * 同一场景在同一台机器上每次运行的游戏过程完全相同，结果的差异只来自引擎代码本身。
+ * 加上 --csv 时把结果追加到 CSV（带 --label 给出的标签，例如提交号），便于逐个提交比较
+ *
+ * 用法：java pacman.BenchmarkSuite [场景文件] [--csv=文件] [--label=标签]
+ * 或通过 Maven：mvn -Pbench verify [-Dbench.label=标签] [-Dbench.scenarios=场景文件]，结果追加到 target/bench.csv
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public class BenchmarkSuite {
+    /**
+     * 默认场景
+     */
+    public static final String[] DEFAULT_SCENARIOS = {
+        "stock-4-ghosts     maze=classic ticks=20000",
+        "horde-200-ghosts   maze=200x200 ghosts=200 ticks=3000",
+        "clones-50          maze=classic clones=50 ticks=20000",
+        "all-traps          maze=classic traps=all ticks=20000",
+        "endgame-3-pellets  maze=classic pellets=3 ticks=20000",
+        "horde-mode-500     maze=61x61 horde=125 clones=50 ticks=5000",
+    };
+    public static final long DEFAULT_SEED = 2024;
+    public static final long DEFAULT_WARMUP = 2000;
+    // 随机方向键的间隔帧数
+    private static final int INPUT_INTERVAL = 8;
+    // 随机放置的鬼魂与 Pac-Man 起点的最小曼哈顿距离，避免开局即被抓
+    private static final int GHOST_CLEARANCE = 6;
+    private static final String GHOST_KINDS = "rpbo";
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final KeyCode[] DIRECTION_KEYS = {KeyCode.UP, KeyCode.DOWN, KeyCode.LEFT, KeyCode.RIGHT};
+
+    /**
+     * 一个基准场景
+     */
+    public static final class Scenario {
+        private final String name;
+        private String maze = "classic";
+        private int ghosts = -1;
+        private int horde;
+        private int clones;
+        private boolean traps;
+        private int pellets = -1;
+        private long ticks = 10000;
+        private long warmup = DEFAULT_WARMUP;
+        private long seed = DEFAULT_SEED;
+
+        private Scenario(String name) {
+            this.name = name;
+        }
+
+        /**
+         * 解析一行场景描述
+         * @param line 名称 参数=值 ...
+         * @return 场景
+         */
+        public static Scenario parse(String line) {
+            String[] parts = line.trim().split("\\s+");
+            if (parts[0].isEmpty() || parts[0].contains("=")) {
+                throw new IllegalArgumentException("场景缺少名称: " + line);
+            }
+            Scenario scenario = new Scenario(parts[0]);
+            for (String part : Arrays.copyOfRange(parts, 1, parts.length)) {
+                int separator = part.indexOf('=');
+                if (separator <= 0) {
+                    throw new IllegalArgumentException("场景参数格式应为 名称=值: " + part);
+                }
+                String key = part.substring(0, separator);
+                String value = part.substring(separator + 1);
+                switch (key) {
+                    case "maze": scenario.maze = value; break;
+                    case "ghosts": scenario.ghosts = Integer.parseInt(value); break;
+                    case "horde": scenario.horde = Integer.parseInt(value); break;
+                    case "clones": scenario.clones = Integer.parseInt(value); break;
+                    case "traps": scenario.traps = value.equals("all"); break;
+                    case "pellets": scenario.pellets = Integer.parseInt(value); break;
+                    case "ticks": scenario.ticks = Long.parseLong(value); break;
+                    case "warmup": scenario.warmup = Long.parseLong(value); break;
+                    case "seed": scenario.seed = Long.parseLong(value); break;
+                    default: throw new IllegalArgumentException("未知的场景参数: " + key);
+                }
+            }
+            if (scenario.ticks < 1) {
+                throw new IllegalArgumentException("场景帧数必须大于 0: " + line);
+            }
+            return scenario;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getTicks() {
+            return ticks;
+        }
+
+        /**
+         * 按场景参数生成并编译迷宫
+         * @return 迷宫
+         */
+        public Maze buildMaze() {
+            int layoutIndex = 0;
+            String[] rows;
+            int[][] powerFoodTiles;
+            if (maze.equals("classic") || maze.equals("crossroads")) {
+                layoutIndex = maze.equals("classic") ? 0 : 1;
+                rows = MazeLayouts.rows(layoutIndex);
+                powerFoodTiles = MazeLayouts.powerFoodTiles(layoutIndex);
+            } else {
+                int separator = maze.indexOf('x');
+                if (separator <= 0) {
+                    throw new IllegalArgumentException("未知的地图: " + maze);
+                }
+                int width = Integer.parseInt(maze.substring(0, separator));
+                int height = Integer.parseInt(maze.substring(separator + 1));
+                rows = lattice(width, height);
+                powerFoodTiles = new int[][] {{1, 1}, {width - 2, 1}, {1, height - 2}, {width - 2, height - 2}};
+            }
+            if (ghosts < 0 && pellets < 0) {
+                return new Maze(layoutIndex, rows, powerFoodTiles);
+            }
+
+            char[][] grid = new char[rows.length][];
+            for (int row = 0; row < rows.length; row++) {
+                grid[row] = rows[row].toCharArray();
+            }
+            // 用原始地图的静态分析挑选可达格子
+            MazeAnalysis analysis = new Maze(layoutIndex, rows, powerFoodTiles).getAnalysis();
+            GameRandom random = new GameRandom(seed);
+            if (ghosts >= 0) {
+                int[] start = find(grid, 'P');
+                List<int[]> candidates = new ArrayList<>();
+                for (int row = 0; row < grid.length; row++) {
+                    for (int col = 0; col < grid[row].length; col++) {
+                        if (GHOST_KINDS.indexOf(grid[row][col]) >= 0) {
+                            grid[row][col] = ' ';
+                        }
+                        if (grid[row][col] == ' ' && analysis.isReachable(row * grid[row].length + col)
+                                && Math.abs(col - start[0]) + Math.abs(row - start[1]) >= GHOST_CLEARANCE) {
+                            candidates.add(new int[] {col, row});
+                        }
+                    }
+                }
+                int[][] chosen = pick(candidates, ghosts, random);
+                for (int i = 0; i < chosen.length; i++) {
+                    grid[chosen[i][1]][chosen[i][0]] = GHOST_KINDS.charAt(i % GHOST_KINDS.length());
+                }
+            }
+            if (pellets >= 0) {
+                List<int[]> candidates = new ArrayList<>();
+                for (int row = 0; row < grid.length; row++) {
+                    for (int col = 0; col < grid[row].length; col++) {
+                        if (grid[row][col] == ' ') {
+                            // 先全部清空，再放回选中的格子
+                            grid[row][col] = 'O';
+                            if (analysis.isReachable(row * grid[row].length + col)) {
+                                candidates.add(new int[] {col, row});
+                            }
+                        }
+                    }
+                }
+                for (int[] tile : pick(candidates, pellets, random)) {
+                    grid[tile[1]][tile[0]] = ' ';
+                }
+                powerFoodTiles = new int[0][];
+            }
+            for (int row = 0; row < rows.length; row++) {
+                rows[row] = new String(grid[row]);
+            }
+            return new Maze(layoutIndex, rows, powerFoodTiles);
+        }
+
+        @Override
+        public String toString() {
+            return name + " maze=" + maze + (ghosts >= 0 ? " ghosts=" + ghosts : "") + (horde > 0 ? " horde=" + horde : "")
+                    + (clones > 0 ? " clones=" + clones : "") + (traps ? " traps=all" : "")
+                    + (pellets >= 0 ? " pellets=" + pellets : "") + " ticks=" + ticks + " warmup=" + warmup
+                    + " seed=" + seed;
+        }
+    }
+
+    /**
+     * 一个场景的测量结果
+     */
+    public static final class Result {
+        private final Scenario scenario;
+        private final LatencyHistogram tickTimes = new LatencyHistogram();
+        private long ticks;
+        private long nanos;
+        private long allocated;
+        private long entities;
+
+        private Result(Scenario scenario) {
+            this.scenario = scenario;
+        }
+
+        private void add(long tickNanos, long tickAllocated, int tickEntities) {
+            ticks++;
+            nanos += tickNanos;
+            allocated += tickAllocated;
+            entities += tickEntities;
+            tickTimes.record(tickNanos);
+        }
+
+        public Scenario getScenario() {
+            return scenario;
+        }
+
+        public double getTicksPerSecond() {
+            return nanos == 0 ? 0 : ticks * 1e9 / nanos;
+        }
+
+        /**
+         * 获取帧耗时百分位
+         * @param percentile 百分位（0-100）
+         * @return 微秒
+         */
+        public double getTickMicros(double percentile) {
+            return tickTimes.percentile(percentile) / 1000.0;
+        }
+
+        public double getMaxTickMicros() {
+            return tickTimes.getMax() / 1000.0;
+        }
+
+        /**
+         * 获取平均每帧分配的字节数
+         * @return 字节数，JVM 不支持线程分配统计时为 -1
+         */
+        public double getBytesPerTick() {
+            return allocated < 0 || ticks == 0 ? -1 : (double) allocated / ticks;
+        }
+
+        public double getMeanEntities() {
+            return ticks == 0 ? 0 : (double) entities / ticks;
+        }
+    }
+
+    /**
+     * 运行一个场景
+     * @param scenario 场景
+     * @return 测量结果
+     */
+    public static Result run(Scenario scenario) {
+        Maze maze = scenario.buildMaze();
+        GameRules rules = new GameRules();
+        if (scenario.horde > 0) {
+            rules.set(GameRules.HORDE_RED_GHOSTS, scenario.horde)
+                    .set(GameRules.HORDE_PINK_GHOSTS, scenario.horde)
+                    .set(GameRules.HORDE_BLUE_GHOSTS, scenario.horde)
+                    .set(GameRules.HORDE_ORANGE_GHOSTS, scenario.horde);
+        }
+        GameEngine engine = new GameEngine(scenario.seed, rules, LevelLoader.headless(maze));
+        engine.setKeyframeInterval(0);
+        engine.initialize();
+        // 输入和克隆体位置使用独立的随机数序列，不影响引擎内部的随机数
+        GameRandom input = new GameRandom(~scenario.seed);
+        int[] reachable = maze.getAnalysis().getReachableTiles();
+        boolean measureAllocation = FlightEvents.allocatedBytes() >= 0;
+
+        Result result = new Result(scenario);
+        long total = scenario.warmup + scenario.ticks;
+        for (long i = 0; i < total; i++) {
+            drive(engine, maze, scenario, input, reachable, i);
+            long allocatedBefore = measureAllocation ? FlightEvents.allocatedBytes() : 0;
+            long start = System.nanoTime();
+            engine.update(GameEngine.TICK_MILLIS);
+            long elapsed = System.nanoTime() - start;
+            long allocated = measureAllocation ? FlightEvents.allocatedBytes() - allocatedBefore : -1;
+            if (i >= scenario.warmup) {
+                result.add(elapsed, allocated, engine.getEntityCount());
+            }
+        }
+        if (!measureAllocation) {
+            result.allocated = -1;
+        }
+        return result;
+    }
+
+    /**
+     * 在一帧开始前施加输入和场景条件，不计入帧耗时
+     */
+    private static void drive(GameEngine engine, Maze maze, Scenario scenario, GameRandom input,
+                              int[] reachable, long tick) {
+        if (!engine.isStarted() || engine.isGameOver()) {
+            engine.handleKeyInput(KeyCode.SPACE);
+            return;
+        }
+        if (tick % INPUT_INTERVAL == 0) {
+            engine.handleKeyInput(DIRECTION_KEYS[input.nextInt(DIRECTION_KEYS.length)]);
+        }
+        if (scenario.traps) {
+            engine.armAllTraps();
+        }
+        // 补足克隆体：在随机可达格子上朝一个不是墙的方向出发
+        for (int attempts = 0; engine.getPacmanClones().size() < scenario.clones && attempts < 4 * scenario.clones; attempts++) {
+            int tile = reachable[input.nextInt(reachable.length)];
+            Direction direction = DIRECTIONS[input.nextInt(DIRECTIONS.length)];
+            if (maze.neighbour(tile, direction) >= 0) {
+                engine.spawnClone(tile % maze.getWidth(), tile / maze.getWidth(), direction);
+            }
+        }
+    }
+
+    /**
+     * 生成柱网迷宫：四周是墙，行列都为偶数的内部格子是柱子，其余格子是食物，Pac-Man 在中间
+     */
+    private static String[] lattice(int width, int height) {
+        if (width < 5 || height < 5) {
+            throw new IllegalArgumentException("地图至少 5x5: " + width + "x" + height);
+        }
+        String[] rows = new String[height];
+        char[] line = new char[width];
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                boolean border = row == 0 || col == 0 || row == height - 1 || col == width - 1;
+                line[col] = border || (row % 2 == 0 && col % 2 == 0) ? 'X' : ' ';
+            }
+            if (row == (height / 2 | 1)) {
+                line[width / 2 | 1] = 'P';
+            }
+            rows[row] = new String(line);
+        }
+        return rows;
+    }
+
+    private static int[] find(char[][] grid, char tile) {
+        for (int row = 0; row < grid.length; row++) {
+            for (int col = 0; col < grid[row].length; col++) {
+                if (grid[row][col] == tile) {
+                    return new int[] {col, row};
+                }
+            }
+        }
+        throw new IllegalArgumentException("地图中没有 " + tile);
+    }
+
+    /**
+     * 不重复地随机挑选若干格子（部分洗牌）
+     */
+    private static int[][] pick(List<int[]> candidates, int count, GameRandom random) {
+        if (count > candidates.size()) {
+            throw new IllegalArgumentException("地图上只有 " + candidates.size() + " 个可用格子，不够放 " + count + " 个");
+        }
+        int[][] chosen = new int[count][];
+        for (int i = 0; i < count; i++) {
+            int j = i + random.nextInt(candidates.size() - i);
+            int[] tile = candidates.get(j);
+            candidates.set(j, candidates.get(i));
+            candidates.set(i, tile);
+            chosen[i] = tile;
+        }
+        return chosen;
+    }
+
+    /**
+     * 把结果追加到 CSV，文件不存在时先写表头
+     * @param path 输出文件
+     * @param label 标签（例如提交号）
+     * @param results 结果
+     * @throws IOException 写入失败
+     */
+    public static void appendCsv(Path path, String label, List<Result> results) throws IOException {
+        boolean header = !Files.exists(path);
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if (header) {
+                writer.write("label,scenario,ticks,ticks_per_s,p50_us,p99_us,max_us,bytes_per_tick,mean_entities");
+                writer.newLine();
+            }
+            for (Result result : results) {
+                writer.write(String.format("%s,%s,%d,%.1f,%.2f,%.2f,%.2f,%.1f,%.1f", label,
+                        result.scenario.name, result.ticks, result.getTicksPerSecond(), result.getTickMicros(50),
+                        result.getTickMicros(99), result.getMaxTickMicros(), result.getBytesPerTick(),
+                        result.getMeanEntities()));
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * 读取场景文件：每行一个场景，空行和 # 开头的行忽略
+     * @param path 场景文件
+     * @return 场景列表
+     * @throws IOException 读取失败
+     */
+    public static List<Scenario> readScenarios(Path path) throws IOException {
+        List<Scenario> scenarios = new ArrayList<>();
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            String trimmed = line.trim();
+            if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+                scenarios.add(Scenario.parse(trimmed));
+            }
+        }
+        return scenarios;
+    }
+
+    /**
+     * 主方法：依次运行所有场景并打印结果
+     * @param args [场景文件] [--csv=文件] [--label=标签]
+     * @throws IOException 读写失败
+     */
+    public static void main(String[] args) throws IOException {
+        List<Scenario> scenarios = new ArrayList<>();
+        Path csv = null;
+        String label = "";
+        for (String arg : args) {
+            if (arg.startsWith("--csv=")) {
+                csv = Paths.get(arg.substring("--csv=".length()));
+            } else if (arg.startsWith("--label=")) {
+                label = arg.substring("--label=".length());
+            } else {
+                scenarios.addAll(readScenarios(Paths.get(arg)));
+            }
+        }
+        if (scenarios.isEmpty()) {
+            for (String line : DEFAULT_SCENARIOS) {
+                scenarios.add(Scenario.parse(line));
+            }
+        }
+
+        List<Result> results = new ArrayList<>();
+        System.out.printf("%-20s %8s %12s %10s %10s %10s %12s %9s%n",
+                "scenario", "ticks", "ticks/s", "p50 us", "p99 us", "max us", "bytes/tick", "entities");
+        for (Scenario scenario : scenarios) {
+            Result result = run(scenario);
+            results.add(result);
+            System.out.printf("%-20s %8d %12.0f %10.2f %10.2f %10.2f %12.1f %9.1f%n",
+                    scenario.name, result.ticks, result.getTicksPerSecond(), result.getTickMicros(50),
+                    result.getTickMicros(99), result.getMaxTickMicros(), result.getBytesPerTick(),
+                    result.getMeanEntities());
+        }
+        if (csv != null) {
+            appendCsv(csv, label, results);
+            System.out.println("结果追加到 " + csv);
+        }
+    }
+}
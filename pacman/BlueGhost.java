@@ -3,6 +3,7 @@ package pacman;
 import javafx.scene.image.Image;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import static pacman.PacManApp.TILE_SIZE;
@@ -17,16 +18,13 @@ import static pacman.PacManApp.TILE_SIZE;
  * @since 2024
  */
 public class BlueGhost extends Ghost {
-    private static final double DEFAULT_SPEED = 1.5; // Modify reason: Match reference
     private boolean isIceTrapSet = false; // Whether ice trap is set
     private double iceTrapX, iceTrapY; // Ice trap position
     private boolean isFrozen = false; // New: Whether frozen
     private long freezeTimer = 0; // New: Freeze timer
     private static final long FREEZE_DURATION = 3000; // New: Freeze duration
     private long trapDurationTimer = 0; // New: Ice trap duration timer
-    private static final long TRAP_DURATION = 10000; // New: Ice trap duration (10 seconds)
     private long respawnTimer = 0; // New: Respawn timer
-    private static final long RESPAWN_TIME = 30000; // New: Respawn time (30 seconds)
     private boolean isDead = false; // New: Whether dead
     private long deathTime = 0; // New: Death time
 
@@ -38,8 +36,20 @@ public class BlueGhost extends Ghost {
      * @param image Image resource
      */
     public BlueGhost(double x, double y, Image image) {
-        super(x, y, TILE_SIZE, TILE_SIZE, getRandomDirection(), image);
-        setMovementSpeed(DEFAULT_SPEED);
+        this(x, y, image, new GameRandom());
+    }
+
+    /**
+     * Constructor with the shared game random source
+     *
+     * @param x Initial X coordinate
+     * @param y Initial Y coordinate
+     * @param image Image resource
+     * @param random Game random source
+     */
+    public BlueGhost(double x, double y, Image image, GameRandom random) {
+        super(x, y, TILE_SIZE, TILE_SIZE, random.nextDirection(), image, random);
+        setMovementSpeed(baseSpeed());
         this.isIceTrapSet = false;
         this.iceTrapX = 0;
         this.iceTrapY = 0;
@@ -55,9 +65,8 @@ public class BlueGhost extends Ghost {
      * Get random direction
      * @return Random direction
      */
-    private static Direction getRandomDirection() {
-        Direction[] directions = Direction.values();
-        return directions[(int)(Math.random() * directions.length)];
+    private Direction getRandomDirection() {
+        return random.nextDirection();
     }
 
     /**
@@ -75,13 +84,21 @@ public class BlueGhost extends Ghost {
      */
     public void die() {
         isDead = true;
-        deathTime = System.currentTimeMillis();
+        deathTime = clock.currentTimeMillis();
         
         // Create ice trap after death
+        setIceTrap();
+    }
+
+    /**
+     * Set ice trap at the current position
+     * Modify reason: Shared by death and by benchmark scenarios that keep every trap armed
+     */
+    public void setIceTrap() {
         isIceTrapSet = true;
         iceTrapX = getX();
         iceTrapY = getY();
-        trapDurationTimer = TRAP_DURATION;
+        trapDurationTimer = rules.getIceTrapDuration();
     }
     
     /**
@@ -107,7 +124,7 @@ public class BlueGhost extends Ghost {
      */
     public void freeze() {
         isFrozen = true;
-        freezeTimer = System.currentTimeMillis();
+        freezeTimer = clock.currentTimeMillis();
     }
 
     /**
@@ -123,7 +140,7 @@ public class BlueGhost extends Ghost {
     public void update(long deltaTime, double pacmanX, double pacmanY, List<Wall> walls, List<Ghost> ghosts) {
         if (isDead) {
             // Death state: Respawn timer
-            if (System.currentTimeMillis() - deathTime >= RESPAWN_TIME) {
+            if (clock.currentTimeMillis() - deathTime >= rules.getGhostRespawnTime()) {
                 // Respawn
                 respawn();
             }
@@ -132,7 +149,7 @@ public class BlueGhost extends Ghost {
         
         // Check frozen state
         if (isFrozen) {
-            if (System.currentTimeMillis() - freezeTimer >= FREEZE_DURATION) {
+            if (clock.currentTimeMillis() - freezeTimer >= FREEZE_DURATION) {
                 breakIce();
             } else {
                 return; // Can't move when frozen
@@ -162,6 +179,15 @@ public class BlueGhost extends Ghost {
         iceTrapY = 0;
     }
 
+    /**
+     * Blue ghost moves slower than the other ghosts
+     * @return Speed in pixels per tick
+     */
+    @Override
+    protected double baseSpeed() {
+        return rules.getBlueGhostSpeed();
+    }
+
     /**
      * Make AI decision
      * Modify: Match reference, basic Pac-Man tracking behavior
@@ -223,7 +249,7 @@ public class BlueGhost extends Ghost {
             }
         } else {
             // Death state: Show respawn countdown
-            long remainingTime = RESPAWN_TIME - (System.currentTimeMillis() - deathTime);
+            long remainingTime = rules.getGhostRespawnTime() - (clock.currentTimeMillis() - deathTime);
             int secondsLeft = (int) (remainingTime / 1000) + 1;
             gc.setFill(Color.WHITE);
             gc.fillText("Died - Respawn in: " + secondsLeft + "s", getX(), getY() - 10);
@@ -236,10 +262,10 @@ public class BlueGhost extends Ghost {
      */
     @Override
     public void reset() {
-        setX(9 * 32);
-        setY(12 * 32);
+        setX(getStartX());
+        setY(getStartY());
         setDirection(getRandomDirection());
-        setMovementSpeed(DEFAULT_SPEED);
+        setMovementSpeed(baseSpeed());
         isIceTrapSet = false;
         iceTrapX = 0;
         iceTrapY = 0;
@@ -266,6 +292,34 @@ public class BlueGhost extends Ghost {
         return deathTime;
     }
     
+    @Override
+    public void writeState(ByteBuffer buffer) {
+        super.writeState(buffer);
+        buffer.put((byte) (isIceTrapSet ? 1 : 0));
+        buffer.putDouble(iceTrapX);
+        buffer.putDouble(iceTrapY);
+        buffer.put((byte) (isFrozen ? 1 : 0));
+        buffer.putLong(freezeTimer);
+        buffer.putLong(trapDurationTimer);
+        buffer.putLong(respawnTimer);
+        buffer.put((byte) (isDead ? 1 : 0));
+        buffer.putLong(deathTime);
+    }
+
+    @Override
+    public void readState(ByteBuffer buffer) {
+        super.readState(buffer);
+        isIceTrapSet = buffer.get() != 0;
+        iceTrapX = buffer.getDouble();
+        iceTrapY = buffer.getDouble();
+        isFrozen = buffer.get() != 0;
+        freezeTimer = buffer.getLong();
+        trapDurationTimer = buffer.getLong();
+        respawnTimer = buffer.getLong();
+        isDead = buffer.get() != 0;
+        deathTime = buffer.getLong();
+    }
+
     // Getters 和 Setters
 
     public void setIceTrapSet(boolean trapSet) {
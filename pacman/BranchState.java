@@ -0,0 +1,490 @@
+package pacman;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 可分叉的规划状态（写时复制）
+ * 供树搜索使用的格子级游戏模型：从引擎采集一次，之后 fork 出任意多个分支独立推进，
+ * 不需要复制 GameEngine 的实体列表、HashMap 和食物列表。
+ *
+ * 状态分三层：
+ * <ul>
+ *   <li>关卡（迷宫、寻路表、鬼魂速度和出生格子）由所有分支共享，只读</li>
+ *   <li>食物位图按 64 个格子分块，分叉时只复制块引用，某个分支第一次改写一块时才复制该块</li>
+ *   <li>Pac-Man 和鬼魂保存在一个小的 int 数组里，分叉时整体复制；陷阱数组同样按需复制</li>
+ * </ul>
+ * 所以一次分叉只复制十几个 int 和块引用数组，之后的开销与分支实际改动的部分成正比。
+ *
+ * 模型以 Pac-Man 走一格为一步：鬼魂按与 Pac-Man 的速度比例前进，未恐慌时沿最短路追赶（悲观假设），
+ * 恐慌时向远离 Pac-Man 的方向逃跑。吃食物、吃鬼魂的得分与引擎相同；
+ * 与未恐慌的鬼魂相遇（同格或交换位置）时本分支死亡并结束。
+ * 踩中缚丝陷阱会原地停留若干步，冰影陷阱按立即破冰处理，停留一步。
+ * 分数、食物和相遇规则与引擎一致，移动和鬼魂行为是近似的，只用于规划
+ *
+ * 用法（性能测试）：java pacman.BranchState [搜索深度] [采集时的逻辑帧]
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public final class BranchState {
+    private static final int CHUNK_SHIFT = 6;
+    private static final int KINDS = 3;
+    private static final int MAX_CHUNKS = 64;
+    // 鬼魂速度比例的定点小数位数
+    private static final int PROGRESS_ONE = 256;
+
+    // 每个鬼魂在实体数组中的字段
+    private static final int GHOST_TILE = 0;
+    private static final int GHOST_SCARED = 1;
+    private static final int GHOST_RESPAWN = 2;
+    private static final int GHOST_PROGRESS = 3;
+    private static final int GHOST_STRIDE = 4;
+
+    // 陷阱种类
+    private static final int TRAP_ICE = 0;
+    private static final int TRAP_SILK = 1;
+
+    private static final int PELLET_SCORE = 10;
+    private static final int POWER_PELLET_SCORE = 50;
+    private static final int GHOST_SCORE = 200;
+
+    /**
+     * 所有分支共享的只读部分
+     */
+    private static final class Shared {
+        private final Maze maze;
+        private final PathTable paths;
+        private final int ghostCount;
+        private final int[] ghostSpeed;
+        private final int[] ghostHome;
+        private final boolean[] ghostDies;
+        private final long stepMillis;
+        private final int respawnSteps;
+        private final int entangledSteps;
+
+        private Shared(Maze maze, int ghostCount, long stepMillis, GameRules rules) {
+            this.maze = maze;
+            this.paths = maze.getPathTable();
+            this.ghostCount = ghostCount;
+            this.ghostSpeed = new int[ghostCount];
+            this.ghostHome = new int[ghostCount];
+            this.ghostDies = new boolean[ghostCount];
+            this.stepMillis = stepMillis;
+            this.respawnSteps = steps(rules.getGhostRespawnTime(), stepMillis);
+            this.entangledSteps = steps(rules.getEntangledTrapTimeout(), stepMillis);
+        }
+    }
+
+    private final Shared shared;
+    // 食物分块：chunks[c][kind] 是第 c 块（格子 c*64 起）的位图；owned 第 c 位表示本分支独占该块
+    private final long[][] chunks;
+    private long owned;
+    private int[] ghosts;
+    // 陷阱：每个陷阱两项（格子，种类），被踩中后格子置为 -1
+    private int[] traps;
+    private boolean trapsOwned;
+
+    private int pacmanTile;
+    private int stallSteps;
+    private int score;
+    private int remaining;
+    private int steps;
+    private boolean dead;
+
+    private BranchState(Shared shared, int chunkCount) {
+        this.shared = shared;
+        this.chunks = new long[chunkCount][];
+    }
+
+    private BranchState(BranchState parent) {
+        this.shared = parent.shared;
+        this.chunks = parent.chunks.clone();
+        this.ghosts = parent.ghosts.clone();
+        this.traps = parent.traps;
+        this.pacmanTile = parent.pacmanTile;
+        this.stallSteps = parent.stallSteps;
+        this.score = parent.score;
+        this.remaining = parent.remaining;
+        this.steps = parent.steps;
+        this.dead = parent.dead;
+        // 双方此后都不再独占任何块和陷阱数组，先写的一方负责复制
+        parent.owned = 0;
+        parent.trapsOwned = false;
+    }
+
+    /**
+     * 从引擎采集规划状态
+     * @param engine 引擎
+     * @return 根状态
+     */
+    public static BranchState capture(GameEngine engine) {
+        Maze maze = engine.getMaze();
+        GameRules rules = engine.getRules();
+        int tiles = maze.getWidth() * maze.getHeight();
+        int chunkCount = (tiles + (1 << CHUNK_SHIFT) - 1) >>> CHUNK_SHIFT;
+        if (chunkCount > MAX_CHUNKS) {
+            throw new IllegalArgumentException("迷宫过大: " + tiles + " 个格子");
+        }
+        List<Ghost> ghostList = engine.getGhosts();
+        // Pac-Man 走一格所需的时间
+        long stepMillis = Math.max(1, Math.round(GameEngine.TILE_SIZE / rules.getPacmanSpeed() * GameEngine.TICK_MILLIS));
+        Shared shared = new Shared(maze, ghostList.size(), stepMillis, rules);
+        BranchState state = new BranchState(shared, chunkCount);
+
+        long[] bits = null;
+        for (int kind = 0; kind < KINDS; kind++) {
+            bits = engine.getPelletBits(bits, kind);
+            for (int word = 0; word < bits.length; word++) {
+                if (state.chunks[word] == null) {
+                    state.chunks[word] = new long[KINDS];
+                }
+                state.chunks[word][kind] = bits[word];
+                state.remaining += Long.bitCount(bits[word]);
+            }
+        }
+        for (int c = 0; c < chunkCount; c++) {
+            if (state.chunks[c] == null) {
+                state.chunks[c] = new long[KINDS];
+            }
+        }
+        state.owned = chunkCount == MAX_CHUNKS ? -1L : (1L << chunkCount) - 1;
+
+        PacMan pacman = engine.getPacman();
+        state.pacmanTile = tileOf(maze, pacman.getX(), pacman.getY(), pacman.getWidth(), pacman.getHeight());
+        if (engine.isPacmanFrozenByIceTrap()) {
+            state.stallSteps = 1;
+        }
+        state.score = engine.getScore();
+
+        state.ghosts = new int[ghostList.size() * GHOST_STRIDE];
+        int[] trapList = new int[ghostList.size() * 2];
+        int trapCount = 0;
+        for (int i = 0; i < ghostList.size(); i++) {
+            Ghost ghost = ghostList.get(i);
+            shared.ghostSpeed[i] = (int) Math.round(ghost.getMovementSpeed() / rules.getPacmanSpeed() * PROGRESS_ONE);
+            shared.ghostHome[i] = tileOf(maze, ghost.getStartX(), ghost.getStartY(), ghost.getWidth(), ghost.getHeight());
+            shared.ghostDies[i] = ghost instanceof BlueGhost || ghost instanceof OrangeGhost;
+            int base = i * GHOST_STRIDE;
+            long respawn = shared.ghostDies[i] ? engine.getRespawnRemaining(ghost) : 0;
+            state.ghosts[base + GHOST_TILE] = tileOf(maze, ghost.getX(), ghost.getY(), ghost.getWidth(), ghost.getHeight());
+            state.ghosts[base + GHOST_SCARED] = steps(engine.getScaredRemaining(ghost), stepMillis);
+            state.ghosts[base + GHOST_RESPAWN] = ghost.isVisible() ? 0 : Math.max(1, steps(respawn, stepMillis));
+            if (ghost instanceof BlueGhost && ((BlueGhost) ghost).isIceTrapSet()) {
+                BlueGhost blue = (BlueGhost) ghost;
+                trapList[trapCount++] = tileOf(maze, blue.getIceTrapX(), blue.getIceTrapY(), GameEngine.TILE_SIZE, GameEngine.TILE_SIZE);
+                trapList[trapCount++] = TRAP_ICE;
+            } else if (ghost instanceof OrangeGhost && ((OrangeGhost) ghost).isTrapSet()) {
+                OrangeGhost orange = (OrangeGhost) ghost;
+                trapList[trapCount++] = tileOf(maze, orange.getTrapX(), orange.getTrapY(), GameEngine.TILE_SIZE, GameEngine.TILE_SIZE);
+                trapList[trapCount++] = TRAP_SILK;
+            }
+        }
+        state.traps = Arrays.copyOf(trapList, trapCount);
+        state.trapsOwned = true;
+        return state;
+    }
+
+    /**
+     * 分叉出一个独立推进的分支
+     * 只复制块引用数组和实体数组，食物块和陷阱数组在任一方第一次改写时才复制
+     * @return 新分支
+     */
+    public BranchState fork() {
+        return new BranchState(this);
+    }
+
+    /**
+     * 推进一步：Pac-Man 朝指定方向走一格（撞墙则原地不动），鬼魂按速度比例移动
+     * @param direction 方向
+     * @return 本步得分
+     */
+    public int step(Direction direction) {
+        if (dead) {
+            return 0;
+        }
+        int before = score;
+        steps++;
+        int from = pacmanTile;
+        if (stallSteps > 0) {
+            stallSteps--;
+        } else if (pacmanTile >= 0) {
+            int next = shared.maze.neighbour(pacmanTile, direction);
+            if (next >= 0) {
+                pacmanTile = next;
+            }
+        }
+        if (pacmanTile >= 0) {
+            eat(pacmanTile);
+            stepOnTrap(pacmanTile);
+        }
+        for (int i = 0; i < shared.ghostCount && !dead; i++) {
+            moveGhost(i, from);
+        }
+        return score - before;
+    }
+
+    private void eat(int tile) {
+        int c = tile >>> CHUNK_SHIFT;
+        long bit = 1L << tile;
+        long[] chunk = chunks[c];
+        long any = (chunk[GameEngine.PELLET_FOOD] | chunk[GameEngine.PELLET_POWER] | chunk[GameEngine.PELLET_SKILL]) & bit;
+        if (any == 0) {
+            return;
+        }
+        chunk = writableChunk(c);
+        if ((chunk[GameEngine.PELLET_POWER] & bit) != 0) {
+            score += POWER_PELLET_SCORE;
+        } else {
+            score += PELLET_SCORE;
+        }
+        chunk[GameEngine.PELLET_FOOD] &= ~bit;
+        chunk[GameEngine.PELLET_POWER] &= ~bit;
+        chunk[GameEngine.PELLET_SKILL] &= ~bit;
+        remaining--;
+    }
+
+    /**
+     * 写时复制：本分支第一次改写某块时复制该块
+     */
+    private long[] writableChunk(int c) {
+        if ((owned & (1L << c)) == 0) {
+            chunks[c] = chunks[c].clone();
+            owned |= 1L << c;
+        }
+        return chunks[c];
+    }
+
+    private void stepOnTrap(int tile) {
+        for (int i = 0; i < traps.length; i += 2) {
+            if (traps[i] == tile) {
+                if (!trapsOwned) {
+                    traps = traps.clone();
+                    trapsOwned = true;
+                }
+                traps[i] = -1;
+                stallSteps += traps[i + 1] == TRAP_SILK ? shared.entangledSteps : 1;
+            }
+        }
+    }
+
+    private void moveGhost(int index, int pacmanFrom) {
+        int base = index * GHOST_STRIDE;
+        if (ghosts[base + GHOST_RESPAWN] > 0) {
+            if (--ghosts[base + GHOST_RESPAWN] == 0) {
+                ghosts[base + GHOST_TILE] = shared.ghostHome[index];
+            }
+            return;
+        }
+        if (ghosts[base + GHOST_SCARED] > 0) {
+            ghosts[base + GHOST_SCARED]--;
+        }
+        ghosts[base + GHOST_PROGRESS] += shared.ghostSpeed[index];
+        boolean first = true;
+        while (ghosts[base + GHOST_PROGRESS] >= PROGRESS_ONE) {
+            ghosts[base + GHOST_PROGRESS] -= PROGRESS_ONE;
+            int tile = ghosts[base + GHOST_TILE];
+            int next = nextGhostTile(tile, ghosts[base + GHOST_SCARED] > 0);
+            ghosts[base + GHOST_TILE] = next;
+            // 同格相遇，或第一格移动时与 Pac-Man 交换了位置
+            if (next == pacmanTile || (first && tile == pacmanTile && next == pacmanFrom)) {
+                meet(index);
+                return;
+            }
+            first = false;
+        }
+        if (ghosts[base + GHOST_TILE] == pacmanTile) {
+            meet(index);
+        }
+    }
+
+    private int nextGhostTile(int tile, boolean scared) {
+        if (tile < 0 || pacmanTile < 0) {
+            return tile;
+        }
+        if (!scared) {
+            Direction dir = shared.paths.nextStep(tile, pacmanTile);
+            int next = dir != null ? shared.maze.neighbour(tile, dir) : -1;
+            return next >= 0 ? next : tile;
+        }
+        int best = tile;
+        int bestDistance = shared.paths.distance(tile, pacmanTile);
+        for (Direction dir : Direction.values()) {
+            int next = shared.maze.neighbour(tile, dir);
+            if (next >= 0) {
+                int distance = shared.paths.distance(next, pacmanTile);
+                if (distance > bestDistance && distance != PathTable.UNREACHABLE) {
+                    best = next;
+                    bestDistance = distance;
+                }
+            }
+        }
+        return best;
+    }
+
+    private void meet(int index) {
+        int base = index * GHOST_STRIDE;
+        if (ghosts[base + GHOST_SCARED] > 0) {
+            score += GHOST_SCORE;
+            ghosts[base + GHOST_SCARED] = 0;
+            ghosts[base + GHOST_PROGRESS] = 0;
+            if (shared.ghostDies[index]) {
+                ghosts[base + GHOST_TILE] = -1;
+                ghosts[base + GHOST_RESPAWN] = Math.max(1, shared.respawnSteps);
+            } else {
+                ghosts[base + GHOST_TILE] = shared.ghostHome[index];
+            }
+        } else {
+            dead = true;
+        }
+    }
+
+    private static int steps(long millis, long stepMillis) {
+        return millis <= 0 ? 0 : (int) Math.min(Integer.MAX_VALUE, (millis + stepMillis - 1) / stepMillis);
+    }
+
+    private static int tileOf(Maze maze, double x, double y, double width, double height) {
+        int col = (int) Math.floor((x + width / 2) / GameEngine.TILE_SIZE);
+        int row = (int) Math.floor((y + height / 2) / GameEngine.TILE_SIZE);
+        if (col < 0 || col >= maze.getWidth() || row < 0 || row >= maze.getHeight() || maze.isWall(col, row)) {
+            return -1;
+        }
+        return maze.index(col, row);
+    }
+
+    /**
+     * 查询格子上是否有某类食物
+     * @param tile 格子索引
+     * @param kind 食物种类（GameEngine.PELLET_FOOD 等）
+     * @return 有则为 true
+     */
+    public boolean hasPellet(int tile, int kind) {
+        return (chunks[tile >>> CHUNK_SHIFT][kind] & (1L << tile)) != 0;
+    }
+
+    public int getPacmanTile() {
+        return pacmanTile;
+    }
+
+    /**
+     * 获取鬼魂所在格子
+     * @param index 鬼魂下标
+     * @return 格子索引，等待重生或在地图外时为 -1
+     */
+    public int getGhostTile(int index) {
+        return ghosts[index * GHOST_STRIDE + GHOST_TILE];
+    }
+
+    public boolean isGhostScared(int index) {
+        return ghosts[index * GHOST_STRIDE + GHOST_SCARED] > 0;
+    }
+
+    public int getGhostCount() {
+        return shared.ghostCount;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getRemainingPellets() {
+        return remaining;
+    }
+
+    public int getSteps() {
+        return steps;
+    }
+
+    public boolean isDead() {
+        return dead;
+    }
+
+    public Maze getMaze() {
+        return shared.maze;
+    }
+
+    /**
+     * 获取每一步对应的游戏时间
+     * @return 毫秒
+     */
+    public long getStepMillis() {
+        return shared.stepMillis;
+    }
+
+    /**
+     * 主方法：比较分叉与引擎状态复制的开销，并用分叉做穷举树搜索统计每帧可展开的节点数
+     * @param args [搜索深度] [采集时的逻辑帧]
+     */
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+        long captureTick = args.length > 1 ? Long.parseLong(args[1]) : 600;
+        LevelLoader.headless().load(1);
+        GameEngine engine = new GameEngine(1);
+        engine.setKeyframeInterval(0);
+        engine.initialize();
+        Autopilot bot = new Autopilot(Autopilot.DEFAULT_NODE_BUDGET);
+        // 先玩一段，让食物和鬼魂分布接近对局中途
+        while (engine.getTick() < captureTick && !engine.isGameOver()) {
+            bot.drive(engine);
+            engine.update(GameEngine.TICK_MILLIS);
+        }
+        BranchState root = capture(engine);
+
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        GameEngine copy = new GameEngine(1);
+        copy.setKeyframeInterval(0);
+        copy.initialize();
+        long sink = 0;
+        for (int round = 0; round < 3; round++) {
+            int forks = 1_000_000;
+            long start = System.nanoTime();
+            for (int i = 0; i < forks; i++) {
+                BranchState child = root.fork();
+                child.step(Direction.values()[i & 3]);
+                sink += child.getScore();
+            }
+            double forkNanos = (System.nanoTime() - start) / (double) forks;
+
+            int copies = 20_000;
+            start = System.nanoTime();
+            for (int i = 0; i < copies; i++) {
+                buffer.clear();
+                engine.saveState(buffer);
+                buffer.flip();
+                copy.loadState(buffer);
+                sink += copy.getScore();
+            }
+            double copyNanos = (System.nanoTime() - start) / (double) copies;
+
+            start = System.nanoTime();
+            long[] nodes = new long[1];
+            int best = search(root, depth, nodes);
+            double millis = (System.nanoTime() - start) / 1e6;
+            sink += best;
+            System.out.printf("分叉+一步 %.0f ns, 引擎 saveState+loadState %.0f ns; 深度 %d 穷举 %d 节点 %.1f ms, 每帧 (%d ms) 约 %.0f 节点, 最优收益 %d%n",
+                    forkNanos, copyNanos, depth, nodes[0], millis, GameEngine.TICK_MILLIS,
+                    nodes[0] / millis * GameEngine.TICK_MILLIS, best);
+        }
+        // 输出累计值，防止基准循环被优化掉
+        System.out.println("校验值 " + sink);
+    }
+
+    /**
+     * 穷举搜索：每个节点为每个方向分叉一个子分支
+     */
+    private static int search(BranchState state, int depth, long[] nodes) {
+        nodes[0]++;
+        if (depth == 0 || state.isDead()) {
+            return state.isDead() ? -1000 : 0;
+        }
+        int best = Integer.MIN_VALUE;
+        for (Direction dir : Direction.values()) {
+            BranchState child = state.fork();
+            int gain = child.step(dir);
+            best = Math.max(best, gain + search(child, depth - 1, nodes));
+        }
+        return best;
+    }
+}
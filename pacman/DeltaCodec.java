@@ -0,0 +1,273 @@
+package pacman;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 观战增量编解码
+ * 比较当前帧与观战者已确认的基准帧，只写入变化的部分：
+ *
+ * <pre>
+ * DELTA  u32 逻辑帧, u32 基准逻辑帧（-1 表示空帧）, u8 变化掩码,
+ *        [分数] 有符号变长整数，与基准的差值
+ *        [生命] i8  [关卡] u8  [标志] u8
+ *        [实体] u8 实体数量, 变化位图（每实体一位）,
+ *               每个变化的实体 { u8 字段掩码, [X 差值], [Y 差值], [u8 方向], [u8 标志] }
+ *        [食物] 变长整数 位图长度（64位字数）, 变长整数 变化的格子数,
+ *               每个格子与上一个格子的间隔（变长整数）
+ * </pre>
+ * 坐标差值是量化坐标的有符号变长整数，每帧移动一般只占一个字节；
+ * 与基准完全相同时不产生任何消息
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public final class DeltaCodec {
+    // 变化掩码
+    private static final int CHANGED_SCORE = 1;
+    private static final int CHANGED_LIVES = 2;
+    private static final int CHANGED_LEVEL = 4;
+    private static final int CHANGED_FLAGS = 8;
+    private static final int CHANGED_ENTITIES = 16;
+    private static final int CHANGED_PELLETS = 32;
+
+    // 实体字段掩码
+    private static final int FIELD_X = 1;
+    private static final int FIELD_Y = 2;
+    private static final int FIELD_DIRECTION = 4;
+    private static final int FIELD_FLAGS = 8;
+
+    // 逻辑帧序号和基准序号在消息中的偏移
+    private static final int TICK_OFFSET = NetProtocol.HEADER_SIZE;
+    private static final int BASE_TICK_OFFSET = NetProtocol.HEADER_SIZE + 4;
+
+    private DeltaCodec() {
+    }
+
+    /**
+     * 写入增量消息
+     * @param out 目标缓冲区，空间不足时抛出 BufferOverflowException
+     * @param base 基准帧（观战者已确认的帧或空帧）
+     * @param current 当前帧
+     * @return 有变化并写入了消息返回 true；与基准相同时不写入任何内容并返回 false
+     */
+    public static boolean encode(ByteBuffer out, SpectatorFrame base, SpectatorFrame current) {
+        int start = out.position();
+        out.putShort((short) 0);
+        out.put(NetProtocol.DELTA);
+        out.putInt(current.tick);
+        out.putInt(base.tick);
+        int maskPosition = out.position();
+        out.put((byte) 0);
+
+        int mask = 0;
+        if (current.score != base.score) {
+            mask |= CHANGED_SCORE;
+            NetProtocol.writeSignedVarint(out, current.score - base.score);
+        }
+        if (current.lives != base.lives) {
+            mask |= CHANGED_LIVES;
+            out.put((byte) current.lives);
+        }
+        if (current.level != base.level) {
+            mask |= CHANGED_LEVEL;
+            out.put((byte) current.level);
+        }
+        if (current.flags != base.flags) {
+            mask |= CHANGED_FLAGS;
+            out.put((byte) current.flags);
+        }
+        if (encodeEntities(out, base, current)) {
+            mask |= CHANGED_ENTITIES;
+        }
+        if (encodePellets(out, base.pellets, current.pellets)) {
+            mask |= CHANGED_PELLETS;
+        }
+
+        if (mask == 0) {
+            out.position(start);
+            return false;
+        }
+        out.put(maskPosition, (byte) mask);
+        out.putShort(start, (short) (out.position() - start - 2));
+        return true;
+    }
+
+    private static boolean encodeEntities(ByteBuffer out, SpectatorFrame base, SpectatorFrame current) {
+        int count = current.entityCount;
+        int start = out.position();
+        out.put((byte) count);
+        int bitmapPosition = out.position();
+        int bitmapBytes = (count + 7) >>> 3;
+        for (int i = 0; i < bitmapBytes; i++) {
+            out.put((byte) 0);
+        }
+        boolean changed = count != base.entityCount;
+        int bits = 0;
+        for (int i = 0; i < count; i++) {
+            boolean known = i < base.entityCount;
+            int baseX = known ? base.x[i] : 0;
+            int baseY = known ? base.y[i] : 0;
+            int fields = 0;
+            if (current.x[i] != baseX) {
+                fields |= FIELD_X;
+            }
+            if (current.y[i] != baseY) {
+                fields |= FIELD_Y;
+            }
+            if (!known || current.direction[i] != base.direction[i]) {
+                fields |= FIELD_DIRECTION;
+            }
+            if (!known || current.entityFlags[i] != base.entityFlags[i]) {
+                fields |= FIELD_FLAGS;
+            }
+            if (fields != 0) {
+                changed = true;
+                bits |= 1 << (i & 7);
+                out.put((byte) fields);
+                if ((fields & FIELD_X) != 0) {
+                    NetProtocol.writeSignedVarint(out, current.x[i] - baseX);
+                }
+                if ((fields & FIELD_Y) != 0) {
+                    NetProtocol.writeSignedVarint(out, current.y[i] - baseY);
+                }
+                if ((fields & FIELD_DIRECTION) != 0) {
+                    out.put(current.direction[i]);
+                }
+                if ((fields & FIELD_FLAGS) != 0) {
+                    out.put(current.entityFlags[i]);
+                }
+            }
+            if ((i & 7) == 7 || i == count - 1) {
+                out.put(bitmapPosition + (i >>> 3), (byte) bits);
+                bits = 0;
+            }
+        }
+        if (!changed) {
+            out.position(start);
+        }
+        return changed;
+    }
+
+    private static boolean encodePellets(ByteBuffer out, long[] base, long[] current) {
+        int changes = 0;
+        for (int word = 0; word < current.length; word++) {
+            changes += Long.bitCount(current[word] ^ wordAt(base, current, word));
+        }
+        if (changes == 0 && base.length == current.length) {
+            return false;
+        }
+        NetProtocol.writeVarint(out, current.length);
+        NetProtocol.writeVarint(out, changes);
+        int previous = -1;
+        for (int word = 0; word < current.length; word++) {
+            for (long w = current[word] ^ wordAt(base, current, word); w != 0; w &= w - 1) {
+                int tile = (word << 6) + Long.numberOfTrailingZeros(w);
+                NetProtocol.writeVarint(out, tile - previous - 1);
+                previous = tile;
+            }
+        }
+        return true;
+    }
+
+    // 地图尺寸不同（如观战者的基准还是空帧）时按全空的基准比较
+    private static long wordAt(long[] base, long[] current, int word) {
+        return base.length == current.length ? base[word] : 0L;
+    }
+
+    /**
+     * 读取增量消息的基准逻辑帧（不移动读位置）
+     * @param in 源缓冲区，位置在消息开头
+     * @return 基准逻辑帧，-1 表示空帧
+     */
+    public static int baseTickOf(ByteBuffer in) {
+        return in.getInt(in.position() + BASE_TICK_OFFSET);
+    }
+
+    /**
+     * 读取增量消息的逻辑帧（不移动读位置）
+     * @param in 源缓冲区，位置在消息开头
+     * @return 逻辑帧
+     */
+    public static int tickOf(ByteBuffer in) {
+        return in.getInt(in.position() + TICK_OFFSET);
+    }
+
+    /**
+     * 在基准帧上应用增量消息
+     * @param in 源缓冲区，位置在消息开头，读完后位于消息末尾
+     * @param base 消息中声明的基准帧
+     * @param target 结果帧，可以与基准帧是同一个对象
+     */
+    public static void decode(ByteBuffer in, SpectatorFrame base, SpectatorFrame target) {
+        if (target != base) {
+            target.copyFrom(base);
+        }
+        in.getShort();
+        in.get();
+        target.tick = in.getInt();
+        in.getInt();
+        int mask = in.get();
+        if ((mask & CHANGED_SCORE) != 0) {
+            target.score += NetProtocol.readSignedVarint(in);
+        }
+        if ((mask & CHANGED_LIVES) != 0) {
+            target.lives = in.get();
+        }
+        if ((mask & CHANGED_LEVEL) != 0) {
+            target.level = in.get() & 0xFF;
+        }
+        if ((mask & CHANGED_FLAGS) != 0) {
+            target.flags = in.get() & 0xFF;
+        }
+        if ((mask & CHANGED_ENTITIES) != 0) {
+            decodeEntities(in, target);
+        }
+        if ((mask & CHANGED_PELLETS) != 0) {
+            decodePellets(in, target);
+        }
+    }
+
+    private static void decodeEntities(ByteBuffer in, SpectatorFrame target) {
+        int count = in.get() & 0xFF;
+        for (int i = target.entityCount; i < count; i++) {
+            target.x[i] = 0;
+            target.y[i] = 0;
+        }
+        target.entityCount = count;
+        int bitmapPosition = in.position();
+        in.position(bitmapPosition + ((count + 7) >>> 3));
+        for (int i = 0; i < count; i++) {
+            if ((in.get(bitmapPosition + (i >>> 3)) & (1 << (i & 7))) == 0) {
+                continue;
+            }
+            int fields = in.get();
+            if ((fields & FIELD_X) != 0) {
+                target.x[i] = (short) (target.x[i] + NetProtocol.readSignedVarint(in));
+            }
+            if ((fields & FIELD_Y) != 0) {
+                target.y[i] = (short) (target.y[i] + NetProtocol.readSignedVarint(in));
+            }
+            if ((fields & FIELD_DIRECTION) != 0) {
+                target.direction[i] = in.get();
+            }
+            if ((fields & FIELD_FLAGS) != 0) {
+                target.entityFlags[i] = in.get();
+            }
+        }
+    }
+
+    private static void decodePellets(ByteBuffer in, SpectatorFrame target) {
+        int words = NetProtocol.readVarint(in);
+        if (target.pellets.length != words) {
+            // 地图尺寸变化：与编码端一致，按全空的基准应用
+            target.pellets = new long[words];
+        }
+        int changes = NetProtocol.readVarint(in);
+        int tile = -1;
+        for (int i = 0; i < changes; i++) {
+            tile += NetProtocol.readVarint(in) + 1;
+            target.pellets[tile >>> 6] ^= 1L << tile;
+        }
+    }
+}
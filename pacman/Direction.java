@@ -13,6 +13,26 @@ import javafx.scene.input.KeyCode;
 public enum Direction {
     UP, DOWN, LEFT, RIGHT;
 
+    private static final Direction[] VALUES = values();
+
+    /**
+     * 转换为状态快照中使用的编码
+     * @param direction 方向，可以为 null
+     * @return 方向序号，null 返回 -1
+     */
+    public static byte toCode(Direction direction) {
+        return (byte) (direction == null ? -1 : direction.ordinal());
+    }
+
+    /**
+     * 从状态快照中的编码还原方向
+     * @param code 方向序号，-1 表示 null
+     * @return 方向
+     */
+    public static Direction fromCode(byte code) {
+        return code < 0 ? null : VALUES[code];
+    }
+
     /**
      * 根据键盘事件转换为方向
      * @param keyCode 键盘按键码
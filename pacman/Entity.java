@@ -2,6 +2,7 @@ package pacman;
 
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
+import java.nio.ByteBuffer;
 
 /**
  * 游戏实体抽象基类
@@ -29,6 +30,16 @@ public abstract class Entity {
     protected Image image;
     protected boolean visible = true;
 
+    // 游戏时钟 - 所有计时读取该时钟，由游戏引擎注入
+    protected GameClock clock = GameClock.SYSTEM;
+
+    // 平衡参数 - 由游戏引擎注入，注入前使用默认规则
+    protected GameRules rules = GameRules.DEFAULTS;
+
+    // 传送门属性 - 当前关卡迷宫以及实体中心上一次所在的格子
+    protected Maze maze;
+    private int portalTile = -1;
+
     /**
      * 构造方法
      *
@@ -87,11 +98,69 @@ public abstract class Entity {
         setY(getY() + velocityY);
     }
 
+    /**
+     * 实体中心离开格子时查询传送门表，经过传送门则平移到目的格子
+     * @return false 表示实体中心越出地图且该方向没有传送门
+     */
+    protected boolean applyPortals() {
+        if (maze == null) {
+            return true;
+        }
+        int tileSize = PacManApp.TILE_SIZE;
+        int col = (int) Math.floor((getX() + getWidth() / 2) / tileSize);
+        int row = (int) Math.floor((getY() + getHeight() / 2) / tileSize);
+        int destination = PortalTable.crossing(maze, portalTile, col, row, getClass().getSimpleName());
+        if (destination != PortalTable.NONE) {
+            int destCol = destination % maze.getWidth();
+            int destRow = destination / maze.getWidth();
+            setX(getX() + (destCol - col) * tileSize);
+            setY(getY() + (destRow - row) * tileSize);
+            col = destCol;
+            row = destRow;
+        }
+        if (col < 0 || col >= maze.getWidth() || row < 0 || row >= maze.getHeight()) {
+            return false;
+        }
+        portalTile = maze.index(col, row);
+        return true;
+    }
+
     /**
      * 重置实体到初始状态
      */
     public abstract void reset();
 
+    /**
+     * 写入实体的可变状态，子类追加自身字段
+     * 尺寸、图像和迷宫由关卡决定，不写入快照
+     * @param buffer 目标缓冲区
+     */
+    public void writeState(ByteBuffer buffer) {
+        buffer.putDouble(x);
+        buffer.putDouble(y);
+        buffer.putDouble(velocityX);
+        buffer.putDouble(velocityY);
+        buffer.putDouble(speed);
+        buffer.put(Direction.toCode(direction));
+        buffer.put((byte) (visible ? 1 : 0));
+        buffer.putInt(portalTile);
+    }
+
+    /**
+     * 读取 writeState 写入的状态，字段顺序必须一致
+     * @param buffer 源缓冲区
+     */
+    public void readState(ByteBuffer buffer) {
+        x = buffer.getDouble();
+        y = buffer.getDouble();
+        velocityX = buffer.getDouble();
+        velocityY = buffer.getDouble();
+        speed = buffer.getDouble();
+        direction = Direction.fromCode(buffer.get());
+        visible = buffer.get() != 0;
+        portalTile = buffer.getInt();
+    }
+
     // Getters 和 Setters
 
     public double getX() {
@@ -142,6 +211,35 @@ public abstract class Entity {
         this.speed = speed;
     }
 
+    public GameClock getClock() {
+        return clock;
+    }
+
+    public void setClock(GameClock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * 设置平衡参数，子类据此刷新速度等派生属性
+     * @param rules 平衡参数
+     */
+    public void setRules(GameRules rules) {
+        this.rules = rules;
+    }
+
+    public Maze getMaze() {
+        return maze;
+    }
+
+    /**
+     * 设置实体所在关卡的迷宫，用于传送门查询
+     * @param maze 迷宫
+     */
+    public void setMaze(Maze maze) {
+        this.maze = maze;
+        this.portalTile = -1;
+    }
+
     public boolean isVisible() {
         return visible;
     }
@@ -0,0 +1,244 @@
+package pacman;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import com.sun.management.ThreadMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * 游戏自定义的 JDK Flight Recorder 事件
+ * 逻辑帧耗时、鬼魂 AI 决策、碰撞批次、传送、陷阱触发、克隆体生成以及每帧的内存分配量，
+ * 和 JVM 自身的 GC、JIT、锁事件记录在同一个录制文件里，可以把卡顿对应到具体的游戏原因。
+ *
+ * 事件通过标准 JFR 设置开关，没有开启录制时 commit 和 shouldCommit 只做一次开关判断，
+ * 事件对象经逃逸分析后不会真正分配。高频事件不采集调用栈。例如：
+ *   java -XX:StartFlightRecording:filename=game.jfr,settings=profile ...
+ *   java -XX:StartFlightRecording:filename=game.jfr,pacman.Tick#threshold=5ms,pacman.GhostDecision#enabled=false ...
+ *   jfr print --events pacman.Tick,jdk.GarbageCollection game.jfr
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public final class FlightEvents {
+    // 当前线程已分配字节数的查询接口，不支持时为 null
+    private static final ThreadMXBean THREADS = threadBean();
+
+    private FlightEvents() {
+    }
+
+    /**
+     * 一个逻辑帧（GameEngine.update）的耗时
+     */
+    @Name("pacman.Tick")
+    @Label("Game Tick")
+    @Category({"Pac-Man", "Game Loop"})
+    @Description("One fixed-step update of the game engine")
+    @StackTrace(false)
+    public static final class TickEvent extends Event {
+        @Label("Tick")
+        public long tick;
+
+        @Label("State")
+        public String state;
+
+        @Label("Ghosts")
+        public int ghosts;
+
+        @Label("Clones")
+        public int clones;
+
+        @Label("Pellets Left")
+        public int pellets;
+    }
+
+    /**
+     * 一个逻辑帧里游戏线程分配的内存量，用来找出制造 GC 压力的帧
+     */
+    @Name("pacman.LoopAllocation")
+    @Label("Game Loop Allocation")
+    @Category({"Pac-Man", "Game Loop"})
+    @Description("Bytes allocated by the game thread during one tick")
+    @StackTrace(false)
+    public static final class LoopAllocationEvent extends Event {
+        @Label("Tick")
+        public long tick;
+
+        @Label("Allocated")
+        @DataAmount
+        public long allocated;
+    }
+
+    /**
+     * 鬼魂在路口或撞墙后的转向决策
+     */
+    @Name("pacman.GhostDecision")
+    @Label("Ghost Decision")
+    @Category({"Pac-Man", "AI"})
+    @Description("A ghost choosing a direction at an intersection or after being blocked")
+    @StackTrace(false)
+    public static final class GhostDecisionEvent extends Event {
+        @Label("Ghost")
+        public String ghost;
+
+        @Label("Trigger")
+        @Description("intersection, steering or blocked")
+        public String trigger;
+
+        @Label("From Direction")
+        public String fromDirection;
+
+        @Label("To Direction")
+        public String toDirection;
+
+        @Label("Options")
+        @Description("Open directions other than reversing")
+        public int options;
+    }
+
+    /**
+     * 一次 handleCollisions 的碰撞检测批次
+     */
+    @Name("pacman.CollisionBatch")
+    @Label("Collision Batch")
+    @Category({"Pac-Man", "Game Loop"})
+    @Description("All collision tests of one tick")
+    @StackTrace(false)
+    public static final class CollisionBatchEvent extends Event {
+        @Label("Tick")
+        public long tick;
+
+        @Label("Pairs Tested")
+        public int pairsTested;
+
+        @Label("Pairs Hit")
+        public int pairsHit;
+    }
+
+    /**
+     * 实体经过传送门或红色鬼魂闪现
+     */
+    @Name("pacman.Teleport")
+    @Label("Teleport")
+    @Category({"Pac-Man", "Entities"})
+    public static final class TeleportEvent extends Event {
+        @Label("Entity")
+        public String entity;
+
+        @Label("Kind")
+        @Description("portal or blink")
+        public String kind;
+
+        @Label("From Column")
+        public int fromCol;
+
+        @Label("From Row")
+        public int fromRow;
+
+        @Label("To Column")
+        public int toCol;
+
+        @Label("To Row")
+        public int toRow;
+    }
+
+    /**
+     * Pac-Man 踩中冰影陷阱或缚丝陷阱
+     */
+    @Name("pacman.TrapTrigger")
+    @Label("Trap Trigger")
+    @Category({"Pac-Man", "Entities"})
+    public static final class TrapTriggerEvent extends Event {
+        @Label("Tick")
+        public long tick;
+
+        @Label("Trap")
+        @Description("ice or silk")
+        public String trap;
+
+        @Label("Column")
+        public int col;
+
+        @Label("Row")
+        public int row;
+    }
+
+    /**
+     * 释放技能生成克隆体
+     */
+    @Name("pacman.CloneSpawn")
+    @Label("Clone Spawn")
+    @Category({"Pac-Man", "Entities"})
+    public static final class CloneSpawnEvent extends Event {
+        @Label("Tick")
+        public long tick;
+
+        @Label("Direction")
+        public String direction;
+
+        @Label("Column")
+        public int col;
+
+        @Label("Row")
+        public int row;
+
+        @Label("Active Clones")
+        public int activeClones;
+    }
+
+    /**
+     * 记录一次传送
+     * @param entity 实体名称
+     * @param kind 传送方式（portal 或 blink）
+     * @param fromCol 起点列
+     * @param fromRow 起点行
+     * @param toCol 终点列
+     * @param toRow 终点行
+     */
+    public static void teleport(String entity, String kind, int fromCol, int fromRow, int toCol, int toRow) {
+        TeleportEvent event = new TeleportEvent();
+        if (event.shouldCommit()) {
+            event.entity = entity;
+            event.kind = kind;
+            event.fromCol = fromCol;
+            event.fromRow = fromRow;
+            event.toCol = toCol;
+            event.toRow = toRow;
+            event.commit();
+        }
+    }
+
+    /**
+     * 获取当前线程至今分配的字节数
+     * @return 字节数，JVM 不支持时为 -1
+     */
+    public static long allocatedBytes() {
+        return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    /**
+     * 计算坐标所在的格子
+     * @param pixel 像素坐标
+     * @return 格子行或列
+     */
+    static int tileOf(double pixel) {
+        return (int) Math.floor(pixel / PacManApp.TILE_SIZE);
+    }
+
+    private static ThreadMXBean threadBean() {
+        try {
+            ThreadMXBean threads = ManagementFactory.getPlatformMXBean(ThreadMXBean.class);
+            if (threads != null && threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads;
+            }
+        } catch (IllegalArgumentException e) {
+            // 非 HotSpot 虚拟机没有这个扩展接口
+        }
+        return null;
+    }
+}
@@ -0,0 +1,234 @@
+package pacman;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import java.util.Arrays;
+
+/**
+ * 分阶段帧耗时分析器
+ * 引擎在逻辑帧和渲染的各阶段之间调用 lap 记录 System.nanoTime 差值，一帧结束时写入每个阶段的
+ * 固定大小环形缓冲区（最近 WINDOW 帧），叠加层显示各阶段的 p50 / p95 / p99 / 最大值。
+ *
+ * 引擎没有设置分析器时每个阶段只多一次空引用判断，不调用 nanoTime，也不分配内存。
+ * 分析器只应由驱动引擎的线程使用
+ *
+ * 用法（无界面统计）：java pacman.FrameProfiler [逻辑帧数]
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public final class FrameProfiler {
+    // 逻辑帧阶段
+    public static final int PACMAN_MOVE = 0;
+    public static final int GHOST_UPDATE = 1;
+    public static final int ABILITIES = 2;
+    public static final int FOOD_WALL_UPDATE = 3;
+    public static final int CLONE_MOVE = 4;
+    public static final int COLLISIONS = 5;
+    public static final int WIN_CHECK = 6;
+    public static final int TICK_TOTAL = 7;
+    // 渲染阶段
+    public static final int RENDER_WALLS = 8;
+    public static final int RENDER_PELLETS = 9;
+    public static final int RENDER_ENTITIES = 10;
+    public static final int RENDER_HUD = 11;
+    public static final int RENDER_TOTAL = 12;
+    public static final int PHASES = 13;
+
+    public static final int WINDOW = 256;
+
+    private static final String[] NAMES = {
+        "pacman move", "ghost update", "abilities", "food/wall update", "clone move", "collisions", "win check",
+        "tick total", "render walls", "render pellets", "render entities", "render HUD", "render total"
+    };
+    // 叠加层每隔多少次绘制重新计算一次百分位数
+    private static final int OVERLAY_REFRESH = 15;
+    private static final double[] OVERLAY_PERCENTILES = {50, 95, 99};
+
+    private final long[][] samples = new long[PHASES][WINDOW];
+    private final long[] pending = new long[PHASES];
+    private long ticks;
+    private long renders;
+
+    // 叠加层缓存的统计结果（微秒）和排序用的临时数组
+    private final double[][] overlayStats = new double[PHASES][OVERLAY_PERCENTILES.length + 1];
+    private final long[] sorted = new long[WINDOW];
+    private int overlayAge = OVERLAY_REFRESH;
+
+    /**
+     * 开始计时
+     * @return 当前时间（纳秒）
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * 把从 since 到现在的时间计入阶段，同一帧内多次计入会累加
+     * @param phase 阶段
+     * @param since 上一次 start 或 lap 的返回值
+     * @return 当前时间，作为下一阶段的起点
+     */
+    public long lap(int phase, long since) {
+        long now = System.nanoTime();
+        pending[phase] += now - since;
+        return now;
+    }
+
+    /**
+     * 结束一个逻辑帧，把本帧各逻辑阶段写入环形缓冲区
+     */
+    public void endTick() {
+        commit(PACMAN_MOVE, TICK_TOTAL, (int) (ticks++ % WINDOW));
+    }
+
+    /**
+     * 结束一次渲染，把本次各渲染阶段写入环形缓冲区
+     */
+    public void endRender() {
+        commit(RENDER_WALLS, RENDER_TOTAL, (int) (renders++ % WINDOW));
+    }
+
+    private void commit(int first, int total, int slot) {
+        long sum = 0;
+        for (int phase = first; phase < total; phase++) {
+            samples[phase][slot] = pending[phase];
+            sum += pending[phase];
+            pending[phase] = 0;
+        }
+        samples[total][slot] = sum;
+    }
+
+    /**
+     * 计算阶段在最近 WINDOW 帧内的百分位数
+     * @param phase 阶段
+     * @param percentile 百分位（0-100）
+     * @return 纳秒，还没有样本时为 0
+     */
+    public long percentile(int phase, double percentile) {
+        int count = sampleCount(phase);
+        if (count == 0) {
+            return 0;
+        }
+        System.arraycopy(samples[phase], 0, sorted, 0, count);
+        Arrays.sort(sorted, 0, count);
+        int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    /**
+     * 获取阶段在最近 WINDOW 帧内的最大值
+     * @param phase 阶段
+     * @return 纳秒
+     */
+    public long max(int phase) {
+        long max = 0;
+        int count = sampleCount(phase);
+        for (int i = 0; i < count; i++) {
+            max = Math.max(max, samples[phase][i]);
+        }
+        return max;
+    }
+
+    private int sampleCount(int phase) {
+        long frames = phase <= TICK_TOTAL ? ticks : renders;
+        return (int) Math.min(frames, WINDOW);
+    }
+
+    public static String nameOf(int phase) {
+        return NAMES[phase];
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    public long getRenders() {
+        return renders;
+    }
+
+    /**
+     * 绘制叠加层：每个阶段一行，依次为 p50、p95、p99 和最大值（微秒）
+     * 统计结果每 OVERLAY_REFRESH 次绘制重新计算一次，其余时间使用缓存
+     * @param gc 图形上下文
+     * @param x 左上角 X
+     * @param y 左上角 Y
+     */
+    public void renderOverlay(GraphicsContext gc, double x, double y) {
+        if (++overlayAge >= OVERLAY_REFRESH) {
+            overlayAge = 0;
+            for (int phase = 0; phase < PHASES; phase++) {
+                for (int i = 0; i < OVERLAY_PERCENTILES.length; i++) {
+                    overlayStats[phase][i] = percentile(phase, OVERLAY_PERCENTILES[i]) / 1e3;
+                }
+                overlayStats[phase][OVERLAY_PERCENTILES.length] = max(phase) / 1e3;
+            }
+        }
+        double lineHeight = 13;
+        double width = 330;
+        double height = lineHeight * (PHASES + 2) + 6;
+        gc.setFill(Color.rgb(0, 0, 0, 0.75));
+        gc.fillRect(x, y, width, height);
+        gc.setFont(Font.font("Monospaced", 11));
+        gc.setFill(Color.LIME);
+        gc.fillText(String.format("%-16s %7s %7s %7s %7s", "phase (us)", "p50", "p95", "p99", "max"),
+                x + 6, y + lineHeight);
+        for (int phase = 0; phase < PHASES; phase++) {
+            double[] stats = overlayStats[phase];
+            gc.setFill(phase == TICK_TOTAL || phase == RENDER_TOTAL ? Color.YELLOW : Color.WHITE);
+            gc.fillText(String.format("%-16s %7.1f %7.1f %7.1f %7.1f", NAMES[phase], stats[0], stats[1], stats[2], stats[3]),
+                    x + 6, y + lineHeight * (phase + 2));
+        }
+        gc.setFill(Color.GRAY);
+        gc.fillText(String.format("last %d ticks / %d renders, F3 to hide", Math.min(ticks, WINDOW),
+                Math.min(renders, WINDOW)), x + 6, y + lineHeight * (PHASES + 2));
+    }
+
+    /**
+     * 主方法：无界面运行自动驾驶对局，输出各逻辑阶段的耗时分布，
+     * 并比较开启和关闭分析器时每帧的总耗时
+     * @param args [逻辑帧数]
+     */
+    public static void main(String[] args) {
+        int totalTicks = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        LevelLoader.headless().load(1);
+        for (int round = 0; round < 2; round++) {
+            double off = run(totalTicks, null);
+            FrameProfiler profiler = new FrameProfiler();
+            double on = run(totalTicks, profiler);
+            if (round == 0) {
+                // 第一轮用于预热
+                continue;
+            }
+            System.out.printf("每逻辑帧: 关闭分析器 %.2f us, 开启 %.2f us%n", off / 1e3, on / 1e3);
+            System.out.printf("%-16s %9s %9s %9s %9s%n", "阶段 (us)", "p50", "p95", "p99", "max");
+            for (int phase = 0; phase <= TICK_TOTAL; phase++) {
+                System.out.printf("%-16s %9.2f %9.2f %9.2f %9.2f%n", nameOf(phase),
+                        profiler.percentile(phase, 50) / 1e3, profiler.percentile(phase, 95) / 1e3,
+                        profiler.percentile(phase, 99) / 1e3, profiler.max(phase) / 1e3);
+            }
+        }
+    }
+
+    /**
+     * 用自动驾驶连续玩若干逻辑帧（游戏结束后重开）
+     * @return 每逻辑帧平均耗时（纳秒）
+     */
+    private static double run(int totalTicks, FrameProfiler profiler) {
+        GameEngine engine = new GameEngine(7);
+        engine.setKeyframeInterval(0);
+        engine.initialize();
+        engine.setProfiler(profiler);
+        Autopilot bot = new Autopilot(Autopilot.DEFAULT_NODE_BUDGET);
+        long elapsed = 0;
+        for (int i = 0; i < totalTicks; i++) {
+            bot.drive(engine);
+            long begin = System.nanoTime();
+            engine.update(GameEngine.TICK_MILLIS);
+            elapsed += System.nanoTime() - begin;
+        }
+        return (double) elapsed / totalTicks;
+    }
+}
@@ -0,0 +1,53 @@
+package pacman;
+
+/**
+ * 游戏时钟
+ * 游戏逻辑中的计时全部读取该时钟而不是系统时间，
+ * 由游戏引擎每个逻辑帧推进固定步长，保证录像回放与原始对局完全一致
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public class GameClock {
+    /**
+     * 系统时钟 - 供未接入游戏引擎的对象使用，保持原有行为
+     */
+    public static final GameClock SYSTEM = new GameClock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public void advance(long deltaTime) {
+            throw new UnsupportedOperationException("系统时钟不能手动推进");
+        }
+    };
+
+    private long now;
+
+    /**
+     * 获取当前游戏时间
+     * @return 游戏开始以来经过的毫秒数
+     */
+    public long currentTimeMillis() {
+        return now;
+    }
+
+    /**
+     * 推进游戏时间
+     * @param deltaTime 时间增量（毫秒）
+     */
+    public void advance(long deltaTime) {
+        now += deltaTime;
+    }
+
+    /**
+     * 直接设置游戏时间（用于状态恢复）
+     * @param now 游戏时间（毫秒）
+     */
+    public void set(long now) {
+        this.now = now;
+    }
+}
@@ -5,12 +5,15 @@ import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.input.KeyCode;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.HashSet;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 游戏引擎类
@@ -26,6 +29,33 @@ public class GameEngine {
     public static final int GRID_WIDTH = PacManApp.GRID_WIDTH;
     public static final int GRID_HEIGHT = PacManApp.GRID_HEIGHT;
     public static final int TILE_SIZE = PacManApp.TILE_SIZE;
+    // 逻辑帧固定步长（毫秒），界面循环和录像回放都按该步长推进
+    public static final long TICK_MILLIS = 16;
+    // 录像关键帧间隔：每10秒游戏时间保存一次完整状态
+    public static final long KEYFRAME_INTERVAL_TICKS = 10000 / TICK_MILLIS;
+    // 状态快照格式版本，字段增减时递增
+    private static final int STATE_VERSION = 2;
+
+    // 食物种类，用于食物变化日志和按种类获取位图
+    public static final int PELLET_FOOD = 0;
+    public static final int PELLET_POWER = 1;
+    public static final int PELLET_SKILL = 2;
+    // 食物变化日志容量（必须是 2 的幂），读者落后超过该条数时需要整体刷新
+    public static final int PELLET_JOURNAL_SIZE = 256;
+
+    // 状态哈希槽位：全局状态、计时器、Pac-Man、克隆体、陷阱，之后每个鬼魂两个槽位（位置、计时器）
+    private static final int HASH_SLOT_STATUS = 0;
+    private static final int HASH_SLOT_TIMERS = 1;
+    private static final int HASH_SLOT_PACMAN = 2;
+    private static final int HASH_SLOT_CLONES = 3;
+    private static final int HASH_SLOT_TRAPS = 4;
+    private static final int HASH_SLOT_GHOSTS = 5;
+    // 计时器按秒分桶后计入哈希
+    private static final long HASH_BUCKET_MILLIS = 1000;
+    // 群战模式额外鬼魂的出生点与 Pac-Man 起点的最小曼哈顿距离（格子）
+    private static final int HORDE_CLEARANCE = 6;
+    // 群战模式 Pac-Man 复活后的无敌时间（毫秒），避免守在起点附近的鬼魂连续扣命
+    private static final long HORDE_RESPAWN_GRACE = 2000;
 
     // 游戏状态
     private enum GameState {
@@ -49,38 +79,56 @@ public class GameEngine {
     // 冰影陷阱状态管理 - 新增
     private boolean isPacmanFrozenByIceTrap; // 标记pacman是否被冰影陷阱冰冻
     private long iceTrapFreezeTimer; // 冰影陷阱冰冻开始时间
-    private static final long ICE_TRAP_TIMEOUT = 10000; // 冰影陷阱超时时间（10秒）
     
     // 缚丝陷阱状态管理 - 新增
     private boolean isPacmanEntangledByTrap; // 标记pacman是否被缚丝陷阱缠绕
     private long entangledTrapTimer; // 缚丝陷阱开始时间
-    private static final long ENTANGLED_TRAP_TIMEOUT = 3000; // 缚丝陷阱持续时间（3秒）
-
-
-    // 地图系统 - 修改：移除被技能食物替代的墙，使其与参考地图一致
-    private String[] tileMap = {
-        "XXXXXXXXXXXXXXXXXXX",
-        "X                 X",
-        "X XX XXX X XXX XX X",
-        "X                 X",
-        "X XX X XXXXX X XX X",
-        "X    X       X    X",
-        "XXXX XXXX XXXX XXXX",
-        "OOOX X       X XOOO",
-        "XXXX X XXrXX X XXXX",
-        "X      b p o      X",
-        "XXXX X XXXXX X XXXX",
-        "OOOX X       X XOOO",
-        "XXXX X XXXXX X XXXX",
-        "X    X       X    X",
-        "X XX XXX X XXX XX X",
-        "X  X     P     X  X",
-        "XX X X XXXXX X X XX",
-        "X    X       X    X",
-        "X XXXXXX X XXXXXX X",
-        "X                 X",
-        "XXXXXXXXXXXXXXXXXXX"
-    };
+
+    // 群战模式复活保护 - 在该游戏时间之前鬼魂碰到 Pac-Man 不扣命
+    private long pacmanGraceUntil;
+
+
+    // 确定性模拟 - 游戏时钟、随机数和逻辑帧计数，相同种子和输入得到相同对局
+    private final GameClock clock;
+    private final GameRandom random;
+    private final long seed;
+    private final GameRules rules; // 平衡参数（陷阱、恐慌、重生时间和速度等）
+    private long tick;
+    private long keyframeInterval = KEYFRAME_INTERVAL_TICKS;
+    private final InputLog inputLog;
+
+    // 碰撞事件累计计数，用于强化学习环境的奖励信号；属于统计信息，不保存在状态中
+    private long pelletsEaten;
+    private long powerPelletsEaten;
+    private long ghostsEaten;
+    private long deaths;
+
+    // 食物变化日志：按顺序记录被吃掉的食物（格子 << 2 | 种类）；
+    // 地图重新加载或状态恢复时递增地图版本号，读者需要整体刷新
+    private final int[] pelletJournal = new int[PELLET_JOURNAL_SIZE];
+    private long pelletJournalCount;
+    private int mapVersion;
+
+    // 状态哈希：各分量在状态变化处即时更新，读取只返回当前值
+    // 修改原因：原来每次读取都重算所有鬼魂和克隆体的槽位，群战模式下读取开销随实体数增长
+    private final ZobristHash stateHash = new ZobristHash(HASH_SLOT_GHOSTS);
+    // 每个鬼魂当前计入的陷阱键、所有陷阱键之和，以及克隆体数量加各克隆体键之和
+    private long[] ghostTrapKeys = new long[0];
+    private long trapKeySum;
+    private long cloneKeySum;
+
+    // 分阶段耗时分析器，为 null 时不计时
+    private FrameProfiler profiler;
+    // 本帧碰撞检测的次数和命中数，用于 JFR 碰撞批次事件和指标导出
+    private int collisionTests;
+    private int collisionHits;
+    // 游戏事件总线：碰撞和按键处理中发布，每个逻辑帧结束时分发给订阅者
+    private final GameEventBus events = new GameEventBus(GameEventBus.DEFAULT_CAPACITY);
+
+    // 关卡系统 - 当前关卡在游戏线程使用，下一关在后台线程预先编译
+    private final LevelLoader levelLoader;
+    private Level currentLevel;
+    private CompletableFuture<Level> nextLevel;
 
     // 实体集合
     private List<Food> foods; // 食物
@@ -90,6 +138,7 @@ public class GameEngine {
     private List<Trap> traps; // 陷阱
     private List<Ghost> ghosts; // 鬼魂
     private List<PacmanClone> pacmanClones; // Pacman克隆体
+    private SpatialGrid ghostGrid; // 鬼魂空间索引，按鬼魂列表下标登记
     private PacMan pacman;
 
     // 状态管理映射
@@ -99,13 +148,73 @@ public class GameEngine {
     private HashMap<Ghost, Long> ghostRespawnTimers;
     private HashMap<Ghost, Long> redGhostTeleportCooldown;
 
+    // 食物对象池 - 按格子索引缓存，状态恢复时复用而不是重新创建
+    private Food[] foodPool;
+    private PowerFood[] powerFoodPool;
+    private PowerFoodPlus[] powerFoodPlusPool;
+    private ByteBuffer snapshotBuffer;
+
     /**
      * 构造方法
      * @param canvas 游戏画布对象
      */
     public GameEngine(Canvas canvas) {
+        this(canvas, System.nanoTime(), new LevelLoader());
+    }
+
+    /**
+     * 无界面构造方法
+     * 不加载图像也不渲染，用于录像回放等需要全速运行的场景
+     * @param seed 随机数种子
+     */
+    public GameEngine(long seed) {
+        this(seed, new GameRules());
+    }
+
+    /**
+     * 无界面构造方法，使用指定的平衡参数
+     * 用于参数扫描等需要比较不同规则的场景
+     * @param seed 随机数种子
+     * @param rules 平衡参数，引擎保存一份副本
+     */
+    public GameEngine(long seed, GameRules rules) {
+        this(null, seed, LevelLoader.headless(), rules);
+    }
+
+    /**
+     * 无界面构造方法，使用指定的平衡参数和关卡加载器
+     * 用于基准测试等需要自定义地图的场景
+     * @param seed 随机数种子
+     * @param rules 平衡参数，引擎保存一份副本
+     * @param levelLoader 关卡加载器
+     */
+    public GameEngine(long seed, GameRules rules, LevelLoader levelLoader) {
+        this(null, seed, levelLoader, rules);
+    }
+
+    /**
+     * 构造方法，使用指定的平衡参数（例如群战模式）
+     * @param canvas 游戏画布对象
+     * @param rules 平衡参数，引擎保存一份副本
+     */
+    public GameEngine(Canvas canvas, GameRules rules) {
+        this(canvas, System.nanoTime(), new LevelLoader(), rules);
+    }
+
+    private GameEngine(Canvas canvas, long seed, LevelLoader levelLoader) {
+        this(canvas, seed, levelLoader, new GameRules());
+    }
+
+    private GameEngine(Canvas canvas, long seed, LevelLoader levelLoader, GameRules rules) {
         this.canvas = canvas;
-        this.gc = canvas.getGraphicsContext2D();
+        this.rules = new GameRules(rules);
+        this.gc = canvas != null ? canvas.getGraphicsContext2D() : null;
+        this.levelLoader = levelLoader;
+        this.seed = seed;
+        this.clock = new GameClock();
+        this.random = new GameRandom(seed);
+        this.tick = 0;
+        this.inputLog = new InputLog(seed, TICK_MILLIS, this.rules);
 
         currentState = GameState.START;
         level = 1;
@@ -137,6 +246,7 @@ public class GameEngine {
         // 初始化缚丝陷阱状态 - 新增
         isPacmanEntangledByTrap = false;
         entangledTrapTimer = 0;
+        pacmanGraceUntil = 0;
     }
 
     /**
@@ -144,43 +254,49 @@ public class GameEngine {
      * 加载所有游戏资源和实体
      */
     public void initialize() {
-        // 加载 PacMan 方向图像
-        Image pacmanUpImage = new Image("file:pacmanUp.png");
-        Image pacmanDownImage = new Image("file:pacmanDown.png");
-        Image pacmanLeftImage = new Image("file:pacmanLeft.png");
-        Image pacmanRightImage = new Image("file:pacmanRight.png");
-        
-        // 加载鬼魂图像
-        Image redGhostImage = new Image("file:redGhost.png");
-        Image pinkGhostImage = new Image("file:pinkGhost.png");
-        Image blueGhostImage = new Image("file:blueGhost.png");
-        Image orangeGhostImage = new Image("file:orangeGhost.png");
-        
-        // 加载墙壁图像
-        Image wallImage = new Image("file:wall.png");
+        // 第一关需要立即可用，阻塞等待编译完成
+        currentLevel = levelLoader.load(level);
+        loadMap(currentLevel);
+        preloadNextLevel();
+        // 开局状态作为第0帧关键帧，回放可以从任意位置跳回开头
+        if (tick == 0 && inputLog.getKeyframeCount() == 0) {
+            inputLog.addKeyframe(0, snapshot());
+        }
+    }
 
-        // 加载地图
-        loadMap(pacmanUpImage, pacmanDownImage, pacmanLeftImage, pacmanRightImage,
-               redGhostImage, pinkGhostImage, blueGhostImage, orangeGhostImage,
-               wallImage);
+    /**
+     * 在后台线程开始准备下一关的地图、寻路表和精灵图集
+     */
+    private void preloadNextLevel() {
+        nextLevel = levelLoader.preload(level + 1);
+    }
+
+    /**
+     * 进入下一关
+     * 保留分数、生命和技能，直接使用后台预先准备好的关卡替换当前地图
+     */
+    private void advanceLevel() {
+        // 正常情况下预加载早已完成，join 只是取出结果
+        Level next = nextLevel.join();
+        level = next.getNumber();
+        currentLevel = next;
+        loadMap(currentLevel);
+        isPacmanFrozenByIceTrap = false;
+        iceTrapFreezeTimer = 0;
+        isPacmanEntangledByTrap = false;
+        entangledTrapTimer = 0;
+        preloadNextLevel();
     }
 
     /**
      * 加载游戏地图
-     * 根据tileMap数组创建所有游戏实体
-     * @param pacmanUpImage 吃豆人向上图像
-     * @param pacmanDownImage 吃豆人向下图像
-     * @param pacmanLeftImage 吃豆人向左图像
-     * @param pacmanRightImage 吃豆人向右图像
-     * @param redGhostImage 红色鬼魂图像
-     * @param pinkGhostImage 粉色鬼魂图像
-     * @param blueGhostImage 蓝色鬼魂图像
-     * @param orangeGhostImage 橙色鬼魂图像
-     * @param wallImage 墙壁图像
-     */
-    private void loadMap(Image pacmanUpImage, Image pacmanDownImage, Image pacmanLeftImage, Image pacmanRightImage,
-                        Image redGhostImage, Image pinkGhostImage, Image blueGhostImage, Image orangeGhostImage,
-                        Image wallImage) {
+     * 根据关卡的迷宫数据创建所有游戏实体
+     * @param level 已编译的关卡
+     */
+    private void loadMap(Level level) {
+        Maze maze = level.getMaze();
+        SpriteSet sprites = level.getSprites();
+
         foods.clear();
         powerFoods.clear();
         walls.clear();
@@ -193,66 +309,187 @@ public class GameEngine {
         ghostRespawnTimers.clear();
         redGhostTeleportCooldown.clear();
 
-        // 加载食物和能量豆图像
-        // 修改：使用powerFood.png作为普通食物，power food-1.png作为强化技能食物
-        this.foodImage = new Image("file:powerFood.png");
-        this.powerFoodImage = new Image("file:power food-1.png.png");
+        this.foodImage = sprites.getFoodImage();
+        this.powerFoodImage = sprites.getPowerFoodImage();
 
-        for (int row = 0; row < tileMap.length; row++) {
-            for (int col = 0; col < tileMap[row].length(); col++) {
-                char tile = tileMap[row].charAt(col);
+        for (int row = 0; row < maze.getHeight(); row++) {
+            for (int col = 0; col < maze.getWidth(); col++) {
+                char tile = maze.tileAt(col, row);
                 double x = col * TILE_SIZE;
                 double y = row * TILE_SIZE;
 
                 switch (tile) {
                     case 'X':
-                        walls.add(new Wall(x, y, TILE_SIZE, TILE_SIZE, wallImage));
+                        // 墙壁碰撞由迷宫按格子查询，无界面运行时不需要墙壁实体
+                        if (canvas != null) {
+                            walls.add(new Wall(x, y, TILE_SIZE, TILE_SIZE, sprites.getWallImage()));
+                        }
                         break;
                     case 'P':
-                        pacman = new PacMan(x, y, TILE_SIZE, TILE_SIZE, Direction.LEFT);
+                        pacman = new PacMan(x, y, TILE_SIZE, TILE_SIZE, Direction.LEFT,
+                                sprites.getPacmanUpImage(), sprites.getPacmanDownImage(),
+                                sprites.getPacmanLeftImage(), sprites.getPacmanRightImage());
                         // 添加普通食物到PacMan的起始位置
                         foods.add(new Food(x, y, foodImage));
                         break;
                     case 'r':
-                        RedGhost redGhost = new RedGhost(x, y, redGhostImage);
-                        ghosts.add(redGhost);
-                        redGhostTeleportCooldown.put(redGhost, 0L);
-                        break;
                     case 'p':
-                        PinkGhost pinkGhost = new PinkGhost(x, y, pinkGhostImage);
-                        ghosts.add(pinkGhost);
-                        redGhostTeleportCooldown.put(pinkGhost, 0L);
-                        break;
                     case 'b':
-                        BlueGhost blueGhost = new BlueGhost(x, y, blueGhostImage);
-                        ghosts.add(blueGhost);
-                        redGhostTeleportCooldown.put(blueGhost, 0L);
-                        break;
                     case 'o':
-                        OrangeGhost orangeGhost = new OrangeGhost(x, y, orangeGhostImage);
-                        ghosts.add(orangeGhost);
-                        redGhostTeleportCooldown.put(orangeGhost, 0L);
+                        addGhost(tile, x, y, maze, sprites);
                         break;
                     case 'O':
                         // 空白区域，不添加任何实体
                         break;
                     case ' ':
-                        // 普通食物
-                        foods.add(new Food(x, y, foodImage));
+                        // 普通食物 - 修改：跳过无法到达的格子，避免关卡无法完成
+                        if (canPlaceFood(col, row)) {
+                            foods.add(new Food(x, y, foodImage));
+                        }
                         break;
                     default:
                         // 默认添加普通食物
-                        foods.add(new Food(x, y, foodImage));
+                        if (canPlaceFood(col, row)) {
+                            foods.add(new Food(x, y, foodImage));
+                        }
                         break;
                 }
             }
         }
         
+        // 群战模式：在地图自带的鬼魂之外生成额外的鬼魂
+        if (rules.getHordeGhostCount() > 0) {
+            spawnHorde(level, sprites);
+        }
+
+        // 所有移动实体共享关卡的传送门表、引擎的游戏时钟和平衡参数
+        pacman.setMaze(maze);
+        pacman.setClock(clock);
+        pacman.setRules(rules);
+        ghostGrid = new SpatialGrid(maze.getWidth(), maze.getHeight(), TILE_SIZE);
+        for (Ghost ghost : ghosts) {
+            ghost.setMaze(maze);
+            ghost.setClock(clock);
+            ghost.setRules(rules);
+            ghost.setSpatialGrid(ghostGrid);
+        }
+
         // 初始化食物和能量豆
-        initializeFoods(foodImage, powerFoodImage);
+        initializeFoods(maze, powerFoodImage);
         
         // 生成强化技能食物
         generatePowerFoodPlus();
+
+        // 登记本关的食物对象，供状态恢复复用
+        int tileCount = maze.getWidth() * maze.getHeight();
+        foodPool = new Food[tileCount];
+        powerFoodPool = new PowerFood[tileCount];
+        powerFoodPlusPool = new PowerFoodPlus[tileCount];
+        for (Food food : foods) {
+            foodPool[tileOf(food)] = food;
+        }
+        for (PowerFood powerFood : powerFoods) {
+            powerFoodPool[tileOf(powerFood)] = powerFood;
+        }
+        for (PowerFoodPlus powerFoodPlus : powerFoodsPlus) {
+            powerFoodPlusPool[tileOf(powerFoodPlus)] = powerFoodPlus;
+        }
+        mapVersion++;
+        rehash();
+    }
+
+    /**
+     * 创建一个鬼魂并加入鬼魂列表
+     * @param kind 地图字符（r、p、b、o）
+     * @param x X坐标
+     * @param y Y坐标
+     * @param maze 迷宫
+     * @param sprites 精灵图集
+     */
+    private Ghost addGhost(char kind, double x, double y, Maze maze, SpriteSet sprites) {
+        Ghost ghost;
+        switch (kind) {
+            case 'r':
+                RedGhost redGhost = new RedGhost(x, y, sprites.getRedGhostImage(), random);
+                // 闪现目标限定为编译阶段分析出的可达格子
+                redGhost.setTeleportTargets(maze.getAnalysis().getReachableTiles(), maze.getWidth());
+                // 群战模式不闪现到 Pac-Man 附近
+                if (rules.getHordeGhostCount() > 0) {
+                    redGhost.setTeleportClearance(HORDE_CLEARANCE);
+                }
+                ghost = redGhost;
+                break;
+            case 'p':
+                ghost = new PinkGhost(x, y, sprites.getPinkGhostImage(), random);
+                break;
+            case 'b':
+                ghost = new BlueGhost(x, y, sprites.getBlueGhostImage(), random);
+                break;
+            default:
+                ghost = new OrangeGhost(x, y, sprites.getOrangeGhostImage(), random);
+                break;
+        }
+        ghosts.add(ghost);
+        redGhostTeleportCooldown.put(ghost, 0L);
+        return ghost;
+    }
+
+    /**
+     * 群战模式：按规则在随机可达格子上生成额外的鬼魂，每个格子最多一个
+     * 出生点只由种子和关卡决定，不消耗引擎的随机数，状态恢复时重新加载地图得到相同的出生点。
+     * 可用格子不够时按红、粉、蓝、橙轮流生成，直到格子用完
+     * @param level 关卡
+     * @param sprites 精灵图集
+     */
+    private void spawnHorde(Level level, SpriteSet sprites) {
+        Maze maze = level.getMaze();
+        MazeAnalysis analysis = maze.getAnalysis();
+        int width = maze.getWidth();
+        int pacmanCol = (int) (pacman.getX() / TILE_SIZE);
+        int pacmanRow = (int) (pacman.getY() / TILE_SIZE);
+        boolean[] taken = new boolean[width * maze.getHeight()];
+        for (Ghost ghost : ghosts) {
+            taken[maze.index((int) (ghost.getX() / TILE_SIZE), (int) (ghost.getY() / TILE_SIZE))] = true;
+        }
+        int[] candidates = new int[taken.length];
+        int count = 0;
+        for (int tile : analysis.getReachableTiles()) {
+            int col = tile % width;
+            int row = tile / width;
+            if (!taken[tile] && !analysis.isTunnel(tile) && !analysis.isPortal(tile) && !analysis.isGhostHouse(tile)
+                    && Math.abs(col - pacmanCol) + Math.abs(row - pacmanRow) >= HORDE_CLEARANCE) {
+                candidates[count++] = tile;
+            }
+        }
+
+        int[] remaining = {rules.getHordeRedGhosts(), rules.getHordePinkGhosts(),
+                rules.getHordeBlueGhosts(), rules.getHordeOrangeGhosts()};
+        char[] kinds = {'r', 'p', 'b', 'o'};
+        GameRandom placement = new GameRandom(seed * 31 + level.getNumber());
+        int placed = 0;
+        while (placed < count) {
+            boolean any = false;
+            for (int kind = 0; kind < kinds.length && placed < count; kind++) {
+                if (remaining[kind] > 0) {
+                    remaining[kind]--;
+                    any = true;
+                    // 部分洗牌：不重复地取一个格子
+                    int j = placed + placement.nextInt(count - placed);
+                    int tile = candidates[j];
+                    candidates[j] = candidates[placed];
+                    candidates[placed++] = tile;
+                    Ghost ghost = addGhost(kinds[kind], tile % width * TILE_SIZE, tile / width * TILE_SIZE, maze, sprites);
+                    // 红色鬼魂的首次闪现在一个冷却周期内错开，不在同一帧一起闪现
+                    if (ghost instanceof RedGhost && rules.getTeleportCooldown() > 0) {
+                        ((RedGhost) ghost).setTeleportCooldown(
+                                placement.nextInt((int) Math.min(Integer.MAX_VALUE, rules.getTeleportCooldown())));
+                    }
+                }
+            }
+            if (!any) {
+                break;
+            }
+        }
     }
 
     /**
@@ -260,9 +497,57 @@ public class GameEngine {
      * @param deltaTime 两次更新之间的时间间隔
      */
     public void update(long deltaTime) {
-        if (currentState == GameState.START || currentState == GameState.GAME_OVER) return;
+        // JFR 事件：没有开启录制时只有开关判断
+        FlightEvents.TickEvent tickEvent = new FlightEvents.TickEvent();
+        FlightEvents.LoopAllocationEvent allocationEvent = new FlightEvents.LoopAllocationEvent();
+        long allocatedBefore = allocationEvent.isEnabled() ? FlightEvents.allocatedBytes() : 0;
+        tickEvent.begin();
+
+        // 逻辑帧计数和游戏时钟在任何状态下都推进，按键按帧序号录制
+        tick++;
+        clock.advance(deltaTime);
+        collisionTests = 0;
+        collisionHits = 0;
+        events.beginTick(tick, clock.currentTimeMillis());
+        step(deltaTime);
+        // 实体槽位已在各自变化处更新，全局状态、计时器和 Pac-Man 的槽位每帧刷新一次
+        hashGlobals(stateHash);
+        // 定期保存关键帧，此时本帧已结算完毕、本帧之后的按键尚未处理
+        if (keyframeInterval > 0 && tick % keyframeInterval == 0) {
+            inputLog.addKeyframe(tick, snapshot());
+        }
+        // 本帧事件（包括上一帧之后按键产生的事件）一次性分发
+        events.dispatch();
+
+        tickEvent.end();
+        if (tickEvent.shouldCommit()) {
+            tickEvent.tick = tick;
+            tickEvent.state = currentState.name();
+            tickEvent.ghosts = ghosts.size();
+            tickEvent.clones = pacmanClones.size();
+            tickEvent.pellets = foods.size() + powerFoods.size() + powerFoodsPlus.size();
+            tickEvent.commit();
+        }
+        if (allocationEvent.shouldCommit() && allocatedBefore >= 0) {
+            allocationEvent.tick = tick;
+            allocationEvent.allocated = FlightEvents.allocatedBytes() - allocatedBefore;
+            allocationEvent.commit();
+        }
+    }
+
+    /**
+     * 推进一个逻辑帧的游戏逻辑
+     * @param deltaTime 逻辑帧时长（毫秒）
+     */
+    private void step(long deltaTime) {
+        if (currentState == GameState.START || currentState == GameState.GAME_OVER) {
+            // 鬼魂不推进时各自的计时器仍随游戏时钟变化
+            hashGhosts();
+            return;
+        }
         if (gameOver) {
             currentState = GameState.GAME_OVER;
+            hashGhosts();
             return;
         }
         // 游戏开始默认启动
@@ -270,6 +555,8 @@ public class GameEngine {
             currentState = GameState.RUNNING;
             gameStarted = true;
         }
+        FrameProfiler profiler = this.profiler;
+        long t = profiler != null ? profiler.start() : 0;
 
         // PacMan 移动（完全照搬参考代码逻辑）
         // 更新 PacMan 位置
@@ -291,9 +578,13 @@ public class GameEngine {
                 }
             }
         }
+        if (profiler != null) t = profiler.lap(FrameProfiler.PACMAN_MOVE, t);
 
-        // 更新鬼魂 - 使用集合副本来避免ConcurrentModificationException
-        for (Ghost ghost : new ArrayList<>(ghosts)) {
+        // 更新鬼魂 - 修改：鬼魂之间的碰撞由空间网格查询，每个鬼魂更新完立即登记新位置；
+        // 鬼魂列表在更新过程中不会变化，按下标遍历，不再复制列表
+        rebuildGhostGrid();
+        for (int i = 0; i < ghosts.size(); i++) {
+            Ghost ghost = ghosts.get(i);
             // 同步鬼魂恐慌状态（关键修改：确保ghostScaredMap与Ghost类的scared变量同步）
             if (ghostScaredMap.containsKey(ghost) && ghostScaredMap.get(ghost).isActive()) {
                 ghost.setScared(true);
@@ -302,6 +593,7 @@ public class GameEngine {
             }
             // 传递PacMan的位置信息、墙壁和所有鬼魂对象给鬼魂AI
             ghost.update(deltaTime, pacman.getX(), pacman.getY(), walls, ghosts);
+            if (profiler != null) t = profiler.lap(FrameProfiler.GHOST_UPDATE, t);
             
             // 处理红色鬼魂传送冷却
             if (ghost instanceof RedGhost) {
@@ -335,11 +627,14 @@ public class GameEngine {
             // 处理重生计时器
             if (ghostRespawnTimers.containsKey(ghost)) {
                 long respawnTime = ghostRespawnTimers.get(ghost);
-                if (System.currentTimeMillis() - respawnTime > 30000) { // 30秒重生
+                if (clock.currentTimeMillis() - respawnTime > rules.getGhostRespawnTime()) {
                     ghost.reset();
                     ghostRespawnTimers.remove(ghost);
                 }
             }
+            ghostGrid.put(i, ghost.getX(), ghost.getY());
+            hashGhost(i);
+            if (profiler != null) t = profiler.lap(FrameProfiler.ABILITIES, t);
         }
 
         // 更新食物 - 使用集合副本来避免ConcurrentModificationException
@@ -361,17 +656,27 @@ public class GameEngine {
         for (Wall wall : new ArrayList<>(walls)) {
             wall.update(deltaTime);
         }
+        if (profiler != null) t = profiler.lap(FrameProfiler.FOOD_WALL_UPDATE, t);
 
         // 更新克隆体 - 使用集合副本来避免ConcurrentModificationException
         for (PacmanClone clone : new ArrayList<>(pacmanClones)) {
+            cloneKeySum -= cloneKey(clone);
             clone.move(walls);
+            cloneKeySum += cloneKey(clone);
         }
+        stateHash.set(HASH_SLOT_CLONES, cloneKeySum);
+        if (profiler != null) t = profiler.lap(FrameProfiler.CLONE_MOVE, t);
 
         // 处理碰撞
         handleCollisions();
+        if (profiler != null) t = profiler.lap(FrameProfiler.COLLISIONS, t);
 
         // 检查游戏胜利
         checkWinCondition();
+        if (profiler != null) {
+            profiler.lap(FrameProfiler.WIN_CHECK, t);
+            profiler.endTick();
+        }
     }
 
     /**
@@ -379,6 +684,8 @@ public class GameEngine {
      * @param gc 图形上下文对象
      */
     public void render(GraphicsContext gc) {
+        FrameProfiler profiler = this.profiler;
+        long t = profiler != null ? profiler.start() : 0;
         // 修改：设置地图背景为黑色
         gc.setFill(javafx.scene.paint.Color.BLACK);
         gc.fillRect(0, 0, GRID_WIDTH * TILE_SIZE, GRID_HEIGHT * TILE_SIZE);
@@ -398,6 +705,7 @@ public class GameEngine {
         for (Wall wall : walls) {
             wall.render(gc);
         }
+        if (profiler != null) t = profiler.lap(FrameProfiler.RENDER_WALLS, t);
 
         // 渲染食物
         for (Food food : foods) {
@@ -413,6 +721,7 @@ public class GameEngine {
         for (PowerFoodPlus powerFoodPlus : powerFoodsPlus) {
             powerFoodPlus.render(gc);
         }
+        if (profiler != null) t = profiler.lap(FrameProfiler.RENDER_PELLETS, t);
 
         // 渲染陷阱
         for (Trap trap : traps) {
@@ -431,6 +740,7 @@ public class GameEngine {
         for (Ghost ghost : ghosts) {
             ghost.render(gc);
         }
+        if (profiler != null) t = profiler.lap(FrameProfiler.RENDER_ENTITIES, t);
 
         // 渲染游戏信息
         renderGameInfo(gc);
@@ -448,6 +758,10 @@ public class GameEngine {
         if (isPacmanEntangledByTrap) {
             renderEntangledTrapHUD(gc);
         }
+        if (profiler != null) {
+            profiler.lap(FrameProfiler.RENDER_HUD, t);
+            profiler.endRender();
+        }
     }
 
     /**
@@ -510,7 +824,7 @@ public class GameEngine {
      */
     private void renderIceTrapHUD(GraphicsContext gc) {
         // 计算剩余时间
-        long remainingTime = ICE_TRAP_TIMEOUT - (System.currentTimeMillis() - iceTrapFreezeTimer);
+        long remainingTime = rules.getIceTrapTimeout() - (clock.currentTimeMillis() - iceTrapFreezeTimer);
         int remainingSeconds = (int)(remainingTime / 1000) + 1; // 向上取整
         
         // 绘制背景遮罩
@@ -540,7 +854,7 @@ public class GameEngine {
      */
     private void renderEntangledTrapHUD(GraphicsContext gc) {
         // 计算剩余时间
-        long remainingTime = ENTANGLED_TRAP_TIMEOUT - (System.currentTimeMillis() - entangledTrapTimer);
+        long remainingTime = rules.getEntangledTrapTimeout() - (clock.currentTimeMillis() - entangledTrapTimer);
         int remainingSeconds = (int)(remainingTime / 1000) + 1; // 向上取整
         
         // 绘制背景遮罩
@@ -621,6 +935,7 @@ public class GameEngine {
         gc.fillText("Lives: " + String.valueOf(lives), TILE_SIZE/2, hudY);
         gc.fillText("Score: " + String.valueOf(score), TILE_SIZE/2, hudY + 25);
         gc.fillText("Skills: " + String.valueOf(powerFoodPlusSkillCount), TILE_SIZE/2, hudY + 50);
+        gc.fillText("Level: " + String.valueOf(level), PacManApp.SCREEN_WIDTH - 4 * TILE_SIZE, hudY);
         
         // 显示鬼魂状态信息 - 修改：将鬼魂信息移动到屏幕左下角
         int statusY = PacManApp.SCREEN_HEIGHT - 120; // 从屏幕底部开始计算Y坐标
@@ -654,7 +969,7 @@ public class GameEngine {
                 if (ghost instanceof BlueGhost) {
                     BlueGhost blueGhost = (BlueGhost) ghost;
                     if (blueGhost.isDead()) {
-                        long remainingTime = 30000 - (System.currentTimeMillis() - blueGhost.getDeathTime());
+                        long remainingTime = rules.getGhostRespawnTime() - (clock.currentTimeMillis() - blueGhost.getDeathTime());
                         int secondsLeft = (int) (remainingTime / 1000) + 1;
                         return "died " + secondsLeft + "s";
                     }
@@ -662,7 +977,7 @@ public class GameEngine {
                 if (ghost instanceof OrangeGhost) {
                     OrangeGhost orangeGhost = (OrangeGhost) ghost;
                     if (orangeGhost.isDead()) {
-                        long remainingTime = 30000 - (System.currentTimeMillis() - orangeGhost.getDeathTime());
+                        long remainingTime = rules.getGhostRespawnTime() - (clock.currentTimeMillis() - orangeGhost.getDeathTime());
                         int secondsLeft = (int) (remainingTime / 1000) + 1;
                         return "died " + secondsLeft + "s";
                     }
@@ -671,7 +986,7 @@ public class GameEngine {
                 if (ghostScaredMap.containsKey(ghost)) {
                     GhostScaredStatus status = ghostScaredMap.get(ghost);
                     if (status.isActive()) {
-                        long remaining = status.getEndTime() - System.currentTimeMillis();
+                        long remaining = status.getEndTime() - clock.currentTimeMillis();
                         return "scared " + (remaining / 1000) + "s";
                     } else {
                         ghostScaredMap.remove(ghost);
@@ -704,36 +1019,55 @@ public class GameEngine {
      * @param event 键盘事件
      */
     public void handleKeyEvent(KeyEvent event) {
+        handleKeyInput(event.getCode());
+    }
+
+    /**
+     * 处理按键输入并录制到输入录像
+     * 录像回放直接调用该方法，不需要构造 KeyEvent
+     * @param key 按键
+     */
+    public void handleKeyInput(KeyCode key) {
+        inputLog.record(tick, key);
+        applyKey(key);
+        hashGlobals(stateHash);
+    }
+
+    private void applyKey(KeyCode key) {
         // 开始菜单处理
-        if (currentState == GameState.START && event.getCode() == KeyCode.SPACE) {
+        if (currentState == GameState.START && key == KeyCode.SPACE) {
             currentState = GameState.RUNNING;
             gameStarted = true;
             return;
         }
         // 游戏结束处理
-        if (currentState == GameState.GAME_OVER && event.getCode() == KeyCode.SPACE) {
+        if (currentState == GameState.GAME_OVER && key == KeyCode.SPACE) {
             resetGame();
             return;
         }
         
         // 冰影陷阱破冰功能 - 新增
-        if (isPacmanFrozenByIceTrap && event.getCode() == KeyCode.V) {
+        if (isPacmanFrozenByIceTrap && key == KeyCode.V) {
             isPacmanFrozenByIceTrap = false;
             iceTrapFreezeTimer = 0;
-            System.out.println("冰影陷阱已被打破，游戏恢复正常");
+            events.publish(GameEventBus.Type.ICE_BROKEN, 0, 0);
             return;
         }
         
         // 游戏进行中处理
         if (currentState == GameState.RUNNING) {
             // 方向键控制 PacMan - 新增：当被缚丝陷阱缠绕时禁用方向键
-            Direction direction = Direction.fromKeyCode(event.getCode());
+            Direction direction = Direction.fromKeyCode(key);
             if (direction != null && !isPacmanEntangledByTrap) {
                 // 使用带墙壁信息的 updateDirection 方法，允许提前转向
                 pacman.updateDirection(direction, walls);
             }
+            // 群战模式：Q键不消耗技能，一次释放一轮克隆体
+            else if (key == KeyCode.Q && rules.getCloneVolley() > 0) {
+                releaseCloneVolley(rules.getCloneVolley());
+            }
             // Q键使用强化技能（释放克隆体）
-            else if (event.getCode() == KeyCode.Q && hasPowerFoodPlusSkill) {
+            else if (key == KeyCode.Q && hasPowerFoodPlusSkill) {
                 // 释放克隆体
                 createPacmanClones();
                 hasPowerFoodPlusSkill = false;
@@ -741,7 +1075,7 @@ public class GameEngine {
             }
         }
         // 游戏胜利处理
-        if (currentState == GameState.WIN && event.getCode() == KeyCode.SPACE) {
+        if (currentState == GameState.WIN && key == KeyCode.SPACE) {
             resetGame();
             return;
         }
@@ -762,6 +1096,7 @@ public class GameEngine {
         hasPowerFoodPlusSkill = false;
         isPacmanFrozenByIceTrap = false; // 重置冰影陷阱状态
         iceTrapFreezeTimer = 0;
+        pacmanGraceUntil = 0;
         initialize();
     }
 
@@ -772,14 +1107,78 @@ public class GameEngine {
      */
     private void createPacmanClones() {
         // 只创建一个克隆体，使用Pacman当前的方向
-        PacmanClone clone = new PacmanClone(
-            pacman.getX(),
-            pacman.getY(),
-            pacman.getDirection(),
-            // 为克隆体获取合适的图像
-            getCloneImage(pacman.getDirection())
-        );
+        addClone(pacman.getX(), pacman.getY(), pacman.getDirection());
+    }
+
+    /**
+     * 群战模式：从 Pac-Man 当前位置释放一轮克隆体
+     * 第一个沿 Pac-Man 的方向，其余依次沿相反方向和两侧方向，最多四个
+     * @param count 克隆体数
+     */
+    private void releaseCloneVolley(int count) {
+        Direction facing = pacman.getDirection();
+        Direction side = facing.isHorizontal() ? Direction.UP : Direction.LEFT;
+        Direction[] directions = {facing, facing.getOpposite(), side, side.getOpposite()};
+        for (int i = 0; i < Math.min(count, directions.length); i++) {
+            addClone(pacman.getX(), pacman.getY(), directions[i]);
+        }
+    }
+
+    /**
+     * 在指定格子生成一个克隆体
+     * 用于基准测试场景保持场上克隆体数量，不消耗技能次数
+     * @param col 格子列
+     * @param row 格子行
+     * @param direction 移动方向
+     */
+    public void spawnClone(int col, int row, Direction direction) {
+        addClone(col * TILE_SIZE, row * TILE_SIZE, direction);
+    }
+
+    private void addClone(double x, double y, Direction direction) {
+        // 为克隆体获取合适的图像
+        PacmanClone clone = new PacmanClone(x, y, direction, getCloneImage(direction));
+        clone.setMaze(currentLevel.getMaze());
+        clone.setMoveSpeed(rules.getCloneSpeed());
         pacmanClones.add(clone);
+        cloneKeySum += 1 + cloneKey(clone);
+        stateHash.set(HASH_SLOT_CLONES, cloneKeySum);
+
+        int col = FlightEvents.tileOf(clone.getX() + clone.getWidth() / 2);
+        int row = FlightEvents.tileOf(clone.getY() + clone.getHeight() / 2);
+        events.publish(GameEventBus.Type.CLONE_SPAWNED, pacmanClones.size(), Direction.toCode(clone.getDirection()), col, row);
+        FlightEvents.CloneSpawnEvent spawnEvent = new FlightEvents.CloneSpawnEvent();
+        if (spawnEvent.shouldCommit()) {
+            spawnEvent.tick = tick;
+            spawnEvent.direction = String.valueOf(clone.getDirection());
+            spawnEvent.col = col;
+            spawnEvent.row = row;
+            spawnEvent.activeClones = pacmanClones.size();
+            spawnEvent.commit();
+        }
+    }
+
+    /**
+     * 让所有存活的蓝色和橙色鬼魂在当前位置布下陷阱（已有陷阱的不变）
+     * 用于基准测试场景让所有陷阱同时生效
+     */
+    public void armAllTraps() {
+        for (int i = 0; i < ghosts.size(); i++) {
+            Ghost ghost = ghosts.get(i);
+            if (ghost instanceof BlueGhost) {
+                BlueGhost blueGhost = (BlueGhost) ghost;
+                if (!blueGhost.isDead() && !blueGhost.isIceTrapSet()) {
+                    blueGhost.setIceTrap();
+                    hashGhost(i);
+                }
+            } else if (ghost instanceof OrangeGhost) {
+                OrangeGhost orangeGhost = (OrangeGhost) ghost;
+                if (!orangeGhost.isDead() && !orangeGhost.isTrapSet()) {
+                    orangeGhost.setSilkTrap();
+                    hashGhost(i);
+                }
+            }
+        }
     }
 
     /**
@@ -804,23 +1203,19 @@ public class GameEngine {
     }
 
     /**
-     * 初始化食物和能量豆
+     * 初始化能量豆
      * 
-     * @param foodImage 普通食物图像
+     * @param maze 当前关卡的迷宫
      * @param powerFoodImage 能量豆图像
      */
-    private void initializeFoods(Image foodImage, Image powerFoodImage) {
-        // 预设9个能量豆位置
-        int[][] powerFoodPositions = {
-            {1, 1}, {17, 1}, {1, 17}, {17, 17},
-            {9, 1}, {1, 9}, {17, 9}, {9, 17},
-            {9, 9}
-        };
-        
-        // 创建能量豆
-        for (int[] pos : powerFoodPositions) {
-            int x = pos[0] * PacManApp.TILE_SIZE;
-            int y = pos[1] * PacManApp.TILE_SIZE;
+    private void initializeFoods(Maze maze, Image powerFoodImage) {
+        // 创建能量豆 - 位置由迷宫布局给出
+        for (int i = 0; i < maze.getPowerFoodCount(); i++) {
+            if (!canPlaceFood(maze.getPowerFoodCol(i), maze.getPowerFoodRow(i))) {
+                continue;
+            }
+            int x = maze.getPowerFoodCol(i) * PacManApp.TILE_SIZE;
+            int y = maze.getPowerFoodRow(i) * PacManApp.TILE_SIZE;
             PowerFood powerFood = new PowerFood(x, y, PacManApp.TILE_SIZE, PacManApp.TILE_SIZE, 50, powerFoodImage);
             powerFoods.add(powerFood);
         }
@@ -836,8 +1231,8 @@ public class GameEngine {
         int count = 0;
 
         // 转换食物列表为可随机选择的结构
+        // 修改：使用引擎的随机数生成器，保证录像回放时技能食物位置一致
         List<Food> foodList = new ArrayList<>(foods);
-        Random random = new Random();
 
         // 确保只替换9个普通食物
         while (count < 9 && foodList.size() > 0) {
@@ -867,9 +1262,25 @@ public class GameEngine {
      * @return 如果可以放置返回true
      */
     private boolean canPlaceFood(int col, int row) {
-        // 这是一个示例逻辑，实际需要根据地图数据来判断
-        // 通常墙壁和障碍物位置不能放置食物
-        return col > 0 && col < GRID_WIDTH - 1 && row > 0 && row < GRID_HEIGHT - 1;
+        // 修改：使用关卡编译阶段的分析结果，墙壁、隧道、传送垫和 Pac-Man 无法到达的格子都不能放置食物
+        Maze maze = currentLevel.getMaze();
+        if (maze.isWall(col, row)) {
+            return false;
+        }
+        int tile = maze.index(col, row);
+        MazeAnalysis analysis = maze.getAnalysis();
+        return analysis.isReachable(tile) && !analysis.isTunnel(tile) && !analysis.isPortal(tile);
+    }
+
+    /**
+     * 按当前位置重新登记所有鬼魂
+     */
+    private void rebuildGhostGrid() {
+        ghostGrid.clear(ghosts.size());
+        for (int i = 0; i < ghosts.size(); i++) {
+            Ghost ghost = ghosts.get(i);
+            ghostGrid.put(i, ghost.getX(), ghost.getY());
+        }
     }
 
     /**
@@ -896,6 +1307,9 @@ public class GameEngine {
      * 处理所有碰撞
      */
     private void handleCollisions() {
+        FlightEvents.CollisionBatchEvent batchEvent = new FlightEvents.CollisionBatchEvent();
+        batchEvent.begin();
+
         // PacMan 与食物碰撞
         Iterator<Food> foodIterator = foods.iterator();
         while (foodIterator.hasNext()) {
@@ -903,6 +1317,10 @@ public class GameEngine {
             if (collision(pacman, food)) {
                 foodIterator.remove();
                 score += 10;
+                pelletsEaten++;
+                recordPelletChange(food, PELLET_FOOD);
+                events.publish(GameEventBus.Type.PELLET_EATEN, score, 0,
+                        FlightEvents.tileOf(food.getX()), FlightEvents.tileOf(food.getY()));
             }
         }
 
@@ -913,9 +1331,12 @@ public class GameEngine {
             if (collision(pacman, powerFood)) {
                 powerFoodIterator.remove();
                 score += 50;
+                powerPelletsEaten++;
+                recordPelletChange(powerFood, PELLET_POWER);
                 powerFoodPlusSkillCount++;
                 // 移除使鬼魂恐慌的功能：根据用户需求，鬼魂只能通过被克隆体击中进入恐慌
-                System.out.println("吃到能量豆! 得分 +50");
+                events.publish(GameEventBus.Type.POWER_PELLET_EATEN, score, powerFoodPlusSkillCount,
+                        FlightEvents.tileOf(powerFood.getX()), FlightEvents.tileOf(powerFood.getY()));
             }
         }
         
@@ -926,39 +1347,58 @@ public class GameEngine {
             if (collision(pacman, powerFoodPlus)) {
                 powerFoodPlusIterator.remove();
                 score += 10; // 修改：与参考保持一致，吃强化食物得10分
+                pelletsEaten++;
+                recordPelletChange(powerFoodPlus, PELLET_SKILL);
                 hasPowerFoodPlusSkill = true;
                 powerFoodPlusSkillCount++;
-                System.out.println("获得技能食物! 技能剩余: " + powerFoodPlusSkillCount);
+                events.publish(GameEventBus.Type.SKILL_GAINED, score, powerFoodPlusSkillCount,
+                        FlightEvents.tileOf(powerFoodPlus.getX()), FlightEvents.tileOf(powerFoodPlus.getY()));
             }
         }
 
         // 处理 Pac-Man 与蓝色鬼魂冰影陷阱的碰撞 - 修改：适配冰影陷阱
-        for (Ghost ghost : new ArrayList<>(ghosts)) {
+        // 碰撞处理不会增删鬼魂，以下几处直接遍历鬼魂列表，群战模式下每帧不再复制列表
+        // 复活保护期内不触发陷阱，陷阱留在原处
+        boolean graced = clock.currentTimeMillis() < pacmanGraceUntil;
+        for (int i = 0; i < ghosts.size() && !graced; i++) {
+            Ghost ghost = ghosts.get(i);
             if (ghost instanceof BlueGhost) {
                 BlueGhost blueGhost = (BlueGhost) ghost;
                 if (blueGhost.isIceTrapSet()) {
                     if (collision(pacman, blueGhost.getIceTrapX(), blueGhost.getIceTrapY(), TILE_SIZE, TILE_SIZE)) {
                         // 触发冰影陷阱 - 设置 Pac-Man 冰冻状态和倒计时
                         isPacmanFrozenByIceTrap = true;
-                        iceTrapFreezeTimer = System.currentTimeMillis();
+                        iceTrapFreezeTimer = clock.currentTimeMillis();
+                        // 修改原因：移除陷阱会清掉坐标，先记下陷阱位置再移除，事件里才是实际触发的格子
+                        double trapX = blueGhost.getIceTrapX();
+                        double trapY = blueGhost.getIceTrapY();
+                        recordTrapTrigger("ice", trapX, trapY);
                         blueGhost.removeIceTrap(); // 踩中后陷阱消失
-                        System.out.println("注意：踩中冰影陷阱，10秒内按V键破冰！");
+                        hashGhost(i);
+                        events.publish(GameEventBus.Type.TRAP_TRIGGERED, 0, GameEventBus.TRAP_ICE,
+                                FlightEvents.tileOf(trapX), FlightEvents.tileOf(trapY));
                     }
                 }
             }
         }
         
         // 处理 Pac-Man 与橙色鬼魂缚丝陷阱的碰撞 - 新增
-        for (Ghost ghost : new ArrayList<>(ghosts)) {
+        for (int i = 0; i < ghosts.size() && !graced; i++) {
+            Ghost ghost = ghosts.get(i);
             if (ghost instanceof OrangeGhost) {
                 OrangeGhost orangeGhost = (OrangeGhost) ghost;
                 if (orangeGhost.isTrapSet()) {
                     if (collision(pacman, orangeGhost.getTrapX(), orangeGhost.getTrapY(), TILE_SIZE, TILE_SIZE)) {
                         // 触发缚丝陷阱 - 设置 Pac-Man 缠绕状态和倒计时
                         isPacmanEntangledByTrap = true;
-                        entangledTrapTimer = System.currentTimeMillis();
+                        entangledTrapTimer = clock.currentTimeMillis();
+                        double trapX = orangeGhost.getTrapX();
+                        double trapY = orangeGhost.getTrapY();
+                        recordTrapTrigger("silk", trapX, trapY);
                         orangeGhost.removeTrap(); // 踩中后陷阱消失
-                        System.out.println("注意：踩中缚丝陷阱，3秒内无法移动！");
+                        hashGhost(i);
+                        events.publish(GameEventBus.Type.TRAP_TRIGGERED, 0, GameEventBus.TRAP_SILK,
+                                FlightEvents.tileOf(trapX), FlightEvents.tileOf(trapY));
                     }
                 }
             }
@@ -966,21 +1406,23 @@ public class GameEngine {
         
         // 缚丝陷阱超时处理 - 新增
         if (isPacmanEntangledByTrap) {
-            if (System.currentTimeMillis() - entangledTrapTimer >= ENTANGLED_TRAP_TIMEOUT) {
+            if (clock.currentTimeMillis() - entangledTrapTimer >= rules.getEntangledTrapTimeout()) {
                 // 3秒超时，恢复移动控制
                 isPacmanEntangledByTrap = false;
                 entangledTrapTimer = 0;
-                System.out.println("缚丝陷阱效果结束，恢复移动控制！");
+                events.publish(GameEventBus.Type.TRAP_EXPIRED, 0, GameEventBus.TRAP_SILK);
             }
         }
         
         // 冰影陷阱超时处理 - 新增
         if (isPacmanFrozenByIceTrap) {
-            if (System.currentTimeMillis() - iceTrapFreezeTimer >= ICE_TRAP_TIMEOUT) {
+            if (clock.currentTimeMillis() - iceTrapFreezeTimer >= rules.getIceTrapTimeout()) {
                 // 超时没按V键，PacMan死亡
-                System.out.println("冰影陷阱超时，PacMan死亡");
+                deaths++;
                 lives--;
                 pacman.setLives(lives);
+                events.publish(GameEventBus.Type.TRAP_EXPIRED, 0, GameEventBus.TRAP_ICE);
+                events.publish(GameEventBus.Type.PACMAN_DIED, lives, -1);
                 if (lives == 0) {
                     gameOver = true;
                     currentState = GameState.GAME_OVER;
@@ -992,40 +1434,47 @@ public class GameEngine {
             }
         }
 
-        // PacMan 与鬼魂碰撞 - 使用集合副本来避免ConcurrentModificationException
-        for (Ghost ghost : new ArrayList<>(ghosts)) {
+        // PacMan 与鬼魂碰撞
+        for (int i = 0; i < ghosts.size(); i++) {
+            Ghost ghost = ghosts.get(i);
             if (collision(pacman, ghost)) {
                 // 检查并初始化鬼魂的恐慌状态
                 if (!ghostScaredMap.containsKey(ghost)) {
-                    ghostScaredMap.put(ghost, new GhostScaredStatus(0));
+                    ghostScaredMap.put(ghost, new GhostScaredStatus(0, clock));
                 }
 
                 GhostScaredStatus scaredStatus = ghostScaredMap.get(ghost);
                 if (scaredStatus.isActive()) {
                     // 恐慌状态：鬼魂被吃
                     score += 200; // 恐慌状态鬼魂被吃得分
-                    System.out.println("吃鬼魂得分! 当前总分: " + score);
+                    ghostsEaten++;
+                    events.publish(GameEventBus.Type.GHOST_EATEN, score, GameEventBus.ghostKind(ghost),
+                            FlightEvents.tileOf(ghost.getX() + ghost.getWidth() / 2),
+                            FlightEvents.tileOf(ghost.getY() + ghost.getHeight() / 2));
                     // 蓝色鬼魂被杀死后生成冰影陷阱 - 新增
                     if (ghost instanceof BlueGhost) {
                         BlueGhost blueGhost = (BlueGhost) ghost;
                         blueGhost.die();
-                        System.out.println("蓝色幽灵被杀死，生成冰影陷阱！");
                     }
                     // 橙色鬼魂被杀死后生成缚丝陷阱 - 新增
                     if (ghost instanceof OrangeGhost) {
                         OrangeGhost orangeGhost = (OrangeGhost) ghost;
                         orangeGhost.die();
-                        System.out.println("橙色幽灵被杀死，生成缚丝陷阱！");
                     } else {
                         // 其他鬼魂被杀死，直接重置位置
                         ghost.reset();
                     }
                     // 鬼魂重生计时器
-                    ghostRespawnTimers.put(ghost, System.currentTimeMillis());
-                } else {
-                    // 非恐慌状态：Pacman 被吃
+                    ghostRespawnTimers.put(ghost, clock.currentTimeMillis());
+                    hashGhost(i);
+                } else if (clock.currentTimeMillis() >= pacmanGraceUntil) {
+                    // 非恐慌状态：Pacman 被吃（复活保护期内不扣命）
+                    deaths++;
                     lives--;
                     pacman.setLives(lives);
+                    events.publish(GameEventBus.Type.PACMAN_DIED, lives, GameEventBus.ghostKind(ghost),
+                            FlightEvents.tileOf(pacman.getX() + pacman.getWidth() / 2),
+                            FlightEvents.tileOf(pacman.getY() + pacman.getHeight() / 2));
                     if (lives == 0) {
                         gameOver = true;
                         currentState = GameState.GAME_OVER;
@@ -1038,17 +1487,26 @@ public class GameEngine {
 
         // 克隆体与墙壁碰撞 - 使用集合副本来避免ConcurrentModificationException
         List<PacmanClone> clonesToRemove = new ArrayList<>();
+        // 修改：按格子查询迷宫墙壁，不再逐个墙壁检测
+        Maze maze = currentLevel.getMaze();
         for (PacmanClone clone : new ArrayList<>(pacmanClones)) {
-            for (Wall wall : new ArrayList<>(walls)) {
-                if (collision(clone, wall)) {
-                    // 克隆体与墙壁碰撞，标记为需要移除
-                    clonesToRemove.add(clone);
-                }
+            collisionTests++;
+            if (maze.overlapsWall(clone.getX(), clone.getY(), clone.getWidth(), clone.getHeight())) {
+                // 克隆体与墙壁碰撞，标记为需要移除
+                collisionHits++;
+                clonesToRemove.add(clone);
             }
         }
-        // 克隆体与鬼魂碰撞 - 使用集合副本来避免ConcurrentModificationException
+        // 克隆体与鬼魂碰撞 - 修改：只测试空间网格里克隆体附近的鬼魂（按列表顺序），不再测试每一对
+        if (!pacmanClones.isEmpty()) {
+            // Pac-Man 与鬼魂碰撞后鬼魂可能已经复位，重新登记位置
+            rebuildGhostGrid();
+        }
         for (PacmanClone clone : new ArrayList<>(pacmanClones)) {
-            for (Ghost ghost : new ArrayList<>(ghosts)) {
+            int candidates = ghostGrid.query(clone.getX(), clone.getY(), clone.getWidth(), clone.getHeight());
+            for (int i = 0; i < candidates; i++) {
+                int index = ghostGrid.resultAt(i);
+                Ghost ghost = ghosts.get(index);
                 if (collision(clone, ghost)) {
                     // 只有粉色鬼魂才有护盾，其他鬼魂没有
                     if (ghost instanceof PinkGhost) {
@@ -1056,27 +1514,61 @@ public class GameEngine {
                         // 使用 PinkGhost 类的 takeDamage() 方法来减少护盾
                         if (pinkGhost.getShields() > 0) {
                             pinkGhost.takeDamage();
+                            events.publish(GameEventBus.Type.SHIELD_HIT, pinkGhost.getShields(), GameEventBus.ghostKind(ghost));
                             // 如果护盾被打破，进入恐慌状态
                             if (pinkGhost.getShields() <= 0) {
-                                // 修改：克隆体破盾后恐慌状态持续15秒
-                                ghostScaredMap.put(ghost, new GhostScaredStatus(15000));
+                                // 修改：克隆体破盾后恐慌状态持续15秒（默认，见 GameRules）
+                                ghostScaredMap.put(ghost, new GhostScaredStatus(rules.getShieldBreakScaredDuration(), clock));
+                                events.publish(GameEventBus.Type.GHOST_SCARED, (int) rules.getShieldBreakScaredDuration(), GameEventBus.ghostKind(ghost));
                             }
                         } else {
                             // 护盾已被打破，进入恐慌状态
-                            // 修改：克隆体破盾后恐慌状态持续15秒
-                            ghostScaredMap.put(ghost, new GhostScaredStatus(15000));
+                            // 修改：克隆体破盾后恐慌状态持续15秒（默认，见 GameRules）
+                            ghostScaredMap.put(ghost, new GhostScaredStatus(rules.getShieldBreakScaredDuration(), clock));
+                            events.publish(GameEventBus.Type.GHOST_SCARED, (int) rules.getShieldBreakScaredDuration(), GameEventBus.ghostKind(ghost));
                         }
                     } else {
                         // 其他类型的鬼魂直接进入恐慌状态
-                        ghostScaredMap.put(ghost, new GhostScaredStatus(5000));
+                        ghostScaredMap.put(ghost, new GhostScaredStatus(rules.getScaredDuration(), clock));
+                        events.publish(GameEventBus.Type.GHOST_SCARED, (int) rules.getScaredDuration(), GameEventBus.ghostKind(ghost));
                     }
+                    hashGhost(index);
                     // 克隆体与鬼魂碰撞，标记为需要移除
                     clonesToRemove.add(clone);
                 }
             }
         }
         // 一次性移除所有标记的克隆体
-        pacmanClones.removeAll(clonesToRemove);
+        if (!clonesToRemove.isEmpty()) {
+            pacmanClones.removeAll(clonesToRemove);
+            // 同一克隆体可能被标记多次，按剩余的克隆体重新求和
+            hashClones();
+        }
+
+        batchEvent.end();
+        if (batchEvent.shouldCommit()) {
+            batchEvent.tick = tick;
+            batchEvent.pairsTested = collisionTests;
+            batchEvent.pairsHit = collisionHits;
+            batchEvent.commit();
+        }
+    }
+
+    /**
+     * 记录陷阱触发的 JFR 事件
+     * @param trap 陷阱种类（ice 或 silk）
+     * @param x 陷阱X坐标
+     * @param y 陷阱Y坐标
+     */
+    private void recordTrapTrigger(String trap, double x, double y) {
+        FlightEvents.TrapTriggerEvent event = new FlightEvents.TrapTriggerEvent();
+        if (event.shouldCommit()) {
+            event.tick = tick;
+            event.trap = trap;
+            event.col = FlightEvents.tileOf(x);
+            event.row = FlightEvents.tileOf(y);
+            event.commit();
+        }
     }
 
     /**
@@ -1086,6 +1578,21 @@ public class GameEngine {
      * @return 碰撞返回true，否则返回false
      */
     private boolean collision(Object entity1, Object entity2) {
+        collisionTests++;
+        boolean hit = overlaps(entity1, entity2);
+        if (hit) {
+            collisionHits++;
+        }
+        return hit;
+    }
+
+    /**
+     * 检测两个实体的包围盒是否重叠
+     * @param entity1 第一个实体
+     * @param entity2 第二个实体
+     * @return 重叠返回true
+     */
+    private boolean overlaps(Object entity1, Object entity2) {
         if (entity1 instanceof Entity && entity2 instanceof Entity) {
             Entity e1 = (Entity) entity1;
             Entity e2 = (Entity) entity2;
@@ -1101,7 +1608,7 @@ public class GameEngine {
                    clone.getY() < e2.getY() + e2.getHeight() &&
                    clone.getY() + clone.getHeight() > e2.getY();
         } else if (entity1 instanceof Entity && entity2 instanceof PacmanClone) {
-            return collision(entity2, entity1);
+            return overlaps(entity2, entity1);
         }
         return false;
     }
@@ -1116,6 +1623,18 @@ public class GameEngine {
      * @return 碰撞返回true，否则返回false
      */
     private boolean collision(Object entity, double x, double y, double width, double height) {
+        collisionTests++;
+        boolean hit = overlaps(entity, x, y, width, height);
+        if (hit) {
+            collisionHits++;
+        }
+        return hit;
+    }
+
+    /**
+     * 检测实体与指定区域是否重叠
+     */
+    private boolean overlaps(Object entity, double x, double y, double width, double height) {
         if (entity instanceof Entity) {
             Entity e = (Entity) entity;
             return e.getX() < x + width &&
@@ -1134,13 +1653,13 @@ public class GameEngine {
 
     /**
      * 检查游戏胜利条件
+     * 修改：清空当前关卡后进入已在后台预加载的下一关，而不是直接结束游戏
      */
     private void checkWinCondition() {
         if (foods.isEmpty() && powerFoods.isEmpty()) {
-            // 所有食物和能量豆都被吃掉，游戏胜利
-            System.out.println("游戏胜利!");
-            currentState = GameState.WIN;
-            gameOver = true;
+            // 所有食物和能量豆都被吃掉，进入下一关
+            events.publish(GameEventBus.Type.LEVEL_COMPLETE, level, score);
+            advanceLevel();
         }
     }
 
@@ -1158,6 +1677,13 @@ public class GameEngine {
         powerFoodPlusSkillCount = 0;
         // 清除克隆体
         pacmanClones.clear();
+        hashClones();
+        // 群战模式：鬼魂和陷阱不会被重置，复活后解除缠绕并短暂无敌，守在起点附近的鬼魂不能连续扣命
+        if (rules.getHordeGhostCount() > 0) {
+            isPacmanEntangledByTrap = false;
+            entangledTrapTimer = 0;
+            pacmanGraceUntil = clock.currentTimeMillis() + HORDE_RESPAWN_GRACE;
+        }
     }
 
     /**
@@ -1173,6 +1699,7 @@ public class GameEngine {
         powerFoodPlusSkillCount = 0;
         // 清除克隆体
         pacmanClones.clear();
+        hashClones();
     }
 
     /**
@@ -1184,6 +1711,402 @@ public class GameEngine {
         }
     }
 
+    /**
+     * 保存完整游戏状态到缓冲区
+     * 包括分数、生命、关卡、计时器、陷阱状态、剩余食物（按格子位图）、
+     * 所有实体、克隆体以及游戏时钟和随机数状态。迷宫和图像由关卡编号决定，不写入
+     * @param buffer 目标缓冲区
+     */
+    public void saveState(ByteBuffer buffer) {
+        buffer.putInt(STATE_VERSION);
+        buffer.putInt(level);
+        buffer.put((byte) currentState.ordinal());
+        buffer.putInt(score);
+        buffer.putInt(lives);
+        buffer.put((byte) (gameOver ? 1 : 0));
+        buffer.put((byte) (gameStarted ? 1 : 0));
+        buffer.putInt(powerFoodPlusSkillCount);
+        buffer.put((byte) (hasPowerFoodPlusSkill ? 1 : 0));
+        buffer.put((byte) (isPacmanFrozenByIceTrap ? 1 : 0));
+        buffer.putLong(iceTrapFreezeTimer);
+        buffer.put((byte) (isPacmanEntangledByTrap ? 1 : 0));
+        buffer.putLong(entangledTrapTimer);
+        buffer.putLong(pacmanGraceUntil);
+        buffer.putLong(tick);
+        buffer.putLong(clock.currentTimeMillis());
+        buffer.putLong(random.getState());
+
+        // 剩余食物：每类一张格子位图，技能食物另外按格子顺序写入技能类型
+        int tileCount = foodPool.length;
+        long[] bits = new long[(tileCount + 63) >>> 6];
+        writeTileBits(buffer, bits, foods);
+        writeTileBits(buffer, bits, powerFoods);
+        writeTileBits(buffer, bits, powerFoodsPlus);
+        for (int word = 0; word < bits.length; word++) {
+            for (long w = bits[word]; w != 0; w &= w - 1) {
+                int tile = (word << 6) + Long.numberOfTrailingZeros(w);
+                buffer.put((byte) powerFoodPlusPool[tile].getSkillType());
+            }
+        }
+
+        pacman.writeState(buffer);
+        buffer.putInt(ghosts.size());
+        for (Ghost ghost : ghosts) {
+            ghost.writeState(buffer);
+            GhostScaredStatus scaredStatus = ghostScaredMap.get(ghost);
+            buffer.put((byte) (scaredStatus != null ? 1 : 0));
+            if (scaredStatus != null) {
+                scaredStatus.writeState(buffer);
+            }
+            Long respawnTime = ghostRespawnTimers.get(ghost);
+            buffer.put((byte) (respawnTime != null ? 1 : 0));
+            if (respawnTime != null) {
+                buffer.putLong(respawnTime);
+            }
+            Long cooldown = redGhostTeleportCooldown.get(ghost);
+            buffer.putLong(cooldown != null ? cooldown : 0L);
+        }
+        buffer.putInt(pacmanClones.size());
+        for (PacmanClone clone : pacmanClones) {
+            clone.writeState(buffer);
+        }
+    }
+
+    /**
+     * 从缓冲区恢复 saveState 保存的游戏状态
+     * 关卡相同时直接覆盖现有实体，不重新加载地图
+     * @param buffer 源缓冲区
+     */
+    public void loadState(ByteBuffer buffer) {
+        int version = buffer.getInt();
+        if (version != STATE_VERSION) {
+            throw new IllegalArgumentException("不支持的状态版本: " + version);
+        }
+        // 恢复前尚未分发的事件属于被丢弃的时间线
+        events.clear();
+        int savedLevel = buffer.getInt();
+        if (currentLevel == null || savedLevel != level) {
+            level = savedLevel;
+            currentLevel = levelLoader.load(level);
+            loadMap(currentLevel);
+            preloadNextLevel();
+        }
+        currentState = GameState.values()[buffer.get()];
+        score = buffer.getInt();
+        lives = buffer.getInt();
+        gameOver = buffer.get() != 0;
+        gameStarted = buffer.get() != 0;
+        powerFoodPlusSkillCount = buffer.getInt();
+        hasPowerFoodPlusSkill = buffer.get() != 0;
+        isPacmanFrozenByIceTrap = buffer.get() != 0;
+        iceTrapFreezeTimer = buffer.getLong();
+        isPacmanEntangledByTrap = buffer.get() != 0;
+        entangledTrapTimer = buffer.getLong();
+        pacmanGraceUntil = buffer.getLong();
+        tick = buffer.getLong();
+        // 回退到较早的帧时丢弃之后录制的按键，录像保持与当前时间线一致
+        inputLog.truncate(tick);
+        clock.set(buffer.getLong());
+        random.setState(buffer.getLong());
+
+        Maze maze = currentLevel.getMaze();
+        int tileCount = foodPool.length;
+        long[] bits = new long[(tileCount + 63) >>> 6];
+        foods.clear();
+        readTileBits(buffer, bits);
+        for (int word = 0; word < bits.length; word++) {
+            for (long w = bits[word]; w != 0; w &= w - 1) {
+                int tile = (word << 6) + Long.numberOfTrailingZeros(w);
+                if (foodPool[tile] == null) {
+                    foodPool[tile] = new Food(tileX(maze, tile), tileY(maze, tile), foodImage);
+                }
+                foods.add(foodPool[tile]);
+            }
+        }
+        powerFoods.clear();
+        readTileBits(buffer, bits);
+        for (int word = 0; word < bits.length; word++) {
+            for (long w = bits[word]; w != 0; w &= w - 1) {
+                int tile = (word << 6) + Long.numberOfTrailingZeros(w);
+                if (powerFoodPool[tile] == null) {
+                    powerFoodPool[tile] = new PowerFood(tileX(maze, tile), tileY(maze, tile),
+                            TILE_SIZE, TILE_SIZE, 50, powerFoodImage);
+                }
+                powerFoods.add(powerFoodPool[tile]);
+            }
+        }
+        powerFoodsPlus.clear();
+        readTileBits(buffer, bits);
+        for (int word = 0; word < bits.length; word++) {
+            for (long w = bits[word]; w != 0; w &= w - 1) {
+                int tile = (word << 6) + Long.numberOfTrailingZeros(w);
+                int skillType = buffer.get();
+                if (powerFoodPlusPool[tile] == null) {
+                    powerFoodPlusPool[tile] = new PowerFoodPlus(tileX(maze, tile), tileY(maze, tile),
+                            TILE_SIZE, TILE_SIZE, 10, skillType, powerFoodImage);
+                }
+                powerFoodPlusPool[tile].setSkillType(skillType);
+                powerFoodsPlus.add(powerFoodPlusPool[tile]);
+            }
+        }
+
+        pacman.readState(buffer);
+        int ghostCount = buffer.getInt();
+        if (ghostCount != ghosts.size()) {
+            throw new IllegalArgumentException("鬼魂数量不一致: " + ghostCount + " != " + ghosts.size());
+        }
+        ghostScaredMap.clear();
+        ghostRespawnTimers.clear();
+        for (Ghost ghost : ghosts) {
+            ghost.readState(buffer);
+            if (buffer.get() != 0) {
+                ghostScaredMap.put(ghost, GhostScaredStatus.readState(buffer, clock));
+            }
+            if (buffer.get() != 0) {
+                ghostRespawnTimers.put(ghost, buffer.getLong());
+            }
+            redGhostTeleportCooldown.put(ghost, buffer.getLong());
+        }
+        mapVersion++;
+        pacmanClones.clear();
+        int cloneCount = buffer.getInt();
+        for (int i = 0; i < cloneCount; i++) {
+            PacmanClone clone = new PacmanClone(0, 0, Direction.RIGHT, null);
+            clone.setMaze(maze);
+            clone.setMoveSpeed(rules.getCloneSpeed());
+            clone.readState(buffer);
+            clone.setImage(getCloneImage(clone.getDirection()));
+            pacmanClones.add(clone);
+        }
+        rehash();
+    }
+
+    /**
+     * 保存完整游戏状态为字节数组
+     * @return 状态快照
+     */
+    public byte[] snapshot() {
+        while (true) {
+            if (snapshotBuffer == null) {
+                snapshotBuffer = ByteBuffer.allocate(4096);
+            }
+            snapshotBuffer.clear();
+            try {
+                saveState(snapshotBuffer);
+            } catch (BufferOverflowException e) {
+                // 克隆体较多时状态变大，扩容后重写
+                snapshotBuffer = ByteBuffer.allocate(snapshotBuffer.capacity() * 2);
+                continue;
+            }
+            byte[] state = new byte[snapshotBuffer.position()];
+            snapshotBuffer.flip();
+            snapshotBuffer.get(state);
+            return state;
+        }
+    }
+
+    /**
+     * 从 snapshot 得到的字节数组恢复游戏状态
+     * @param state 状态快照
+     */
+    public void restore(byte[] state) {
+        loadState(ByteBuffer.wrap(state));
+    }
+
+    private int tileOf(Entity entity) {
+        Maze maze = currentLevel.getMaze();
+        int col = (int) (entity.getX() / TILE_SIZE);
+        int row = (int) (entity.getY() / TILE_SIZE);
+        return maze.index(col, row);
+    }
+
+    private static double tileX(Maze maze, int tile) {
+        return (tile % maze.getWidth()) * TILE_SIZE;
+    }
+
+    private static double tileY(Maze maze, int tile) {
+        return (tile / maze.getWidth()) * TILE_SIZE;
+    }
+
+    private void writeTileBits(ByteBuffer buffer, long[] bits, List<? extends Food> items) {
+        Arrays.fill(bits, 0L);
+        markTiles(bits, items);
+        for (long word : bits) {
+            buffer.putLong(word);
+        }
+    }
+
+    private void markTiles(long[] bits, List<? extends Food> items) {
+        for (int i = 0; i < items.size(); i++) {
+            int tile = tileOf(items.get(i));
+            bits[tile >>> 6] |= 1L << tile;
+        }
+    }
+
+    private void recordPelletChange(Entity pellet, int kind) {
+        int tile = tileOf(pellet);
+        pelletJournal[(int) (pelletJournalCount++ & (PELLET_JOURNAL_SIZE - 1))] = tile << 2 | kind;
+        stateHash.togglePellet(tile, kind);
+    }
+
+    /**
+     * 地图重新加载或状态恢复后从头重建状态哈希，之后各分量在状态变化处增量更新
+     */
+    private void rehash() {
+        stateHash.clear(HASH_SLOT_GHOSTS + 2 * ghosts.size());
+        addPellets(stateHash);
+        if (ghostTrapKeys.length != ghosts.size()) {
+            ghostTrapKeys = new long[ghosts.size()];
+        }
+        Arrays.fill(ghostTrapKeys, 0);
+        trapKeySum = 0;
+        stateHash.set(HASH_SLOT_TRAPS, trapKeySum);
+        hashGhosts();
+        hashClones();
+        hashGlobals(stateHash);
+    }
+
+    private void addPellets(ZobristHash hash) {
+        for (int i = 0; i < foods.size(); i++) {
+            hash.togglePellet(tileOf(foods.get(i)), PELLET_FOOD);
+        }
+        for (int i = 0; i < powerFoods.size(); i++) {
+            hash.togglePellet(tileOf(powerFoods.get(i)), PELLET_POWER);
+        }
+        for (int i = 0; i < powerFoodsPlus.size(); i++) {
+            hash.togglePellet(tileOf(powerFoodsPlus.get(i)), PELLET_SKILL);
+        }
+    }
+
+    /**
+     * 把状态标志、分桶后的计时器和 Pac-Man 写入哈希槽位，取值没变的槽位不改动哈希
+     * 位置按实体中心所在格子计入，同一格子内的像素偏移不区分
+     */
+    private void hashGlobals(ZobristHash hash) {
+        long now = clock.currentTimeMillis();
+        hash.set(HASH_SLOT_STATUS, currentState.ordinal()
+                | (gameStarted ? 1L : 0) << 3
+                | (gameOver ? 1L : 0) << 4
+                | (pacman.isPowerMode() ? 1L : 0) << 5
+                | (isPacmanFrozenByIceTrap ? 1L : 0) << 6
+                | (isPacmanEntangledByTrap ? 1L : 0) << 7
+                | (hasPowerFoodPlusSkill ? 1L : 0) << 8
+                | (lives & 0xFFL) << 16
+                | (powerFoodPlusSkillCount & 0xFFFFL) << 24
+                | (long) level << 40);
+        hash.set(HASH_SLOT_TIMERS, bucket(pacman.isPowerMode() ? pacman.getPowerModeTimer() : 0)
+                | bucket(isPacmanFrozenByIceTrap ? now - iceTrapFreezeTimer : 0) << 16
+                | bucket(isPacmanEntangledByTrap ? now - entangledTrapTimer : 0) << 32
+                | bucket(pacmanGraceUntil - now) << 48);
+        hash.set(HASH_SLOT_PACMAN, (centerTile(pacman.getX(), pacman.getY(), pacman.getWidth(), pacman.getHeight()) & 0xFFFFL) << 16
+                | (Direction.toCode(pacman.getCurrentDirection()) & 0xFFL) << 8
+                | (Direction.toCode(pacman.getNextDirection()) & 0xFFL));
+    }
+
+    /**
+     * 更新一个鬼魂的两个槽位和它的陷阱键，在鬼魂移动、恐慌、死亡重生、布下或移除陷阱后调用
+     * @param index 鬼魂下标
+     */
+    private void hashGhost(int index) {
+        Ghost ghost = ghosts.get(index);
+        long now = clock.currentTimeMillis();
+        stateHash.set(HASH_SLOT_GHOSTS + 2 * index, ghostSlot(ghost));
+        stateHash.set(HASH_SLOT_GHOSTS + 2 * index + 1, ghostTimerSlot(ghost, now));
+        long trapKey = trapKey(index);
+        if (trapKey != ghostTrapKeys[index]) {
+            // 陷阱之间没有顺序，各自的键相加后计入
+            trapKeySum += trapKey - ghostTrapKeys[index];
+            ghostTrapKeys[index] = trapKey;
+            stateHash.set(HASH_SLOT_TRAPS, trapKeySum);
+        }
+    }
+
+    private void hashGhosts() {
+        for (int i = 0; i < ghosts.size(); i++) {
+            hashGhost(i);
+        }
+    }
+
+    /**
+     * 克隆体列表整体变化（清空、批量移除）后重新求和
+     */
+    private void hashClones() {
+        // 克隆体之间没有顺序，数量加各自的键后计入
+        cloneKeySum = pacmanClones.size();
+        for (int i = 0; i < pacmanClones.size(); i++) {
+            cloneKeySum += cloneKey(pacmanClones.get(i));
+        }
+        stateHash.set(HASH_SLOT_CLONES, cloneKeySum);
+    }
+
+    private long ghostSlot(Ghost ghost) {
+        GhostScaredStatus scaredStatus = ghostScaredMap.get(ghost);
+        boolean scared = scaredStatus != null && scaredStatus.isActive();
+        int shields = ghost instanceof PinkGhost ? ((PinkGhost) ghost).getShields() : 0;
+        return (centerTile(ghost.getX(), ghost.getY(), ghost.getWidth(), ghost.getHeight()) & 0xFFFFL) << 16
+                | (Direction.toCode(ghost.getDirection()) & 0xFFL) << 8
+                | shields << 2
+                | (scared ? 1 : 0) << 1
+                | (ghost.isVisible() ? 1 : 0);
+    }
+
+    private long ghostTimerSlot(Ghost ghost, long now) {
+        GhostScaredStatus scaredStatus = ghostScaredMap.get(ghost);
+        boolean scared = scaredStatus != null && scaredStatus.isActive();
+        Long respawnTime = ghostRespawnTimers.get(ghost);
+        Long cooldown = redGhostTeleportCooldown.get(ghost);
+        return bucket(scared ? scaredStatus.getRemainingTime() : 0)
+                | bucket(respawnTime != null ? now - respawnTime + 1 : 0) << 16
+                | (cooldown != null ? cooldown / (HASH_BUCKET_MILLIS / TICK_MILLIS) : 0) << 32;
+    }
+
+    /**
+     * 鬼魂当前陷阱的键，没有陷阱时为 0
+     */
+    private long trapKey(int index) {
+        Ghost ghost = ghosts.get(index);
+        int trapTile = -1;
+        if (ghost instanceof BlueGhost && ((BlueGhost) ghost).isIceTrapSet()) {
+            BlueGhost blue = (BlueGhost) ghost;
+            trapTile = centerTile(blue.getIceTrapX(), blue.getIceTrapY(), TILE_SIZE, TILE_SIZE);
+        } else if (ghost instanceof OrangeGhost && ((OrangeGhost) ghost).isTrapSet()) {
+            OrangeGhost orange = (OrangeGhost) ghost;
+            trapTile = centerTile(orange.getTrapX(), orange.getTrapY(), TILE_SIZE, TILE_SIZE);
+        }
+        return trapTile >= 0 ? ZobristHash.mix((long) index << 32 | trapTile) : 0;
+    }
+
+    private long cloneKey(PacmanClone clone) {
+        return ZobristHash.mix((centerTile(clone.getX(), clone.getY(), clone.getWidth(), clone.getHeight()) & 0xFFFFL) << 8
+                | (Direction.toCode(clone.getDirection()) & 0xFFL));
+    }
+
+    /**
+     * 计时器分桶：0 表示未计时，之后每 HASH_BUCKET_MILLIS 一个桶
+     */
+    private static long bucket(long millis) {
+        return millis <= 0 ? 0 : Math.min(0xFFFF, 1 + millis / HASH_BUCKET_MILLIS);
+    }
+
+    /**
+     * 实体中心所在的格子，在地图外（隧道中）时返回 -1
+     */
+    private int centerTile(double x, double y, double width, double height) {
+        Maze maze = currentLevel.getMaze();
+        int col = (int) Math.floor((x + width / 2) / TILE_SIZE);
+        int row = (int) Math.floor((y + height / 2) / TILE_SIZE);
+        if (col < 0 || col >= maze.getWidth() || row < 0 || row >= maze.getHeight()) {
+            return -1;
+        }
+        return maze.index(col, row);
+    }
+
+    private static void readTileBits(ByteBuffer buffer, long[] bits) {
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = buffer.getLong();
+        }
+    }
+
     // Getters 和 Setters
 
     public PacMan getPacman() {
@@ -1195,14 +2118,292 @@ public class GameEngine {
     }
 
     public int getScore() {
-        return pacman != null ? pacman.getScore() : 0;
+        return score;
     }
 
     public int getLives() {
-        return pacman != null ? pacman.getLives() : 0;
+        return lives;
     }
 
     public int getLevel() {
         return level;
     }
+
+    /**
+     * 获取已完成的逻辑帧数
+     * @return 逻辑帧数
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * 获取当前逻辑状态的 Zobrist 哈希
+     * 包括各实体所在格子和方向、剩余食物、状态标志以及按秒分桶的计时器，不包括分数和帧序号，
+     * 可以作为置换表的键，也可以逐帧比较两次运行是否同步。
+     * 食物、实体和陷阱在变化时已异或进哈希，全局状态和计时器每帧结束和每次按键后刷新，
+     * 读取是 O(1) 的字段读取
+     * @return 64 位哈希
+     */
+    public long getStateHash() {
+        return stateHash.get();
+    }
+
+    /**
+     * 从头计算状态哈希，不使用增量维护的结果，用于校验 getStateHash
+     * @return 64 位哈希，与同一时刻的 getStateHash 相同
+     */
+    public long computeStateHash() {
+        ZobristHash hash = new ZobristHash(HASH_SLOT_GHOSTS + 2 * ghosts.size());
+        addPellets(hash);
+        hashGlobals(hash);
+        long now = clock.currentTimeMillis();
+        long traps = 0;
+        for (int i = 0; i < ghosts.size(); i++) {
+            Ghost ghost = ghosts.get(i);
+            hash.set(HASH_SLOT_GHOSTS + 2 * i, ghostSlot(ghost));
+            hash.set(HASH_SLOT_GHOSTS + 2 * i + 1, ghostTimerSlot(ghost, now));
+            traps += trapKey(i);
+        }
+        hash.set(HASH_SLOT_TRAPS, traps);
+        long clones = pacmanClones.size();
+        for (int i = 0; i < pacmanClones.size(); i++) {
+            clones += cloneKey(pacmanClones.get(i));
+        }
+        hash.set(HASH_SLOT_CLONES, clones);
+        return hash.get();
+    }
+
+    /**
+     * 获取本引擎使用的平衡参数
+     * @return 平衡参数（引擎内部副本，对局进行中不应修改）
+     */
+    public GameRules getRules() {
+        return rules;
+    }
+
+    /**
+     * 设置分阶段耗时分析器，传入 null 关闭计时
+     * @param profiler 分析器
+     */
+    public void setProfiler(FrameProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    public FrameProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * 获取游戏事件总线，订阅者在驱动本引擎的线程上被调用
+     * @return 事件总线
+     */
+    public GameEventBus getEventBus() {
+        return events;
+    }
+
+    /**
+     * 设置录像关键帧间隔
+     * 大量并发会话只需要输入录像时可以关闭关键帧以节省内存
+     * @param ticks 间隔（逻辑帧），0 表示不保存关键帧
+     */
+    public void setKeyframeInterval(long ticks) {
+        this.keyframeInterval = ticks;
+    }
+
+    /**
+     * 获取本局的输入录像，结束帧更新为当前帧
+     * @return 输入录像
+     */
+    public InputLog getInputLog() {
+        inputLog.setEndTick(tick);
+        return inputLog;
+    }
+
+    /**
+     * 获取场上的实体数（Pac-Man、鬼魂和克隆体）
+     * @return 实体数
+     */
+    public int getEntityCount() {
+        return 1 + ghosts.size() + pacmanClones.size();
+    }
+
+    /**
+     * 获取最近一次碰撞处理检测的实体对数
+     * @return 检测次数
+     */
+    public int getCollisionTests() {
+        return collisionTests;
+    }
+
+    /**
+     * 获取最近一次碰撞处理中重叠的实体对数
+     * @return 命中次数
+     */
+    public int getCollisionHits() {
+        return collisionHits;
+    }
+
+    /**
+     * 获取剩余的食物数量（普通食物、能量豆和技能食物）
+     * @return 数量
+     */
+    public int getRemainingPellets() {
+        return foods.size() + powerFoods.size() + powerFoodsPlus.size();
+    }
+
+    /**
+     * 获取剩余食物所在格子的位图（三类食物合并）
+     * @param bits 可复用的位图，长度不符时重新分配
+     * @return 位图，第 i 位表示格子 i 上还有食物
+     */
+    public long[] getPelletBits(long[] bits) {
+        int words = (foodPool.length + 63) >>> 6;
+        if (bits == null || bits.length != words) {
+            bits = new long[words];
+        } else {
+            Arrays.fill(bits, 0L);
+        }
+        markTiles(bits, foods);
+        markTiles(bits, powerFoods);
+        markTiles(bits, powerFoodsPlus);
+        return bits;
+    }
+
+    /**
+     * 获取某一类剩余食物所在格子的位图
+     * @param bits 可复用的位图，长度不符时重新分配
+     * @param kind 食物种类（PELLET_FOOD、PELLET_POWER 或 PELLET_SKILL）
+     * @return 位图
+     */
+    public long[] getPelletBits(long[] bits, int kind) {
+        int words = (foodPool.length + 63) >>> 6;
+        if (bits == null || bits.length != words) {
+            bits = new long[words];
+        } else {
+            Arrays.fill(bits, 0L);
+        }
+        markTiles(bits, kind == PELLET_FOOD ? foods : kind == PELLET_POWER ? powerFoods : powerFoodsPlus);
+        return bits;
+    }
+
+    /**
+     * 获取鬼魂剩余的恐慌时间
+     * @param ghost 鬼魂
+     * @return 毫秒，不处于恐慌状态时为 0
+     */
+    public long getScaredRemaining(Ghost ghost) {
+        GhostScaredStatus status = ghostScaredMap.get(ghost);
+        return status != null && status.isActive() ? status.getRemainingTime() : 0;
+    }
+
+    /**
+     * 获取被吃掉的鬼魂距离重生的剩余时间
+     * @param ghost 鬼魂
+     * @return 毫秒，鬼魂不在等待重生时为 0
+     */
+    public long getRespawnRemaining(Ghost ghost) {
+        Long respawnTime = ghostRespawnTimers.get(ghost);
+        if (respawnTime == null) {
+            return 0;
+        }
+        return Math.max(0, rules.getGhostRespawnTime() - (clock.currentTimeMillis() - respawnTime));
+    }
+
+    /**
+     * 获取地图版本号，地图重新加载或状态恢复后改变
+     * @return 版本号
+     */
+    public int getMapVersion() {
+        return mapVersion;
+    }
+
+    /**
+     * 获取食物变化日志的累计条数
+     * @return 条数
+     */
+    public long getPelletJournalCount() {
+        return pelletJournalCount;
+    }
+
+    /**
+     * 读取食物变化日志中的一条
+     * @param index 序号，必须满足 getPelletJournalCount() - PELLET_JOURNAL_SIZE <= index < getPelletJournalCount()
+     * @return 格子序号左移 2 位再加上食物种类
+     */
+    public int getPelletJournalEntry(long index) {
+        return pelletJournal[(int) (index & (PELLET_JOURNAL_SIZE - 1))];
+    }
+
+    /**
+     * 获取当前关卡的迷宫
+     * @return 迷宫
+     */
+    public Maze getMaze() {
+        return currentLevel.getMaze();
+    }
+
+    public List<PacmanClone> getPacmanClones() {
+        return pacmanClones;
+    }
+
+    /**
+     * 获取累计吃掉的普通食物数（含技能食物，每个 10 分）
+     * @return 数量
+     */
+    public long getPelletsEaten() {
+        return pelletsEaten;
+    }
+
+    /**
+     * 获取累计吃掉的能量豆数（每个 50 分）
+     * @return 数量
+     */
+    public long getPowerPelletsEaten() {
+        return powerPelletsEaten;
+    }
+
+    /**
+     * 获取累计吃掉的鬼魂数（每个 200 分）
+     * @return 数量
+     */
+    public long getGhostsEaten() {
+        return ghostsEaten;
+    }
+
+    /**
+     * 获取累计死亡次数（被鬼魂吃掉或冰影陷阱超时）
+     * @return 次数
+     */
+    public long getDeaths() {
+        return deaths;
+    }
+
+    /**
+     * 判断 Pac-Man 是否被冰影陷阱冰冻（需要按 V 键破冰）
+     * @return true表示被冰冻
+     */
+    public boolean isPacmanFrozenByIceTrap() {
+        return isPacmanFrozenByIceTrap;
+    }
+
+    /**
+     * 判断游戏是否已开始运行（不在开始界面）
+     * @return true表示已开始
+     */
+    public boolean isStarted() {
+        return currentState != GameState.START;
+    }
+
+    /**
+     * 判断游戏是否已结束
+     * @return true表示游戏结束
+     */
+    public boolean isGameOver() {
+        return currentState == GameState.GAME_OVER;
+    }
 }
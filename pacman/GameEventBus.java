@@ -0,0 +1,304 @@
+package pacman;
+
+import java.util.Arrays;
+
+/**
+ * 游戏事件总线
+ * 引擎在碰撞处理和按键处理中发布事件（吃到食物、鬼魂被吃、Pac-Man 死亡、陷阱触发、克隆体生成等），
+ * 每个逻辑帧结束时把本帧的事件一次性分批交给订阅者。计分之外的副作用（日志、指标、录制、网络同步、音效）
+ * 都作为订阅者挂在总线上，不再写死在 handleCollisions 里
+ *
+ * 事件槽是预先分配的可变对象，发布只是填写下一个槽位的几个字段：不分配内存，
+ * 也没有对订阅者的虚调用。订阅者每帧最多被调用一次，并且只在本帧有其订阅类型的事件时调用。
+ * 槽位在下一帧会被复用，订阅者不能保存事件对象，需要的字段应当复制出来
+ *
+ * 总线只能由驱动引擎的线程使用
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public final class GameEventBus {
+    public static final int DEFAULT_CAPACITY = 64;
+    private static final int MAX_LISTENERS = 16;
+
+    /**
+     * 事件类型；code 用于二进制日志等持久化格式，不随声明顺序变化
+     */
+    public enum Type {
+        PELLET_EATEN(1),        // 数值：得分
+        POWER_PELLET_EATEN(2),  // 数值：得分；附加：技能次数
+        SKILL_GAINED(3),        // 数值：得分；附加：技能次数
+        GHOST_EATEN(4),         // 数值：得分；附加：鬼魂种类
+        PACMAN_DIED(5),         // 数值：剩余生命；附加：鬼魂种类，冰影陷阱超时为 -1
+        TRAP_TRIGGERED(6),      // 附加：陷阱种类（TRAP_ICE 或 TRAP_SILK）
+        TRAP_EXPIRED(7),        // 附加：陷阱种类
+        ICE_BROKEN(8),
+        CLONE_SPAWNED(9),       // 数值：场上克隆体数；附加：方向编码
+        GHOST_SCARED(10),       // 数值：恐慌时长（毫秒）；附加：鬼魂种类
+        SHIELD_HIT(11),         // 数值：剩余护盾
+        LEVEL_COMPLETE(12);     // 数值：完成的关卡；附加：得分
+
+        private final int code;
+
+        Type(int code) {
+            this.code = code;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        /**
+         * 按编码查找类型
+         * @param code 编码
+         * @return 类型，未知编码返回 null
+         */
+        public static Type fromCode(int code) {
+            for (Type type : VALUES) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            return null;
+        }
+
+        private long bit() {
+            return 1L << ordinal();
+        }
+    }
+
+    private static final Type[] VALUES = Type.values();
+    public static final int TRAP_ICE = 0;
+    public static final int TRAP_SILK = 1;
+
+    /**
+     * 一个事件槽：发布时填写，分发后复用
+     */
+    public static final class Event {
+        private Type type;
+        private long tick;
+        private long time;
+        private int value;
+        private int detail;
+        private int col;
+        private int row;
+
+        public Type getType() {
+            return type;
+        }
+
+        public long getTick() {
+            return tick;
+        }
+
+        /**
+         * 获取发生时的游戏时钟
+         * @return 毫秒
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * 获取主数值（含义见 Type 各常量的注释）
+         * @return 数值
+         */
+        public int getValue() {
+            return value;
+        }
+
+        /**
+         * 获取附加数值（含义见 Type 各常量的注释）
+         * @return 数值
+         */
+        public int getDetail() {
+            return detail;
+        }
+
+        /**
+         * 获取事件发生的格子列，没有位置时为 -1
+         * @return 列
+         */
+        public int getCol() {
+            return col;
+        }
+
+        /**
+         * 获取事件发生的格子行，没有位置时为 -1
+         * @return 行
+         */
+        public int getRow() {
+            return row;
+        }
+    }
+
+    /**
+     * 订阅者：每帧收到一批事件
+     */
+    public interface Listener {
+        /**
+         * 处理一帧内的事件，批次里可能还有未订阅的类型，需要按类型过滤
+         * @param events 事件槽数组，只读，调用返回后会被复用
+         * @param count 有效事件数
+         */
+        void onEvents(Event[] events, int count);
+    }
+
+    private Event[] slots;
+    private int count;
+    private long pendingTypes; // 本批事件包含的类型位图
+    private long tick;
+    private long time;
+    private final Listener[] listeners = new Listener[MAX_LISTENERS];
+    private final long[] listenerTypes = new long[MAX_LISTENERS];
+    private int listenerCount;
+    private long dispatched;
+
+    /**
+     * 构造方法
+     * @param capacity 初始事件槽数；一帧内事件超过容量时扩容一次
+     */
+    public GameEventBus(int capacity) {
+        slots = new Event[Math.max(1, capacity)];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Event();
+        }
+    }
+
+    /**
+     * 订阅事件
+     * @param listener 订阅者
+     * @param types 关心的事件类型，不传表示全部
+     */
+    public void subscribe(Listener listener, Type... types) {
+        if (listenerCount == MAX_LISTENERS) {
+            throw new IllegalStateException("订阅者过多: " + MAX_LISTENERS);
+        }
+        long mask = 0;
+        for (Type type : types) {
+            mask |= type.bit();
+        }
+        listeners[listenerCount] = listener;
+        listenerTypes[listenerCount] = types.length == 0 ? -1L : mask;
+        listenerCount++;
+    }
+
+    /**
+     * 取消订阅
+     * @param listener 订阅者
+     */
+    public void unsubscribe(Listener listener) {
+        for (int i = 0; i < listenerCount; i++) {
+            if (listeners[i] == listener) {
+                listenerCount--;
+                listeners[i] = listeners[listenerCount];
+                listenerTypes[i] = listenerTypes[listenerCount];
+                listeners[listenerCount] = null;
+                return;
+            }
+        }
+    }
+
+    /**
+     * 设置之后发布的事件所属的逻辑帧和游戏时钟
+     * @param tick 逻辑帧
+     * @param time 游戏时钟（毫秒）
+     */
+    public void beginTick(long tick, long time) {
+        this.tick = tick;
+        this.time = time;
+    }
+
+    /**
+     * 发布一个没有位置的事件
+     * @param type 类型
+     * @param value 主数值
+     * @param detail 附加数值
+     */
+    public void publish(Type type, int value, int detail) {
+        publish(type, value, detail, -1, -1);
+    }
+
+    /**
+     * 发布事件：填写下一个事件槽，没有订阅者时什么也不做
+     * @param type 类型
+     * @param value 主数值
+     * @param detail 附加数值
+     * @param col 格子列
+     * @param row 格子行
+     */
+    public void publish(Type type, int value, int detail, int col, int row) {
+        if (listenerCount == 0) {
+            return;
+        }
+        if (count == slots.length) {
+            grow();
+        }
+        Event event = slots[count++];
+        event.type = type;
+        event.tick = tick;
+        event.time = time;
+        event.value = value;
+        event.detail = detail;
+        event.col = col;
+        event.row = row;
+        pendingTypes |= type.bit();
+    }
+
+    /**
+     * 把本帧积累的事件分发给订阅者并清空
+     */
+    public void dispatch() {
+        if (count == 0) {
+            return;
+        }
+        for (int i = 0; i < listenerCount; i++) {
+            if ((listenerTypes[i] & pendingTypes) != 0) {
+                listeners[i].onEvents(slots, count);
+            }
+        }
+        dispatched += count;
+        clear();
+    }
+
+    /**
+     * 丢弃尚未分发的事件（例如状态恢复时）
+     */
+    public void clear() {
+        count = 0;
+        pendingTypes = 0;
+    }
+
+    public int getPendingCount() {
+        return count;
+    }
+
+    public long getDispatchedCount() {
+        return dispatched;
+    }
+
+    public int getListenerCount() {
+        return listenerCount;
+    }
+
+    /**
+     * 获取鬼魂的种类编号，用作事件的附加数值
+     * @param ghost 鬼魂
+     * @return 0 红、1 粉、2 蓝、3 橙
+     */
+    public static int ghostKind(Ghost ghost) {
+        if (ghost instanceof RedGhost) return 0;
+        if (ghost instanceof PinkGhost) return 1;
+        if (ghost instanceof BlueGhost) return 2;
+        return 3;
+    }
+
+    private void grow() {
+        int old = slots.length;
+        slots = Arrays.copyOf(slots, old * 2);
+        for (int i = old; i < slots.length; i++) {
+            slots[i] = new Event();
+        }
+    }
+}
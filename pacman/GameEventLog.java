@@ -0,0 +1,248 @@
+package pacman;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步二进制游戏事件日志
+ * 代替游戏线程里的 System.out.println：作为事件总线的订阅者，把每个游戏事件编码成定长记录写入预先分配的环形缓冲区，
+ * 后台写入线程定期取走并写入文件。记录时只写几个 long 数组元素和一次有序写，
+ * 不加锁、不分配对象、不做 I/O；缓冲区满时丢弃记录并计数，绝不等待写入线程
+ *
+ * 文件格式：文件头（魔数、版本、记录长度），随后是 RECORD_SIZE 字节的定长记录：
+ * 逻辑帧（long）、游戏时钟毫秒（long）、事件类型编码（int）、主数值（int）、附加数值（int）、
+ * 格子（int，列在高 16 位、行在低 16 位）。
+ * 用 java pacman.GameEventLog 文件 把日志解码成文本
+ *
+ * 每个日志只能有一个记录线程（通常是驱动引擎的线程）
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public final class GameEventLog implements GameEventBus.Listener, AutoCloseable {
+    public static final int MAGIC = 0x504D4556; // "PMEV"
+    public static final int VERSION = 2;
+    public static final int RECORD_SIZE = 32;
+    public static final int DEFAULT_CAPACITY = 4096;
+    // 写入线程在缓冲区为空时的休眠时间
+    private static final long DRAIN_INTERVAL_NANOS = 5_000_000L;
+
+    private static final String[] GHOST_NAMES = {"red", "pink", "blue", "orange"};
+
+    // 每条记录占 4 个 long：逻辑帧、时钟、类型和主数值、附加数值和格子
+    private final long[] ring;
+    private final int mask;
+    private final AtomicLong published = new AtomicLong(); // 记录线程写完的记录数
+    private final AtomicLong consumed = new AtomicLong(); // 写入线程取走的记录数
+    private final AtomicLong dropped = new AtomicLong();
+    private long next; // 只由记录线程读写
+
+    private final FileChannel channel;
+    private final ByteBuffer out;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    /**
+     * 构造方法：创建（覆盖）日志文件并启动写入线程
+     * @param file 日志文件
+     * @param capacity 环形缓冲区容量（记录数，向上取 2 的幂）
+     * @throws IOException 无法创建文件
+     */
+    public GameEventLog(Path file, int capacity) throws IOException {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.ring = new long[size * 4];
+        this.mask = size - 1;
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.out = ByteBuffer.allocateDirect(size * RECORD_SIZE);
+        out.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        this.writer = new Thread(this::drainLoop, "game-event-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * 总线分发时把本帧事件逐条追加到缓冲区
+     * @param events 事件槽数组
+     * @param count 有效事件数
+     */
+    @Override
+    public void onEvents(GameEventBus.Event[] events, int count) {
+        for (int i = 0; i < count; i++) {
+            GameEventBus.Event event = events[i];
+            append(event.getTick(), event.getTime(), event.getType().getCode(), event.getValue(), event.getDetail(),
+                    event.getCol() << 16 | (event.getRow() & 0xFFFF));
+        }
+    }
+
+    /**
+     * 追加一条记录，缓冲区满时丢弃
+     * @param tick 逻辑帧
+     * @param time 游戏时钟（毫秒）
+     * @param type 事件类型编码
+     * @param a 主数值
+     * @param b 附加数值
+     * @param c 格子
+     * @return 是否写入
+     */
+    public boolean append(long tick, long time, int type, int a, int b, int c) {
+        if (next - consumed.get() > mask) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        int base = (int) (next & mask) << 2;
+        ring[base] = tick;
+        ring[base + 1] = time;
+        ring[base + 2] = (long) type << 32 | (a & 0xFFFFFFFFL);
+        ring[base + 3] = (long) b << 32 | (c & 0xFFFFFFFFL);
+        next++;
+        // 有序写：记录内容对写入线程可见之后才发布新的计数
+        published.lazySet(next);
+        return true;
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getWritten() {
+        return consumed.get();
+    }
+
+    /**
+     * 停止写入线程，写出剩余记录并关闭文件
+     * @throws IOException 写入失败
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drain();
+        channel.close();
+    }
+
+    private void drainLoop() {
+        try {
+            while (running) {
+                if (drain() == 0) {
+                    LockSupport.parkNanos(this, DRAIN_INTERVAL_NANOS);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("事件日志写入失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 把已发布的记录编码写入文件
+     * @return 写出的记录数
+     */
+    private int drain() throws IOException {
+        long from = consumed.get();
+        long to = published.get();
+        if (to == from) {
+            return 0;
+        }
+        out.clear();
+        for (long i = from; i < to; i++) {
+            int base = (int) (i & mask) << 2;
+            out.putLong(ring[base]).putLong(ring[base + 1]).putLong(ring[base + 2]).putLong(ring[base + 3]);
+        }
+        consumed.set(to);
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        return (int) (to - from);
+    }
+
+    /**
+     * 把一条记录格式化为文本
+     * @param code 事件类型编码
+     * @param value 主数值
+     * @param detail 附加数值
+     * @param tile 格子（列在高 16 位、行在低 16 位）
+     * @return 文本
+     */
+    public static String describe(int code, int value, int detail, int tile) {
+        GameEventBus.Type type = GameEventBus.Type.fromCode(code);
+        if (type == null) {
+            return "未知事件 " + code + " (" + value + ", " + detail + ")";
+        }
+        String where = tile == -1 ? "" : " (" + (tile >> 16) + ", " + (short) tile + ")";
+        switch (type) {
+            case PELLET_EATEN: return "吃到食物" + where + " 得分 " + value;
+            case POWER_PELLET_EATEN: return "吃到能量豆" + where + "! 得分 " + value + ", 技能次数 " + detail;
+            case SKILL_GAINED: return "获得技能食物" + where + "! 得分 " + value + ", 技能剩余: " + detail;
+            case GHOST_EATEN: return "吃掉" + ghostName(detail) + "鬼魂" + where + "! 当前总分: " + value
+                    + (detail == 2 ? "，生成冰影陷阱" : detail == 3 ? "，生成缚丝陷阱" : "");
+            case PACMAN_DIED: return (detail < 0 ? "冰影陷阱超时，PacMan死亡" : "被" + ghostName(detail) + "鬼魂抓住" + where)
+                    + "，剩余生命 " + value;
+            case TRAP_TRIGGERED: return detail == GameEventBus.TRAP_ICE
+                    ? "踩中冰影陷阱" + where + "，10秒内按V键破冰！" : "踩中缚丝陷阱" + where + "，3秒内无法移动！";
+            case TRAP_EXPIRED: return detail == GameEventBus.TRAP_ICE ? "冰影陷阱超时" : "缚丝陷阱效果结束，恢复移动控制";
+            case ICE_BROKEN: return "冰影陷阱已被打破，游戏恢复正常";
+            case CLONE_SPAWNED: return "释放克隆体" + where + "，方向 " + Direction.fromCode((byte) detail) + "，场上克隆体 " + value;
+            case GHOST_SCARED: return ghostName(detail) + "鬼魂进入恐慌 " + value + " 毫秒";
+            case SHIELD_HIT: return "粉色鬼魂护盾被击中，剩余护盾 " + value;
+            case LEVEL_COMPLETE: return "关卡 " + value + " 完成! 得分 " + detail;
+            default: return type.name();
+        }
+    }
+
+    private static String ghostName(int kind) {
+        return kind >= 0 && kind < GHOST_NAMES.length ? GHOST_NAMES[kind] : "?";
+    }
+
+    /**
+     * 主方法：把事件日志解码为文本
+     * @param args 日志文件
+     * @throws IOException 读取失败
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("用法: java pacman.GameEventLog <事件日志>");
+            return;
+        }
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(Paths.get(args[0])));
+        if (in.remaining() < 12 || in.getInt() != MAGIC) {
+            throw new IOException("不是事件日志: " + args[0]);
+        }
+        int version = in.getInt();
+        int recordSize = in.getInt();
+        if (version != VERSION || recordSize != RECORD_SIZE) {
+            throw new IOException("不支持的事件日志版本 " + version + "，记录长度 " + recordSize);
+        }
+        StringBuilder text = new StringBuilder();
+        while (in.remaining() >= RECORD_SIZE) {
+            long tick = in.getLong();
+            long time = in.getLong();
+            int type = in.getInt();
+            int a = in.getInt();
+            int b = in.getInt();
+            int c = in.getInt();
+            text.append(String.format("[%8d %9.3fs] %s%n", tick, time / 1000.0, describe(type, a, b, c)));
+        }
+        System.out.print(text);
+    }
+}
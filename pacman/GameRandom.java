@@ -0,0 +1,75 @@
+package pacman;
+
+/**
+ * 可复现的随机数生成器
+ * 基于 SplitMix64，状态只有一个 long，可以直接读出和恢复，
+ * 游戏中所有随机决策都使用同一个实例，相同种子得到相同的对局
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public final class GameRandom {
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private long state;
+
+    /**
+     * 使用系统时间作为种子
+     */
+    public GameRandom() {
+        this(System.nanoTime());
+    }
+
+    /**
+     * 使用指定种子
+     * @param seed 种子
+     */
+    public GameRandom(long seed) {
+        this.state = seed;
+    }
+
+    /**
+     * 生成下一个64位随机数
+     * @return 随机数
+     */
+    public long nextLong() {
+        long z = (state += 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * 生成 [0, 1) 区间的随机数，用于替代 Math.random()
+     * @return 随机数
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * 生成 [0, bound) 区间的随机整数
+     * @param bound 上界（不含）
+     * @return 随机整数
+     */
+    public int nextInt(int bound) {
+        return (int) (nextDouble() * bound);
+    }
+
+    /**
+     * 随机选择一个方向
+     * @return 随机方向
+     */
+    public Direction nextDirection() {
+        return DIRECTIONS[nextInt(DIRECTIONS.length)];
+    }
+
+    public long getState() {
+        return state;
+    }
+
+    public void setState(long state) {
+        this.state = state;
+    }
+}
@@ -0,0 +1,281 @@
+package pacman;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 游戏平衡参数
+ * 集中保存原先分散在引擎和各实体类中的平衡常量，每个引擎注入一份，
+ * 引擎再把它交给自己创建的 Pac-Man、鬼魂和克隆体。默认值与原常量完全一致，
+ * 使用默认规则的对局和录像不受影响
+ *
+ * 参数也可以按名称读写（见 NAMES），供参数扫描按网格生成组合。
+ * 对局进行中不应修改规则
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public final class GameRules {
+    public static final String ICE_TRAP_TIMEOUT = "iceTrapTimeout";
+    public static final String ENTANGLED_TRAP_TIMEOUT = "entangledTrapTimeout";
+    public static final String SCARED_DURATION = "scaredDuration";
+    public static final String SHIELD_BREAK_SCARED_DURATION = "shieldBreakScaredDuration";
+    public static final String GHOST_RESPAWN_TIME = "ghostRespawnTime";
+    public static final String TELEPORT_COOLDOWN = "teleportCooldown";
+    public static final String SILK_TRAP_COOLDOWN = "silkTrapCooldown";
+    public static final String SILK_TRAP_DURATION = "silkTrapDuration";
+    public static final String ICE_TRAP_DURATION = "iceTrapDuration";
+    public static final String PACMAN_SPEED = "pacmanSpeed";
+    public static final String GHOST_SPEED = "ghostSpeed";
+    public static final String BLUE_GHOST_SPEED = "blueGhostSpeed";
+    public static final String CLONE_SPEED = "cloneSpeed";
+    public static final String GHOST_TURN_PROBABILITY = "ghostTurnProbability";
+    public static final String HORDE_RED_GHOSTS = "hordeRedGhosts";
+    public static final String HORDE_PINK_GHOSTS = "hordePinkGhosts";
+    public static final String HORDE_BLUE_GHOSTS = "hordeBlueGhosts";
+    public static final String HORDE_ORANGE_GHOSTS = "hordeOrangeGhosts";
+    public static final String CLONE_VOLLEY = "cloneVolley";
+
+    public static final List<String> NAMES = Collections.unmodifiableList(Arrays.asList(
+            ICE_TRAP_TIMEOUT, ENTANGLED_TRAP_TIMEOUT, SCARED_DURATION, SHIELD_BREAK_SCARED_DURATION,
+            GHOST_RESPAWN_TIME, TELEPORT_COOLDOWN, SILK_TRAP_COOLDOWN, SILK_TRAP_DURATION, ICE_TRAP_DURATION,
+            PACMAN_SPEED, GHOST_SPEED, BLUE_GHOST_SPEED, CLONE_SPEED, GHOST_TURN_PROBABILITY,
+            HORDE_RED_GHOSTS, HORDE_PINK_GHOSTS, HORDE_BLUE_GHOSTS, HORDE_ORANGE_GHOSTS, CLONE_VOLLEY));
+
+    // 陷阱（毫秒）：冰影陷阱不按 V 破冰的致死时间，缚丝陷阱的缠绕时间
+    private long iceTrapTimeout = 10000;
+    private long entangledTrapTimeout = 3000;
+    // 恐慌（毫秒）：克隆体击中普通鬼魂，以及击破粉色鬼魂护盾后的恐慌时间
+    private long scaredDuration = 5000;
+    private long shieldBreakScaredDuration = 15000;
+    // 鬼魂能力（毫秒）
+    private long ghostRespawnTime = 30000;
+    private long teleportCooldown = 15000;
+    private long silkTrapCooldown = 15000;
+    private long silkTrapDuration = 10000;
+    private long iceTrapDuration = 10000;
+    // 速度（像素/逻辑帧）
+    private double pacmanSpeed = 2.0;
+    private double ghostSpeed = 2.0;
+    private double blueGhostSpeed = 1.5;
+    private double cloneSpeed = 3.0;
+    // 鬼魂在路口随机转向的概率
+    private double ghostTurnProbability = 0.6;
+    // 群战模式：每关在地图自带的鬼魂之外，再在随机可达格子上生成的各类鬼魂数量
+    private int hordeRedGhosts = 0;
+    private int hordePinkGhosts = 0;
+    private int hordeBlueGhosts = 0;
+    private int hordeOrangeGhosts = 0;
+    // 群战模式：每次按 Q 不消耗技能，向最多四个方向各释放一个克隆体；0 表示使用技能次数的常规规则
+    private int cloneVolley = 0;
+
+    // 默认规则，实体在引擎注入规则之前使用；只读，不应修改
+    static final GameRules DEFAULTS = new GameRules();
+
+    /**
+     * 构造方法，所有参数取默认值
+     */
+    public GameRules() {
+    }
+
+    /**
+     * 复制构造方法
+     * @param other 源规则
+     */
+    public GameRules(GameRules other) {
+        for (String name : NAMES) {
+            set(name, other.get(name));
+        }
+    }
+
+    /**
+     * 按名称读取参数
+     * @param name 参数名（NAMES 之一）
+     * @return 参数值，时间类参数为毫秒
+     */
+    public double get(String name) {
+        switch (name) {
+            case ICE_TRAP_TIMEOUT: return iceTrapTimeout;
+            case ENTANGLED_TRAP_TIMEOUT: return entangledTrapTimeout;
+            case SCARED_DURATION: return scaredDuration;
+            case SHIELD_BREAK_SCARED_DURATION: return shieldBreakScaredDuration;
+            case GHOST_RESPAWN_TIME: return ghostRespawnTime;
+            case TELEPORT_COOLDOWN: return teleportCooldown;
+            case SILK_TRAP_COOLDOWN: return silkTrapCooldown;
+            case SILK_TRAP_DURATION: return silkTrapDuration;
+            case ICE_TRAP_DURATION: return iceTrapDuration;
+            case PACMAN_SPEED: return pacmanSpeed;
+            case GHOST_SPEED: return ghostSpeed;
+            case BLUE_GHOST_SPEED: return blueGhostSpeed;
+            case CLONE_SPEED: return cloneSpeed;
+            case GHOST_TURN_PROBABILITY: return ghostTurnProbability;
+            case HORDE_RED_GHOSTS: return hordeRedGhosts;
+            case HORDE_PINK_GHOSTS: return hordePinkGhosts;
+            case HORDE_BLUE_GHOSTS: return hordeBlueGhosts;
+            case HORDE_ORANGE_GHOSTS: return hordeOrangeGhosts;
+            case CLONE_VOLLEY: return cloneVolley;
+            default:
+                throw new IllegalArgumentException("未知的规则参数: " + name);
+        }
+    }
+
+    /**
+     * 按名称设置参数
+     * @param name 参数名（NAMES 之一）
+     * @param value 参数值，时间类参数为毫秒（取整）
+     * @return 当前对象，便于连续设置
+     */
+    public GameRules set(String name, double value) {
+        switch (name) {
+            case ICE_TRAP_TIMEOUT: iceTrapTimeout = Math.round(value); break;
+            case ENTANGLED_TRAP_TIMEOUT: entangledTrapTimeout = Math.round(value); break;
+            case SCARED_DURATION: scaredDuration = Math.round(value); break;
+            case SHIELD_BREAK_SCARED_DURATION: shieldBreakScaredDuration = Math.round(value); break;
+            case GHOST_RESPAWN_TIME: ghostRespawnTime = Math.round(value); break;
+            case TELEPORT_COOLDOWN: teleportCooldown = Math.round(value); break;
+            case SILK_TRAP_COOLDOWN: silkTrapCooldown = Math.round(value); break;
+            case SILK_TRAP_DURATION: silkTrapDuration = Math.round(value); break;
+            case ICE_TRAP_DURATION: iceTrapDuration = Math.round(value); break;
+            case PACMAN_SPEED: pacmanSpeed = value; break;
+            case GHOST_SPEED: ghostSpeed = value; break;
+            case BLUE_GHOST_SPEED: blueGhostSpeed = value; break;
+            case CLONE_SPEED: cloneSpeed = value; break;
+            case GHOST_TURN_PROBABILITY: ghostTurnProbability = value; break;
+            case HORDE_RED_GHOSTS: hordeRedGhosts = (int) Math.round(value); break;
+            case HORDE_PINK_GHOSTS: hordePinkGhosts = (int) Math.round(value); break;
+            case HORDE_BLUE_GHOSTS: hordeBlueGhosts = (int) Math.round(value); break;
+            case HORDE_ORANGE_GHOSTS: hordeOrangeGhosts = (int) Math.round(value); break;
+            case CLONE_VOLLEY: cloneVolley = (int) Math.round(value); break;
+            default:
+                throw new IllegalArgumentException("未知的规则参数: " + name);
+        }
+        return this;
+    }
+
+    public long getIceTrapTimeout() {
+        return iceTrapTimeout;
+    }
+
+    public long getEntangledTrapTimeout() {
+        return entangledTrapTimeout;
+    }
+
+    public long getScaredDuration() {
+        return scaredDuration;
+    }
+
+    public long getShieldBreakScaredDuration() {
+        return shieldBreakScaredDuration;
+    }
+
+    public long getGhostRespawnTime() {
+        return ghostRespawnTime;
+    }
+
+    public long getTeleportCooldown() {
+        return teleportCooldown;
+    }
+
+    public long getSilkTrapCooldown() {
+        return silkTrapCooldown;
+    }
+
+    public long getSilkTrapDuration() {
+        return silkTrapDuration;
+    }
+
+    public long getIceTrapDuration() {
+        return iceTrapDuration;
+    }
+
+    public double getPacmanSpeed() {
+        return pacmanSpeed;
+    }
+
+    public double getGhostSpeed() {
+        return ghostSpeed;
+    }
+
+    public double getBlueGhostSpeed() {
+        return blueGhostSpeed;
+    }
+
+    public double getCloneSpeed() {
+        return cloneSpeed;
+    }
+
+    public double getGhostTurnProbability() {
+        return ghostTurnProbability;
+    }
+
+    public int getHordeRedGhosts() {
+        return hordeRedGhosts;
+    }
+
+    public int getHordePinkGhosts() {
+        return hordePinkGhosts;
+    }
+
+    public int getHordeBlueGhosts() {
+        return hordeBlueGhosts;
+    }
+
+    public int getHordeOrangeGhosts() {
+        return hordeOrangeGhosts;
+    }
+
+    /**
+     * 获取群战模式下每次按 Q 释放的克隆体数
+     * @return 克隆体数（最多 4），0 表示常规规则
+     */
+    public int getCloneVolley() {
+        return cloneVolley;
+    }
+
+    /**
+     * 获取群战模式每关额外生成的鬼魂总数
+     * @return 四类鬼魂数量之和，0 表示不生成
+     */
+    public int getHordeGhostCount() {
+        return hordeRedGhosts + hordePinkGhosts + hordeBlueGhosts + hordeOrangeGhosts;
+    }
+
+    /**
+     * 判断是否所有参数都取默认值
+     * 非默认规则（例如群战模式）下的成绩与常规对局不可比，不计入常规排行榜
+     * @return 全部为默认值时返回 true
+     */
+    public boolean isDefault() {
+        for (String name : NAMES) {
+            if (get(name) != DEFAULTS.get(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 输出与默认值不同的参数，如 "ghostSpeed=2.5 scaredDuration=8000"
+     * @return 描述，全部为默认值时返回 "default"
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (String name : NAMES) {
+            double value = get(name);
+            if (value != DEFAULTS.get(name)) {
+                if (builder.length() > 0) {
+                    builder.append(' ');
+                }
+                builder.append(name).append('=').append(format(value));
+            }
+        }
+        return builder.length() == 0 ? "default" : builder.toString();
+    }
+
+    static String format(double value) {
+        return value == Math.rint(value) ? Long.toString((long) value) : Double.toString(value);
+    }
+}
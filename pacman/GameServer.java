@@ -0,0 +1,496 @@
+package pacman;
+
+import javafx.scene.input.KeyCode;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 权威游戏服务器
+ * 基于 NIO Selector 的非阻塞服务器，每个连接对应服务器上的一个无界面游戏引擎。
+ * 接收线程只负责接受连接，连接按轮询分配给若干事件循环线程；
+ * 每个事件循环在自己的线程上读取输入、按固定步长推进所有引擎并发送状态，
+ * 引擎只会被一个线程访问。每个连接复用一对直接缓冲区，收发消息不创建对象
+ *
+ * 输入按客户端标注的逻辑帧生效：标注的是未来帧时先暂存，到该帧再处理；已经过去的帧立即处理。
+ * 客户端发送 SYNC_REQUEST 后会定期收到完整引擎状态，用于本地预测和回滚（见 RollbackClient）
+ *
+ * 任何连接都可以发送 SPECTATE 放弃自己的对局改为观战，连接随即移交给被观战对局
+ * 所在的事件循环；观战者只收到相对其最后确认帧的增量（见 SpectatorBroadcaster）
+ *
+ * 用法：java pacman.GameServer [端口] [事件循环数]
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public class GameServer {
+    private static final int READ_BUFFER_SIZE = 1024;
+    private static final int WRITE_BUFFER_SIZE = 16 * 1024;
+    // 落后超过该帧数时放弃追赶，直接对齐到当前时间
+    private static final int MAX_CATCH_UP_TICKS = 5;
+    // 每个连接最多暂存的未来输入数，超出时立即处理
+    private static final int MAX_PENDING_INPUTS = 32;
+    // 同步消息需要预留的发送缓冲区空间
+    private static final int SYNC_RESERVE = 4 * 1024;
+
+    private final ServerSocketChannel serverChannel;
+    private final EventLoop[] loops;
+    private final AtomicLong seeds;
+    private final AtomicInteger matchIds;
+    private final Map<Integer, Connection> matches;
+    private volatile boolean running;
+    private Thread acceptor;
+
+    /**
+     * 单个客户端连接：玩家连接拥有自己的对局引擎，观战连接的引擎为 null
+     */
+    private static final class Connection {
+        private final SocketChannel channel;
+        private final int matchId;
+        private final ByteBuffer in;
+        private final ByteBuffer out;
+        private final List<Connection> spectators;
+        private GameEngine engine;
+        private EventLoop loop;
+        private SelectionKey key;
+        private int lastInputSequence;
+        private boolean closed;
+        // 标注为未来逻辑帧的输入，按到达顺序暂存
+        private final int[] pendingTicks = new int[MAX_PENDING_INPUTS];
+        private final int[] pendingSequences = new int[MAX_PENDING_INPUTS];
+        private final int[] pendingCodes = new int[MAX_PENDING_INPUTS];
+        private int pendingCount;
+        private int syncInterval;
+        // 对局：观战广播器；观战者：被观战的对局和最后确认的逻辑帧
+        private SpectatorBroadcaster broadcaster;
+        private Connection watching;
+        private int ackedTick = -1;
+
+        private Connection(SocketChannel channel, long seed, int matchId) {
+            this.channel = channel;
+            this.matchId = matchId;
+            this.engine = new GameEngine(seed);
+            engine.setKeyframeInterval(0);
+            engine.initialize();
+            this.in = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+            this.out = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+            this.spectators = new ArrayList<>();
+            NetProtocol.writeWelcome(out, seed, matchId);
+        }
+    }
+
+    /**
+     * 事件循环：一个 Selector 和它负责的所有连接
+     */
+    private final class EventLoop implements Runnable {
+        private final Selector selector;
+        private final ConcurrentLinkedQueue<SocketChannel> pending;
+        private final ConcurrentLinkedQueue<Connection> pendingSpectators;
+        private final List<Connection> connections;
+        private final AtomicLong ticks;
+        private final AtomicLong bytesSent;
+
+        private EventLoop() throws IOException {
+            this.selector = Selector.open();
+            this.pending = new ConcurrentLinkedQueue<>();
+            this.pendingSpectators = new ConcurrentLinkedQueue<>();
+            this.connections = new ArrayList<>();
+            this.ticks = new AtomicLong();
+            this.bytesSent = new AtomicLong();
+        }
+
+        private void add(SocketChannel channel) {
+            pending.add(channel);
+            selector.wakeup();
+        }
+
+        private void addSpectator(Connection spectator) {
+            pendingSpectators.add(spectator);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            long tickNanos = TimeUnit.MILLISECONDS.toNanos(GameEngine.TICK_MILLIS);
+            long nextTick = System.nanoTime() + tickNanos;
+            try {
+                while (running) {
+                    long waitMillis = TimeUnit.NANOSECONDS.toMillis(nextTick - System.nanoTime());
+                    if (waitMillis > 0) {
+                        selector.select(waitMillis);
+                    } else {
+                        selector.selectNow();
+                    }
+                    registerPending();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isReadable()) {
+                                read(connection);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                flush(connection);
+                            }
+                        } catch (IOException e) {
+                            disconnect(connection);
+                        } catch (RuntimeException e) {
+                            // 单个连接的异常数据不能让事件循环退出，只断开该连接
+                            System.out.println("连接处理异常，断开连接: " + e);
+                            disconnect(connection);
+                        }
+                    }
+                    long now = System.nanoTime();
+                    if (now - nextTick > MAX_CATCH_UP_TICKS * tickNanos) {
+                        nextTick = now;
+                    }
+                    while (now >= nextTick) {
+                        tick();
+                        nextTick += tickNanos;
+                    }
+                }
+            } catch (IOException e) {
+                System.out.println("事件循环异常退出: " + e.getMessage());
+            } finally {
+                for (Connection connection : new ArrayList<>(connections)) {
+                    disconnect(connection);
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                    // 关闭时的异常不影响退出
+                }
+            }
+        }
+
+        private void registerPending() {
+            SocketChannel channel;
+            while ((channel = pending.poll()) != null) {
+                try {
+                    channel.configureBlocking(false);
+                    channel.socket().setTcpNoDelay(true);
+                    Connection connection = new Connection(channel, seeds.getAndIncrement(), matchIds.getAndIncrement());
+                    connection.loop = this;
+                    connection.key = channel.register(selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE, connection);
+                    connections.add(connection);
+                    matches.put(connection.matchId, connection);
+                } catch (IOException e) {
+                    try {
+                        channel.close();
+                    } catch (IOException ignored) {
+                        // 连接已不可用
+                    }
+                }
+            }
+            Connection spectator;
+            while ((spectator = pendingSpectators.poll()) != null) {
+                try {
+                    // 被观战的对局可能在移交途中已经结束
+                    if (spectator.watching.closed) {
+                        throw new IOException("对局已结束");
+                    }
+                    spectator.loop = this;
+                    spectator.key = spectator.channel.register(selector,
+                            SelectionKey.OP_READ | SelectionKey.OP_WRITE, spectator);
+                    spectator.watching.spectators.add(spectator);
+                } catch (IOException e) {
+                    disconnect(spectator);
+                }
+            }
+        }
+
+        private void read(Connection connection) throws IOException {
+            ByteBuffer in = connection.in;
+            if (connection.channel.read(in) < 0) {
+                throw new IOException("连接已关闭");
+            }
+            in.flip();
+            int length;
+            while ((length = NetProtocol.completeFrame(in)) > 0) {
+                int frameEnd = in.position() + length;
+                in.getShort();
+                byte type = in.get();
+                if (type == NetProtocol.INPUT && length >= NetProtocol.INPUT_SIZE && connection.engine != null) {
+                    int sequence = in.getInt();
+                    int clientTick = in.getInt();
+                    int code = in.getShort() & 0xFFFF;
+                    if (clientTick > connection.engine.getTick() && connection.pendingCount < MAX_PENDING_INPUTS) {
+                        int index = connection.pendingCount++;
+                        connection.pendingTicks[index] = clientTick;
+                        connection.pendingSequences[index] = sequence;
+                        connection.pendingCodes[index] = code;
+                    } else {
+                        applyInput(connection, sequence, code);
+                    }
+                } else if (type == NetProtocol.SYNC_REQUEST && length >= NetProtocol.SYNC_REQUEST_SIZE) {
+                    connection.syncInterval = in.getShort() & 0xFFFF;
+                } else if (type == NetProtocol.ACK && length >= NetProtocol.ACK_SIZE) {
+                    connection.ackedTick = Math.max(connection.ackedTick, in.getInt());
+                } else if (type == NetProtocol.SPECTATE && length >= NetProtocol.SPECTATE_SIZE
+                        && connection.engine != null) {
+                    Connection match = matches.get(in.getInt());
+                    if (match != null && match != connection) {
+                        // 连接移交给对局所在的事件循环，缓冲区中剩余的消息一并丢弃
+                        startSpectating(connection, match);
+                        return;
+                    }
+                }
+                in.position(frameEnd);
+            }
+            if (in.hasRemaining() && in.position() == 0 && in.limit() == in.capacity()) {
+                throw new IOException("消息过长");
+            }
+            in.compact();
+        }
+
+        private void applyInput(Connection connection, int sequence, int code) {
+            KeyCode key = InputLog.keyForCode(code);
+            if (key != null) {
+                connection.engine.handleKeyInput(key);
+            }
+            connection.lastInputSequence = sequence;
+        }
+
+        private void applyDueInputs(Connection connection) {
+            long tick = connection.engine.getTick();
+            int kept = 0;
+            for (int i = 0; i < connection.pendingCount; i++) {
+                if (connection.pendingTicks[i] <= tick) {
+                    applyInput(connection, connection.pendingSequences[i], connection.pendingCodes[i]);
+                } else {
+                    connection.pendingTicks[kept] = connection.pendingTicks[i];
+                    connection.pendingSequences[kept] = connection.pendingSequences[i];
+                    connection.pendingCodes[kept] = connection.pendingCodes[i];
+                    kept++;
+                }
+            }
+            connection.pendingCount = kept;
+        }
+
+        private void flush(Connection connection) throws IOException {
+            ByteBuffer out = connection.out;
+            out.flip();
+            bytesSent.addAndGet(connection.channel.write(out));
+            out.compact();
+            // 还有未发出的数据时继续关注可写事件
+            connection.key.interestOps(out.position() > 0
+                    ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                    : SelectionKey.OP_READ);
+        }
+
+        private void tick() {
+            for (int i = connections.size() - 1; i >= 0; i--) {
+                Connection connection = connections.get(i);
+                if (connection.pendingCount > 0) {
+                    applyDueInputs(connection);
+                }
+                connection.engine.update(GameEngine.TICK_MILLIS);
+                // 发送缓冲区放不下时丢弃本帧状态，下一帧的完整状态会覆盖它
+                if (connection.out.remaining() >= NetProtocol.MAX_STATE_SIZE) {
+                    NetProtocol.writeState(connection.out, connection.engine, connection.lastInputSequence);
+                }
+                if (connection.syncInterval > 0 && connection.engine.getTick() % connection.syncInterval == 0
+                        && connection.out.remaining() >= SYNC_RESERVE) {
+                    NetProtocol.writeSync(connection.out, connection.engine, connection.lastInputSequence);
+                }
+                try {
+                    flush(connection);
+                } catch (IOException e) {
+                    disconnect(connection);
+                    continue;
+                }
+                if (!connection.spectators.isEmpty()) {
+                    broadcast(connection);
+                }
+            }
+            ticks.addAndGet(connections.size());
+        }
+
+        private void broadcast(Connection match) {
+            if (match.broadcaster == null) {
+                match.broadcaster = new SpectatorBroadcaster();
+            }
+            match.broadcaster.capture(match.engine);
+            for (int i = match.spectators.size() - 1; i >= 0; i--) {
+                Connection spectator = match.spectators.get(i);
+                // 放不下时跳过本帧：观战者的基准不变，之后的增量仍然正确
+                match.broadcaster.writeDelta(spectator.out, spectator.ackedTick);
+                try {
+                    flush(spectator);
+                } catch (IOException e) {
+                    disconnect(spectator);
+                }
+            }
+        }
+
+        private void startSpectating(Connection connection, Connection match) {
+            connections.remove(connection);
+            matches.remove(connection.matchId);
+            closeSpectators(connection);
+            connection.key.cancel();
+            connection.key = null;
+            connection.engine = null;
+            connection.in.clear();
+            connection.watching = match;
+            match.loop.addSpectator(connection);
+        }
+
+        private void closeSpectators(Connection match) {
+            for (int i = match.spectators.size() - 1; i >= 0; i--) {
+                disconnect(match.spectators.get(i));
+            }
+        }
+
+        private void disconnect(Connection connection) {
+            connection.closed = true;
+            if (connection.watching != null) {
+                connection.watching.spectators.remove(connection);
+            } else {
+                connections.remove(connection);
+                matches.remove(connection.matchId, connection);
+                closeSpectators(connection);
+            }
+            if (connection.key != null) {
+                connection.key.cancel();
+            }
+            try {
+                connection.channel.close();
+            } catch (IOException ignored) {
+                // 连接已关闭
+            }
+        }
+    }
+
+    /**
+     * 构造方法，绑定端口但不开始服务
+     * @param port 端口，0 表示由系统分配
+     * @param loopCount 事件循环线程数
+     * @throws IOException 绑定失败
+     */
+    public GameServer(int port, int loopCount) throws IOException {
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        this.loops = new EventLoop[loopCount];
+        for (int i = 0; i < loopCount; i++) {
+            loops[i] = new EventLoop();
+        }
+        this.seeds = new AtomicLong(System.nanoTime());
+        this.matchIds = new AtomicInteger();
+        this.matches = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * 启动接收线程和事件循环线程
+     */
+    public void start() {
+        running = true;
+        for (int i = 0; i < loops.length; i++) {
+            Thread thread = new Thread(loops[i], "game-server-loop-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        acceptor = new Thread(() -> {
+            int next = 0;
+            while (running) {
+                try {
+                    SocketChannel channel = serverChannel.accept();
+                    loops[next].add(channel);
+                    next = (next + 1) % loops.length;
+                } catch (IOException e) {
+                    if (running) {
+                        System.out.println("接受连接失败: " + e.getMessage());
+                    }
+                }
+            }
+        }, "game-server-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * 停止服务器
+     */
+    public void stop() {
+        running = false;
+        try {
+            serverChannel.close();
+        } catch (IOException ignored) {
+            // 已关闭
+        }
+        for (EventLoop loop : loops) {
+            loop.selector.wakeup();
+        }
+    }
+
+    /**
+     * 获取实际监听的端口
+     * @return 端口
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * 获取所有事件循环已推进的引擎帧数之和
+     * @return 帧数
+     */
+    public long getTicks() {
+        long total = 0;
+        for (EventLoop loop : loops) {
+            total += loop.ticks.get();
+        }
+        return total;
+    }
+
+    /**
+     * 获取已发送的字节数
+     * @return 字节数
+     */
+    public long getBytesSent() {
+        long total = 0;
+        for (EventLoop loop : loops) {
+            total += loop.bytesSent.get();
+        }
+        return total;
+    }
+
+    /**
+     * 主方法
+     * @param args [端口] [事件循环数]
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7777;
+        int loopCount = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        LevelLoader.headless().load(1);
+        GameServer server = new GameServer(port, loopCount);
+        server.start();
+        System.out.println("服务器已启动，端口 " + server.getPort() + "，事件循环 " + loopCount);
+        long lastTicks = 0;
+        long lastBytes = 0;
+        while (true) {
+            Thread.sleep(5000);
+            long ticks = server.getTicks();
+            long bytes = server.getBytesSent();
+            System.out.printf("%.0f 引擎帧/秒, 发送 %.1f KB/s%n",
+                    (ticks - lastTicks) / 5.0, (bytes - lastBytes) / 5.0 / 1024);
+            lastTicks = ticks;
+            lastBytes = bytes;
+        }
+    }
+}
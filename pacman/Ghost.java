@@ -3,7 +3,7 @@ package pacman;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
 import java.util.List;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 
 /**
  * Abstract Base Class for Ghosts
@@ -23,6 +23,24 @@ public abstract class Ghost extends Entity {
     private boolean entangled = false;
     private long entangledTimer = 0;
     
+    // Shared game random source, so a seed reproduces every ghost decision
+    protected final GameRandom random;
+
+    // Spawn position, used when the ghost is reset or respawns
+    private final double startX;
+    private final double startY;
+
+    // Externally chosen turn (e.g. a learning agent); null means the random AI decides
+    private Direction steering;
+
+    // Spatial index of the ghost list passed to update; null means testing every ghost
+    private SpatialGrid grid;
+
+    // Shared copy of Direction.values(), which allocates a new array on every call
+    private static final Direction[] DIRECTIONS = Direction.values();
+    // Scratch space for the open directions at an intersection, reused every tick
+    private final Direction[] possibleDirections = new Direction[DIRECTIONS.length];
+
     // Pac-Man's position information for AI decision-making
     protected double pacmanX = 0;
     protected double pacmanY = 0;
@@ -38,7 +56,26 @@ public abstract class Ghost extends Entity {
      * @param image Image resource
      */
     public Ghost(double x, double y, double width, double height, Direction initialDirection, Image image) {
+        this(x, y, width, height, initialDirection, image, new GameRandom());
+    }
+
+    /**
+     * Constructor with a shared random source
+     *
+     * @param x Initial X coordinate
+     * @param y Initial Y coordinate
+     * @param width Width
+     * @param height Height
+     * @param initialDirection Initial direction
+     * @param image Image resource
+     * @param random Game random source used for all AI decisions
+     */
+    public Ghost(double x, double y, double width, double height, Direction initialDirection, Image image,
+                 GameRandom random) {
         super(x, y, width, height, initialDirection, image);
+        this.random = random;
+        this.startX = x;
+        this.startY = y;
     }
 
     /**
@@ -119,48 +156,74 @@ public abstract class Ghost extends Entity {
         
         // Check for wall collisions or boundary collisions
         boolean collided = false;
-        for (Wall wall : walls) {
-            if (getX() < wall.getX() + wall.getWidth() &&
-                getX() + getWidth() > wall.getX() &&
-                getY() < wall.getY() + wall.getHeight() &&
-                getY() + getHeight() > wall.getY()) {
-                collided = true;
-                break;
+        if (maze != null) {
+            // Tile lookup on the compiled maze, same result as testing every wall
+            collided = maze.overlapsWall(getX(), getY(), getWidth(), getHeight());
+        } else {
+            for (Wall wall : walls) {
+                if (getX() < wall.getX() + wall.getWidth() &&
+                    getX() + getWidth() > wall.getX() &&
+                    getY() < wall.getY() + wall.getHeight() &&
+                    getY() + getHeight() > wall.getY()) {
+                    collided = true;
+                    break;
+                }
             }
         }
         
         // Check for boundary collision
-        if (getX() <= 0 || getX() + getWidth() >= 19 * 32 || getY() <= 0 || getY() + getHeight() >= 21 * 32) {
-            collided = true;
+        // Modification reason: Tunnels and teleport pads come from the level's portal table,
+        // so the map edge only blocks ghosts where no portal exists
+        if (maze == null) {
+            if (getX() <= 0 || getX() + getWidth() >= 19 * 32 || getY() <= 0 || getY() + getHeight() >= 21 * 32) {
+                collided = true;
+            }
         }
         
         // Check for collisions with other ghosts
-        for (Ghost otherGhost : ghosts) {
-            if (otherGhost != this) { // 跳过自身
-                if (getX() < otherGhost.getX() + otherGhost.getWidth() &&
-                    getX() + getWidth() > otherGhost.getX() &&
-                    getY() < otherGhost.getY() + otherGhost.getHeight() &&
-                    getY() + getHeight() > otherGhost.getY()) {
+        // Modification reason: With a spatial grid only the ghosts in the surrounding cells are tested,
+        // so hordes of ghosts no longer cost a test against every other ghost
+        if (grid != null) {
+            int candidates = grid.query(getX(), getY(), getWidth(), getHeight());
+            for (int i = 0; i < candidates; i++) {
+                Ghost otherGhost = ghosts.get(grid.resultAt(i));
+                if (otherGhost != this && overlaps(otherGhost)) {
+                    collided = true;
+                    break;
+                }
+            }
+        } else {
+            for (Ghost otherGhost : ghosts) {
+                if (otherGhost != this && overlaps(otherGhost)) { // 跳过自身
                     collided = true;
                     break;
                 }
             }
         }
         
+        // Cross portals only after the move is known to be legal
+        if (!collided && !applyPortals()) {
+            collided = true;
+        }
+
         // If collided, roll back position and randomly change direction
         if (collided) {
             setX(oldX);
             setY(oldY);
             
             // Randomly select new direction
-            Direction[] directions = Direction.values();
+            FlightEvents.GhostDecisionEvent decision = new FlightEvents.GhostDecisionEvent();
+            decision.begin();
+            Direction blockedDirection = getDirection();
+            Direction[] directions = DIRECTIONS;
             Direction newDirection;
             do {
-                newDirection = directions[(int)(Math.random() * directions.length)];
+                newDirection = directions[random.nextInt(directions.length)];
             } while (newDirection == getDirection().getOpposite()); // 避免直接反向
             
             setDirection(newDirection);
             updateVelocity();
+            recordDecision(decision, "blocked", blockedDirection, directions.length - 1);
         }
         
         // Handle other special state timers
@@ -200,12 +263,27 @@ public abstract class Ghost extends Entity {
      * @param walls List of wall objects
      */
     private void checkIntersectionAndRandomTurn(List<Wall> walls) {
+        FlightEvents.GhostDecisionEvent decision = new FlightEvents.GhostDecisionEvent();
+        decision.begin();
+
+        // An external controller replaces the random turn whenever its direction is open
+        if (steering != null) {
+            if (steering != getDirection() && canMoveInDirection(steering, walls)) {
+                Direction previous = getDirection();
+                setDirection(steering);
+                updateVelocity();
+                recordDecision(decision, "steering", previous, 1);
+            }
+            return;
+        }
+
         // Collect all movable directions (excluding opposite direction)
-        List<Direction> possibleDirections = new ArrayList<>();
+        // Modification reason: Reuse a per-ghost array instead of allocating a list for every ghost every tick
+        int count = 0;
         Direction currentDir = getDirection();
         
         // Check all four directions
-        for (Direction dir : Direction.values()) {
+        for (Direction dir : DIRECTIONS) {
             // Skip opposite direction
             if (dir == currentDir.getOpposite()) {
                 continue;
@@ -213,23 +291,49 @@ public abstract class Ghost extends Entity {
             
             // Check if movement to this direction is possible
             if (canMoveInDirection(dir, walls)) {
-                possibleDirections.add(dir);
+                possibleDirections[count++] = dir;
             }
         }
         
         // If possible directions >1, it means at an intersection, need to perform random turning decision
-        if (possibleDirections.size() > 1) {
+        if (count > 1) {
+            int options = count;
             // Random chance to turn: 3/5 probability to turn, 2/5 to stay
-            if (Math.random() < 0.6) { // 3/5 = 0.6
-                // Remove current direction and randomly select one from remaining
-                possibleDirections.remove(currentDir);
-                if (!possibleDirections.isEmpty()) {
-                    int randomIndex = (int)(Math.random() * possibleDirections.size());
-                    setDirection(possibleDirections.get(randomIndex));
+            if (random.nextDouble() < rules.getGhostTurnProbability()) { // 默认 3/5 = 0.6
+                // Remove current direction and randomly select one from remaining, keeping their order
+                int remaining = 0;
+                for (int i = 0; i < count; i++) {
+                    if (possibleDirections[i] != currentDir) {
+                        possibleDirections[remaining++] = possibleDirections[i];
+                    }
+                }
+                if (remaining > 0) {
+                    int randomIndex = random.nextInt(remaining);
+                    setDirection(possibleDirections[randomIndex]);
                     updateVelocity();
                 }
             }
             // Otherwise, don't turn and keep current direction
+            recordDecision(decision, "intersection", currentDir, options);
+        }
+    }
+
+    /**
+     * Commits a JFR decision event if recording is enabled
+     * @param decision Event started before the decision
+     * @param trigger What caused the decision (intersection, steering or blocked)
+     * @param from Direction before the decision
+     * @param options Number of directions that were available
+     */
+    private void recordDecision(FlightEvents.GhostDecisionEvent decision, String trigger, Direction from, int options) {
+        decision.end();
+        if (decision.shouldCommit()) {
+            decision.ghost = getClass().getSimpleName();
+            decision.trigger = trigger;
+            decision.fromDirection = String.valueOf(from);
+            decision.toDirection = String.valueOf(getDirection());
+            decision.options = options;
+            decision.commit();
         }
     }
     
@@ -262,6 +366,9 @@ public abstract class Ghost extends Entity {
         }
         
         // Check for wall collisions
+        if (maze != null) {
+            return !maze.overlapsWall(testX, testY, getWidth(), getHeight());
+        }
         for (Wall wall : walls) {
             if (testX < wall.getX() + wall.getWidth() &&
                 testX + getWidth() > wall.getX() &&
@@ -274,6 +381,63 @@ public abstract class Ghost extends Entity {
         return true;
     }
 
+    public double getStartX() {
+        return startX;
+    }
+
+    public double getStartY() {
+        return startY;
+    }
+
+    /**
+     * Sets the balance rules and applies the base speed they define
+     * @param rules Balance rules injected by the engine
+     */
+    @Override
+    public void setRules(GameRules rules) {
+        super.setRules(rules);
+        setMovementSpeed(baseSpeed());
+    }
+
+    /**
+     * Gets the normal movement speed of this ghost type under the current rules
+     * @return Speed in pixels per tick
+     */
+    protected double baseSpeed() {
+        return rules.getGhostSpeed();
+    }
+
+    /**
+     * Sets the externally controlled turn direction
+     * The ghost turns as soon as the direction is open instead of turning randomly at intersections.
+     * Steering is not part of the saved state or the input log, so controlled games cannot be replayed
+     * @param steering Desired direction, or null to hand control back to the random AI
+     */
+    public void setSteering(Direction steering) {
+        this.steering = steering;
+    }
+
+    /**
+     * Sets the spatial index used for ghost-to-ghost collisions
+     * The grid must index the same list that is passed to update, by list position,
+     * and be kept up to date as ghosts move
+     * @param grid Spatial grid, or null to test every ghost
+     */
+    public void setSpatialGrid(SpatialGrid grid) {
+        this.grid = grid;
+    }
+
+    private boolean overlaps(Ghost otherGhost) {
+        return getX() < otherGhost.getX() + otherGhost.getWidth() &&
+               getX() + getWidth() > otherGhost.getX() &&
+               getY() < otherGhost.getY() + otherGhost.getHeight() &&
+               getY() + getHeight() > otherGhost.getY();
+    }
+
+    public Direction getSteering() {
+        return steering;
+    }
+
     public boolean isScared() {
         return scared;
     }
@@ -316,6 +480,32 @@ public abstract class Ghost extends Entity {
         this.frozenTimer = frozenTimer;
     }
 
+    @Override
+    public void writeState(ByteBuffer buffer) {
+        super.writeState(buffer);
+        buffer.put((byte) (scared ? 1 : 0));
+        buffer.putLong(scaredTimer);
+        buffer.put((byte) (frozen ? 1 : 0));
+        buffer.putLong(frozenTimer);
+        buffer.put((byte) (entangled ? 1 : 0));
+        buffer.putLong(entangledTimer);
+        buffer.putDouble(pacmanX);
+        buffer.putDouble(pacmanY);
+    }
+
+    @Override
+    public void readState(ByteBuffer buffer) {
+        super.readState(buffer);
+        scared = buffer.get() != 0;
+        scaredTimer = buffer.getLong();
+        frozen = buffer.get() != 0;
+        frozenTimer = buffer.getLong();
+        entangled = buffer.get() != 0;
+        entangledTimer = buffer.getLong();
+        pacmanX = buffer.getDouble();
+        pacmanY = buffer.getDouble();
+    }
+
     public boolean isEntangled() {
         return entangled;
     }
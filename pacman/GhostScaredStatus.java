@@ -1,5 +1,7 @@
 package pacman;
 
+import java.nio.ByteBuffer;
+
 /**
  * 鬼魂恐慌状态类
  * 管理鬼魂处于恐慌状态的开始时间、持续时间和有效性
@@ -11,14 +13,25 @@ package pacman;
 public class GhostScaredStatus {
     private long startTime;
     private long duration;
+    private final GameClock clock;
 
     /**
      * 构造方法
      * @param duration 恐慌状态持续时间（毫秒）
      */
     public GhostScaredStatus(long duration) {
+        this(duration, GameClock.SYSTEM);
+    }
+
+    /**
+     * 构造方法（使用游戏时钟）
+     * @param duration 恐慌状态持续时间（毫秒）
+     * @param clock 游戏时钟
+     */
+    public GhostScaredStatus(long duration, GameClock clock) {
+        this.clock = clock;
         this.duration = duration;
-        this.startTime = System.currentTimeMillis();
+        this.startTime = clock.currentTimeMillis();
     }
 
     /**
@@ -26,7 +39,7 @@ public class GhostScaredStatus {
      * @return 是否处于恐慌状态
      */
     public boolean isActive() {
-        long elapsed = System.currentTimeMillis() - startTime;
+        long elapsed = clock.currentTimeMillis() - startTime;
         return elapsed < duration;
     }
 
@@ -35,7 +48,7 @@ public class GhostScaredStatus {
      * @return 剩余时间（毫秒）
      */
     public long getRemainingTime() {
-        long elapsed = System.currentTimeMillis() - startTime;
+        long elapsed = clock.currentTimeMillis() - startTime;
         return duration - elapsed;
     }
 
@@ -47,6 +60,28 @@ public class GhostScaredStatus {
         return startTime + duration;
     }
 
+    /**
+     * 写入状态快照
+     * @param buffer 目标缓冲区
+     */
+    public void writeState(ByteBuffer buffer) {
+        buffer.putLong(startTime);
+        buffer.putLong(duration);
+    }
+
+    /**
+     * 从状态快照还原
+     * @param buffer 源缓冲区
+     * @param clock 游戏时钟
+     * @return 恐慌状态
+     */
+    public static GhostScaredStatus readState(ByteBuffer buffer, GameClock clock) {
+        GhostScaredStatus status = new GhostScaredStatus(0, clock);
+        status.startTime = buffer.getLong();
+        status.duration = buffer.getLong();
+        return status;
+    }
+
     /**
      * 获取开始时间（用于测试）
      * @return 开始时间戳
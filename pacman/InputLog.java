@@ -0,0 +1,408 @@
+package pacman;
+
+import javafx.scene.input.KeyCode;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 输入录像
+ * 按逻辑帧序号记录玩家按键，配合随机数种子即可在无界面引擎中完整重现一局游戏
+ *
+ * 同时保存定期的完整状态关键帧，回放时可以从最近的关键帧直接跳转。
+ * 录制时的平衡参数中与默认值不同的部分（例如群战模式）写在文件头，回放时按同样的规则重建引擎
+ *
+ * 文件格式（所有变长整数均为无符号 LEB128）：
+ * <pre>
+ *   "PMR3"          魔数（"PMR2" 为不含规则的旧格式，"PMR1" 另外不含关键帧，仍可读取，按默认规则回放）
+ *   long            随机数种子（大端）
+ *   varint          每个逻辑帧的毫秒数
+ *   varint          与默认值不同的规则参数数量
+ *   { varint, bytes, long } 参数名长度、参数名（UTF-8）、参数值（double 的位模式，大端）
+ *   varint          录像结束时的逻辑帧序号
+ *   varint          按键数量
+ *   { varint, varint } 与上一个按键的帧序号差值、KeyCode 编码
+ *   varint          关键帧数量
+ *   { varint, varint, bytes } 与上一个关键帧的帧序号差值、状态长度、状态快照
+ * </pre>
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public final class InputLog {
+    private static final byte[] MAGIC = {'P', 'M', 'R', '3'};
+    private static final byte LEGACY_VERSION = '1';
+    private static final byte KEYFRAME_VERSION = '2';
+
+    // KeyCode 编码到枚举的反查表
+    private static final Map<Integer, KeyCode> KEYS_BY_CODE = new HashMap<>();
+
+    static {
+        for (KeyCode key : KeyCode.values()) {
+            KEYS_BY_CODE.putIfAbsent(key.getCode(), key);
+        }
+    }
+
+    /**
+     * 根据 KeyCode 编码查找按键
+     * @param code KeyCode.getCode() 的值
+     * @return 按键，未知编码返回 null
+     */
+    public static KeyCode keyForCode(int code) {
+        return KEYS_BY_CODE.get(code);
+    }
+
+    private final long seed;
+    private final long tickMillis;
+    private final GameRules rules;
+    private long endTick;
+    private long[] ticks;
+    private int[] codes;
+    private int size;
+    private long[] keyframeTicks;
+    private byte[][] keyframes;
+    private int keyframeCount;
+
+    /**
+     * 构造方法
+     * @param seed 随机数种子
+     * @param tickMillis 每个逻辑帧的毫秒数
+     */
+    public InputLog(long seed, long tickMillis) {
+        this(seed, tickMillis, GameRules.DEFAULTS);
+    }
+
+    /**
+     * 构造方法，记录录制时使用的平衡参数
+     * @param seed 随机数种子
+     * @param tickMillis 每个逻辑帧的毫秒数
+     * @param rules 平衡参数，保存一份副本
+     */
+    public InputLog(long seed, long tickMillis, GameRules rules) {
+        this.seed = seed;
+        this.tickMillis = tickMillis;
+        this.rules = new GameRules(rules);
+        this.ticks = new long[64];
+        this.codes = new int[64];
+        this.keyframeTicks = new long[16];
+        this.keyframes = new byte[16][];
+    }
+
+    /**
+     * 记录一次按键
+     * @param tick 按键发生时已完成的逻辑帧数
+     * @param key 按键
+     */
+    public void record(long tick, KeyCode key) {
+        if (size > 0 && tick < ticks[size - 1]) {
+            throw new IllegalArgumentException("按键帧序号必须递增: " + tick);
+        }
+        if (size == ticks.length) {
+            ticks = Arrays.copyOf(ticks, size * 2);
+            codes = Arrays.copyOf(codes, size * 2);
+        }
+        ticks[size] = tick;
+        codes[size] = key.getCode();
+        size++;
+        endTick = Math.max(endTick, tick);
+    }
+
+    /**
+     * 丢弃指定帧之后的按键，用于状态回退到较早的帧
+     * @param tick 保留到该帧（含）
+     */
+    public void truncate(long tick) {
+        while (size > 0 && ticks[size - 1] > tick) {
+            size--;
+        }
+        while (keyframeCount > 0 && keyframeTicks[keyframeCount - 1] > tick) {
+            keyframes[--keyframeCount] = null;
+        }
+        endTick = tick;
+    }
+
+    /**
+     * 添加关键帧
+     * @param tick 关键帧对应的逻辑帧序号，必须递增
+     * @param state GameEngine.snapshot() 得到的状态快照
+     */
+    public void addKeyframe(long tick, byte[] state) {
+        if (keyframeCount > 0 && tick <= keyframeTicks[keyframeCount - 1]) {
+            throw new IllegalArgumentException("关键帧帧序号必须递增: " + tick);
+        }
+        if (keyframeCount == keyframeTicks.length) {
+            keyframeTicks = Arrays.copyOf(keyframeTicks, keyframeCount * 2);
+            keyframes = Arrays.copyOf(keyframes, keyframeCount * 2);
+        }
+        keyframeTicks[keyframeCount] = tick;
+        keyframes[keyframeCount] = state;
+        keyframeCount++;
+        endTick = Math.max(endTick, tick);
+    }
+
+    /**
+     * 查找不晚于指定帧的最后一个关键帧
+     * @param tick 逻辑帧序号
+     * @return 关键帧序号，没有时返回 -1
+     */
+    public int findKeyframe(long tick) {
+        int low = 0;
+        int high = keyframeCount - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (keyframeTicks[mid] <= tick) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 查找第一个帧序号不早于指定帧的按键
+     * @param tick 逻辑帧序号
+     * @return 按键序号，全部早于该帧时返回 size()
+     */
+    public int findInput(long tick) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ticks[mid] < tick) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 编码为二进制
+     * @return 录像字节
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(32 + size * 3);
+        out.write(MAGIC, 0, MAGIC.length);
+        writeLong(out, seed);
+        writeVarint(out, tickMillis);
+        List<String> changed = new ArrayList<>();
+        for (String name : GameRules.NAMES) {
+            if (rules.get(name) != GameRules.DEFAULTS.get(name)) {
+                changed.add(name);
+            }
+        }
+        writeVarint(out, changed.size());
+        for (String name : changed) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, bytes.length);
+            out.write(bytes, 0, bytes.length);
+            writeLong(out, Double.doubleToLongBits(rules.get(name)));
+        }
+        writeVarint(out, endTick);
+        writeVarint(out, size);
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            writeVarint(out, ticks[i] - previous);
+            writeVarint(out, codes[i]);
+            previous = ticks[i];
+        }
+        writeVarint(out, keyframeCount);
+        previous = 0;
+        for (int i = 0; i < keyframeCount; i++) {
+            writeVarint(out, keyframeTicks[i] - previous);
+            writeVarint(out, keyframes[i].length);
+            out.write(keyframes[i], 0, keyframes[i].length);
+            previous = keyframeTicks[i];
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 从二进制解码
+     * @param data 录像字节
+     * @return 录像
+     */
+    public static InputLog fromBytes(byte[] data) {
+        ByteBuffer in = ByteBuffer.wrap(data);
+        for (int i = 0; i < MAGIC.length - 1; i++) {
+            if (!in.hasRemaining() || in.get() != MAGIC[i]) {
+                throw new IllegalArgumentException("不是有效的录像文件");
+            }
+        }
+        byte version = in.hasRemaining() ? in.get() : 0;
+        if (version != MAGIC[MAGIC.length - 1] && version != KEYFRAME_VERSION && version != LEGACY_VERSION) {
+            throw new IllegalArgumentException("不支持的录像版本: " + (char) version);
+        }
+        long seed = in.getLong();
+        long tickMillis = readVarint(in);
+        GameRules rules = new GameRules();
+        if (version == MAGIC[MAGIC.length - 1]) {
+            long ruleCount = readVarint(in);
+            for (long i = 0; i < ruleCount; i++) {
+                byte[] name = new byte[(int) readVarint(in)];
+                in.get(name);
+                // 未知参数名由 GameRules.set 抛出 IllegalArgumentException
+                rules.set(new String(name, StandardCharsets.UTF_8), Double.longBitsToDouble(in.getLong()));
+            }
+        }
+        InputLog log = new InputLog(seed, tickMillis, rules);
+        long endTick = readVarint(in);
+        long count = readVarint(in);
+        long tick = 0;
+        for (long i = 0; i < count; i++) {
+            tick += readVarint(in);
+            int code = (int) readVarint(in);
+            KeyCode key = KEYS_BY_CODE.get(code);
+            if (key == null) {
+                throw new IllegalArgumentException("未知按键编码: " + code);
+            }
+            log.record(tick, key);
+        }
+        if (version != LEGACY_VERSION) {
+            long keyframeCount = readVarint(in);
+            long keyframeTick = 0;
+            for (long i = 0; i < keyframeCount; i++) {
+                keyframeTick += readVarint(in);
+                byte[] state = new byte[(int) readVarint(in)];
+                in.get(state);
+                log.addKeyframe(keyframeTick, state);
+            }
+        }
+        log.setEndTick(endTick);
+        return log;
+    }
+
+    /**
+     * 保存到文件
+     * @param path 文件路径
+     * @throws IOException 写入失败
+     */
+    public void save(Path path) throws IOException {
+        Files.write(path, toBytes());
+    }
+
+    /**
+     * 从文件读取
+     * @param path 文件路径
+     * @return 录像
+     * @throws IOException 读取失败
+     */
+    public static InputLog load(Path path) throws IOException {
+        return fromBytes(Files.readAllBytes(path));
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift));
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("变长整数过长");
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * 获取录制时使用的平衡参数
+     * @return 平衡参数（只读，调用方不得修改）
+     */
+    public GameRules getRules() {
+        return rules;
+    }
+
+    /**
+     * 获取录像结束时的逻辑帧序号
+     * @return 帧序号
+     */
+    public long getEndTick() {
+        return endTick;
+    }
+
+    /**
+     * 设置录像结束时的逻辑帧序号（不早于最后一次按键）
+     * @param endTick 帧序号
+     */
+    public void setEndTick(long endTick) {
+        this.endTick = Math.max(endTick, size > 0 ? ticks[size - 1] : 0);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getKeyframeCount() {
+        return keyframeCount;
+    }
+
+    /**
+     * 获取第 i 个关键帧的帧序号
+     * @param i 序号
+     * @return 帧序号
+     */
+    public long getKeyframeTick(int i) {
+        return keyframeTicks[i];
+    }
+
+    /**
+     * 获取第 i 个关键帧的状态快照（只读，调用方不得修改）
+     * @param i 序号
+     * @return 状态快照
+     */
+    public byte[] getKeyframe(int i) {
+        return keyframes[i];
+    }
+
+    /**
+     * 获取第 i 次按键的帧序号
+     * @param i 序号
+     * @return 帧序号
+     */
+    public long getTick(int i) {
+        return ticks[i];
+    }
+
+    /**
+     * 获取第 i 次按键
+     * @param i 序号
+     * @return 按键
+     */
+    public KeyCode getKey(int i) {
+        return KEYS_BY_CODE.get(codes[i]);
+    }
+}
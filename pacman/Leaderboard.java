@@ -0,0 +1,671 @@
+package pacman;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * 排行榜持久化存储
+ * 每次提交的成绩追加到日志文件，排行只保留每个玩家的最好成绩。
+ * 排名由三层有序数组组成：
+ * <ul>
+ *   <li>基础层：内存映射的有序索引文件，包含日志某一位置之前的全部最好成绩</li>
+ *   <li>冻结层：正在后台合并进基础层的增量（合并期间才有）</li>
+ *   <li>活动层：最近提交的最好成绩，以及被它们取代、需要从下层扣除的旧成绩</li>
+ * </ul>
+ * 查询排名是在各层上二分查找后相加，提交只需在较小的活动层中插入。
+ * 活动层超过阈值时在后台线程合并出新的索引文件，再原子替换。
+ * 打开时重放日志恢复状态：日志末尾不完整或校验失败的记录会被截断，
+ * 索引文件之后的日志记录重新放入活动层；索引缺失或与日志不符时从日志重建
+ *
+ * 日志记录：u16 名字长度, 名字 (UTF-8), i32 分数, i64 时间戳, u32 CRC32
+ * 索引文件：u32 魔数, u32 版本, u32 条目数, u32 保留, u64 已包含的日志长度,
+ *           条目按（分数, 玩家编号）升序排列，每条 8 字节
+ *
+ * 用法（压力测试）：java pacman.Leaderboard [目录] [提交数] [线程数]
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public class Leaderboard {
+    public static final String LOG_FILE = "leaderboard.log";
+    public static final String INDEX_FILE = "leaderboard.idx";
+
+    private static final int INDEX_MAGIC = 0x504D4C49; // "PMLI"
+    private static final int INDEX_VERSION = 1;
+    private static final int INDEX_HEADER_SIZE = 24;
+    private static final int MAX_NAME_BYTES = 256;
+    // 活动层达到该条目数时触发后台合并
+    private static final int COMPACT_THRESHOLD = 32 * 1024;
+
+    private final Path directory;
+    private final FileChannel log;
+    private final ByteBuffer record;
+    private final CRC32 crc;
+    private final ExecutorService compactor;
+
+    // 玩家表：编号按首次出现顺序分配，重放日志时得到相同编号
+    private final List<String> names;
+    private final Map<String, Integer> ids;
+    private int[] best;
+
+    private LongBuffer base;
+    private SortedLongs frozen;
+    private SortedLongs frozenRemoved;
+    private SortedLongs active;
+    private SortedLongs removed;
+    private boolean compacting;
+    private long submissions;
+
+    /**
+     * 排行榜条目
+     */
+    public static final class Entry {
+        private final String player;
+        private final int score;
+        private final int rank;
+
+        Entry(String player, int score, int rank) {
+            this.player = player;
+            this.score = score;
+            this.rank = rank;
+        }
+
+        public String getPlayer() {
+            return player;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        public int getRank() {
+            return rank;
+        }
+    }
+
+    /**
+     * 有序 long 数组，用于增量层：二分查找，插入和删除移动数组元素
+     */
+    private static final class SortedLongs {
+        private long[] values = new long[1024];
+        private int size;
+
+        void insert(long value) {
+            int index = lowerBound(value);
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            System.arraycopy(values, index, values, index + 1, size - index);
+            values[index] = value;
+            size++;
+        }
+
+        boolean remove(long value) {
+            int index = lowerBound(value);
+            if (index == size || values[index] != value) {
+                return false;
+            }
+            System.arraycopy(values, index + 1, values, index, size - index - 1);
+            size--;
+            return true;
+        }
+
+        boolean contains(long value) {
+            int index = lowerBound(value);
+            return index < size && values[index] == value;
+        }
+
+        int lowerBound(long value) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[mid] < value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        int countAtLeast(long value) {
+            return size - lowerBound(value);
+        }
+    }
+
+    /**
+     * 打开（必要时创建）排行榜
+     * @param directory 数据目录
+     * @throws IOException 读写失败
+     */
+    public Leaderboard(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        this.log = FileChannel.open(directory.resolve(LOG_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.record = ByteBuffer.allocate(2 + MAX_NAME_BYTES + 16);
+        this.crc = new CRC32();
+        this.names = new ArrayList<>();
+        this.ids = new HashMap<>();
+        this.best = new int[1024];
+        this.frozen = new SortedLongs();
+        this.frozenRemoved = new SortedLongs();
+        this.active = new SortedLongs();
+        this.removed = new SortedLongs();
+        this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "leaderboard-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        recover();
+    }
+
+    /**
+     * 重放日志恢复玩家表和各层；索引文件可用时只把其后的记录放入活动层
+     */
+    private void recover() throws IOException {
+        long covered = mapIndex(directory.resolve(INDEX_FILE));
+        long logSize = log.size();
+        if (covered > logSize) {
+            // 索引比日志新（日志尾部已损坏截断），从日志重建
+            base = LongBuffer.allocate(0);
+            covered = 0;
+        }
+        long offset = 0;
+        log.position(0);
+        InputStream stream = new BufferedInputStream(Channels.newInputStream(log), 1 << 16);
+        DataInputStream in = new DataInputStream(stream);
+        byte[] name = new byte[MAX_NAME_BYTES];
+        CRC32 check = new CRC32();
+        int baseCount = 0;
+        while (offset < logSize) {
+            int length;
+            int score;
+            long crcValue;
+            try {
+                length = in.readUnsignedShort();
+                if (length > MAX_NAME_BYTES) {
+                    break;
+                }
+                in.readFully(name, 0, length);
+                score = in.readInt();
+                long time = in.readLong();
+                crcValue = in.readInt() & 0xFFFFFFFFL;
+                check.reset();
+                check.update(length >>> 8);
+                check.update(length);
+                check.update(name, 0, length);
+                updateInt(check, score);
+                updateInt(check, (int) (time >>> 32));
+                updateInt(check, (int) time);
+            } catch (EOFException e) {
+                break;
+            }
+            if (check.getValue() != crcValue) {
+                break;
+            }
+            String player = new String(name, 0, length, StandardCharsets.UTF_8);
+            if (offset < covered) {
+                // 已包含在索引中，只恢复玩家表
+                int id = idFor(player);
+                if (best[id] == Integer.MIN_VALUE || score > best[id]) {
+                    if (best[id] == Integer.MIN_VALUE) {
+                        baseCount++;
+                    }
+                    best[id] = score;
+                }
+            } else {
+                apply(player, score);
+            }
+            offset += 2 + length + 16;
+        }
+        if (offset < logSize) {
+            System.out.println("排行榜日志在 " + offset + " 字节处损坏，已截断 " + (logSize - offset) + " 字节");
+            log.truncate(offset);
+        }
+        log.position(offset);
+        if (covered > 0 && (covered > offset || baseCount != base.capacity())) {
+            // 索引与日志不一致：丢弃索引，全部从日志重建
+            base = LongBuffer.allocate(0);
+            active = new SortedLongs();
+            removed = new SortedLongs();
+            for (int id = 0; id < names.size(); id++) {
+                active.insert(key(best[id], id));
+            }
+        }
+        if (active.size > 0) {
+            compact();
+        }
+    }
+
+    private static void updateInt(CRC32 check, int value) {
+        check.update(value >>> 24);
+        check.update(value >>> 16);
+        check.update(value >>> 8);
+        check.update(value);
+    }
+
+    /**
+     * 映射索引文件
+     * @return 索引包含的日志长度，索引不存在或无效时返回 0
+     */
+    private long mapIndex(Path file) throws IOException {
+        base = LongBuffer.allocate(0);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < INDEX_HEADER_SIZE) {
+                return 0;
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int count = mapped.getInt(8);
+            if (mapped.getInt(0) != INDEX_MAGIC || mapped.getInt(4) != INDEX_VERSION
+                    || channel.size() != INDEX_HEADER_SIZE + (long) count * 8) {
+                return 0;
+            }
+            long covered = mapped.getLong(16);
+            mapped.position(INDEX_HEADER_SIZE);
+            base = mapped.slice().asLongBuffer();
+            return covered;
+        }
+    }
+
+    private int idFor(String player) {
+        Integer id = ids.get(player);
+        if (id == null) {
+            id = names.size();
+            names.add(player);
+            ids.put(player, id);
+            if (id == best.length) {
+                best = Arrays.copyOf(best, best.length * 2);
+            }
+            best[id] = Integer.MIN_VALUE;
+        }
+        return id;
+    }
+
+    private static long key(int score, int id) {
+        return ((long) score << 32) | (id & 0xFFFFFFFFL);
+    }
+
+    private static int scoreOf(long key) {
+        return (int) (key >> 32);
+    }
+
+    private static int idOf(long key) {
+        return (int) key;
+    }
+
+    /**
+     * 更新玩家最好成绩（不写日志）
+     * @return 成绩有提高返回 true
+     */
+    private boolean apply(String player, int score) {
+        int id = idFor(player);
+        int previous = best[id];
+        if (previous != Integer.MIN_VALUE && score <= previous) {
+            return false;
+        }
+        if (previous != Integer.MIN_VALUE) {
+            long old = key(previous, id);
+            // 旧成绩在活动层中直接删除，在下层中则记录下来查询时扣除
+            if (!active.remove(old)) {
+                removed.insert(old);
+            }
+        }
+        best[id] = score;
+        active.insert(key(score, id));
+        return true;
+    }
+
+    /**
+     * 提交一局成绩
+     * @param player 玩家名
+     * @param score 分数
+     * @return 刷新了该玩家的最好成绩返回 true
+     * @throws IOException 写日志失败
+     */
+    public synchronized boolean submit(String player, int score) throws IOException {
+        byte[] name = player.getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_NAME_BYTES) {
+            throw new IllegalArgumentException("玩家名过长: " + player);
+        }
+        long time = System.currentTimeMillis();
+        record.clear();
+        record.putShort((short) name.length);
+        record.put(name);
+        record.putInt(score);
+        record.putLong(time);
+        crc.reset();
+        crc.update(record.array(), 0, record.position());
+        record.putInt((int) crc.getValue());
+        record.flip();
+        while (record.hasRemaining()) {
+            log.write(record);
+        }
+        submissions++;
+        boolean improved = apply(player, score);
+        if (active.size + removed.size >= COMPACT_THRESHOLD && !compacting) {
+            startCompaction();
+        }
+        return improved;
+    }
+
+    /**
+     * 查询玩家排名
+     * @param player 玩家名
+     * @return 名次（从 1 开始，同分同名次），玩家不存在时返回 0
+     */
+    public synchronized int rank(String player) {
+        Integer id = ids.get(player);
+        return id == null ? 0 : rankOf(best[id]);
+    }
+
+    /**
+     * 查询某个分数的名次
+     * @param score 分数
+     * @return 比该分数高的玩家数加 1
+     */
+    public synchronized int rankOf(int score) {
+        if (score == Integer.MAX_VALUE) {
+            return 1;
+        }
+        long above = key(score + 1, 0);
+        int count = countAtLeast(base, above)
+                + frozen.countAtLeast(above) - frozenRemoved.countAtLeast(above)
+                + active.countAtLeast(above) - removed.countAtLeast(above);
+        return count + 1;
+    }
+
+    private static int countAtLeast(LongBuffer buffer, long value) {
+        int low = 0;
+        int high = buffer.limit();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (buffer.get(mid) < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return buffer.limit() - low;
+    }
+
+    /**
+     * 获取前 N 名
+     * 从各层的高分端开始归并，跳过已被更好成绩取代的旧条目
+     * @param n 数量
+     * @return 按分数从高到低排列的条目
+     */
+    public synchronized List<Entry> top(int n) {
+        List<Entry> result = new ArrayList<>(n);
+        int b = base.limit() - 1;
+        int f = frozen.size - 1;
+        int a = active.size - 1;
+        int rank = 0;
+        int previousScore = 0;
+        while (result.size() < n && (b >= 0 || f >= 0 || a >= 0)) {
+            long bk = b >= 0 ? base.get(b) : Long.MIN_VALUE;
+            long fk = f >= 0 ? frozen.values[f] : Long.MIN_VALUE;
+            long ak = a >= 0 ? active.values[a] : Long.MIN_VALUE;
+            long key;
+            if (b >= 0 && bk >= fk && bk >= ak) {
+                key = bk;
+                b--;
+            } else if (f >= 0 && fk >= ak) {
+                key = fk;
+                f--;
+            } else {
+                key = ak;
+                a--;
+            }
+            int id = idOf(key);
+            int score = scoreOf(key);
+            if (best[id] != score) {
+                continue;
+            }
+            if (result.isEmpty() || score != previousScore) {
+                rank = result.size() + 1;
+                previousScore = score;
+            }
+            result.add(new Entry(names.get(id), score, rank));
+        }
+        return result;
+    }
+
+    /**
+     * 获取有成绩的玩家数
+     * @return 玩家数
+     */
+    public synchronized int size() {
+        return names.size();
+    }
+
+    public synchronized long getSubmissions() {
+        return submissions;
+    }
+
+    private void startCompaction() {
+        compacting = true;
+        frozen = active;
+        frozenRemoved = removed;
+        active = new SortedLongs();
+        removed = new SortedLongs();
+        LongBuffer snapshotBase = base;
+        SortedLongs snapshotFrozen = frozen;
+        SortedLongs snapshotRemoved = frozenRemoved;
+        long covered;
+        try {
+            covered = log.position();
+        } catch (IOException e) {
+            compacting = false;
+            return;
+        }
+        compactor.execute(() -> {
+            try {
+                LongBuffer merged = writeIndex(snapshotBase, snapshotFrozen, snapshotRemoved, covered);
+                synchronized (this) {
+                    base = merged;
+                    frozen = new SortedLongs();
+                    frozenRemoved = new SortedLongs();
+                    compacting = false;
+                }
+            } catch (IOException e) {
+                // 合并失败时保留各层，数据仍完整，下次再试
+                System.out.println("排行榜索引合并失败: " + e.getMessage());
+                synchronized (this) {
+                    compacting = false;
+                }
+            }
+        });
+    }
+
+    /**
+     * 把当前所有层同步合并到索引文件
+     * @throws IOException 写入失败
+     */
+    public void compact() throws IOException {
+        LongBuffer snapshotBase;
+        SortedLongs snapshotActive;
+        SortedLongs snapshotRemoved;
+        long covered;
+        synchronized (this) {
+            while (compacting) {
+                try {
+                    wait(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            compacting = true;
+            snapshotBase = base;
+            snapshotActive = active;
+            snapshotRemoved = removed;
+            frozen = active;
+            frozenRemoved = removed;
+            active = new SortedLongs();
+            removed = new SortedLongs();
+            covered = log.position();
+        }
+        try {
+            LongBuffer merged = writeIndex(snapshotBase, snapshotActive, snapshotRemoved, covered);
+            synchronized (this) {
+                base = merged;
+                frozen = new SortedLongs();
+                frozenRemoved = new SortedLongs();
+            }
+        } finally {
+            synchronized (this) {
+                compacting = false;
+            }
+        }
+    }
+
+    /**
+     * 归并基础层和增量（扣除被取代的旧成绩），写出新索引文件并原子替换
+     */
+    private LongBuffer writeIndex(LongBuffer oldBase, SortedLongs delta, SortedLongs deleted, long covered)
+            throws IOException {
+        int capacity = oldBase.limit() + delta.size - deleted.size;
+        Path temp = directory.resolve(INDEX_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    INDEX_HEADER_SIZE + (long) capacity * 8);
+            mapped.putInt(INDEX_MAGIC);
+            mapped.putInt(INDEX_VERSION);
+            mapped.putInt(capacity);
+            mapped.putInt(0);
+            mapped.putLong(covered);
+            int b = 0;
+            int d = 0;
+            int r = 0;
+            int count = 0;
+            while (b < oldBase.limit() || d < delta.size) {
+                long value;
+                if (d >= delta.size || (b < oldBase.limit() && oldBase.get(b) < delta.values[d])) {
+                    value = oldBase.get(b++);
+                } else {
+                    value = delta.values[d++];
+                }
+                while (r < deleted.size && deleted.values[r] < value) {
+                    r++;
+                }
+                if (r < deleted.size && deleted.values[r] == value) {
+                    r++;
+                    continue;
+                }
+                mapped.putLong(value);
+                count++;
+            }
+            if (count != capacity) {
+                throw new IOException("索引条目数不一致: " + count + " != " + capacity);
+            }
+            mapped.force();
+        }
+        Path file = directory.resolve(INDEX_FILE);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.position(INDEX_HEADER_SIZE);
+            return mapped.slice().asLongBuffer();
+        }
+    }
+
+    /**
+     * 合并索引并关闭日志
+     * @throws IOException 写入失败
+     */
+    public void close() throws IOException {
+        compact();
+        compactor.shutdown();
+        synchronized (this) {
+            log.force(true);
+            log.close();
+        }
+    }
+
+    /**
+     * 主方法：多线程高频提交成绩，测量提交吞吐量和排名查询延迟
+     * @param args [目录] [提交数] [线程数]
+     */
+    public static void main(String[] args) throws Exception {
+        Path dir = Paths.get(args.length > 0 ? args[0] : "scores");
+        int total = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        long openStart = System.nanoTime();
+        Leaderboard board = new Leaderboard(dir);
+        System.out.printf("打开耗时 %.1f ms, 玩家 %d%n", (System.nanoTime() - openStart) / 1e6, board.size());
+
+        LatencyHistogram submitTime = new LatencyHistogram();
+        LatencyHistogram rankTime = new LatencyHistogram();
+        Thread[] workers = new Thread[threads];
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            GameRandom random = new GameRandom(t * 31L + System.nanoTime());
+            int count = total / threads;
+            workers[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < count; i++) {
+                        String player = "player-" + random.nextInt(200_000);
+                        int score = random.nextInt(100_000);
+                        long begin = System.nanoTime();
+                        board.submit(player, score);
+                        long middle = System.nanoTime();
+                        board.rank(player);
+                        long end = System.nanoTime();
+                        submitTime.record(middle - begin);
+                        rankTime.record(end - middle);
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }, "leaderboard-bench-" + t);
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("提交 %d 次, 线程 %d, %.0f 次/秒, 玩家 %d%n",
+                board.getSubmissions(), threads, board.getSubmissions() / seconds, board.size());
+        System.out.printf("提交耗时 p50 %.1f us p99 %.1f us max %.1f us%n",
+                submitTime.percentile(50) / 1e3, submitTime.percentile(99) / 1e3, submitTime.getMax() / 1e3);
+        System.out.printf("排名查询 p50 %.1f us p99 %.1f us max %.1f us%n",
+                rankTime.percentile(50) / 1e3, rankTime.percentile(99) / 1e3, rankTime.getMax() / 1e3);
+        long topStart = System.nanoTime();
+        List<Entry> top = board.top(10);
+        System.out.printf("前 10 名查询 %.1f us%n", (System.nanoTime() - topStart) / 1e3);
+        for (Entry entry : top) {
+            System.out.printf("  %3d  %-16s %d%n", entry.getRank(), entry.getPlayer(), entry.getScore());
+        }
+        board.close();
+    }
+}
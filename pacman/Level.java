@@ -0,0 +1,40 @@
+package pacman;
+
+/**
+ * 关卡
+ * 由关卡编号、编译后的迷宫和该关卡使用的精灵图集组成
+ * 所有字段不可变，可以在后台线程构建后直接交给游戏线程使用
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public final class Level {
+    private final int number;
+    private final Maze maze;
+    private final SpriteSet sprites;
+
+    /**
+     * 构造方法
+     * @param number 关卡编号（从1开始）
+     * @param maze 编译后的迷宫
+     * @param sprites 精灵图集
+     */
+    public Level(int number, Maze maze, SpriteSet sprites) {
+        this.number = number;
+        this.maze = maze;
+        this.sprites = sprites;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public Maze getMaze() {
+        return maze;
+    }
+
+    public SpriteSet getSprites() {
+        return sprites;
+    }
+}
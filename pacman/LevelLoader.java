@@ -0,0 +1,97 @@
+package pacman;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 关卡加载器
+ * 在后台线程编译迷宫、预计算寻路表并加载精灵图集
+ * 编译结果按布局和图集变体缓存，关卡切换时只需取出已完成的结果
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public class LevelLoader {
+    // 无界面加载器 - 多个无界面引擎共享同一份迷宫编译结果
+    private static LevelLoader headless;
+
+    private final boolean loadSprites;
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<Integer, CompletableFuture<Maze>> mazes;
+    private final ConcurrentHashMap<Integer, CompletableFuture<SpriteSet>> spriteSets;
+
+    /**
+     * 构造方法
+     */
+    public LevelLoader() {
+        this(true);
+    }
+
+    /**
+     * 构造方法
+     * @param loadSprites 是否加载精灵图集，false 时所有关卡使用空图集
+     */
+    public LevelLoader(boolean loadSprites) {
+        this.loadSprites = loadSprites;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "level-preloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.mazes = new ConcurrentHashMap<>();
+        this.spriteSets = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * 在后台开始准备指定关卡，重复调用返回同一份结果
+     * @param levelNumber 关卡编号（从1开始）
+     * @return 关卡准备完成后的 Future
+     */
+    public CompletableFuture<Level> preload(int levelNumber) {
+        CompletableFuture<Maze> maze = mazes.computeIfAbsent(MazeLayouts.layoutIndexFor(levelNumber),
+                index -> CompletableFuture.supplyAsync(() -> Maze.compile(index), executor));
+        if (!loadSprites) {
+            return maze.thenApply(m -> new Level(levelNumber, m, SpriteSet.blank()));
+        }
+        CompletableFuture<SpriteSet> sprites = spriteSets.computeIfAbsent(SpriteSet.variantFor(levelNumber),
+                variant -> CompletableFuture.supplyAsync(() -> SpriteSet.load(variant), executor));
+        return maze.thenCombine(sprites, (m, s) -> new Level(levelNumber, m, s));
+    }
+
+    /**
+     * 获取共享的无界面加载器
+     * @return 不加载精灵图集的加载器
+     */
+    public static synchronized LevelLoader headless() {
+        if (headless == null) {
+            headless = new LevelLoader(false);
+        }
+        return headless;
+    }
+
+    /**
+     * 创建每一关都使用指定迷宫的无界面加载器
+     * 用于基准测试等需要自定义地图的场景
+     * @param maze 已编译的迷宫
+     * @return 不加载精灵图集的加载器
+     */
+    public static LevelLoader headless(Maze maze) {
+        LevelLoader loader = new LevelLoader(false);
+        for (int index = 0; index < MazeLayouts.count(); index++) {
+            loader.mazes.put(index, CompletableFuture.completedFuture(maze));
+        }
+        return loader;
+    }
+
+    /**
+     * 获取指定关卡，未准备好时阻塞等待
+     * @param levelNumber 关卡编号（从1开始）
+     * @return 关卡
+     */
+    public Level load(int levelNumber) {
+        return preload(levelNumber).join();
+    }
+}
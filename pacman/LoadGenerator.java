@@ -0,0 +1,264 @@
+package pacman;
+
+import javafx.scene.input.KeyCode;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 服务器压力测试客户端
+ * 在一个线程里用 Selector 驱动大量非阻塞连接，每个连接模拟一个随机按键的玩家，
+ * 根据状态消息中确认的输入序号计算输入到状态的往返延迟。
+ * 还可以附加一批观战连接，全部观战第一个玩家的对局，统计增量广播的带宽
+ *
+ * 用法：java pacman.LoadGenerator [主机] [端口] [连接数] [秒数] [观战数]
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public class LoadGenerator {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // 每个连接记录发送时间的环形缓冲区长度
+    private static final int PENDING_INPUTS = 64;
+    private static final KeyCode[] KEYS = {KeyCode.UP, KeyCode.DOWN, KeyCode.LEFT, KeyCode.RIGHT, KeyCode.SPACE};
+
+    private final List<Client> clients;
+    private final Selector selector;
+    private final GameRandom random;
+    private final LatencyHistogram roundTrip;
+    private long states;
+    private long bytesReceived;
+    private long deltas;
+    private long spectatorBytesReceived;
+
+    /**
+     * 单个模拟玩家
+     */
+    private static final class Client {
+        private final SocketChannel channel;
+        private final ByteBuffer in;
+        private final ByteBuffer out;
+        private final long[] sentNanos;
+        // 观战连接：要观战的对局和本地视图；玩家连接为 null
+        private final SpectatorView view;
+        private final int watchMatchId;
+        private int sequence;
+        private int ackedSequence;
+        private int serverTick;
+        private int matchId;
+        private boolean welcomed;
+
+        private Client(SocketChannel channel, SpectatorView view, int watchMatchId) {
+            this.channel = channel;
+            this.in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            this.out = ByteBuffer.allocateDirect(NetProtocol.INPUT_SIZE * PENDING_INPUTS);
+            this.sentNanos = new long[PENDING_INPUTS];
+            this.view = view;
+            this.watchMatchId = watchMatchId;
+        }
+    }
+
+    /**
+     * 构造方法，建立所有连接
+     * @param host 服务器地址
+     * @param port 服务器端口
+     * @param count 连接数
+     * @throws IOException 连接失败
+     */
+    public LoadGenerator(String host, int port, int count) throws IOException {
+        this.selector = Selector.open();
+        this.clients = new ArrayList<>(count);
+        this.random = new GameRandom(System.nanoTime());
+        this.roundTrip = new LatencyHistogram();
+        for (int i = 0; i < count; i++) {
+            connect(new InetSocketAddress(host, port), null, 0);
+        }
+    }
+
+    private void connect(InetSocketAddress address, SpectatorView view, int watchMatchId) throws IOException {
+        SocketChannel channel = SocketChannel.open(address);
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Client client = new Client(channel, view, watchMatchId);
+        channel.register(selector, SelectionKey.OP_READ, client);
+        clients.add(client);
+    }
+
+    /**
+     * 添加观战连接，观战第一个玩家的对局（需要先运行一段时间收到欢迎消息）
+     * @param host 服务器地址
+     * @param port 服务器端口
+     * @param count 观战连接数
+     * @throws IOException 连接失败
+     */
+    public void addSpectators(String host, int port, int count) throws IOException {
+        int matchId = clients.get(0).matchId;
+        for (int i = 0; i < count; i++) {
+            connect(new InetSocketAddress(host, port), new SpectatorView(), matchId);
+        }
+    }
+
+    /**
+     * 运行指定时长，每个逻辑帧为每个连接按概率发送一次随机按键
+     * @param millis 运行时长（毫秒）
+     * @throws IOException 网络错误
+     */
+    public void run(long millis) throws IOException {
+        long end = System.currentTimeMillis() + millis;
+        long nextTick = System.currentTimeMillis();
+        while (System.currentTimeMillis() < end) {
+            long wait = nextTick - System.currentTimeMillis();
+            if (wait > 0) {
+                selector.select(wait);
+            } else {
+                selector.selectNow();
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (key.isValid() && key.isReadable()) {
+                    read((Client) key.attachment());
+                }
+            }
+            if (System.currentTimeMillis() >= nextTick) {
+                nextTick += GameEngine.TICK_MILLIS;
+                for (int i = 0; i < clients.size(); i++) {
+                    Client client = clients.get(i);
+                    // 平均每半秒按一次键，与真人玩家的输入频率相当
+                    if (client.welcomed && client.view == null && random.nextInt(30) == 0) {
+                        send(client, KEYS[random.nextInt(KEYS.length)]);
+                    }
+                }
+            }
+        }
+    }
+
+    private void send(Client client, KeyCode key) throws IOException {
+        client.sequence++;
+        client.sentNanos[client.sequence % PENDING_INPUTS] = System.nanoTime();
+        NetProtocol.writeInput(client.out, client.sequence, client.serverTick, key.getCode());
+        flush(client);
+    }
+
+    private void flush(Client client) throws IOException {
+        client.out.flip();
+        client.channel.write(client.out);
+        client.out.compact();
+    }
+
+    private void read(Client client) throws IOException {
+        ByteBuffer in = client.in;
+        int read = client.channel.read(in);
+        if (read < 0) {
+            throw new IOException("服务器关闭了连接");
+        }
+        if (client.view != null) {
+            spectatorBytesReceived += read;
+        } else {
+            bytesReceived += read;
+        }
+        in.flip();
+        int length;
+        while ((length = NetProtocol.completeFrame(in)) > 0) {
+            int frameStart = in.position();
+            byte type = in.get(frameStart + 2);
+            if (type == NetProtocol.WELCOME) {
+                client.welcomed = true;
+                client.matchId = in.getInt(frameStart + NetProtocol.HEADER_SIZE + 10);
+                if (client.view != null) {
+                    NetProtocol.writeSpectate(client.out, client.watchMatchId);
+                    flush(client);
+                }
+            } else if (type == NetProtocol.DELTA && client.view != null) {
+                deltas++;
+                int tick = client.view.apply(in);
+                if (tick >= 0) {
+                    NetProtocol.writeAck(client.out, tick);
+                    flush(client);
+                }
+            } else if (type == NetProtocol.STATE) {
+                states++;
+                client.serverTick = in.getInt(frameStart + NetProtocol.HEADER_SIZE);
+                int acked = in.getInt(frameStart + NetProtocol.HEADER_SIZE + 4);
+                long now = System.nanoTime();
+                // 一条状态可能同时确认多次输入，分别记录各自的往返时间
+                while (client.ackedSequence < acked) {
+                    client.ackedSequence++;
+                    if (acked - client.ackedSequence < PENDING_INPUTS) {
+                        roundTrip.record(now - client.sentNanos[client.ackedSequence % PENDING_INPUTS]);
+                    }
+                }
+            }
+            in.position(frameStart + length);
+        }
+        in.compact();
+    }
+
+    /**
+     * 关闭所有连接
+     */
+    public void close() {
+        for (Client client : clients) {
+            try {
+                client.channel.close();
+            } catch (IOException ignored) {
+                // 已关闭
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+            // 已关闭
+        }
+    }
+
+    /**
+     * 主方法：按统计周期输出状态消息速率、带宽和输入往返延迟
+     * @param args [主机] [端口] [连接数] [秒数] [观战数]
+     */
+    public static void main(String[] args) throws IOException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 7777;
+        int count = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 30;
+        int spectators = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+
+        LoadGenerator generator = new LoadGenerator(host, port, count);
+        if (spectators > 0) {
+            generator.run(500);
+            generator.addSpectators(host, port, spectators);
+        }
+        long expected = count * 1000L / GameEngine.TICK_MILLIS;
+        for (int elapsed = 5; elapsed <= seconds; elapsed += 5) {
+            long states = generator.states;
+            long bytes = generator.bytesReceived;
+            long deltas = generator.deltas;
+            long spectatorBytes = generator.spectatorBytesReceived;
+            generator.roundTrip.reset();
+            generator.run(5000);
+            double perSecond = (generator.states - states) / 5.0;
+            System.out.printf("[%3ds] 连接 %d, 状态 %.0f 条/秒 (需要 %d, %.0f%%), 接收 %.1f KB/s,"
+                            + " 输入往返 p50 %.2f ms p99 %.2f ms max %.2f ms%n",
+                    elapsed, count, perSecond, expected, perSecond * 100.0 / expected,
+                    (generator.bytesReceived - bytes) / 5.0 / 1024,
+                    generator.roundTrip.percentile(50) / 1e6, generator.roundTrip.percentile(99) / 1e6,
+                    generator.roundTrip.getMax() / 1e6);
+            if (spectators > 0) {
+                System.out.printf("       观战 %d, 增量 %.0f 条/秒, 每个观战者 %.0f B/s (%.1f B/条)%n",
+                        spectators, (generator.deltas - deltas) / 5.0,
+                        (generator.spectatorBytesReceived - spectatorBytes) / 5.0 / spectators,
+                        (double) (generator.spectatorBytesReceived - spectatorBytes)
+                                / Math.max(1, generator.deltas - deltas));
+            }
+        }
+        generator.close();
+    }
+}
@@ -0,0 +1,177 @@
+package pacman;
+
+/**
+ * 编译后的迷宫
+ * 由字符地图一次性解析得到的不可变数据，包括墙壁网格、传送门表、寻路表和静态分析结果
+ * 同一布局的迷宫可在多个关卡和多个游戏引擎之间共享
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public final class Maze {
+    private final int layoutIndex;
+    private final String[] rows;
+    private final int width;
+    private final int height;
+    private final boolean[] walls;
+    private final int[][] powerFoodTiles;
+    private final PortalTable portals;
+    private final PathTable pathTable;
+    private final MazeAnalysis analysis;
+
+    /**
+     * 构造方法
+     * @param layoutIndex 布局索引
+     * @param rows 字符地图
+     * @param powerFoodTiles 能量豆位置（列, 行）
+     */
+    public Maze(int layoutIndex, String[] rows, int[][] powerFoodTiles) {
+        this.layoutIndex = layoutIndex;
+        this.rows = rows.clone();
+        this.height = rows.length;
+        this.width = rows[0].length();
+        this.walls = new boolean[width * height];
+        for (int row = 0; row < height; row++) {
+            if (rows[row].length() != width) {
+                throw new IllegalArgumentException("地图第 " + row + " 行宽度不一致");
+            }
+            for (int col = 0; col < width; col++) {
+                walls[row * width + col] = rows[row].charAt(col) == 'X';
+            }
+        }
+        this.powerFoodTiles = powerFoodTiles;
+        this.portals = PortalTable.build(this);
+        this.pathTable = new PathTable(this);
+        this.analysis = new MazeAnalysis(this);
+    }
+
+    /**
+     * 编译指定布局
+     * @param layoutIndex 布局索引
+     * @return 编译后的迷宫
+     */
+    public static Maze compile(int layoutIndex) {
+        return new Maze(layoutIndex, MazeLayouts.rows(layoutIndex), MazeLayouts.powerFoodTiles(layoutIndex));
+    }
+
+    /**
+     * 计算格子索引
+     * @param col 列
+     * @param row 行
+     * @return 格子索引
+     */
+    public int index(int col, int row) {
+        return row * width + col;
+    }
+
+    /**
+     * 获取格子字符
+     * @param col 列
+     * @param row 行
+     * @return 地图字符
+     */
+    public char tileAt(int col, int row) {
+        return rows[row].charAt(col);
+    }
+
+    /**
+     * 判断格子是否为墙壁，地图外视为墙壁
+     * @param col 列
+     * @param row 行
+     * @return true表示墙壁
+     */
+    public boolean isWall(int col, int row) {
+        if (col < 0 || col >= width || row < 0 || row >= height) {
+            return true;
+        }
+        return walls[row * width + col];
+    }
+
+    /**
+     * 获取指定方向上的相邻可通行格子，优先经过传送门
+     * @param tile 格子索引
+     * @param dir 方向
+     * @return 相邻格子索引，墙壁或越界返回 -1
+     */
+    public int neighbour(int tile, Direction dir) {
+        int portal = portals.destination(tile, dir);
+        if (portal != PortalTable.NONE) {
+            return walls[portal] ? -1 : portal;
+        }
+        int col = tile % width + (int) dir.getVelocityX(1);
+        int row = tile / width + (int) dir.getVelocityY(1);
+        return isWall(col, row) ? -1 : row * width + col;
+    }
+
+    /**
+     * 判断矩形区域是否与墙壁重叠，等价于逐个墙壁做矩形相交测试
+     * 地图外的区域不算墙壁，越界由传送门表处理
+     * @param x 左上角X坐标（像素）
+     * @param y 左上角Y坐标（像素）
+     * @param w 宽度
+     * @param h 高度
+     * @return true表示与墙壁重叠
+     */
+    public boolean overlapsWall(double x, double y, double w, double h) {
+        int tileSize = PacManApp.TILE_SIZE;
+        int colStart = Math.max(0, (int) Math.floor(x / tileSize));
+        int colEnd = Math.min(width - 1, (int) Math.ceil((x + w) / tileSize) - 1);
+        int rowStart = Math.max(0, (int) Math.floor(y / tileSize));
+        int rowEnd = Math.min(height - 1, (int) Math.ceil((y + h) / tileSize) - 1);
+        for (int row = rowStart; row <= rowEnd; row++) {
+            for (int col = colStart; col <= colEnd; col++) {
+                if (walls[row * width + col]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public int getLayoutIndex() {
+        return layoutIndex;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getPowerFoodCount() {
+        return powerFoodTiles.length;
+    }
+
+    /**
+     * 获取第 i 个能量豆的列
+     * @param i 能量豆序号
+     * @return 列
+     */
+    public int getPowerFoodCol(int i) {
+        return powerFoodTiles[i][0];
+    }
+
+    /**
+     * 获取第 i 个能量豆的行
+     * @param i 能量豆序号
+     * @return 行
+     */
+    public int getPowerFoodRow(int i) {
+        return powerFoodTiles[i][1];
+    }
+
+    public PortalTable getPortals() {
+        return portals;
+    }
+
+    public PathTable getPathTable() {
+        return pathTable;
+    }
+
+    public MazeAnalysis getAnalysis() {
+        return analysis;
+    }
+}
@@ -0,0 +1,220 @@
+package pacman;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 迷宫静态分析结果
+ * 在关卡编译阶段一次性计算：连通分量、不可达的食物格、
+ * 岔路口、死胡同以及鬼魂屋区域。相邻关系经过传送门表（隧道对和传送垫）
+ * 运行时只做查表，不再逐帧推导
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public final class MazeAnalysis {
+    // 格子分类标志位
+    public static final int FLAG_JUNCTION = 1;
+    public static final int FLAG_DEAD_END = 1 << 1;
+    public static final int FLAG_GHOST_HOUSE = 1 << 2;
+    public static final int FLAG_TUNNEL = 1 << 3;
+    public static final int FLAG_REACHABLE = 1 << 4;
+    public static final int FLAG_PORTAL = 1 << 5;
+
+    private final int width;
+    private final int height;
+    private final int[] components;
+    private final int componentCount;
+    private final int mainComponent;
+    private final byte[] flags;
+    private final int[] reachableTiles;
+    private final int[] unreachablePellets;
+
+    /**
+     * 分析迷宫
+     * @param maze 已生成传送门表的迷宫
+     */
+    MazeAnalysis(Maze maze) {
+        this.width = maze.getWidth();
+        this.height = maze.getHeight();
+        int size = width * height;
+        this.components = new int[size];
+        this.flags = new byte[size];
+
+        // 连通分量：逐个未标记的可通行格子做洪水填充
+        Arrays.fill(components, -1);
+        int[] stack = new int[size];
+        int count = 0;
+        for (int start = 0; start < size; start++) {
+            if (components[start] != -1 || maze.isWall(start % width, start / width)) {
+                continue;
+            }
+            int top = 0;
+            stack[top++] = start;
+            components[start] = count;
+            while (top > 0) {
+                int tile = stack[--top];
+                for (Direction dir : Direction.values()) {
+                    int next = maze.neighbour(tile, dir);
+                    if (next >= 0 && components[next] == -1) {
+                        components[next] = count;
+                        stack[top++] = next;
+                    }
+                }
+            }
+            count++;
+        }
+        this.componentCount = count;
+
+        // 主连通分量：Pac-Man 出生点所在的分量
+        int main = -1;
+        int houseMinCol = width;
+        int houseMaxCol = -1;
+        int houseMinRow = height;
+        int houseMaxRow = -1;
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                char tile = maze.tileAt(col, row);
+                if (tile == 'P') {
+                    main = components[row * width + col];
+                } else if (isGhostSpawn(tile)) {
+                    houseMinCol = Math.min(houseMinCol, col);
+                    houseMaxCol = Math.max(houseMaxCol, col);
+                    houseMinRow = Math.min(houseMinRow, row);
+                    houseMaxRow = Math.max(houseMaxRow, row);
+                }
+            }
+        }
+        this.mainComponent = main;
+
+        // 逐格分类
+        List<Integer> reachable = new ArrayList<>();
+        List<Integer> unreachable = new ArrayList<>();
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                int tile = row * width + col;
+                if (maze.isWall(col, row)) {
+                    continue;
+                }
+                int exits = 0;
+                for (Direction dir : Direction.values()) {
+                    if (maze.neighbour(tile, dir) >= 0) {
+                        exits++;
+                    }
+                }
+                int tileFlags = 0;
+                if (exits >= 3) {
+                    tileFlags |= FLAG_JUNCTION;
+                } else if (exits == 1) {
+                    tileFlags |= FLAG_DEAD_END;
+                }
+                if (col >= houseMinCol && col <= houseMaxCol && row >= houseMinRow && row <= houseMaxRow) {
+                    tileFlags |= FLAG_GHOST_HOUSE;
+                }
+                if (maze.tileAt(col, row) == 'O') {
+                    tileFlags |= FLAG_TUNNEL;
+                }
+                if (PortalTable.isPad(maze.tileAt(col, row))) {
+                    tileFlags |= FLAG_PORTAL;
+                }
+                if (components[tile] == main) {
+                    tileFlags |= FLAG_REACHABLE;
+                    reachable.add(tile);
+                } else if (holdsPellet(maze.tileAt(col, row))) {
+                    unreachable.add(tile);
+                }
+                flags[tile] = (byte) tileFlags;
+            }
+        }
+        for (int i = 0; i < maze.getPowerFoodCount(); i++) {
+            int col = maze.getPowerFoodCol(i);
+            int row = maze.getPowerFoodRow(i);
+            int tile = row * width + col;
+            if ((flags[tile] & FLAG_REACHABLE) == 0 && !unreachable.contains(tile)) {
+                unreachable.add(tile);
+            }
+        }
+        this.reachableTiles = toArray(reachable);
+        this.unreachablePellets = toArray(unreachable);
+    }
+
+    private static boolean isGhostSpawn(char tile) {
+        return tile == 'r' || tile == 'p' || tile == 'b' || tile == 'o';
+    }
+
+    private static boolean holdsPellet(char tile) {
+        return tile != 'X' && tile != 'O' && !isGhostSpawn(tile) && !PortalTable.isPad(tile);
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] result = new int[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * 判断格子是否与 Pac-Man 出生点连通
+     * @param tile 格子索引
+     * @return true表示可达
+     */
+    public boolean isReachable(int tile) {
+        return (flags[tile] & FLAG_REACHABLE) != 0;
+    }
+
+    public boolean isJunction(int tile) {
+        return (flags[tile] & FLAG_JUNCTION) != 0;
+    }
+
+    public boolean isDeadEnd(int tile) {
+        return (flags[tile] & FLAG_DEAD_END) != 0;
+    }
+
+    public boolean isGhostHouse(int tile) {
+        return (flags[tile] & FLAG_GHOST_HOUSE) != 0;
+    }
+
+    public boolean isTunnel(int tile) {
+        return (flags[tile] & FLAG_TUNNEL) != 0;
+    }
+
+    public boolean isPortal(int tile) {
+        return (flags[tile] & FLAG_PORTAL) != 0;
+    }
+
+    /**
+     * 获取格子所属连通分量
+     * @param tile 格子索引
+     * @return 分量编号，墙壁返回 -1
+     */
+    public int componentOf(int tile) {
+        return components[tile];
+    }
+
+    public int getComponentCount() {
+        return componentCount;
+    }
+
+    public int getMainComponent() {
+        return mainComponent;
+    }
+
+    /**
+     * 获取所有可达格子（只读，调用方不得修改）
+     * @return 格子索引数组
+     */
+    public int[] getReachableTiles() {
+        return reachableTiles;
+    }
+
+    /**
+     * 获取所有无法到达的食物格（只读，调用方不得修改）
+     * @return 格子索引数组
+     */
+    public int[] getUnreachablePellets() {
+        return unreachablePellets;
+    }
+}
@@ -0,0 +1,125 @@
+package pacman;
+
+/**
+ * 迷宫布局目录
+ * 保存所有关卡使用的原始字符地图以及对应的能量豆位置
+ * 关卡按顺序循环使用这些布局
+ *
+ * 地图字符含义：
+ * X - 墙壁，O - 隧道（无食物），P - Pac-Man 出生点，
+ * r/p/b/o - 红/粉/蓝/橙鬼魂出生点，空格 - 普通食物
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public final class MazeLayouts {
+
+    // 原始地图 - 与参考地图一致（移除被技能食物替代的墙）
+    private static final String[] CLASSIC = {
+        "XXXXXXXXXXXXXXXXXXX",
+        "X                 X",
+        "X XX XXX X XXX XX X",
+        "X                 X",
+        "X XX X XXXXX X XX X",
+        "X    X       X    X",
+        "XXXX XXXX XXXX XXXX",
+        "OOOX X       X XOOO",
+        "XXXX X XXrXX X XXXX",
+        "X      b p o      X",
+        "XXXX X XXXXX X XXXX",
+        "OOOX X       X XOOO",
+        "XXXX X XXXXX X XXXX",
+        "X    X       X    X",
+        "X XX XXX X XXX XX X",
+        "X  X     P     X  X",
+        "XX X X XXXXX X X XX",
+        "X    X       X    X",
+        "X XXXXXX X XXXXXX X",
+        "X                 X",
+        "XXXXXXXXXXXXXXXXXXX"
+    };
+
+    // 预设9个能量豆位置（列, 行）
+    private static final int[][] CLASSIC_POWER_FOOD = {
+        {1, 1}, {17, 1}, {1, 17}, {17, 17},
+        {9, 1}, {1, 9}, {17, 9}, {9, 17},
+        {9, 9}
+    };
+
+    // 第二关地图 - 隧道两端与迷宫内部连通
+    private static final String[] CROSSROADS = {
+        "XXXXXXXXXXXXXXXXXXX",
+        "X        X        X",
+        "X XXX XX X XX XXX X",
+        "X                 X",
+        "XX X XXX X XXX X XX",
+        "X  X     X     X  X",
+        "X XX XXX X XXX XX X",
+        "OOO  X       X  OOO",
+        "XXXX X XXrXX X XXXX",
+        "X      b p o      X",
+        "XXXX X XXXXX X XXXX",
+        "OOO  X       X  OOO",
+        "XXXX X XXXXX X XXXX",
+        "X        X        X",
+        "X XX XXX X XXX XX X",
+        "X  X     P     X  X",
+        "XX X X XXXXX X X XX",
+        "X    X   X   X    X",
+        "X XXXXXX X XXXXXX X",
+        "X                 X",
+        "XXXXXXXXXXXXXXXXXXX"
+    };
+
+    private static final int[][] CROSSROADS_POWER_FOOD = {
+        {1, 1}, {17, 1}, {1, 19}, {17, 19},
+        {9, 3}, {1, 13}, {17, 13}, {9, 19}
+    };
+
+    private static final String[][] LAYOUTS = { CLASSIC, CROSSROADS };
+    private static final int[][][] POWER_FOOD = { CLASSIC_POWER_FOOD, CROSSROADS_POWER_FOOD };
+
+    private MazeLayouts() {
+    }
+
+    /**
+     * 获取布局数量
+     * @return 布局数量
+     */
+    public static int count() {
+        return LAYOUTS.length;
+    }
+
+    /**
+     * 根据关卡编号计算布局索引
+     * @param levelNumber 关卡编号（从1开始）
+     * @return 布局索引
+     */
+    public static int layoutIndexFor(int levelNumber) {
+        return Math.floorMod(levelNumber - 1, LAYOUTS.length);
+    }
+
+    /**
+     * 获取指定布局的地图副本
+     * @param layoutIndex 布局索引
+     * @return 字符地图
+     */
+    public static String[] rows(int layoutIndex) {
+        return LAYOUTS[layoutIndex].clone();
+    }
+
+    /**
+     * 获取指定布局的能量豆位置副本
+     * @param layoutIndex 布局索引
+     * @return 能量豆位置数组（列, 行）
+     */
+    public static int[][] powerFoodTiles(int layoutIndex) {
+        int[][] source = POWER_FOOD[layoutIndex];
+        int[][] copy = new int[source.length][];
+        for (int i = 0; i < source.length; i++) {
+            copy[i] = source[i].clone();
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,379 @@
+package pacman;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 帧耗时指标导出
+ * 游戏线程记录帧间隔、逻辑帧耗时、渲染耗时和每帧碰撞检测数到 LatencyHistogram（对数-线性分桶，无锁），
+ * 并更新实体数和剩余食物数；后台线程按固定周期取走上一周期的直方图，
+ * 追加一行到本地轮转的 CSV 文件，并生成 Prometheus 文本格式供可选的本地 HTTP 端点抓取。
+ *
+ * 每个指标有两个直方图轮流使用：导出线程把记录目标切换到空闲的一个，等已进入旧直方图的记录全部完成后
+ * 再读取并清空它（与 HdrHistogram 的 Recorder 相同的写者/读者相位切换），
+ * 记录一方只做几次原子加法，不会被导出、写文件或 HTTP 请求阻塞
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public final class MetricsExporter {
+    public static final long DEFAULT_INTERVAL_MILLIS = 10_000;
+    public static final String FILE_NAME = "frame-metrics.csv";
+    // 单个文件超过该大小时轮转，保留 KEEP_FILES 个文件（含当前文件）
+    private static final long MAX_FILE_BYTES = 1024 * 1024;
+    private static final int KEEP_FILES = 5;
+    private static final String CSV_HEADER = "time,frames,frame_p50_ms,frame_p99_ms,frame_max_ms,"
+            + "ticks,tick_p50_us,tick_p99_us,tick_max_us,renders,render_p50_us,render_p99_us,render_max_us,"
+            + "entities,pellets_left,collision_tests_p50,collision_tests_max,collision_hits";
+
+    private final Series frameTime = new Series("pacman_frame_time_seconds", "Time between frames", 1e-9);
+    private final Series tickTime = new Series("pacman_tick_time_seconds", "Duration of one engine tick", 1e-9);
+    private final Series renderTime = new Series("pacman_render_time_seconds", "Duration of one render pass", 1e-9);
+    private final Series collisionTests = new Series("pacman_collision_tests_per_tick", "Collision pairs tested per tick", 1);
+    private final AtomicLong collisionHits = new AtomicLong();
+    private volatile long entities;
+    private volatile long pelletsLeft;
+
+    private final Path file;
+    private final long intervalMillis;
+    private final ScheduledExecutorService scheduler;
+    private HttpServer server;
+    private volatile String scrapeText = "";
+    private long lastFrameNanos;
+
+    /**
+     * 一个直方图指标：当前记录的直方图、等待下次切换的空闲直方图和累计计数
+     */
+    private static final class Series {
+        private final String name;
+        private final String help;
+        private final double scale; // 记录值换算为导出单位的系数
+        private volatile LatencyHistogram active = new LatencyHistogram();
+        private LatencyHistogram spare = new LatencyHistogram();
+        private final RecordingPhaser phaser = new RecordingPhaser();
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        // 上一周期的统计，只由导出线程读写
+        private long intervalCount;
+        private long p50;
+        private long p90;
+        private long p99;
+        private long max;
+
+        private Series(String name, String help, double scale) {
+            this.name = name;
+            this.help = help;
+            this.scale = scale;
+        }
+
+        private void record(long value) {
+            long epoch = phaser.enter();
+            try {
+                active.record(value);
+            } finally {
+                phaser.exit(epoch);
+            }
+            count.incrementAndGet();
+            sum.addAndGet(Math.max(0, value));
+        }
+
+        /**
+         * 切换直方图并统计上一周期
+         */
+        private void roll() {
+            // 修改原因：原来切换后立即读取并清空旧直方图，切换前已读到旧引用的记录可能在清空之后才写入，
+            // 记录丢失或被算进下一周期之前的统计；现在等这些记录全部退出后再读取
+            LatencyHistogram drained = active;
+            active = spare;
+            spare = drained;
+            phaser.flip();
+            intervalCount = drained.getCount();
+            p50 = drained.percentile(50);
+            p90 = drained.percentile(90);
+            p99 = drained.percentile(99);
+            max = drained.getMax();
+            drained.reset();
+        }
+
+        private void appendPrometheus(StringBuilder out) {
+            out.append("# HELP ").append(name).append(' ').append(help).append(" (last interval quantiles)\n");
+            out.append("# TYPE ").append(name).append(" summary\n");
+            appendQuantile(out, "0.5", p50);
+            appendQuantile(out, "0.9", p90);
+            appendQuantile(out, "0.99", p99);
+            appendQuantile(out, "1", max);
+            out.append(name).append("_sum ").append(sum.get() * scale).append('\n');
+            out.append(name).append("_count ").append(count.get()).append('\n');
+        }
+
+        private void appendQuantile(StringBuilder out, String quantile, long value) {
+            out.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                    .append(value * scale).append('\n');
+        }
+    }
+
+    /**
+     * 写者/读者相位切换
+     * 写者进入时在起始计数上加一，退出时在对应相位的结束计数上加一；读者切换相位时把起始计数换成
+     * 另一相位的初值，然后等旧相位的结束计数追上切换时的起始计数，即旧相位的写者全部退出。
+     * 写者只做两次原子加法，不会等待；读者的切换由调用方串行执行
+     */
+    private static final class RecordingPhaser {
+        // 偶相位从 0 开始计数，奇相位从 Long.MIN_VALUE 开始计数，符号位区分相位
+        private final AtomicLong startEpoch = new AtomicLong();
+        private final AtomicLong evenEndEpoch = new AtomicLong();
+        private final AtomicLong oddEndEpoch = new AtomicLong(Long.MIN_VALUE);
+
+        private long enter() {
+            return startEpoch.getAndIncrement();
+        }
+
+        private void exit(long epoch) {
+            (epoch < 0 ? oddEndEpoch : evenEndEpoch).getAndIncrement();
+        }
+
+        /**
+         * 切换到另一个相位，并等待上一相位的写者全部退出
+         */
+        private void flip() {
+            boolean nextIsEven = startEpoch.get() < 0;
+            long initial = nextIsEven ? 0 : Long.MIN_VALUE;
+            (nextIsEven ? evenEndEpoch : oddEndEpoch).set(initial);
+            long startAtFlip = startEpoch.getAndSet(initial);
+            AtomicLong previousEnd = nextIsEven ? oddEndEpoch : evenEndEpoch;
+            while (previousEnd.get() != startAtFlip) {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * 构造方法
+     * @param directory 指标文件目录，为 null 时不写文件
+     * @param intervalMillis 导出周期（毫秒）
+     */
+    public MetricsExporter(Path directory, long intervalMillis) {
+        this.file = directory != null ? directory.resolve(FILE_NAME) : null;
+        this.intervalMillis = intervalMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-exporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 开始周期导出
+     * @throws IOException 无法创建指标目录
+     */
+    public void start() throws IOException {
+        if (file != null) {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+        }
+        scheduler.scheduleAtFixedRate(this::export, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 在本机回环地址上打开 HTTP 抓取端点 /metrics
+     * @param port 端口，0 表示自动分配
+     * @return 实际端口
+     * @throws IOException 端口无法绑定
+     */
+    public int startHttp(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = scrapeText.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.setExecutor(scheduler);
+        server.start();
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * 停止导出和 HTTP 端点，并把最后一个周期写入文件
+     */
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        export();
+    }
+
+    /**
+     * 记录一帧的开始（AnimationTimer 的时间戳），与上一帧的间隔计入帧间隔
+     * @param frameNanos 帧时间戳（纳秒）
+     */
+    public void recordFrame(long frameNanos) {
+        if (lastFrameNanos != 0) {
+            frameTime.record(frameNanos - lastFrameNanos);
+        }
+        lastFrameNanos = frameNanos;
+    }
+
+    /**
+     * 记录一个逻辑帧的耗时和该帧的碰撞、实体、食物计数
+     * @param nanos 耗时（纳秒）
+     * @param engine 刚更新完的引擎
+     */
+    public void recordTick(long nanos, GameEngine engine) {
+        tickTime.record(nanos);
+        collisionTests.record(engine.getCollisionTests());
+        collisionHits.addAndGet(engine.getCollisionHits());
+        entities = engine.getEntityCount();
+        pelletsLeft = engine.getRemainingPellets();
+    }
+
+    /**
+     * 记录一次渲染的耗时
+     * @param nanos 耗时（纳秒）
+     */
+    public void recordRender(long nanos) {
+        renderTime.record(nanos);
+    }
+
+    /**
+     * 获取最近一次导出生成的 Prometheus 文本
+     * @return 文本，第一次导出前为空
+     */
+    public String getScrapeText() {
+        return scrapeText;
+    }
+
+    /**
+     * 导出一个周期：切换直方图，更新抓取文本并追加一行 CSV
+     */
+    private synchronized void export() {
+        frameTime.roll();
+        tickTime.roll();
+        renderTime.roll();
+        collisionTests.roll();
+
+        StringBuilder text = new StringBuilder(2048);
+        frameTime.appendPrometheus(text);
+        tickTime.appendPrometheus(text);
+        renderTime.appendPrometheus(text);
+        collisionTests.appendPrometheus(text);
+        text.append("# HELP pacman_collision_hits_total Collision pairs that overlapped\n")
+                .append("# TYPE pacman_collision_hits_total counter\n")
+                .append("pacman_collision_hits_total ").append(collisionHits.get()).append('\n');
+        text.append("# HELP pacman_entities Pac-Man, ghosts and clones in play\n")
+                .append("# TYPE pacman_entities gauge\n")
+                .append("pacman_entities ").append(entities).append('\n');
+        text.append("# HELP pacman_pellets_left Pellets remaining on the current level\n")
+                .append("# TYPE pacman_pellets_left gauge\n")
+                .append("pacman_pellets_left ").append(pelletsLeft).append('\n');
+        scrapeText = text.toString();
+
+        if (file != null) {
+            try {
+                appendCsv();
+            } catch (IOException e) {
+                System.out.println("指标写入失败: " + e.getMessage());
+            }
+        }
+    }
+
+    private void appendCsv() throws IOException {
+        if (Files.exists(file) && Files.size(file) >= MAX_FILE_BYTES) {
+            rotate();
+        }
+        boolean fresh = !Files.exists(file);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if (fresh) {
+                writer.write(CSV_HEADER);
+                writer.newLine();
+            }
+            writer.write(String.format(Locale.ROOT, "%d,%d,%.3f,%.3f,%.3f,%d,%.1f,%.1f,%.1f,%d,%.1f,%.1f,%.1f,%d,%d,%d,%d,%d",
+                    System.currentTimeMillis(),
+                    frameTime.intervalCount, frameTime.p50 / 1e6, frameTime.p99 / 1e6, frameTime.max / 1e6,
+                    tickTime.intervalCount, tickTime.p50 / 1e3, tickTime.p99 / 1e3, tickTime.max / 1e3,
+                    renderTime.intervalCount, renderTime.p50 / 1e3, renderTime.p99 / 1e3, renderTime.max / 1e3,
+                    entities, pelletsLeft, collisionTests.p50, collisionTests.max, collisionHits.get()));
+            writer.newLine();
+        }
+    }
+
+    /**
+     * 轮转文件：frame-metrics.csv.1 是最近的旧文件，超出保留数的最旧文件被覆盖
+     */
+    private void rotate() throws IOException {
+        for (int i = KEEP_FILES - 1; i >= 1; i--) {
+            Path source = i == 1 ? file : rotated(i - 1);
+            if (Files.exists(source)) {
+                Files.move(source, rotated(i), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    private Path rotated(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    /**
+     * 主方法：无界面运行自动驾驶对局，按游戏循环的方式记录指标，
+     * 打开 HTTP 端点并输出一次抓取结果
+     * @param args [秒数] [输出目录]
+     * @throws Exception 运行失败
+     */
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        Path directory = Path.of(args.length > 1 ? args[1] : "metrics");
+        LevelLoader.headless().load(1);
+        MetricsExporter metrics = new MetricsExporter(directory, 1000);
+        metrics.start();
+        int port = metrics.startHttp(0);
+
+        GameEngine engine = new GameEngine(1);
+        engine.setKeyframeInterval(0);
+        engine.initialize();
+        Autopilot bot = new Autopilot(Autopilot.DEFAULT_NODE_BUDGET);
+        long tickNanos = GameEngine.TICK_MILLIS * 1_000_000L;
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        for (long next = System.nanoTime(); next < end; next += tickNanos) {
+            while (System.nanoTime() < next) {
+                Thread.onSpinWait();
+            }
+            metrics.recordFrame(next);
+            bot.drive(engine);
+            long begin = System.nanoTime();
+            engine.update(GameEngine.TICK_MILLIS);
+            metrics.recordTick(System.nanoTime() - begin, engine);
+        }
+
+        URL url = new URL("http://127.0.0.1:" + port + "/metrics");
+        try (InputStream in = url.openStream()) {
+            System.out.print(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        metrics.stop();
+        System.out.println("指标文件: " + directory.resolve(FILE_NAME).toAbsolutePath());
+    }
+}
@@ -0,0 +1,266 @@
+package pacman;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * 网络协议
+ * 所有消息为二进制帧：u16 长度（类型加负载的字节数）、u8 类型、负载，均为大端
+ *
+ * <pre>
+ * 客户端 → 服务器
+ *   INPUT    u32 输入序号, u32 客户端逻辑帧, u16 KeyCode 编码
+ *   SPECTATE u32 对局编号：放弃自己的对局，改为观战指定对局
+ *   ACK      u32 观战者已收到的逻辑帧
+ *   SYNC_REQUEST u16 间隔：此后每隔若干逻辑帧发送一次 SYNC（0 表示停止），供客户端预测使用
+ * 服务器 → 客户端
+ *   WELCOME  u64 随机数种子, u16 逻辑帧毫秒数, u32 对局编号
+ *   STATE    u32 逻辑帧, u32 已处理的最后输入序号, i32 分数, u8 生命, u8 关卡, u8 标志,
+ *            i16 Pac-Man X, i16 Pac-Man Y, u8 方向, u16 剩余食物,
+ *            u8 鬼魂数量, 每个鬼魂 { i16 X, i16 Y, u8 方向, u8 标志 }
+ *   DELTA    观战增量，格式见 DeltaCodec
+ *   SYNC     u32 逻辑帧, u32 已处理的最后输入序号, 完整引擎状态（GameEngine.saveState）
+ * </pre>
+ * 坐标量化为 1/4 像素
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public final class NetProtocol {
+    public static final byte INPUT = 0x02;
+    public static final byte SPECTATE = 0x03;
+    public static final byte ACK = 0x04;
+    public static final byte SYNC_REQUEST = 0x05;
+    public static final byte WELCOME = (byte) 0x81;
+    public static final byte STATE = (byte) 0x82;
+    public static final byte DELTA = (byte) 0x83;
+    public static final byte SYNC = (byte) 0x84;
+
+    // 帧头：长度和类型
+    public static final int HEADER_SIZE = 3;
+    public static final int INPUT_SIZE = HEADER_SIZE + 10;
+    public static final int SPECTATE_SIZE = HEADER_SIZE + 4;
+    public static final int ACK_SIZE = HEADER_SIZE + 4;
+    public static final int SYNC_REQUEST_SIZE = HEADER_SIZE + 2;
+    // SYNC 消息头：帧头、逻辑帧和输入序号，之后是引擎状态
+    public static final int SYNC_HEADER_SIZE = HEADER_SIZE + 8;
+    public static final int WELCOME_SIZE = HEADER_SIZE + 14;
+    // 状态消息的最大长度（最多 255 个鬼魂）
+    public static final int MAX_STATE_SIZE = HEADER_SIZE + 23 + 255 * 6;
+
+    // 状态标志位
+    public static final int FLAG_GAME_OVER = 1;
+    public static final int GHOST_FLAG_SCARED = 1;
+
+    private static final int POSITION_SCALE = 4;
+
+    private NetProtocol() {
+    }
+
+    /**
+     * 坐标量化
+     * @param position 坐标（像素）
+     * @return 1/4 像素单位的整数坐标
+     */
+    public static short quantize(double position) {
+        return (short) Math.round(position * POSITION_SCALE);
+    }
+
+    /**
+     * 坐标还原
+     * @param quantized 1/4 像素单位的整数坐标
+     * @return 坐标（像素）
+     */
+    public static double dequantize(int quantized) {
+        return (double) quantized / POSITION_SCALE;
+    }
+
+    /**
+     * 写入输入消息
+     * @param out 目标缓冲区
+     * @param sequence 输入序号
+     * @param clientTick 客户端逻辑帧
+     * @param keyCode KeyCode 编码
+     */
+    public static void writeInput(ByteBuffer out, int sequence, int clientTick, int keyCode) {
+        out.putShort((short) (INPUT_SIZE - 2));
+        out.put(INPUT);
+        out.putInt(sequence);
+        out.putInt(clientTick);
+        out.putShort((short) keyCode);
+    }
+
+    /**
+     * 写入欢迎消息
+     * @param out 目标缓冲区
+     * @param seed 随机数种子
+     * @param matchId 对局编号
+     */
+    public static void writeWelcome(ByteBuffer out, long seed, int matchId) {
+        out.putShort((short) (WELCOME_SIZE - 2));
+        out.put(WELCOME);
+        out.putLong(seed);
+        out.putShort((short) GameEngine.TICK_MILLIS);
+        out.putInt(matchId);
+    }
+
+    /**
+     * 写入观战请求
+     * @param out 目标缓冲区
+     * @param matchId 要观战的对局编号
+     */
+    public static void writeSpectate(ByteBuffer out, int matchId) {
+        out.putShort((short) (SPECTATE_SIZE - 2));
+        out.put(SPECTATE);
+        out.putInt(matchId);
+    }
+
+    /**
+     * 写入观战确认
+     * @param out 目标缓冲区
+     * @param tick 已收到的逻辑帧
+     */
+    public static void writeAck(ByteBuffer out, int tick) {
+        out.putShort((short) (ACK_SIZE - 2));
+        out.put(ACK);
+        out.putInt(tick);
+    }
+
+    /**
+     * 写入完整状态消息
+     * 按下标遍历实体列表，不创建迭代器或临时对象
+     * @param out 目标缓冲区
+     * @param engine 权威引擎
+     * @param lastInputSequence 已处理的最后输入序号
+     */
+    public static void writeState(ByteBuffer out, GameEngine engine, int lastInputSequence) {
+        int start = out.position();
+        out.putShort((short) 0);
+        out.put(STATE);
+        out.putInt((int) engine.getTick());
+        out.putInt(lastInputSequence);
+        out.putInt(engine.getScore());
+        out.put((byte) engine.getLives());
+        out.put((byte) engine.getLevel());
+        out.put((byte) (engine.isGameOver() ? FLAG_GAME_OVER : 0));
+        PacMan pacman = engine.getPacman();
+        out.putShort(quantize(pacman.getX()));
+        out.putShort(quantize(pacman.getY()));
+        out.put(Direction.toCode(pacman.getDirection()));
+        out.putShort((short) engine.getRemainingPellets());
+        List<Ghost> ghosts = engine.getGhosts();
+        int count = Math.min(ghosts.size(), 255);
+        out.put((byte) count);
+        for (int i = 0; i < count; i++) {
+            Ghost ghost = ghosts.get(i);
+            out.putShort(quantize(ghost.getX()));
+            out.putShort(quantize(ghost.getY()));
+            out.put(Direction.toCode(ghost.getDirection()));
+            out.put((byte) (ghost.isScared() ? GHOST_FLAG_SCARED : 0));
+        }
+        out.putShort(start, (short) (out.position() - start - 2));
+    }
+
+    /**
+     * 写入同步请求
+     * @param out 目标缓冲区
+     * @param interval 同步间隔（逻辑帧），0 表示停止
+     */
+    public static void writeSyncRequest(ByteBuffer out, int interval) {
+        out.putShort((short) (SYNC_REQUEST_SIZE - 2));
+        out.put(SYNC_REQUEST);
+        out.putShort((short) interval);
+    }
+
+    /**
+     * 写入完整状态同步消息
+     * @param out 目标缓冲区
+     * @param engine 权威引擎
+     * @param lastInputSequence 已处理的最后输入序号
+     * @return 写入成功返回 true；缓冲区放不下时不写入任何内容并返回 false
+     */
+    public static boolean writeSync(ByteBuffer out, GameEngine engine, int lastInputSequence) {
+        int start = out.position();
+        try {
+            out.putShort((short) 0);
+            out.put(SYNC);
+            out.putInt((int) engine.getTick());
+            out.putInt(lastInputSequence);
+            engine.saveState(out);
+        } catch (BufferOverflowException e) {
+            out.position(start);
+            return false;
+        }
+        out.putShort(start, (short) (out.position() - start - 2));
+        return true;
+    }
+
+    /**
+     * 写入无符号变长整数（每字节7位，低位在前）
+     * @param out 目标缓冲区
+     * @param value 数值，按无符号处理
+     */
+    public static void writeVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     * 读取无符号变长整数
+     * @param in 源缓冲区
+     * @return 数值
+     */
+    public static int readVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("变长整数过长");
+    }
+
+    /**
+     * 写入有符号变长整数，绝对值小的负数同样只占一个字节
+     * @param out 目标缓冲区
+     * @param value 数值
+     */
+    public static void writeSignedVarint(ByteBuffer out, int value) {
+        writeVarint(out, (value << 1) ^ (value >> 31));
+    }
+
+    /**
+     * 读取有符号变长整数
+     * @param in 源缓冲区
+     * @return 数值
+     */
+    public static int readSignedVarint(ByteBuffer in) {
+        int value = readVarint(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * 检查缓冲区中是否有一条完整消息（读模式）
+     * @param in 源缓冲区
+     * @return 完整消息的总长度（含长度字段），不完整时返回 -1
+     * @throws IOException 长度字段小于消息头或超过缓冲区容量（对端发送了非法数据）
+     */
+    public static int completeFrame(ByteBuffer in) throws IOException {
+        if (in.remaining() < 2) {
+            return -1;
+        }
+        int length = (in.getShort(in.position()) & 0xFFFF) + 2;
+        if (length < HEADER_SIZE || length > in.capacity()) {
+            throw new IOException("非法消息长度: " + length);
+        }
+        return in.remaining() >= length ? length : -1;
+    }
+}
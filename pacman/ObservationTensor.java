@@ -0,0 +1,305 @@
+package pacman;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 观察张量
+ * 把棋盘按格子写成多通道平面（通道 × 行 × 列，行优先），直接写入调用方提供的缓冲区，
+ * 训练进程可以把多个环境的张量放在同一块直接内存中整批读取，中间不做复制。
+ * 缓冲区可以是 FloatBuffer（每格 0.0 / 1.0）或 ByteBuffer（每格 0 / 1）
+ *
+ * 张量按每帧的变化增量更新：
+ * <ul>
+ *   <li>墙壁和食物只在换关、重开或状态恢复（引擎地图版本号改变）时整体重写</li>
+ *   <li>之后被吃掉的食物从引擎的食物变化日志读取，只清除对应格子</li>
+ *   <li>Pac-Man、鬼魂、恐慌标记、陷阱和克隆体只改写位置变化的格子</li>
+ * </ul>
+ * 实体所在格子取其中心点所在的格子，处于地图外（隧道中）时不标记。
+ * 每个鬼魂单独的通道只有 MAX_GHOSTS 个，恐慌标记和陷阱通道包括所有鬼魂（群战模式的鬼魂也计入）
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public final class ObservationTensor {
+    public static final int WIDTH = GameEngine.GRID_WIDTH;
+    public static final int HEIGHT = GameEngine.GRID_HEIGHT;
+    public static final int PLANE = WIDTH * HEIGHT;
+
+    // 通道
+    public static final int WALLS = 0;
+    public static final int PELLETS = 1;
+    public static final int POWER_PELLETS = 2;
+    public static final int SKILL_PELLETS = 3;
+    public static final int PACMAN = 4;
+    public static final int GHOST_0 = 5;
+    public static final int SCARED = GHOST_0 + PacManEnv.MAX_GHOSTS;
+    public static final int TRAPS = SCARED + 1;
+    public static final int CLONES = TRAPS + 1;
+    public static final int CHANNELS = CLONES + 1;
+    public static final int SIZE = CHANNELS * PLANE;
+
+    private static final int INITIAL_MARKS = 16;
+
+    private final FloatBuffer floats;
+    private final ByteBuffer bytes;
+    private final int offset;
+
+    private GameEngine engine;
+    private int mapVersion;
+    private long journalRead;
+    private long[] pelletBits;
+
+    // 动态通道上一帧标记的格子，以及本帧要标记的格子
+    private final int[][] marked;
+    private final int[] markedCount;
+    private int[] next;
+    private long writes;
+
+    /**
+     * 构造方法（浮点张量）
+     * @param target 目标缓冲区，通常是直接缓冲区
+     * @param offset 本张量在缓冲区中的起始下标（以 float 计），之后 SIZE 项
+     */
+    public ObservationTensor(FloatBuffer target, int offset) {
+        this(target, null, offset, target.capacity());
+    }
+
+    /**
+     * 构造方法（字节张量）
+     * @param target 目标缓冲区，通常是直接缓冲区
+     * @param offset 本张量在缓冲区中的起始下标（以字节计），之后 SIZE 项
+     */
+    public ObservationTensor(ByteBuffer target, int offset) {
+        this(null, target, offset, target.capacity());
+    }
+
+    private ObservationTensor(FloatBuffer floats, ByteBuffer bytes, int offset, int capacity) {
+        if (offset < 0 || offset + SIZE > capacity) {
+            throw new IllegalArgumentException("缓冲区容量不足: 需要 " + (offset + SIZE) + ", 实际 " + capacity);
+        }
+        this.floats = floats;
+        this.bytes = bytes;
+        this.offset = offset;
+        this.marked = new int[CHANNELS][INITIAL_MARKS];
+        this.markedCount = new int[CHANNELS];
+        this.next = new int[INITIAL_MARKS];
+    }
+
+    /**
+     * 按引擎当前状态更新张量
+     * 引擎对象或地图版本号变化时整体重写，否则只写入变化的格子
+     * @param engine 引擎
+     */
+    public void update(GameEngine engine) {
+        if (engine != this.engine || engine.getMapVersion() != mapVersion
+                || engine.getPelletJournalCount() - journalRead > GameEngine.PELLET_JOURNAL_SIZE) {
+            refresh(engine);
+        } else {
+            applyPelletJournal();
+        }
+        updateEntities();
+    }
+
+    /**
+     * 整体重写：清空所有通道，写入墙壁和三类食物
+     */
+    private void refresh(GameEngine engine) {
+        this.engine = engine;
+        this.mapVersion = engine.getMapVersion();
+        this.journalRead = engine.getPelletJournalCount();
+        for (int i = 0; i < SIZE; i++) {
+            write(i, false);
+        }
+        for (int channel = 0; channel < CHANNELS; channel++) {
+            markedCount[channel] = 0;
+        }
+        Maze maze = engine.getMaze();
+        int rows = Math.min(maze.getHeight(), HEIGHT);
+        int cols = Math.min(maze.getWidth(), WIDTH);
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                if (maze.isWall(col, row)) {
+                    write(WALLS * PLANE + row * WIDTH + col, true);
+                }
+            }
+        }
+        writePellets(maze, PELLETS, GameEngine.PELLET_FOOD);
+        writePellets(maze, POWER_PELLETS, GameEngine.PELLET_POWER);
+        writePellets(maze, SKILL_PELLETS, GameEngine.PELLET_SKILL);
+    }
+
+    private void writePellets(Maze maze, int channel, int kind) {
+        pelletBits = engine.getPelletBits(pelletBits, kind);
+        for (int word = 0; word < pelletBits.length; word++) {
+            for (long w = pelletBits[word]; w != 0; w &= w - 1) {
+                int cell = cellOfTile(maze, (word << 6) + Long.numberOfTrailingZeros(w));
+                if (cell >= 0) {
+                    write(channel * PLANE + cell, true);
+                }
+            }
+        }
+    }
+
+    /**
+     * 读取上次更新之后的食物变化日志，清除被吃掉的食物
+     */
+    private void applyPelletJournal() {
+        long count = engine.getPelletJournalCount();
+        if (journalRead == count) {
+            return;
+        }
+        Maze maze = engine.getMaze();
+        for (long i = journalRead; i < count; i++) {
+            int entry = engine.getPelletJournalEntry(i);
+            int cell = cellOfTile(maze, entry >>> 2);
+            if (cell >= 0) {
+                write(channelOfPellet(entry & 3) * PLANE + cell, false);
+            }
+        }
+        journalRead = count;
+    }
+
+    private static int channelOfPellet(int kind) {
+        return kind == GameEngine.PELLET_FOOD ? PELLETS : kind == GameEngine.PELLET_POWER ? POWER_PELLETS : SKILL_PELLETS;
+    }
+
+    private static int cellOfTile(Maze maze, int tile) {
+        int col = tile % maze.getWidth();
+        int row = tile / maze.getWidth();
+        return col < WIDTH && row < HEIGHT ? row * WIDTH + col : -1;
+    }
+
+    /**
+     * 更新动态通道：每个通道先收集本帧的格子，再与上一帧比较，只改写差异
+     */
+    private void updateEntities() {
+        PacMan pacman = engine.getPacman();
+        int count = add(0, cellOf(pacman.getX(), pacman.getY(), pacman.getWidth(), pacman.getHeight()));
+        mark(PACMAN, count);
+
+        List<Ghost> ghosts = engine.getGhosts();
+        int ghostCount = Math.min(ghosts.size(), PacManEnv.MAX_GHOSTS);
+        for (int i = 0; i < PacManEnv.MAX_GHOSTS; i++) {
+            count = 0;
+            if (i < ghostCount) {
+                Ghost ghost = ghosts.get(i);
+                if (ghost.isVisible()) {
+                    count = add(0, cellOf(ghost.getX(), ghost.getY(), ghost.getWidth(), ghost.getHeight()));
+                }
+            }
+            mark(GHOST_0 + i, count);
+        }
+        // 修改原因：恐慌和陷阱通道由所有鬼魂共用，原来只扫描前 MAX_GHOSTS 个鬼魂，之后的鬼魂布下的陷阱不会出现
+        int scared = 0;
+        for (int i = 0; i < ghosts.size(); i++) {
+            Ghost ghost = ghosts.get(i);
+            if (ghost.isVisible() && ghost.isScared()) {
+                scared = add(scared, cellOf(ghost.getX(), ghost.getY(), ghost.getWidth(), ghost.getHeight()));
+            }
+        }
+        mark(SCARED, scared);
+        int traps = 0;
+        for (int i = 0; i < ghosts.size(); i++) {
+            Ghost ghost = ghosts.get(i);
+            if (ghost instanceof BlueGhost && ((BlueGhost) ghost).isIceTrapSet()) {
+                BlueGhost blue = (BlueGhost) ghost;
+                traps = add(traps, cellOf(blue.getIceTrapX(), blue.getIceTrapY(), GameEngine.TILE_SIZE, GameEngine.TILE_SIZE));
+            } else if (ghost instanceof OrangeGhost && ((OrangeGhost) ghost).isTrapSet()) {
+                OrangeGhost orange = (OrangeGhost) ghost;
+                traps = add(traps, cellOf(orange.getTrapX(), orange.getTrapY(), GameEngine.TILE_SIZE, GameEngine.TILE_SIZE));
+            }
+        }
+        mark(TRAPS, traps);
+
+        List<PacmanClone> clones = engine.getPacmanClones();
+        count = 0;
+        for (int i = 0; i < clones.size(); i++) {
+            PacmanClone clone = clones.get(i);
+            count = add(count, cellOf(clone.getX(), clone.getY(), clone.getWidth(), clone.getHeight()));
+        }
+        mark(CLONES, count);
+    }
+
+    private static int cellOf(double x, double y, double width, double height) {
+        int col = (int) Math.floor((x + width / 2) / GameEngine.TILE_SIZE);
+        int row = (int) Math.floor((y + height / 2) / GameEngine.TILE_SIZE);
+        if (col < 0 || col >= WIDTH || row < 0 || row >= HEIGHT) {
+            return -1;
+        }
+        return row * WIDTH + col;
+    }
+
+    /**
+     * 把格子加入 next 的前 count 项
+     * @return 新的项数
+     */
+    private int add(int count, int cell) {
+        if (cell < 0) {
+            return count;
+        }
+        if (count == next.length) {
+            next = Arrays.copyOf(next, count * 2);
+        }
+        next[count] = cell;
+        return count + 1;
+    }
+
+    /**
+     * 用 next 的前 count 项替换通道上一帧标记的格子，只改写两者的差异
+     */
+    private void mark(int channel, int count) {
+        int[] previous = marked[channel];
+        int previousCount = markedCount[channel];
+        int base = channel * PLANE;
+        for (int i = 0; i < previousCount; i++) {
+            if (!contains(next, count, previous[i])) {
+                write(base + previous[i], false);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if (!contains(previous, previousCount, next[i])) {
+                write(base + next[i], true);
+            }
+        }
+        if (previous.length < count) {
+            previous = new int[next.length];
+            marked[channel] = previous;
+        }
+        System.arraycopy(next, 0, previous, 0, count);
+        markedCount[channel] = count;
+    }
+
+    private static boolean contains(int[] cells, int count, int cell) {
+        for (int i = 0; i < count; i++) {
+            if (cells[i] == cell) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void write(int index, boolean value) {
+        if (floats != null) {
+            floats.put(offset + index, value ? 1f : 0f);
+        } else {
+            bytes.put(offset + index, (byte) (value ? 1 : 0));
+        }
+        writes++;
+    }
+
+    /**
+     * 获取累计写入的格子数，用于确认增量更新的效果
+     * @return 格子数
+     */
+    public long getWrites() {
+        return writes;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+}
@@ -3,6 +3,7 @@ package pacman;
 import javafx.scene.image.Image;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import static pacman.PacManApp.TILE_SIZE;
@@ -16,15 +17,12 @@ import static pacman.PacManApp.TILE_SIZE;
  * @since 2024
  */
 public class OrangeGhost extends Ghost {
-    private static final double DEFAULT_SPEED = 2.0; // Default speed for orange ghost
     private long silkTrapCooldown = 0; // Silk trap cooldown timer
-    private static final long SILK_TRAP_COOLDOWN = 15000; // 15 seconds
     private boolean isDead = false; // Whether dead
     private long deathTime = 0; // Death time
     private double trapX = -1; // Trap X coordinate
     private double trapY = -1; // Trap Y coordinate
     private long trapEndTime = 0; // Trap end time
-    private static final long TRAP_DURATION = 10000; // Trap duration (10 seconds)
 
     /**
      * Constructor
@@ -34,8 +32,20 @@ public class OrangeGhost extends Ghost {
      * @param image Image resource
      */
     public OrangeGhost(double x, double y, Image image) {
-        super(x, y, TILE_SIZE, TILE_SIZE, getRandomDirection(), image);
-        setMovementSpeed(DEFAULT_SPEED);
+        this(x, y, image, new GameRandom());
+    }
+
+    /**
+     * Constructor with the shared game random source
+     *
+     * @param x Initial X coordinate
+     * @param y Initial Y coordinate
+     * @param image Image resource
+     * @param random Game random source
+     */
+    public OrangeGhost(double x, double y, Image image, GameRandom random) {
+        super(x, y, TILE_SIZE, TILE_SIZE, random.nextDirection(), image, random);
+        setMovementSpeed(baseSpeed());
         this.isDead = false;
         this.deathTime = 0;
         this.silkTrapCooldown = 0;
@@ -63,7 +73,7 @@ public class OrangeGhost extends Ghost {
     public void update(long deltaTime, double pacmanX, double pacmanY, List<Wall> walls, List<Ghost> ghosts) {
         if (isDead) {
             // Death state: Respawn timer (30 seconds)
-            if (System.currentTimeMillis() - deathTime >= 30000) {
+            if (clock.currentTimeMillis() - deathTime >= rules.getGhostRespawnTime()) {
                 respawn();
             }
             return;
@@ -77,19 +87,20 @@ public class OrangeGhost extends Ghost {
         // Use special ability when cooldown ends
         if (silkTrapCooldown <= 0) {
             useSpecialAbility();
-            silkTrapCooldown = SILK_TRAP_COOLDOWN;
+            silkTrapCooldown = rules.getSilkTrapCooldown();
         }
 
         super.update(deltaTime, pacmanX, pacmanY, walls, ghosts);
     }
 
     /**
-     * Set silk trap
+     * Set silk trap at the current position
+     * Modify reason: Public so benchmark scenarios can keep every trap armed
      */
-    private void setSilkTrap() {
+    public void setSilkTrap() {
         trapX = getX();
         trapY = getY();
-        trapEndTime = System.currentTimeMillis() + TRAP_DURATION;
+        trapEndTime = clock.currentTimeMillis() + rules.getSilkTrapDuration();
     }
 
     /**
@@ -97,7 +108,7 @@ public class OrangeGhost extends Ghost {
      */
     public void die() {
         isDead = true;
-        deathTime = System.currentTimeMillis();
+        deathTime = clock.currentTimeMillis();
         // Leave silk trap at death position
         setSilkTrap();
     }
@@ -135,9 +146,9 @@ public class OrangeGhost extends Ghost {
         }
 
         // Occasional (15% chance) detour for behavioral variety
-        if (Math.random() < 0.15) {
+        if (random.nextDouble() < 0.15) {
             Direction[] directions = Direction.values();
-            return directions[(int)(Math.random() * directions.length)];
+            return directions[(int)(random.nextDouble() * directions.length)];
         }
 
         // Move towards Pac-Man
@@ -159,7 +170,7 @@ public class OrangeGhost extends Ghost {
     public void render(GraphicsContext gc) {
         if (!isDead) {
             // Render silk trap
-            if (System.currentTimeMillis() < trapEndTime) {
+            if (clock.currentTimeMillis() < trapEndTime) {
                 gc.setFill(Color.BURLYWOOD);
                 gc.fillOval(trapX, trapY, getWidth(), getHeight());
             }
@@ -174,7 +185,7 @@ public class OrangeGhost extends Ghost {
             }
         } else {
             // Death state: Show respawn countdown
-            long remainingTime = 30000 - (System.currentTimeMillis() - deathTime);
+            long remainingTime = rules.getGhostRespawnTime() - (clock.currentTimeMillis() - deathTime);
             int secondsLeft = (int) (remainingTime / 1000) + 1;
             gc.setFill(Color.WHITE);
             gc.fillText("Died - Respawn in: " + secondsLeft + "s", getX(), getY() - 10);
@@ -187,16 +198,38 @@ public class OrangeGhost extends Ghost {
      */
     @Override
     public void reset() {
-        setX(9 * 32);
-        setY(10 * 32);
+        setX(getStartX());
+        setY(getStartY());
         setDirection(getRandomDirection());
-        setMovementSpeed(DEFAULT_SPEED);
+        setMovementSpeed(baseSpeed());
         isDead = false;
         deathTime = 0;
         trapX = -1;
         trapY = -1;
         trapEndTime = 0;
-        silkTrapCooldown = SILK_TRAP_COOLDOWN;
+        silkTrapCooldown = rules.getSilkTrapCooldown();
+    }
+
+    @Override
+    public void writeState(ByteBuffer buffer) {
+        super.writeState(buffer);
+        buffer.putLong(silkTrapCooldown);
+        buffer.put((byte) (isDead ? 1 : 0));
+        buffer.putLong(deathTime);
+        buffer.putDouble(trapX);
+        buffer.putDouble(trapY);
+        buffer.putLong(trapEndTime);
+    }
+
+    @Override
+    public void readState(ByteBuffer buffer) {
+        super.readState(buffer);
+        silkTrapCooldown = buffer.getLong();
+        isDead = buffer.get() != 0;
+        deathTime = buffer.getLong();
+        trapX = buffer.getDouble();
+        trapY = buffer.getDouble();
+        trapEndTime = buffer.getLong();
     }
 
     /**
@@ -204,7 +237,7 @@ public class OrangeGhost extends Ghost {
      * @return true if trap is set
      */
     public boolean isTrapSet() {
-        return System.currentTimeMillis() < trapEndTime;
+        return clock.currentTimeMillis() < trapEndTime;
     }
 
     /**
@@ -260,8 +293,7 @@ public class OrangeGhost extends Ghost {
      * Get random direction
      * @return Random direction
      */
-    private static Direction getRandomDirection() {
-        Direction[] directions = Direction.values();
-        return directions[(int)(Math.random() * directions.length)];  
+    private Direction getRandomDirection() {
+        return random.nextDirection();
     }
 }
@@ -4,6 +4,7 @@ import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
+import java.nio.ByteBuffer;
 
 /**
  * Pac-Man Main Character Class
@@ -51,6 +52,26 @@ public class PacMan extends Entity {
      * @param startDirection Initial direction
      */
     public PacMan(double x, double y, double width, double height, Direction startDirection) {
+        this(x, y, width, height, startDirection,
+             new Image("file:pacmanUp.png"), new Image("file:pacmanDown.png"),
+             new Image("file:pacmanLeft.png"), new Image("file:pacmanRight.png"));
+    }
+
+    /**
+     * Constructor with preloaded directional images
+     * Used when level sprites are prepared in the background
+     * @param x Initial X coordinate
+     * @param y Initial Y coordinate
+     * @param width Width
+     * @param height Height
+     * @param startDirection Initial direction
+     * @param upImage Image facing up
+     * @param downImage Image facing down
+     * @param leftImage Image facing left
+     * @param rightImage Image facing right
+     */
+    public PacMan(double x, double y, double width, double height, Direction startDirection,
+                  Image upImage, Image downImage, Image leftImage, Image rightImage) {
         super(x, y, width, height, startDirection, null);
         this.startX = x;
         this.startY = y;
@@ -65,29 +86,20 @@ public class PacMan extends Entity {
         this.mouthOpening = false;
         this.currentImage = null;
         // Set default speed
-        this.speed = 2.0; // Modification reason: Reduce Pac-Man speed to synchronize with ghosts
+        this.speed = rules.getPacmanSpeed(); // Modification reason: Reduce Pac-Man speed to synchronize with ghosts
         this.originalSpeed = speed;
         this.freezeEndTime = 0;
         this.isFrozen = false;
         this.powerFoodPlusSkillCount = 0;
 
-        // Load directional images for Pac-Man
-        loadDirectionImages();
+        this.upImage = upImage;
+        this.downImage = downImage;
+        this.leftImage = leftImage;
+        this.rightImage = rightImage;
         updateCurrentImage();
         updateVelocity(); // Initialize velocity
     }
 
-    /**
-     * Loads directional images for Pac-Man
-     * Loads and initializes all directional sprites for Pac-Man's movement animations
-     */
-    private void loadDirectionImages() {
-        this.upImage = new Image("file:pacmanUp.png");
-        this.downImage = new Image("file:pacmanDown.png");
-        this.leftImage = new Image("file:pacmanLeft.png");
-        this.rightImage = new Image("file:pacmanRight.png");
-    }
-
     /**
      * Updates current image based on direction
      */
@@ -111,6 +123,18 @@ public class PacMan extends Entity {
         }
     }
 
+    /**
+     * Set the balance rules and apply the Pac-Man speed they define
+     * @param rules Balance rules injected by the engine
+     */
+    @Override
+    public void setRules(GameRules rules) {
+        super.setRules(rules);
+        this.speed = rules.getPacmanSpeed();
+        this.originalSpeed = speed;
+        updateVelocity();
+    }
+
     @Override
     protected void updateVelocity() {
         setVelocityX(0);
@@ -140,7 +164,7 @@ public class PacMan extends Entity {
     public void update(long deltaTime) {
         // Handle frozen state
         if (isFrozen) {
-            long currentTime = System.currentTimeMillis();
+            long currentTime = clock.currentTimeMillis();
             if (currentTime >= freezeEndTime) {
                 isFrozen = false;
             }
@@ -155,8 +179,19 @@ public class PacMan extends Entity {
     /**
      * Handles boundary crossing logic for Pac-Man
      * Implements screen wrap-around functionality for Pac-Man to move between maze edges
+     * Modification reason: Wrap-around now comes from the level's portal table;
+     * the fixed screen wrap is only a fallback when no maze is attached
      */
     public void handleBoundaryCrossing() {
+        if (maze != null) {
+            if (!applyPortals()) {
+                // Left the map where there is no portal: stay inside
+                setX(Math.max(0, Math.min(getX(), (maze.getWidth() - 1) * PacManApp.TILE_SIZE)));
+                setY(Math.max(0, Math.min(getY(), (maze.getHeight() - 1) * PacManApp.TILE_SIZE)));
+            }
+            return;
+        }
+
         // Left-right screen wrap-around for maze edges
         if (getX() + getWidth() < 0) {
             setX(20 * 32 - getWidth());
@@ -181,7 +216,7 @@ public class PacMan extends Entity {
      */
     public void freeze() {
         isFrozen = true;
-        freezeEndTime = System.currentTimeMillis() + 2000; // Freeze for 2 seconds
+        freezeEndTime = clock.currentTimeMillis() + 2000; // Freeze for 2 seconds
     }
 
     /**
@@ -244,6 +279,9 @@ public class PacMan extends Entity {
         }
         
         // Check if colliding with walls
+        if (maze != null) {
+            return !maze.overlapsWall(testX, testY, getWidth(), getHeight());
+        }
         for (Wall wall : walls) {
             if (testX < wall.getX() + wall.getWidth() &&
                 testX + getWidth() > wall.getX() &&
@@ -293,13 +331,17 @@ public class PacMan extends Entity {
             
             // Check wall collisions
             boolean collided = false;
-            for (Wall wall : walls) {
-                if (getX() < wall.getX() + wall.getWidth() &&
-                    getX() + getWidth() > wall.getX() &&
-                    getY() < wall.getY() + wall.getHeight() &&
-                    getY() + getHeight() > wall.getY()) {
-                    collided = true;
-                    break;
+            if (maze != null) {
+                collided = maze.overlapsWall(getX(), getY(), getWidth(), getHeight());
+            } else {
+                for (Wall wall : walls) {
+                    if (getX() < wall.getX() + wall.getWidth() &&
+                        getX() + getWidth() > wall.getX() &&
+                        getY() < wall.getY() + wall.getHeight() &&
+                        getY() + getHeight() > wall.getY()) {
+                        collided = true;
+                        break;
+                    }
                 }
             }
             
@@ -349,6 +391,43 @@ public class PacMan extends Entity {
         powerFoodPlusSkillCount = 0;
     }
 
+    @Override
+    public void writeState(ByteBuffer buffer) {
+        super.writeState(buffer);
+        buffer.putInt(lives);
+        buffer.putInt(score);
+        buffer.put(Direction.toCode(currentDirection));
+        buffer.put(Direction.toCode(nextDirection));
+        buffer.put((byte) (isPowerMode ? 1 : 0));
+        buffer.putLong(powerModeTimer);
+        buffer.putDouble(mouthOpenAngle);
+        buffer.put((byte) (mouthOpening ? 1 : 0));
+        buffer.putDouble(speed);
+        buffer.putDouble(originalSpeed);
+        buffer.putLong(freezeEndTime);
+        buffer.put((byte) (isFrozen ? 1 : 0));
+        buffer.putInt(powerFoodPlusSkillCount);
+    }
+
+    @Override
+    public void readState(ByteBuffer buffer) {
+        super.readState(buffer);
+        lives = buffer.getInt();
+        score = buffer.getInt();
+        currentDirection = Direction.fromCode(buffer.get());
+        nextDirection = Direction.fromCode(buffer.get());
+        isPowerMode = buffer.get() != 0;
+        powerModeTimer = buffer.getLong();
+        mouthOpenAngle = buffer.getDouble();
+        mouthOpening = buffer.get() != 0;
+        speed = buffer.getDouble();
+        originalSpeed = buffer.getDouble();
+        freezeEndTime = buffer.getLong();
+        isFrozen = buffer.get() != 0;
+        powerFoodPlusSkillCount = buffer.getInt();
+        updateCurrentImage();
+    }
+
     /**
      * Eats food
      * @param food Food object to eat
@@ -407,6 +486,22 @@ public class PacMan extends Entity {
         return isPowerMode;
     }
 
+    /**
+     * Get the direction Pac-Man is actually moving in
+     * @return Current movement direction
+     */
+    public Direction getCurrentDirection() {
+        return currentDirection;
+    }
+
+    /**
+     * Get the buffered turn that is applied once the way is open
+     * @return Pending direction, or null when there is none
+     */
+    public Direction getNextDirection() {
+        return nextDirection;
+    }
+
     public void setPowerMode(boolean isPowerMode) {
         this.isPowerMode = isPowerMode;
     }
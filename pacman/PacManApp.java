@@ -6,8 +6,16 @@ import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.layout.StackPane;
+import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import javafx.animation.AnimationTimer;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
 
 /**
  * Pac-Man游戏应用程序主类
@@ -23,11 +31,30 @@ public class PacManApp extends Application {
     public static final int TILE_SIZE = 32;     // 每个格子的大小（像素）
     public static final int SCREEN_WIDTH = GRID_WIDTH * TILE_SIZE;
     public static final int SCREEN_HEIGHT = GRID_HEIGHT * TILE_SIZE;
+    // 每帧最多补算的逻辑帧数，避免卡顿后一次补算过多
+    private static final int MAX_TICKS_PER_FRAME = 5;
+    // 录像保存目录
+    private static final String REPLAY_DIR = "replays";
+    // 排行榜数据目录
+    private static final String SCORE_DIR = "scores";
+    // 游戏事件日志目录
+    private static final String LOG_DIR = "logs";
+    // 帧耗时指标目录，可用 --metrics-dir= 覆盖；--metrics-port= 打开本地抓取端点
+    private static final String METRICS_DIR = "metrics";
+    // 群战模式：--horde=N 每关额外生成每种鬼魂各 N 个，--clone-volley=N 按 Q 不消耗技能释放 N 个克隆体
+    private static final String HORDE_PARAMETER = "horde";
+    private static final String CLONE_VOLLEY_PARAMETER = "clone-volley";
+    // 切换耗时分析叠加层的按键，不进入引擎的输入录像
+    private static final KeyCode PROFILER_KEY = KeyCode.F3;
 
     private GameEngine gameEngine;
     private Canvas canvas;
     private GraphicsContext gc;
     private long lastUpdateTime;
+    private long accumulatedNanos;
+    private FrameProfiler profiler; // 叠加层打开时挂到引擎上，关闭时为 null
+    private MetricsExporter metrics;
+    private GameEventLog eventLog;
 
     @Override
     public void start(Stage primaryStage) {
@@ -36,8 +63,9 @@ public class PacManApp extends Application {
         gc = canvas.getGraphicsContext2D();
 
         // 初始化游戏引擎
-        gameEngine = new GameEngine(canvas);
+        gameEngine = new GameEngine(canvas, createRules());
         gameEngine.initialize();
+        openEventLog();
 
         // 设置舞台和场景
         StackPane root = new StackPane();
@@ -46,6 +74,10 @@ public class PacManApp extends Application {
 
         // 键盘事件处理
         scene.addEventHandler(KeyEvent.KEY_PRESSED, event -> {
+            if (event.getCode() == PROFILER_KEY) {
+                toggleProfiler();
+                return;
+            }
             gameEngine.handleKeyEvent(event);
         });
 
@@ -54,10 +86,65 @@ public class PacManApp extends Application {
         primaryStage.setResizable(false);
         primaryStage.show();
 
-        // 启动游戏主循环
+        // 启动指标导出和游戏主循环
+        startMetrics();
         startGameLoop();
     }
 
+    /**
+     * 按命令行参数生成平衡参数，没有群战参数时为默认规则
+     * @return 平衡参数
+     */
+    private GameRules createRules() {
+        Map<String, String> named = getParameters().getNamed();
+        GameRules rules = new GameRules();
+        if (named.containsKey(HORDE_PARAMETER)) {
+            int count = Integer.parseInt(named.get(HORDE_PARAMETER));
+            rules.set(GameRules.HORDE_RED_GHOSTS, count)
+                    .set(GameRules.HORDE_PINK_GHOSTS, count)
+                    .set(GameRules.HORDE_BLUE_GHOSTS, count)
+                    .set(GameRules.HORDE_ORANGE_GHOSTS, count);
+        }
+        if (named.containsKey(CLONE_VOLLEY_PARAMETER)) {
+            rules.set(GameRules.CLONE_VOLLEY, Integer.parseInt(named.get(CLONE_VOLLEY_PARAMETER)));
+        }
+        return rules;
+    }
+
+    /**
+     * 打开本局的游戏事件日志，失败时不记录
+     */
+    private void openEventLog() {
+        String name = "events-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".pmev";
+        try {
+            eventLog = new GameEventLog(Paths.get(LOG_DIR, name), GameEventLog.DEFAULT_CAPACITY);
+            gameEngine.getEventBus().subscribe(eventLog);
+        } catch (IOException e) {
+            System.out.println("事件日志创建失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 按命令行参数启动帧耗时指标导出，失败时只输出提示，不影响游戏
+     */
+    private void startMetrics() {
+        Map<String, String> named = getParameters().getNamed();
+        Path dir = Paths.get(named.getOrDefault("metrics-dir", METRICS_DIR));
+        long interval = named.containsKey("metrics-interval")
+                ? Long.parseLong(named.get("metrics-interval")) * 1000
+                : MetricsExporter.DEFAULT_INTERVAL_MILLIS;
+        metrics = new MetricsExporter(dir, interval);
+        try {
+            metrics.start();
+            if (named.containsKey("metrics-port")) {
+                int port = metrics.startHttp(Integer.parseInt(named.get("metrics-port")));
+                System.out.println("指标抓取端点: http://127.0.0.1:" + port + "/metrics");
+            }
+        } catch (IOException e) {
+            System.out.println("指标导出启动失败: " + e.getMessage());
+        }
+    }
+
     /**
      * 启动游戏主循环
      */
@@ -67,10 +154,13 @@ public class PacManApp extends Application {
         new AnimationTimer() {
             @Override
             public void handle(long currentTime) {
+                metrics.recordFrame(currentTime);
                 // 更新游戏逻辑
                 update(currentTime);
                 // 渲染游戏
+                long renderStart = System.nanoTime();
                 render();
+                metrics.recordRender(System.nanoTime() - renderStart);
             }
         }.start();
     }
@@ -81,16 +171,23 @@ public class PacManApp extends Application {
      */
     private void update(long currentTime) {
         // 计算时间差
-        double deltaTime = (currentTime - lastUpdateTime) / 1e9;
+        accumulatedNanos += currentTime - lastUpdateTime;
         lastUpdateTime = currentTime;
 
-        // 限制更新频率
-        if (deltaTime > 0.05) {
-            deltaTime = 0.05;
+        // 修改：按固定步长推进逻辑帧，保证录像回放与实际对局一致
+        long tickNanos = GameEngine.TICK_MILLIS * 1_000_000L;
+        int ticks = 0;
+        while (accumulatedNanos >= tickNanos && ticks < MAX_TICKS_PER_FRAME) {
+            long tickStart = System.nanoTime();
+            gameEngine.update(GameEngine.TICK_MILLIS);
+            metrics.recordTick(System.nanoTime() - tickStart, gameEngine);
+            accumulatedNanos -= tickNanos;
+            ticks++;
+        }
+        // 限制更新频率：超出补算上限的时间直接丢弃
+        if (ticks == MAX_TICKS_PER_FRAME) {
+            accumulatedNanos = 0;
         }
-
-        // 更新游戏引擎
-        gameEngine.update((long)(deltaTime * 1000));
     }
 
     /**
@@ -102,6 +199,73 @@ public class PacManApp extends Application {
 
         // 渲染游戏
         gameEngine.render(gc);
+
+        // 耗时分析叠加层
+        if (profiler != null) {
+            profiler.renderOverlay(gc, 8, 8);
+        }
+    }
+
+    /**
+     * 打开或关闭分阶段耗时分析，关闭时引擎不再计时
+     */
+    private void toggleProfiler() {
+        profiler = profiler == null ? new FrameProfiler() : null;
+        gameEngine.setProfiler(profiler);
+    }
+
+    /**
+     * 窗口关闭时保存本局输入录像和成绩声明
+     */
+    @Override
+    public void stop() {
+        if (metrics != null) {
+            metrics.stop();
+        }
+        if (eventLog != null) {
+            try {
+                eventLog.close();
+            } catch (IOException e) {
+                System.out.println("事件日志关闭失败: " + e.getMessage());
+            }
+        }
+        if (gameEngine == null) {
+            return;
+        }
+        try {
+            Path dir = Paths.get(REPLAY_DIR);
+            Files.createDirectories(dir);
+            String name = "replay-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".pmr";
+            Path file = dir.resolve(name);
+            gameEngine.getInputLog().save(file);
+            ReplayVerifier.writeClaim(file, gameEngine);
+            System.out.println("录像已保存: " + file);
+        } catch (IOException e) {
+            System.out.println("录像保存失败: " + e.getMessage());
+        }
+        saveScore();
+    }
+
+    /**
+     * 把本局成绩写入本地排行榜并输出名次
+     * 修改原因：群战等非默认规则下的分数与常规对局不可比，按规则写入 scores 下单独的排行榜目录
+     */
+    private void saveScore() {
+        if (gameEngine.getScore() <= 0) {
+            return;
+        }
+        String player = System.getProperty("user.name", "player");
+        GameRules rules = gameEngine.getRules();
+        Path board = rules.isDefault() ? Paths.get(SCORE_DIR) : Paths.get(SCORE_DIR, rules.toString().replace(' ', '_'));
+        try {
+            Leaderboard leaderboard = new Leaderboard(board);
+            leaderboard.submit(player, gameEngine.getScore());
+            System.out.println("排行榜名次" + (rules.isDefault() ? "" : " (" + rules + ")") + ": "
+                    + leaderboard.rank(player) + " / " + leaderboard.size());
+            leaderboard.close();
+        } catch (IOException e) {
+            System.out.println("成绩保存失败: " + e.getMessage());
+        }
     }
 
     /**
@@ -0,0 +1,255 @@
+package pacman;
+
+import javafx.scene.input.KeyCode;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 强化学习环境（Gym 风格）
+ * 在无界面引擎上提供 reset(seed) / step(actions) 接口，同时支持 Pac-Man 和鬼魂智能体：
+ * 动作数组第 0 项是 Pac-Man 的动作，第 1..MAX_GHOSTS 项依次是各鬼魂的动作。
+ * 每一步推进 frameSkip 个逻辑帧，期间保持同一动作。
+ *
+ * 奖励来自引擎碰撞处理中的得分事件：普通食物 +10，能量豆 +50，吃掉鬼魂 +200，死亡 DEATH_REWARD。
+ * 鬼魂共同承担相反的奖励（零和），所以吃掉 Pac-Man 对鬼魂是正奖励。
+ * 游戏结束时 done 为 true；达到步数上限时 truncated 为 true
+ *
+ * Pac-Man 的动作经 handleKeyInput 进入输入录像，鬼魂的动作不录制，
+ * 有鬼魂智能体参与的对局不能用录像回放
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public class PacManEnv {
+    // Pac-Man 动作
+    public static final int ACTION_NONE = 0;
+    public static final int ACTION_UP = 1;
+    public static final int ACTION_DOWN = 2;
+    public static final int ACTION_LEFT = 3;
+    public static final int ACTION_RIGHT = 4;
+    public static final int ACTION_SKILL = 5;
+    public static final int ACTION_BREAK_ICE = 6;
+    public static final int PACMAN_ACTIONS = 7;
+    // 鬼魂动作：0 交给随机 AI，1..4 为上下左右
+    public static final int GHOST_ACTIONS = 5;
+
+    public static final int MAX_GHOSTS = 4;
+    public static final int AGENTS = 1 + MAX_GHOSTS;
+
+    // 观察向量：Pac-Man 位置、方向独热编码、能量模式、生命、剩余食物比例，
+    // 每个鬼魂：存在、位置、恐慌、可见
+    private static final int PACMAN_FEATURES = 9;
+    private static final int GHOST_FEATURES = 5;
+    public static final int OBSERVATION_SIZE = PACMAN_FEATURES + MAX_GHOSTS * GHOST_FEATURES;
+
+    public static final float PELLET_REWARD = 10;
+    public static final float POWER_PELLET_REWARD = 50;
+    public static final float GHOST_REWARD = 200;
+    public static final float DEATH_REWARD = -500;
+
+    private static final KeyCode[] ACTION_KEYS = {
+        null, KeyCode.UP, KeyCode.DOWN, KeyCode.LEFT, KeyCode.RIGHT, KeyCode.Q, KeyCode.V
+    };
+    private static final Direction[] GHOST_DIRECTIONS = {
+        null, Direction.UP, Direction.DOWN, Direction.LEFT, Direction.RIGHT
+    };
+    private static final float WIDTH = PacManApp.GRID_WIDTH * PacManApp.TILE_SIZE;
+    private static final float HEIGHT = PacManApp.GRID_HEIGHT * PacManApp.TILE_SIZE;
+
+    private final int frameSkip;
+    private final int maxSteps;
+    private final Step result;
+    private GameEngine engine;
+    private int steps;
+    private int level;
+    private int levelPellets;
+    private long pelletsEaten;
+    private long powerPelletsEaten;
+    private long ghostsEaten;
+    private long deaths;
+
+    /**
+     * 一步的结果
+     * 环境复用同一个对象，内容在下一次 step 或 reset 时被覆盖
+     */
+    public static final class Step {
+        private final float[] observation = new float[OBSERVATION_SIZE];
+        private final float[] rewards = new float[AGENTS];
+        private boolean done;
+        private boolean truncated;
+
+        public float[] getObservation() {
+            return observation;
+        }
+
+        /**
+         * 获取各智能体的奖励，下标与动作数组相同
+         * @return 奖励
+         */
+        public float[] getRewards() {
+            return rewards;
+        }
+
+        public float getReward() {
+            return rewards[0];
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        public boolean isTruncated() {
+            return truncated;
+        }
+    }
+
+    /**
+     * 构造方法
+     * @param frameSkip 每步推进的逻辑帧数
+     * @param maxSteps 每局最大步数，0 表示不限
+     */
+    public PacManEnv(int frameSkip, int maxSteps) {
+        if (frameSkip < 1) {
+            throw new IllegalArgumentException("frameSkip 必须大于 0: " + frameSkip);
+        }
+        this.frameSkip = frameSkip;
+        this.maxSteps = maxSteps;
+        this.result = new Step();
+    }
+
+    /**
+     * 开始新的一局
+     * @param seed 随机数种子
+     * @return 初始观察，数组在下一次 step 或 reset 时被覆盖
+     */
+    public float[] reset(long seed) {
+        engine = new GameEngine(seed);
+        engine.setKeyframeInterval(0);
+        engine.initialize();
+        // 跳过开始界面
+        engine.handleKeyInput(KeyCode.SPACE);
+        steps = 0;
+        level = engine.getLevel();
+        levelPellets = engine.getRemainingPellets();
+        pelletsEaten = 0;
+        powerPelletsEaten = 0;
+        ghostsEaten = 0;
+        deaths = 0;
+        result.done = false;
+        result.truncated = false;
+        Arrays.fill(result.rewards, 0);
+        writeObservation(result.observation, 0);
+        return result.observation;
+    }
+
+    /**
+     * 执行一步
+     * @param actions 动作数组，长度至少为 AGENTS
+     * @return 结果（复用对象）
+     */
+    public Step step(int[] actions) {
+        return step(actions, 0);
+    }
+
+    /**
+     * 执行一步
+     * @param actions 动作数组
+     * @param offset 本环境动作在数组中的起始下标，之后 AGENTS 项依次为 Pac-Man 和各鬼魂的动作
+     * @return 结果（复用对象）
+     */
+    public Step step(int[] actions, int offset) {
+        if (engine == null || result.done) {
+            throw new IllegalStateException("需要先调用 reset");
+        }
+        int action = actions[offset];
+        if (action < 0 || action >= PACMAN_ACTIONS) {
+            throw new IllegalArgumentException("无效的 Pac-Man 动作: " + action);
+        }
+        if (action != ACTION_NONE) {
+            engine.handleKeyInput(ACTION_KEYS[action]);
+        }
+        List<Ghost> ghosts = engine.getGhosts();
+        int ghostCount = Math.min(ghosts.size(), MAX_GHOSTS);
+        for (int i = 0; i < ghostCount; i++) {
+            int ghostAction = actions[offset + 1 + i];
+            if (ghostAction < 0 || ghostAction >= GHOST_ACTIONS) {
+                throw new IllegalArgumentException("无效的鬼魂动作: " + ghostAction);
+            }
+            ghosts.get(i).setSteering(GHOST_DIRECTIONS[ghostAction]);
+        }
+        for (int i = 0; i < frameSkip && !engine.isGameOver(); i++) {
+            engine.update(GameEngine.TICK_MILLIS);
+        }
+        steps++;
+
+        float reward = PELLET_REWARD * (engine.getPelletsEaten() - pelletsEaten)
+                + POWER_PELLET_REWARD * (engine.getPowerPelletsEaten() - powerPelletsEaten)
+                + GHOST_REWARD * (engine.getGhostsEaten() - ghostsEaten)
+                + DEATH_REWARD * (engine.getDeaths() - deaths);
+        pelletsEaten = engine.getPelletsEaten();
+        powerPelletsEaten = engine.getPowerPelletsEaten();
+        ghostsEaten = engine.getGhostsEaten();
+        deaths = engine.getDeaths();
+        result.rewards[0] = reward;
+        for (int i = 1; i < AGENTS; i++) {
+            result.rewards[i] = i <= ghostCount ? -reward : 0;
+        }
+        result.done = engine.isGameOver();
+        result.truncated = !result.done && maxSteps > 0 && steps >= maxSteps;
+        if (engine.getLevel() != level) {
+            level = engine.getLevel();
+            levelPellets = engine.getRemainingPellets();
+        }
+        writeObservation(result.observation, 0);
+        return result;
+    }
+
+    /**
+     * 把当前观察写入数组
+     * 坐标按地图尺寸归一化到 [0, 1]，不存在的鬼魂全部为 0
+     * @param out 目标数组
+     * @param offset 起始下标，之后 OBSERVATION_SIZE 项
+     */
+    public void writeObservation(float[] out, int offset) {
+        PacMan pacman = engine.getPacman();
+        out[offset] = (float) pacman.getX() / WIDTH;
+        out[offset + 1] = (float) pacman.getY() / HEIGHT;
+        Direction direction = pacman.getDirection();
+        for (int i = 0; i < 4; i++) {
+            out[offset + 2 + i] = direction != null && direction.ordinal() == i ? 1 : 0;
+        }
+        out[offset + 6] = pacman.isPowerMode() ? 1 : 0;
+        out[offset + 7] = Math.max(0, engine.getLives()) / 3f;
+        out[offset + 8] = levelPellets == 0 ? 0 : (float) engine.getRemainingPellets() / levelPellets;
+        List<Ghost> ghosts = engine.getGhosts();
+        int ghostCount = Math.min(ghosts.size(), MAX_GHOSTS);
+        int base = offset + PACMAN_FEATURES;
+        for (int i = 0; i < MAX_GHOSTS; i++, base += GHOST_FEATURES) {
+            if (i >= ghostCount) {
+                for (int j = 0; j < GHOST_FEATURES; j++) {
+                    out[base + j] = 0;
+                }
+                continue;
+            }
+            Ghost ghost = ghosts.get(i);
+            out[base] = 1;
+            out[base + 1] = (float) ghost.getX() / WIDTH;
+            out[base + 2] = (float) ghost.getY() / HEIGHT;
+            out[base + 3] = ghost.isScared() ? 1 : 0;
+            out[base + 4] = ghost.isVisible() ? 1 : 0;
+        }
+    }
+
+    public GameEngine getEngine() {
+        return engine;
+    }
+
+    public int getSteps() {
+        return steps;
+    }
+
+    public int getFrameSkip() {
+        return frameSkip;
+    }
+}
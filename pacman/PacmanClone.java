@@ -2,6 +2,7 @@ package pacman;
 
 import javafx.scene.image.Image;
 import javafx.scene.canvas.GraphicsContext;
+import java.nio.ByteBuffer;
 import java.util.List;
 import static pacman.PacManApp.*;
 
@@ -23,7 +24,9 @@ public class PacmanClone {
     private double velocityY;
     private Image image;
     private double rotation;
-    private static final double MOVE_SPEED = 3.0; // 1.5 times the speed of the main body (main body speed is 2.0, 2.0 * 1.5 = 3.0)
+    private Maze maze; // Current level maze, used for portal lookups
+    private int portalTile = -1; // Tile the clone's centre was last in
+    private double moveSpeed = 3.0; // Default 1.5 times the speed of the main body (2.0 * 1.5 = 3.0), see GameRules
 
     /**
      * Constructor
@@ -50,21 +53,21 @@ public class PacmanClone {
         switch (direction) {
             case UP:
                 velocityX = 0;
-                velocityY = -MOVE_SPEED;
+                velocityY = -moveSpeed;
                 rotation = 270;
                 break;
             case DOWN:
                 velocityX = 0;
-                velocityY = MOVE_SPEED;
+                velocityY = moveSpeed;
                 rotation = 90;
                 break;
             case LEFT:
-                velocityX = -MOVE_SPEED;
+                velocityX = -moveSpeed;
                 velocityY = 0;
                 rotation = 180;
                 break;
             case RIGHT:
-                velocityX = MOVE_SPEED;
+                velocityX = moveSpeed;
                 velocityY = 0;
                 rotation = 0;
                 break;
@@ -115,7 +118,11 @@ public class PacmanClone {
         x += velocityX;
         y += velocityY;
 
-        // 处理边界穿越
+        // 处理边界穿越 - 修改：有关卡迷宫时使用传送门表
+        if (maze != null) {
+            applyPortals();
+            return;
+        }
         if (x < 0) {
             x = PacManApp.GRID_WIDTH * PacManApp.TILE_SIZE - PacManApp.TILE_SIZE;
         } else if (x >= PacManApp.GRID_WIDTH * PacManApp.TILE_SIZE) {
@@ -128,6 +135,31 @@ public class PacmanClone {
         }
     }
 
+    /**
+     * Look up the portal table when the clone's centre leaves a tile
+     * Shares PortalTable.crossing with Entity.applyPortals; leaving the map without a portal clamps to the edge
+     */
+    private void applyPortals() {
+        int col = (int) Math.floor((x + width / 2) / TILE_SIZE);
+        int row = (int) Math.floor((y + height / 2) / TILE_SIZE);
+        int destination = PortalTable.crossing(maze, portalTile, col, row, "PacmanClone");
+        if (destination != PortalTable.NONE) {
+            int destCol = destination % maze.getWidth();
+            int destRow = destination / maze.getWidth();
+            x += (destCol - col) * TILE_SIZE;
+            y += (destRow - row) * TILE_SIZE;
+            col = destCol;
+            row = destRow;
+        }
+        if (col < 0 || col >= maze.getWidth() || row < 0 || row >= maze.getHeight()) {
+            col = Math.max(0, Math.min(col, maze.getWidth() - 1));
+            row = Math.max(0, Math.min(row, maze.getHeight() - 1));
+            x = col * TILE_SIZE;
+            y = row * TILE_SIZE;
+        }
+        portalTile = maze.index(col, row);
+    }
+
     /**
      * Render the clone
      * @param gc Graphics context object
@@ -140,6 +172,30 @@ public class PacmanClone {
         gc.restore();
     }
 
+    /**
+     * Write the clone's mutable state (position, direction, portal tile)
+     * Velocity and rotation follow from the direction
+     * @param buffer Target buffer
+     */
+    public void writeState(ByteBuffer buffer) {
+        buffer.putDouble(x);
+        buffer.putDouble(y);
+        buffer.put(Direction.toCode(direction));
+        buffer.putInt(portalTile);
+    }
+
+    /**
+     * Read state written by writeState
+     * @param buffer Source buffer
+     */
+    public void readState(ByteBuffer buffer) {
+        x = buffer.getDouble();
+        y = buffer.getDouble();
+        direction = Direction.fromCode(buffer.get());
+        portalTile = buffer.getInt();
+        updateVelocity();
+    }
+
     // Getters and Setters
 
     public double getX() {
@@ -162,11 +218,33 @@ public class PacmanClone {
         return direction;
     }
 
+    /**
+     * Set the maze the clone moves in, used for portal lookups
+     * @param maze Current level maze
+     */
+    public void setMaze(Maze maze) {
+        this.maze = maze;
+        this.portalTile = -1;
+    }
+
     public void setDirection(Direction direction) {
         this.direction = direction;
         updateVelocity();
     }
 
+    /**
+     * Set the movement speed (pixels per tick) and refresh the velocity
+     * @param moveSpeed Movement speed from the engine's rules
+     */
+    public void setMoveSpeed(double moveSpeed) {
+        this.moveSpeed = moveSpeed;
+        updateVelocity();
+    }
+
+    public void setImage(Image image) {
+        this.image = image;
+    }
+
     public void setX(double x) {
         this.x = x;
     }
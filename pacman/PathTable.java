@@ -0,0 +1,157 @@
+package pacman;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 寻路距离表
+ * 为每个目标格子保存一张 BFS 距离场，查询任意两格之间的最短步数为 O(1)
+ * 相邻关系经过传送门，因此距离包含隧道和传送垫的捷径
+ * 小地图在编译时全部预计算；大地图按目标格子懒加载，线程安全，可在多个引擎间共享
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public final class PathTable {
+    public static final int UNREACHABLE = Short.MAX_VALUE;
+
+    // 可通行格子数不超过该值时在编译阶段预计算全部距离场
+    private static final int EAGER_LIMIT = 1024;
+
+    private final Maze maze;
+    private final int size;
+    private final AtomicReferenceArray<short[]> fields;
+    private final int walkable;
+    private final boolean precomputed;
+
+    /**
+     * 构造方法
+     * @param maze 已生成传送门表的迷宫
+     */
+    PathTable(Maze maze) {
+        this.maze = maze;
+        this.size = maze.getWidth() * maze.getHeight();
+        this.fields = new AtomicReferenceArray<>(size);
+
+        int walkable = 0;
+        for (int tile = 0; tile < size; tile++) {
+            if (!isWall(tile)) {
+                walkable++;
+            }
+        }
+        this.walkable = walkable;
+        this.precomputed = walkable <= EAGER_LIMIT;
+        if (precomputed) {
+            for (int tile = 0; tile < size; tile++) {
+                if (!isWall(tile)) {
+                    distancesTo(tile);
+                }
+            }
+        }
+    }
+
+    private boolean isWall(int tile) {
+        return maze.isWall(tile % maze.getWidth(), tile / maze.getWidth());
+    }
+
+    /**
+     * 获取从起点到终点的最短步数
+     * @param fromTile 起点格子索引
+     * @param toTile 终点格子索引
+     * @return 步数，不可达时返回 UNREACHABLE
+     */
+    public int distance(int fromTile, int toTile) {
+        if (isWall(toTile) || isWall(fromTile)) {
+            return UNREACHABLE;
+        }
+        return distancesTo(toTile)[fromTile];
+    }
+
+    /**
+     * 获取从起点朝终点前进的下一步方向
+     * @param fromTile 起点格子索引
+     * @param toTile 终点格子索引
+     * @return 下一步方向，已到达或不可达时返回 null
+     */
+    public Direction nextStep(int fromTile, int toTile) {
+        if (fromTile == toTile || isWall(toTile) || isWall(fromTile)) {
+            return null;
+        }
+        short[] field = distancesTo(toTile);
+        Direction best = null;
+        int bestDistance = field[fromTile];
+        for (Direction dir : Direction.values()) {
+            int next = maze.neighbour(fromTile, dir);
+            if (next >= 0 && field[next] < bestDistance) {
+                bestDistance = field[next];
+                best = dir;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 获取到目标格子的距离场，必要时计算并缓存
+     * @param targetTile 目标格子索引
+     * @return 距离场（按格子索引）
+     */
+    public short[] distancesTo(int targetTile) {
+        short[] field = fields.get(targetTile);
+        if (field == null) {
+            field = computeField(targetTile);
+            if (!fields.compareAndSet(targetTile, null, field)) {
+                field = fields.get(targetTile);
+            }
+        }
+        return field;
+    }
+
+    /**
+     * 判断距离场是否已在编译阶段全部算好
+     * 为 false 时 distancesTo 可能要做一次整图 BFS，开销与 getWalkableCount 成正比
+     * @return 全部预计算返回 true
+     */
+    public boolean isPrecomputed() {
+        return precomputed;
+    }
+
+    /**
+     * 获取可通行格子数，即计算一张距离场要访问的格子数
+     * @return 格子数
+     */
+    public int getWalkableCount() {
+        return walkable;
+    }
+
+    /**
+     * 从目标格子出发做 BFS
+     * @param targetTile 目标格子索引
+     * @return 距离场
+     */
+    private short[] computeField(int targetTile) {
+        short[] field = new short[size];
+        Arrays.fill(field, (short) UNREACHABLE);
+        if (isWall(targetTile)) {
+            return field;
+        }
+        int[] queue = new int[size];
+        int head = 0;
+        int tail = 0;
+        field[targetTile] = 0;
+        queue[tail++] = targetTile;
+        while (head < tail) {
+            int tile = queue[head++];
+            short nextDistance = (short) Math.min(field[tile] + 1, UNREACHABLE - 1);
+            for (Direction dir : Direction.values()) {
+                // 隧道是双向的，传送垫两端视为同一格，因此反向 BFS 与正向距离一致
+                int next = maze.neighbour(tile, dir);
+                if (next >= 0 && field[next] == UNREACHABLE) {
+                    field[next] = nextDistance;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return field;
+    }
+}
@@ -3,6 +3,7 @@ package pacman;
 import javafx.scene.image.Image;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import static pacman.PacManApp.TILE_SIZE;
@@ -16,10 +17,8 @@ import static pacman.PacManApp.TILE_SIZE;
  * @since 2024
  */
 public class PinkGhost extends Ghost {
-    private static final double DEFAULT_SPEED = 2.0; // 修改原因：降低鬼魂速度以与 Pac-Man 同步
     private int shields = 3; // 三重护盾
     private long respawnTimer = 0; // 重生计时器
-    private static final long RESPAWN_TIME = 30000; // 重生时间（30秒）
     private boolean isDead = false; // 是否死亡
     private long deathTime = 0; // 死亡时间
     private double pacmanX; // Pac-Man X 坐标
@@ -33,8 +32,20 @@ public class PinkGhost extends Ghost {
      * @param image 图像资源
      */
     public PinkGhost(double x, double y, Image image) {
-        super(x, y, TILE_SIZE, TILE_SIZE, getRandomDirection(), image);
-        setMovementSpeed(DEFAULT_SPEED);
+        this(x, y, image, new GameRandom());
+    }
+
+    /**
+     * 构造方法（共享随机数生成器）
+     *
+     * @param x 初始X坐标
+     * @param y 初始Y坐标
+     * @param image 图像资源
+     * @param random 游戏随机数生成器
+     */
+    public PinkGhost(double x, double y, Image image, GameRandom random) {
+        super(x, y, TILE_SIZE, TILE_SIZE, random.nextDirection(), image, random);
+        setMovementSpeed(baseSpeed());
         this.shields = 3;
         this.isDead = false;
         this.deathTime = 0;
@@ -64,7 +75,7 @@ public class PinkGhost extends Ghost {
     public void update(long deltaTime, double pacmanX, double pacmanY, List<Wall> walls, List<Ghost> ghosts) {
         if (isDead) {
             // 死亡状态：重生计时器
-            if (System.currentTimeMillis() - deathTime >= RESPAWN_TIME) {
+            if (clock.currentTimeMillis() - deathTime >= rules.getGhostRespawnTime()) {
                 // 重生
                 respawn();
             }
@@ -94,7 +105,7 @@ public class PinkGhost extends Ghost {
      */
     public void die() {
         isDead = true;
-        deathTime = System.currentTimeMillis();
+        deathTime = clock.currentTimeMillis();
     }
 
     /**
@@ -139,7 +150,7 @@ public class PinkGhost extends Ghost {
         }
         
         // 偶尔（12%概率）绕路移动，即选择第二优先方向，增加行为多样性
-        if (Math.random() < 0.12) {
+        if (random.nextDouble() < 0.12) {
             double deltaX = pacmanX - currentX;
             double deltaY = pacmanY - currentY;
             // 选择第二优先方向
@@ -191,7 +202,7 @@ public class PinkGhost extends Ghost {
             }
         } else {
             // 死亡状态：显示重生倒计时
-            long remainingTime = RESPAWN_TIME - (System.currentTimeMillis() - deathTime);
+            long remainingTime = rules.getGhostRespawnTime() - (clock.currentTimeMillis() - deathTime);
             int secondsLeft = (int) (remainingTime / 1000) + 1;
             gc.setFill(Color.WHITE);
             gc.fillText("Died - Respawn in: " + secondsLeft + "s", getX(), getY() - 10);
@@ -203,10 +214,10 @@ public class PinkGhost extends Ghost {
      */
     @Override
     public void reset() {
-        setX(9 * 32);
-        setY(12 * 32);
+        setX(getStartX());
+        setY(getStartY());
         setDirection(getRandomDirection());
-        setMovementSpeed(DEFAULT_SPEED);
+        setMovementSpeed(baseSpeed());
         shields = 3; // 重置护盾
         isDead = false;
         deathTime = 0;
@@ -217,9 +228,8 @@ public class PinkGhost extends Ghost {
      * 修改原因：让鬼魂初始方向随机化，避免所有鬼魂都沿同一方向移动
      * @return 随机方向
      */
-    private static Direction getRandomDirection() {
-        Direction[] directions = Direction.values();
-        return directions[(int)(Math.random() * directions.length)];
+    private Direction getRandomDirection() {
+        return random.nextDirection();
     }
 
     /**
@@ -230,6 +240,28 @@ public class PinkGhost extends Ghost {
         return isDead;
     }
 
+    @Override
+    public void writeState(ByteBuffer buffer) {
+        super.writeState(buffer);
+        buffer.putInt(shields);
+        buffer.putLong(respawnTimer);
+        buffer.put((byte) (isDead ? 1 : 0));
+        buffer.putLong(deathTime);
+        buffer.putDouble(pacmanX);
+        buffer.putDouble(pacmanY);
+    }
+
+    @Override
+    public void readState(ByteBuffer buffer) {
+        super.readState(buffer);
+        shields = buffer.getInt();
+        respawnTimer = buffer.getLong();
+        isDead = buffer.get() != 0;
+        deathTime = buffer.getLong();
+        pacmanX = buffer.getDouble();
+        pacmanY = buffer.getDouble();
+    }
+
     /**
      * 设置护盾数量
      * @param shields 新的护盾数量
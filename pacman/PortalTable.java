@@ -0,0 +1,219 @@
+package pacman;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 传送门表
+ * 在关卡编译阶段根据地图生成：左右/上下边缘都可通行的格子构成隧道对，
+ * 地图中成对出现的数字字符（1-9）构成传送垫。
+ * 每个格子、每个离开方向对应一个目的格子，运行时查询为 O(1)
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public final class PortalTable {
+    public static final int NONE = -1;
+
+    private static final int DIRECTIONS = 4;
+
+    private final int width;
+    private final int height;
+    private final int[] links;
+    private final int[] pairs;
+
+    private PortalTable(int width, int height, int[] links, int[] pairs) {
+        this.width = width;
+        this.height = height;
+        this.links = links;
+        this.pairs = pairs;
+    }
+
+    /**
+     * 根据迷宫生成传送门表
+     * @param maze 已解析墙壁的迷宫
+     * @return 传送门表
+     */
+    static PortalTable build(Maze maze) {
+        int width = maze.getWidth();
+        int height = maze.getHeight();
+        int[] links = new int[width * height * DIRECTIONS];
+        Arrays.fill(links, NONE);
+        List<Integer> pairs = new ArrayList<>();
+
+        // 边缘隧道：从一侧边缘离开地图，从另一侧对应格子进入
+        for (int row = 0; row < height; row++) {
+            if (!maze.isWall(0, row) && !maze.isWall(width - 1, row)) {
+                int left = maze.index(0, row);
+                int right = maze.index(width - 1, row);
+                links[left * DIRECTIONS + Direction.LEFT.ordinal()] = right;
+                links[right * DIRECTIONS + Direction.RIGHT.ordinal()] = left;
+                pairs.add(left);
+                pairs.add(right);
+            }
+        }
+        for (int col = 0; col < width; col++) {
+            if (!maze.isWall(col, 0) && !maze.isWall(col, height - 1)) {
+                int top = maze.index(col, 0);
+                int bottom = maze.index(col, height - 1);
+                links[top * DIRECTIONS + Direction.UP.ordinal()] = bottom;
+                links[bottom * DIRECTIONS + Direction.DOWN.ordinal()] = top;
+                pairs.add(top);
+                pairs.add(bottom);
+            }
+        }
+
+        // 传送垫：两个相同数字的格子视为同一个格子，从一端离开即从另一端的相邻格子出现
+        int[] firstPad = new int[10];
+        Arrays.fill(firstPad, NONE);
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                char tile = maze.tileAt(col, row);
+                if (!isPad(tile)) {
+                    continue;
+                }
+                int digit = tile - '0';
+                int index = maze.index(col, row);
+                if (firstPad[digit] == NONE) {
+                    firstPad[digit] = index;
+                } else if (firstPad[digit] >= 0) {
+                    linkPads(maze, links, firstPad[digit], index);
+                    linkPads(maze, links, index, firstPad[digit]);
+                    pairs.add(firstPad[digit]);
+                    pairs.add(index);
+                    firstPad[digit] = -2;
+                } else {
+                    throw new IllegalArgumentException("传送垫 " + tile + " 出现超过两次");
+                }
+            }
+        }
+        for (int digit = 1; digit < firstPad.length; digit++) {
+            if (firstPad[digit] >= 0) {
+                throw new IllegalArgumentException("传送垫 " + digit + " 缺少配对");
+            }
+        }
+
+        int[] pairArray = new int[pairs.size()];
+        for (int i = 0; i < pairArray.length; i++) {
+            pairArray[i] = pairs.get(i);
+        }
+        return new PortalTable(width, height, links, pairArray);
+    }
+
+    /**
+     * 判断字符是否为传送垫
+     * @param tile 地图字符
+     * @return true表示传送垫
+     */
+    static boolean isPad(char tile) {
+        return tile >= '1' && tile <= '9';
+    }
+
+    private static void linkPads(Maze maze, int[] links, int from, int to) {
+        int toCol = to % maze.getWidth();
+        int toRow = to / maze.getWidth();
+        for (Direction dir : Direction.values()) {
+            int exitCol = toCol + (int) dir.getVelocityX(1);
+            int exitRow = toRow + (int) dir.getVelocityY(1);
+            if (!maze.isWall(exitCol, exitRow)) {
+                links[from * DIRECTIONS + dir.ordinal()] = maze.index(exitCol, exitRow);
+            }
+        }
+    }
+
+    /**
+     * 查询从格子沿指定方向离开时到达的格子
+     * @param tile 当前格子索引
+     * @param dir 离开方向
+     * @return 目的格子索引，没有传送门时返回 NONE
+     */
+    public int destination(int tile, Direction dir) {
+        return links[tile * DIRECTIONS + dir.ordinal()];
+    }
+
+    /**
+     * 查询实体中心从格子移动到相邻单元时是否经过传送门
+     * @param fromTile 离开的格子索引
+     * @param dx 列变化（-1、0、1）
+     * @param dy 行变化（-1、0、1）
+     * @return 目的格子索引，不是单步移动或没有传送门时返回 NONE
+     */
+    public int follow(int fromTile, int dx, int dy) {
+        if (Math.abs(dx) + Math.abs(dy) != 1) {
+            return NONE;
+        }
+        Direction dir;
+        if (dx < 0) {
+            dir = Direction.LEFT;
+        } else if (dx > 0) {
+            dir = Direction.RIGHT;
+        } else if (dy < 0) {
+            dir = Direction.UP;
+        } else {
+            dir = Direction.DOWN;
+        }
+        return links[fromTile * DIRECTIONS + dir.ordinal()];
+    }
+
+    /**
+     * 实体中心移动后查询是否经过传送门，Entity 和 PacmanClone 共用同一规则
+     * 中心离开上一次所在的格子时按移动方向查表，经过传送门时记录传送事件
+     * @param maze 迷宫
+     * @param lastTile 上一次所在的格子索引，没有时为 -1
+     * @param col 中心当前所在列（可能在地图外）
+     * @param row 中心当前所在行（可能在地图外）
+     * @param entity 实体名称，用于传送事件
+     * @return 目的格子索引，没有经过传送门时返回 NONE
+     */
+    public static int crossing(Maze maze, int lastTile, int col, int row, String entity) {
+        if (lastTile < 0) {
+            return NONE;
+        }
+        int lastCol = lastTile % maze.getWidth();
+        int lastRow = lastTile / maze.getWidth();
+        if (col == lastCol && row == lastRow) {
+            return NONE;
+        }
+        int destination = maze.getPortals().follow(lastTile, col - lastCol, row - lastRow);
+        if (destination != NONE) {
+            FlightEvents.teleport(entity, "portal", col, row, destination % maze.getWidth(), destination / maze.getWidth());
+        }
+        return destination;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 获取隧道对/传送垫对数量
+     * @return 数量
+     */
+    public int getPairCount() {
+        return pairs.length / 2;
+    }
+
+    /**
+     * 获取第 i 对的一端
+     * @param i 序号
+     * @return 格子索引
+     */
+    public int getPairStart(int i) {
+        return pairs[i * 2];
+    }
+
+    /**
+     * 获取第 i 对的另一端
+     * @param i 序号
+     * @return 格子索引
+     */
+    public int getPairEnd(int i) {
+        return pairs[i * 2 + 1];
+    }
+}
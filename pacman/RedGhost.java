@@ -3,6 +3,7 @@ package pacman;
 import javafx.scene.image.Image;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import static pacman.PacManApp.TILE_SIZE;
@@ -16,17 +17,17 @@ import static pacman.PacManApp.TILE_SIZE;
  * @since 2024
  */
 public class RedGhost extends Ghost {
-    private static final double DEFAULT_SPEED = 2.0; // 修改原因：降低鬼魂速度以与 Pac-Man 同步
     private long teleportCooldown = 0; // 闪现冷却时间
-    private static final long TELEPORT_COOLDOWN = 15000; // 闪现冷却（15秒）
     private long teleportTimer = 0; // 闪现计时器
     private boolean isTeleporting = false; // 是否正在闪现
     private long respawnTimer = 0; // 重生计时器
-    private static final long RESPAWN_TIME = 30000; // 重生时间（30秒）
     private boolean isDead = false; // 是否死亡
     private long deathTime = 0; // 死亡时间
     private double pacmanX; // Pac-Man X 坐标
     private double pacmanY; // Pac-Man Y 坐标
+    private int[] teleportTargets; // 可闪现的格子索引（来自关卡分析）
+    private int mapWidth; // 地图宽度（格子），用于把格子索引换算为坐标
+    private int teleportClearance; // 闪现目标与 Pac-Man 所在格子的最小曼哈顿距离（格子），0 表示不限制
 
     /**
      * 构造方法
@@ -36,8 +37,20 @@ public class RedGhost extends Ghost {
      * @param image 图像资源
      */
     public RedGhost(double x, double y, Image image) {
-        super(x, y, TILE_SIZE, TILE_SIZE, getRandomDirection(), image);
-        setMovementSpeed(DEFAULT_SPEED);
+        this(x, y, image, new GameRandom());
+    }
+
+    /**
+     * 构造方法（共享随机数生成器）
+     *
+     * @param x 初始X坐标
+     * @param y 初始Y坐标
+     * @param image 图像资源
+     * @param random 游戏随机数生成器
+     */
+    public RedGhost(double x, double y, Image image, GameRandom random) {
+        super(x, y, TILE_SIZE, TILE_SIZE, random.nextDirection(), image, random);
+        setMovementSpeed(baseSpeed());
         this.teleportCooldown = 0;
         this.teleportTimer = 0;
         this.isTeleporting = false;
@@ -50,9 +63,8 @@ public class RedGhost extends Ghost {
      * 修改原因：让鬼魂初始方向随机化，避免所有鬼魂都沿同一方向移动
      * @return 随机方向
      */
-    private static Direction getRandomDirection() {
-        Direction[] directions = Direction.values();
-        return directions[(int)(Math.random() * directions.length)];
+    private Direction getRandomDirection() {
+        return random.nextDirection();
     }
 
     /**
@@ -74,12 +86,72 @@ public class RedGhost extends Ghost {
         // 空实现，保持父类抽象方法完整性
     }
 
+    /**
+     * 设置可闪现的目标格子
+     * 修改原因：随机坐标可能落在封闭区域，改为只从关卡分析出的可达格子中选择
+     * @param tiles 可达格子索引数组
+     * @param mapWidth 地图宽度（格子）
+     */
+    public void setTeleportTargets(int[] tiles, int mapWidth) {
+        this.teleportTargets = tiles;
+        this.mapWidth = mapWidth;
+    }
+
+    /**
+     * 设置闪现目标与 Pac-Man 的最小距离
+     * 修改原因：群战模式下鬼魂很多，闪现到 Pac-Man 身边等于直接扣命，需要避开 Pac-Man 附近的格子
+     * @param tiles 最小曼哈顿距离（格子），0 表示不限制
+     */
+    public void setTeleportClearance(int tiles) {
+        this.teleportClearance = tiles;
+    }
+
+    /**
+     * 设置剩余闪现冷却时间
+     * 修改原因：群战模式的红色鬼魂开局冷却都为0，会在第一帧一起闪现，出生时错开冷却
+     * @param cooldown 剩余冷却时间（毫秒）
+     */
+    public void setTeleportCooldown(long cooldown) {
+        this.teleportCooldown = cooldown;
+    }
+
     /**
      * 闪现到随机位置
      * 修改原因：添加墙壁碰撞检测，确保闪现位置不会是墙壁
+     * 修改原因：优先从可达格子中选择，不再落入无法到达的区域
+     * 修改原因：设置了最小距离时，抽中的格子离 Pac-Man 太近就顺序往后找第一个足够远的格子，
+     * 每次闪现只消耗一个随机数；找不到时原地不动，照常进入冷却
      * @param walls 墙壁对象列表，用于碰撞检测
      */
     private void teleport(List<Wall> walls) {
+        int fromCol = FlightEvents.tileOf(getX() + getWidth() / 2);
+        int fromRow = FlightEvents.tileOf(getY() + getHeight() / 2);
+        if (teleportTargets != null && teleportTargets.length > 0) {
+            int start = random.nextInt(teleportTargets.length);
+            int tile = teleportTargets[start];
+            if (teleportClearance > 0) {
+                int pacmanCol = (int) (pacmanX / TILE_SIZE);
+                int pacmanRow = (int) (pacmanY / TILE_SIZE);
+                tile = -1;
+                for (int k = 0; k < teleportTargets.length; k++) {
+                    int candidate = teleportTargets[(start + k) % teleportTargets.length];
+                    if (Math.abs(candidate % mapWidth - pacmanCol)
+                            + Math.abs(candidate / mapWidth - pacmanRow) >= teleportClearance) {
+                        tile = candidate;
+                        break;
+                    }
+                }
+            }
+            if (tile >= 0) {
+                setX((tile % mapWidth) * TILE_SIZE);
+                setY((tile / mapWidth) * TILE_SIZE);
+                FlightEvents.teleport("RedGhost", "blink", fromCol, fromRow, tile % mapWidth, tile / mapWidth);
+            }
+            teleportCooldown = rules.getTeleportCooldown();
+            teleportTimer = clock.currentTimeMillis();
+            return;
+        }
+
         isTeleporting = true;
         boolean validPositionFound = false;
         double newX = getX();
@@ -90,8 +162,8 @@ public class RedGhost extends Ghost {
         // 尝试找到一个没有墙壁的位置
         while (!validPositionFound && attempts < maxAttempts) {
             // 随机选择新坐标（0-19行和列）
-            newX = (int)(Math.random() * 20) * TILE_SIZE;
-            newY = (int)(Math.random() * 20) * TILE_SIZE;
+            newX = (int)(random.nextDouble() * 20) * TILE_SIZE;
+            newY = (int)(random.nextDouble() * 20) * TILE_SIZE;
             
             // 检查该位置是否与墙壁碰撞
             boolean collision = false;
@@ -116,10 +188,12 @@ public class RedGhost extends Ghost {
         // 更新位置到有效位置
         setX(newX);
         setY(newY);
+        FlightEvents.teleport("RedGhost", "blink", fromCol, fromRow,
+                FlightEvents.tileOf(newX), FlightEvents.tileOf(newY));
         
         // 重新设置冷却时间
-        teleportCooldown = TELEPORT_COOLDOWN;
-        teleportTimer = System.currentTimeMillis();
+        teleportCooldown = rules.getTeleportCooldown();
+        teleportTimer = clock.currentTimeMillis();
         
         isTeleporting = false;
     }
@@ -138,7 +212,7 @@ public class RedGhost extends Ghost {
     public void update(long deltaTime, double pacmanX, double pacmanY, List<Wall> walls, List<Ghost> ghosts) {
         if (isDead) {
             // 死亡状态：重生计时器
-            if (System.currentTimeMillis() - deathTime >= RESPAWN_TIME) {
+            if (clock.currentTimeMillis() - deathTime >= rules.getGhostRespawnTime()) {
                 // 重生
                 respawn();
             }
@@ -169,7 +243,7 @@ public class RedGhost extends Ghost {
      */
     public void die() {
         isDead = true;
-        deathTime = System.currentTimeMillis();
+        deathTime = clock.currentTimeMillis();
     }
 
     /**
@@ -206,9 +280,9 @@ public class RedGhost extends Ghost {
         }
         
         // 偶尔（10%概率）随机选择方向，避免总是与其他鬼魂选择相同路径
-        if (Math.random() < 0.1) {
+        if (random.nextDouble() < 0.1) {
             Direction[] directions = Direction.values();
-            return directions[(int)(Math.random() * directions.length)];
+            return directions[(int)(random.nextDouble() * directions.length)];
         }
         
         // 计算与 Pac-Man 的距离差
@@ -242,7 +316,7 @@ public class RedGhost extends Ghost {
             // 修改：移除闪现冷却状态显示
         } else {
             // 死亡状态：显示重生倒计时
-            long remainingTime = RESPAWN_TIME - (System.currentTimeMillis() - deathTime);
+            long remainingTime = rules.getGhostRespawnTime() - (clock.currentTimeMillis() - deathTime);
             int secondsLeft = (int) (remainingTime / 1000) + 1;
             gc.setFill(Color.WHITE);
             gc.fillText("Died - Respawn in: " + secondsLeft + "s", getX(), getY() - 10);
@@ -254,16 +328,42 @@ public class RedGhost extends Ghost {
      */
     @Override
     public void reset() {
-        setX(9 * 32);
-        setY(12 * 32);
+        setX(getStartX());
+        setY(getStartY());
         setDirection(getRandomDirection());
-        setMovementSpeed(DEFAULT_SPEED);
-        teleportCooldown = TELEPORT_COOLDOWN;
+        setMovementSpeed(baseSpeed());
+        teleportCooldown = rules.getTeleportCooldown();
         isTeleporting = false;
         isDead = false;
         deathTime = 0;
     }
 
+    @Override
+    public void writeState(ByteBuffer buffer) {
+        super.writeState(buffer);
+        buffer.putLong(teleportCooldown);
+        buffer.putLong(teleportTimer);
+        buffer.put((byte) (isTeleporting ? 1 : 0));
+        buffer.putLong(respawnTimer);
+        buffer.put((byte) (isDead ? 1 : 0));
+        buffer.putLong(deathTime);
+        buffer.putDouble(pacmanX);
+        buffer.putDouble(pacmanY);
+    }
+
+    @Override
+    public void readState(ByteBuffer buffer) {
+        super.readState(buffer);
+        teleportCooldown = buffer.getLong();
+        teleportTimer = buffer.getLong();
+        isTeleporting = buffer.get() != 0;
+        respawnTimer = buffer.getLong();
+        isDead = buffer.get() != 0;
+        deathTime = buffer.getLong();
+        pacmanX = buffer.getDouble();
+        pacmanY = buffer.getDouble();
+    }
+
     /**
      * 检查是否死亡
      * @return 是否死亡
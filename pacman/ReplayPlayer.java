@@ -0,0 +1,90 @@
+package pacman;
+
+/**
+ * 录像播放器
+ * 在无界面引擎上按录像推进，支持跳转到任意逻辑帧：
+ * 先恢复不晚于目标帧的最近关键帧，再模拟剩余的帧，
+ * 向前小步拖动时直接从当前位置继续模拟
+ *
+ * 第 T 帧的状态定义为：完成 T 次逻辑更新，并处理了帧序号小于 T 的所有按键
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public class ReplayPlayer {
+    private final InputLog log;
+    private final GameEngine engine;
+    private int nextInput;
+
+    /**
+     * 构造方法，按录像的种子和平衡参数创建引擎，引擎停在第0帧
+     * @param log 输入录像
+     */
+    public ReplayPlayer(InputLog log) {
+        this.log = log;
+        this.engine = new GameEngine(log.getSeed(), log.getRules());
+        engine.initialize();
+        this.nextInput = 0;
+    }
+
+    /**
+     * 跳转到指定逻辑帧
+     * @param tick 目标帧序号，超出录像范围时截断到录像两端
+     */
+    public void seek(long tick) {
+        long target = Math.max(0, Math.min(tick, log.getEndTick()));
+        int keyframe = log.findKeyframe(target);
+        long current = engine.getTick();
+        // 目标在当前位置之前，或中间隔着更近的关键帧时，从关键帧恢复
+        if (keyframe >= 0 && (current > target || log.getKeyframeTick(keyframe) > current)) {
+            engine.restore(log.getKeyframe(keyframe));
+            nextInput = log.findInput(engine.getTick());
+        } else if (current > target) {
+            throw new IllegalStateException("录像缺少第0帧关键帧，无法回退到 " + target);
+        }
+        play(target);
+    }
+
+    /**
+     * 从当前位置逐帧模拟到指定帧，不使用关键帧
+     * @param tick 目标帧序号，不早于当前帧
+     */
+    public void play(long tick) {
+        long target = Math.min(tick, log.getEndTick());
+        while (engine.getTick() < target) {
+            // 先送入本帧录制的按键，再推进到下一帧
+            while (nextInput < log.size() && log.getTick(nextInput) == engine.getTick()) {
+                engine.handleKeyInput(log.getKey(nextInput++));
+            }
+            engine.update(log.getTickMillis());
+        }
+    }
+
+    /**
+     * 模拟到录像结束并处理最后一帧上录制的按键，得到录像结束时的最终状态
+     * 全程逐帧模拟，不使用关键帧
+     */
+    public void finish() {
+        play(log.getEndTick());
+        while (nextInput < log.size()) {
+            engine.handleKeyInput(log.getKey(nextInput++));
+        }
+    }
+
+    public GameEngine getEngine() {
+        return engine;
+    }
+
+    public InputLog getLog() {
+        return log;
+    }
+
+    /**
+     * 获取当前逻辑帧
+     * @return 帧序号
+     */
+    public long getTick() {
+        return engine.getTick();
+    }
+}
@@ -0,0 +1,108 @@
+package pacman;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * 录像回放器
+ * 在无界面引擎中按录像的种子和按键全速重现对局，不渲染也不等待帧间隔
+ * 用法：java pacman.ReplayRunner [--seek 帧序号] replays/xxx.pmr [...]
+ *       java pacman.ReplayRunner --sync a.pmr b.pmr（逐帧比较两个录像的状态哈希，找出第一个分歧帧）
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public class ReplayRunner {
+
+    /**
+     * 回放录像
+     * 每次按键在引擎完成录制时的逻辑帧数后送入，最后推进到录像结束帧
+     * @param log 输入录像
+     * @return 回放结束时的引擎
+     */
+    public static GameEngine replay(InputLog log) {
+        ReplayPlayer player = new ReplayPlayer(log);
+        player.finish();
+        return player.getEngine();
+    }
+
+    /**
+     * 同步推进两个录像，逐帧比较状态哈希
+     * 用于确认两次运行（例如不同版本或不同机器录制的同一局）保持同步，每帧只比较两个 64 位哈希
+     * @param a 第一个录像
+     * @param b 第二个录像
+     * @return 第一个哈希不同的帧序号，直到较短录像结束都相同时返回 -1
+     */
+    public static long findDivergence(InputLog a, InputLog b) {
+        ReplayPlayer first = new ReplayPlayer(a);
+        ReplayPlayer second = new ReplayPlayer(b);
+        long end = Math.min(a.getEndTick(), b.getEndTick());
+        for (long tick = 0; ; tick++) {
+            if (first.getEngine().getStateHash() != second.getEngine().getStateHash()) {
+                return tick;
+            }
+            if (tick == end) {
+                return -1;
+            }
+            first.play(tick + 1);
+            second.play(tick + 1);
+        }
+    }
+
+    /**
+     * 主方法
+     * @param args 录像文件路径
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("用法: ReplayRunner [--seek 帧序号] <录像文件>... | --sync <录像A> <录像B>");
+            return;
+        }
+        if (args[0].equals("--sync") && args.length > 2) {
+            try {
+                InputLog a = InputLog.load(Paths.get(args[1]));
+                InputLog b = InputLog.load(Paths.get(args[2]));
+                long tick = findDivergence(a, b);
+                if (tick < 0) {
+                    System.out.printf("同步: 前 %d 帧状态哈希一致%n", Math.min(a.getEndTick(), b.getEndTick()));
+                } else {
+                    System.out.printf("分歧: 第 %d 帧 (%.1f 秒) 状态哈希不同%n", tick, tick * a.getTickMillis() / 1000.0);
+                }
+            } catch (IOException | RuntimeException e) {
+                System.out.println("比较失败 - " + e.getMessage());
+            }
+            return;
+        }
+        long seekTick = -1;
+        int first = 0;
+        if (args[0].equals("--seek") && args.length > 1) {
+            seekTick = Long.parseLong(args[1]);
+            first = 2;
+        }
+        for (int i = first; i < args.length; i++) {
+            Path path = Paths.get(args[i]);
+            try {
+                InputLog log = InputLog.load(path);
+                long start = System.nanoTime();
+                GameEngine engine = replay(log);
+                long elapsed = System.nanoTime() - start;
+                double gameSeconds = log.getEndTick() * log.getTickMillis() / 1000.0;
+                System.out.printf("%s: %d 帧 (%.1f 秒游戏时间), 按键 %d, 回放耗时 %.1f ms, 关卡 %d, 分数 %d, 生命 %d%n",
+                        path, log.getEndTick(), gameSeconds, log.size(), elapsed / 1e6,
+                        engine.getLevel(), engine.getScore(), engine.getLives());
+                if (seekTick >= 0) {
+                    start = System.nanoTime();
+                    ReplayPlayer player = new ReplayPlayer(log);
+                    player.seek(seekTick);
+                    elapsed = System.nanoTime() - start;
+                    System.out.printf("  跳转到第 %d 帧耗时 %.1f ms (关键帧 %d 个), 分数 %d%n",
+                            player.getTick(), elapsed / 1e6, log.getKeyframeCount(), player.getEngine().getScore());
+                }
+            } catch (IOException | RuntimeException e) {
+                System.out.println(path + ": 回放失败 - " + e.getMessage());
+            }
+        }
+    }
+}
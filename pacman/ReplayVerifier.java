@@ -0,0 +1,227 @@
+package pacman;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 录像成绩校验器
+ * 读取目录中的所有录像，在多个无界面引擎中并行重新模拟，
+ * 将最终分数、生命和逻辑帧数与提交时声明的成绩比对
+ *
+ * 每个录像 xxx.pmr 旁边需要有同名的 xxx.claim 声明文件（Properties 格式）：
+ * score、lives、ticks 三项，以及可选的 hash（结束时的状态哈希，旧的声明文件没有这一项）
+ * 和 rules（与默认值不同的平衡参数，见 GameRules.toString，默认规则的对局没有这一项）。
+ * 回放按录像文件头中的规则重建引擎，声明的规则必须与录像一致
+ *
+ * 用法：java pacman.ReplayVerifier 录像目录 [线程数]
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public class ReplayVerifier {
+    public static final String REPLAY_SUFFIX = ".pmr";
+    public static final String CLAIM_SUFFIX = ".claim";
+
+    /**
+     * 单个录像的校验结果
+     */
+    public static final class Result {
+        private final Path replay;
+        private final boolean valid;
+        private final long ticks;
+        private final String message;
+
+        Result(Path replay, boolean valid, long ticks, String message) {
+            this.replay = replay;
+            this.valid = valid;
+            this.ticks = ticks;
+            this.message = message;
+        }
+
+        public Path getReplay() {
+            return replay;
+        }
+
+        public boolean isValid() {
+            return valid;
+        }
+
+        public long getTicks() {
+            return ticks;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    /**
+     * 保存成绩声明文件
+     * @param replay 录像文件路径
+     * @param engine 对局结束时的引擎
+     * @throws IOException 写入失败
+     */
+    public static void writeClaim(Path replay, GameEngine engine) throws IOException {
+        Properties claim = new Properties();
+        claim.setProperty("score", Integer.toString(engine.getScore()));
+        claim.setProperty("lives", Integer.toString(engine.getLives()));
+        claim.setProperty("ticks", Long.toString(engine.getTick()));
+        claim.setProperty("hash", Long.toString(engine.getStateHash()));
+        if (!engine.getRules().isDefault()) {
+            claim.setProperty("rules", engine.getRules().toString());
+        }
+        try (OutputStream out = Files.newOutputStream(claimPathFor(replay))) {
+            claim.store(out, "PacMan replay claim");
+        }
+    }
+
+    private static Path claimPathFor(Path replay) {
+        String name = replay.getFileName().toString();
+        if (name.endsWith(REPLAY_SUFFIX)) {
+            name = name.substring(0, name.length() - REPLAY_SUFFIX.length());
+        }
+        return replay.resolveSibling(name + CLAIM_SUFFIX);
+    }
+
+    /**
+     * 校验单个录像
+     * @param replay 录像文件路径
+     * @return 校验结果
+     */
+    public static Result verify(Path replay) {
+        try {
+            Properties claim = new Properties();
+            Path claimPath = claimPathFor(replay);
+            if (!Files.exists(claimPath)) {
+                return new Result(replay, false, 0, "缺少成绩声明 " + claimPath.getFileName());
+            }
+            try (InputStream in = Files.newInputStream(claimPath)) {
+                claim.load(in);
+            }
+            InputLog log = InputLog.load(replay);
+            GameEngine engine = ReplayRunner.replay(log);
+
+            StringBuilder mismatch = new StringBuilder();
+            compare(mismatch, "score", claim, engine.getScore());
+            compare(mismatch, "lives", claim, engine.getLives());
+            compare(mismatch, "ticks", claim, engine.getTick());
+            if (claim.getProperty("hash") != null) {
+                compare(mismatch, "hash", claim, engine.getStateHash());
+            }
+            // 群战等非默认规则的成绩不能冒充常规对局，反之亦然
+            String claimedRules = claim.getProperty("rules", "default").trim();
+            String actualRules = log.getRules().toString();
+            if (!claimedRules.equals(actualRules)) {
+                if (mismatch.length() > 0) {
+                    mismatch.append(", ");
+                }
+                mismatch.append("rules 声明 ").append(claimedRules).append(" 实际 ").append(actualRules);
+            }
+            if (mismatch.length() > 0) {
+                return new Result(replay, false, engine.getTick(), mismatch.toString());
+            }
+            return new Result(replay, true, engine.getTick(), "分数 " + engine.getScore());
+        } catch (IOException | RuntimeException e) {
+            return new Result(replay, false, 0, "回放失败 - " + e);
+        }
+    }
+
+    private static void compare(StringBuilder mismatch, String key, Properties claim, long actual) {
+        String claimed = claim.getProperty(key);
+        if (claimed == null || !claimed.trim().equals(Long.toString(actual))) {
+            if (mismatch.length() > 0) {
+                mismatch.append(", ");
+            }
+            mismatch.append(key).append(" 声明 ").append(claimed).append(" 实际 ").append(actual);
+        }
+    }
+
+    /**
+     * 并行校验一组录像
+     * @param replays 录像文件路径
+     * @param threads 线程数
+     * @return 与输入顺序一致的校验结果
+     * @throws InterruptedException 等待被中断
+     */
+    public static List<Result> verifyAll(List<Path> replays, int threads) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "replay-verifier");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Result>> futures = new ArrayList<>(replays.size());
+            for (Path replay : replays) {
+                futures.add(executor.submit(() -> verify(replay)));
+            }
+            List<Result> results = new ArrayList<>(replays.size());
+            for (Future<Result> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 主方法
+     * @param args 录像目录 [线程数]
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            System.out.println("用法: ReplayVerifier <录像目录> [线程数]");
+            return;
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        List<Path> replays = new ArrayList<>();
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(Paths.get(args[0]), "*" + REPLAY_SUFFIX)) {
+            for (Path path : dir) {
+                replays.add(path);
+            }
+        }
+        Collections.sort(replays);
+
+        // 先加载无界面关卡，编译耗时不计入吞吐量
+        LevelLoader.headless().load(1);
+        long start = System.nanoTime();
+        List<Result> results = verifyAll(replays, threads);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int failed = 0;
+        long ticks = 0;
+        for (Result result : results) {
+            ticks += result.getTicks();
+            if (!result.isValid()) {
+                failed++;
+                System.out.println("FAIL " + result.getReplay().getFileName() + ": " + result.getMessage());
+            }
+        }
+        System.out.printf("校验 %d 个录像, 通过 %d, 失败 %d, 线程 %d%n",
+                results.size(), results.size() - failed, failed, threads);
+        System.out.printf("耗时 %.2f s, %.1f 录像/秒, %.0f 帧/秒 (%.0f 倍实时)%n",
+                seconds, results.size() / seconds, ticks / seconds,
+                ticks * GameEngine.TICK_MILLIS / 1000.0 / seconds);
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package pacman;
+
+import javafx.scene.input.KeyCode;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 客户端预测与回滚
+ * 客户端用与服务器相同的种子运行本地引擎，按键立即在本地生效，不必等待服务器往返。
+ * 最近 HISTORY 个逻辑帧的引擎状态（处理该帧输入之前）和输入保存在环形缓冲区中。
+ * 收到服务器的完整状态同步时，与本地同一逻辑帧的预测状态逐字节比较：
+ * 一致则什么都不做；不一致（通常是按键晚到，服务器在更晚的帧才处理）就恢复权威状态，
+ * 把服务器尚未处理的输入重新应用，一次性重新模拟到当前帧
+ *
+ * 本地时间线比服务器领先若干帧，使按键到达服务器时标注的逻辑帧还没有到，
+ * 服务器会在同一帧处理它，预测就不会出错
+ *
+ * 用法（回滚耗时测试）：java pacman.RollbackClient [次数]
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public class RollbackClient {
+    public static final int HISTORY = 128;
+
+    private static final int INITIAL_STATE_SIZE = 2048;
+
+    private final GameEngine engine;
+    private final ByteBuffer[] states;
+    private final long[] stateTicks;
+    private final long[] inputTicks;
+    private final int[] inputSequences;
+    private final int[] inputCodes;
+    private final int leadTicks;
+    private final LatencyHistogram rollbackTime;
+    private int nextSequence;
+    private boolean aligned;
+    private long confirmed;
+    private long rollbacks;
+    private long resimulatedTicks;
+
+    /**
+     * 构造方法
+     * @param seed 服务器欢迎消息中的随机数种子
+     * @param leadTicks 本地领先服务器的逻辑帧数，应略大于单程延迟
+     */
+    public RollbackClient(long seed, int leadTicks) {
+        this.engine = new GameEngine(seed);
+        engine.setKeyframeInterval(0);
+        engine.initialize();
+        this.states = new ByteBuffer[HISTORY];
+        this.stateTicks = new long[HISTORY];
+        this.inputTicks = new long[HISTORY];
+        this.inputSequences = new int[HISTORY];
+        this.inputCodes = new int[HISTORY];
+        for (int i = 0; i < HISTORY; i++) {
+            states[i] = ByteBuffer.allocate(INITIAL_STATE_SIZE);
+        }
+        clearHistory();
+        this.leadTicks = leadTicks;
+        this.rollbackTime = new LatencyHistogram();
+        this.nextSequence = 1;
+    }
+
+    private void clearHistory() {
+        for (int i = 0; i < HISTORY; i++) {
+            stateTicks[i] = -1;
+            inputTicks[i] = -1;
+        }
+    }
+
+    /**
+     * 本地推进一个逻辑帧：保存当前状态，立即应用按键，然后更新
+     * @param key 本帧按键，可以为 null
+     * @return 按键的输入序号，调用方用它和 getTick() 的旧值发送 INPUT；没有按键时返回 0
+     */
+    public int predict(KeyCode key) {
+        long tick = engine.getTick();
+        int slot = slot(tick);
+        saveState(slot, tick);
+        int sequence = 0;
+        if (key != null) {
+            sequence = nextSequence++;
+            inputTicks[slot] = tick;
+            inputSequences[slot] = sequence;
+            inputCodes[slot] = key.getCode();
+            engine.handleKeyInput(key);
+        } else {
+            inputTicks[slot] = -1;
+        }
+        engine.update(GameEngine.TICK_MILLIS);
+        return sequence;
+    }
+
+    /**
+     * 处理服务器的完整状态同步
+     * @param tick 同步状态的逻辑帧
+     * @param lastSequence 服务器在该帧之前已处理的最后输入序号
+     * @param state 引擎状态（GameEngine.saveState 格式），读取后位置不变
+     * @return 发生了回滚或重新对齐返回 true，预测正确返回 false
+     */
+    public boolean onSync(long tick, int lastSequence, ByteBuffer state) {
+        long now = engine.getTick();
+        if (!aligned || tick > now || now - tick >= HISTORY) {
+            align(state);
+            return true;
+        }
+        int slot = slot(tick);
+        if (tick == now) {
+            // 同步的正好是当前帧，本帧的状态还没有保存
+            saveState(slot, tick);
+        }
+        if (stateTicks[slot] == tick && states[slot].mismatch(state) == -1) {
+            confirmed++;
+            return false;
+        }
+        long begin = System.nanoTime();
+        load(state);
+        resimulate(tick, now, lastSequence);
+        rollbackTime.record(System.nanoTime() - begin);
+        rollbacks++;
+        return true;
+    }
+
+    /**
+     * 回滚到本地保存的某一帧并重新模拟到当前帧（用于测量回滚耗时）
+     * 保存的状态是本地自己预测出来的，重新模拟必须回到回滚前的同一状态，不一致时抛出异常
+     * @param tick 要回滚到的逻辑帧，必须仍在历史中
+     * @throws IllegalStateException 重新模拟后的状态与回滚前不同
+     */
+    public void rollback(long tick) {
+        long now = engine.getTick();
+        int slot = slot(tick);
+        if (tick >= now || stateTicks[slot] != tick) {
+            throw new IllegalArgumentException("逻辑帧 " + tick + " 不在历史中");
+        }
+        byte[] expected = engine.snapshot();
+        long begin = System.nanoTime();
+        load(states[slot]);
+        // 修改原因：原来传入 0，早于 tick 的输入都被当作晚到输入在 tick 帧重新应用，
+        // 重新模拟的是另一条时间线；这些输入已包含在保存的状态中，只需重放 tick 及之后的输入
+        resimulate(tick, now, lastSequenceBefore(tick, now));
+        rollbackTime.record(System.nanoTime() - begin);
+        rollbacks++;
+        if (!Arrays.equals(expected, engine.snapshot())) {
+            throw new IllegalStateException("回滚到逻辑帧 " + tick + " 后重新模拟的状态与回滚前不同");
+        }
+    }
+
+    /**
+     * 历史中帧序号早于 tick 的输入的最大序号（序号随帧序号递增）
+     */
+    private int lastSequenceBefore(long tick, long now) {
+        int last = 0;
+        for (long t = Math.max(0, now - HISTORY + 1); t < tick; t++) {
+            int slot = slot(t);
+            if (inputTicks[slot] == t) {
+                last = Math.max(last, inputSequences[slot]);
+            }
+        }
+        return last;
+    }
+
+    /**
+     * 从权威状态重新模拟到 now
+     * 已被服务器处理的输入（序号不大于 lastSequence）已经包含在权威状态中；
+     * 标注帧早于 from 但服务器还没处理的晚到输入，预测它们在 from 帧生效
+     */
+    private void resimulate(long from, long now, int lastSequence) {
+        for (long t = from; t < now; t++) {
+            int slot = slot(t);
+            saveState(slot, t);
+            if (t == from) {
+                for (long late = Math.max(0, now - HISTORY + 1); late < from; late++) {
+                    int lateSlot = slot(late);
+                    if (inputTicks[lateSlot] == late && inputSequences[lateSlot] > lastSequence) {
+                        applyInput(lateSlot);
+                    }
+                }
+            }
+            if (inputTicks[slot] == t && inputSequences[slot] > lastSequence) {
+                applyInput(slot);
+            }
+            engine.update(GameEngine.TICK_MILLIS);
+            resimulatedTicks++;
+        }
+    }
+
+    private void applyInput(int slot) {
+        KeyCode key = InputLog.keyForCode(inputCodes[slot]);
+        if (key != null) {
+            engine.handleKeyInput(key);
+        }
+    }
+
+    /**
+     * 采用服务器状态并快进 leadTicks 帧，重新建立领先的本地时间线
+     */
+    private void align(ByteBuffer state) {
+        load(state);
+        clearHistory();
+        aligned = true;
+        for (int i = 0; i < leadTicks; i++) {
+            predict(null);
+        }
+    }
+
+    private void load(ByteBuffer state) {
+        int position = state.position();
+        engine.loadState(state);
+        state.position(position);
+    }
+
+    private void saveState(int slot, long tick) {
+        ByteBuffer buffer = states[slot];
+        while (true) {
+            buffer.clear();
+            try {
+                engine.saveState(buffer);
+                break;
+            } catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+                states[slot] = buffer;
+            }
+        }
+        buffer.flip();
+        stateTicks[slot] = tick;
+    }
+
+    private static int slot(long tick) {
+        return (int) (tick % HISTORY);
+    }
+
+    public GameEngine getEngine() {
+        return engine;
+    }
+
+    public long getTick() {
+        return engine.getTick();
+    }
+
+    public boolean isAligned() {
+        return aligned;
+    }
+
+    /**
+     * 获取预测正确的同步次数
+     * @return 次数
+     */
+    public long getConfirmed() {
+        return confirmed;
+    }
+
+    public long getRollbacks() {
+        return rollbacks;
+    }
+
+    public long getResimulatedTicks() {
+        return resimulatedTicks;
+    }
+
+    /**
+     * 获取单次回滚（恢复加重新模拟）耗时直方图（纳秒）
+     * @return 直方图
+     */
+    public LatencyHistogram getRollbackTime() {
+        return rollbackTime;
+    }
+
+    /**
+     * 主方法：测量回滚不同帧数的耗时，与一帧画面的时间预算比较
+     * @param args [次数]
+     */
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        LevelLoader.headless().load(1);
+        double frameBudgetMicros = 1e6 / 60;
+        // 先充分预热，避免后台编译线程抢占造成的毛刺计入结果
+        measure(20, iterations * 4);
+        for (int depth : new int[] {1, 5, 10, 15, 20, 30}) {
+            LatencyHistogram time = measure(depth, iterations);
+            System.out.printf("回滚 %2d 帧: p50 %.1f us p99 %.1f us max %.1f us, 每帧 %.2f us, p99 占 60Hz 画面预算 %.2f%%%n",
+                    depth, time.percentile(50) / 1e3, time.percentile(99) / 1e3, time.getMax() / 1e3,
+                    time.getMean() / 1e3 / depth, time.percentile(99) / 1e3 * 100 / frameBudgetMicros);
+        }
+    }
+
+    private static LatencyHistogram measure(int depth, int iterations) {
+        KeyCode[] keys = {KeyCode.UP, KeyCode.DOWN, KeyCode.LEFT, KeyCode.RIGHT};
+        RollbackClient client = new RollbackClient(depth, 0);
+        GameRandom bot = new GameRandom(~depth);
+        for (int i = 0; i < HISTORY + iterations; i++) {
+            KeyCode key;
+            if (client.getEngine().isGameOver() || i == 0) {
+                key = KeyCode.SPACE;
+            } else {
+                key = bot.nextInt(30) == 0 ? keys[bot.nextInt(keys.length)] : null;
+            }
+            client.predict(key);
+            // 先填满历史再开始回滚
+            if (i == HISTORY) {
+                client.getRollbackTime().reset();
+            }
+            if (i >= HISTORY) {
+                client.rollback(client.getTick() - depth);
+            }
+        }
+        return client.getRollbackTime();
+    }
+}
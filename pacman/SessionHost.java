@@ -0,0 +1,287 @@
+package pacman;
+
+import javafx.scene.input.KeyCode;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 多会话主机
+ * 在一个 JVM 中运行大量相互独立的无界面游戏引擎，每个玩家会话一个引擎，
+ * 由共享的定时线程池按固定逻辑帧步长驱动。所有会话共享无界面关卡加载器中的
+ * 迷宫、寻路表和空图集，单个会话只保存自己的实体和计时状态
+ *
+ * 用法：java pacman.SessionHost [会话数] [秒数] [线程数] [排行榜目录或 -] [random|autopilot]
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public class SessionHost {
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(GameEngine.TICK_MILLIS);
+
+    private final int threads;
+    private final ScheduledExecutorService scheduler;
+    private final Map<Long, Session> sessions;
+    private final AtomicLong nextId;
+    private final AtomicLong ticks;
+    private final LatencyHistogram tickTime;
+    private final LatencyHistogram tickLag;
+    private volatile Leaderboard leaderboard;
+
+    /**
+     * 单个玩家会话
+     * 按键可以从任意线程提交，在下一个逻辑帧开始时由会话自己的调度任务处理
+     */
+    public final class Session implements Runnable {
+        private final long id;
+        private final GameEngine engine;
+        private final ConcurrentLinkedQueue<KeyCode> inputs;
+        private final long startNanos;
+        private long tickCount;
+        private Supplier<KeyCode> inputSource;
+        private ScheduledFuture<?> future;
+        private boolean scoreSubmitted;
+
+        private Session(long id, long seed, long startNanos) {
+            this.id = id;
+            this.engine = new GameEngine(seed);
+            // 会话只需要输入录像，关键帧留给录像工具按需生成
+            engine.setKeyframeInterval(0);
+            engine.initialize();
+            this.inputs = new ConcurrentLinkedQueue<>();
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * 提交一次按键
+         * @param key 按键
+         */
+        public void submitInput(KeyCode key) {
+            inputs.add(key);
+        }
+
+        /**
+         * 设置每个逻辑帧调用一次的输入来源（如自动操作的机器人），返回 null 表示本帧无按键
+         * @param inputSource 输入来源
+         */
+        public void setInputSource(Supplier<KeyCode> inputSource) {
+            this.inputSource = inputSource;
+        }
+
+        @Override
+        public void run() {
+            long begin = System.nanoTime();
+            tickLag.record(begin - (startNanos + tickCount * TICK_NANOS));
+            try {
+                KeyCode key;
+                while ((key = inputs.poll()) != null) {
+                    engine.handleKeyInput(key);
+                }
+                if (inputSource != null && (key = inputSource.get()) != null) {
+                    engine.handleKeyInput(key);
+                }
+                engine.update(GameEngine.TICK_MILLIS);
+                submitScore();
+            } catch (RuntimeException e) {
+                // 单个会话出错不影响其他会话
+                System.out.println("会话 " + id + " 出错，已关闭: " + e);
+                close(this);
+                return;
+            }
+            tickCount++;
+            ticks.incrementAndGet();
+            tickTime.record(System.nanoTime() - begin);
+        }
+
+        /**
+         * 每局结束时向排行榜提交一次成绩，重新开始后复位
+         */
+        private void submitScore() {
+            if (!engine.isGameOver()) {
+                scoreSubmitted = false;
+                return;
+            }
+            Leaderboard board = leaderboard;
+            if (board == null || scoreSubmitted) {
+                return;
+            }
+            scoreSubmitted = true;
+            try {
+                board.submit("session-" + id, engine.getScore());
+            } catch (IOException e) {
+                System.out.println("会话 " + id + " 成绩提交失败: " + e.getMessage());
+            }
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public GameEngine getEngine() {
+            return engine;
+        }
+    }
+
+    /**
+     * 构造方法
+     * @param threads 驱动会话的线程数
+     */
+    public SessionHost(int threads) {
+        this.threads = threads;
+        this.scheduler = Executors.newScheduledThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "session-host");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sessions = new ConcurrentHashMap<>();
+        this.nextId = new AtomicLong();
+        this.ticks = new AtomicLong();
+        this.tickTime = new LatencyHistogram();
+        this.tickLag = new LatencyHistogram();
+    }
+
+    /**
+     * 打开一个新会话并开始按固定步长运行
+     * 各会话的首帧在一个步长内错开，避免所有会话在同一时刻集中更新
+     * @param seed 随机数种子
+     * @return 会话
+     */
+    public Session open(long seed) {
+        long id = nextId.getAndIncrement();
+        long offset = (id * 7919) % TICK_NANOS;
+        Session session = new Session(id, seed, System.nanoTime() + offset);
+        sessions.put(id, session);
+        session.future = scheduler.scheduleAtFixedRate(session, offset, TICK_NANOS, TimeUnit.NANOSECONDS);
+        return session;
+    }
+
+    /**
+     * 关闭会话
+     * @param session 会话
+     */
+    public void close(Session session) {
+        if (sessions.remove(session.id) != null && session.future != null) {
+            session.future.cancel(false);
+        }
+    }
+
+    /**
+     * 关闭所有会话并停止线程池
+     */
+    public void shutdown() {
+        for (Session session : sessions.values()) {
+            close(session);
+        }
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 设置排行榜，会话每局结束时提交成绩；为 null 时不提交
+     * @param leaderboard 排行榜
+     */
+    public void setLeaderboard(Leaderboard leaderboard) {
+        this.leaderboard = leaderboard;
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public long getTicks() {
+        return ticks.get();
+    }
+
+    /**
+     * 获取单帧更新耗时直方图（纳秒）
+     * @return 直方图
+     */
+    public LatencyHistogram getTickTime() {
+        return tickTime;
+    }
+
+    /**
+     * 获取逻辑帧实际开始时间相对计划时间的延迟直方图（纳秒）
+     * @return 直方图
+     */
+    public LatencyHistogram getTickLag() {
+        return tickLag;
+    }
+
+    /**
+     * 主方法：打开指定数量的自动操作会话，定期输出吞吐量和延迟分位数
+     * @param args [会话数] [秒数] [线程数] [排行榜目录或 -] [random|autopilot]
+     */
+    public static void main(String[] args) throws InterruptedException, IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        LevelLoader.headless().load(1);
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long usedBefore = runtime.totalMemory() - runtime.freeMemory();
+
+        SessionHost host = new SessionHost(threads);
+        Leaderboard leaderboard = args.length > 3 && !args[3].equals("-") ? new Leaderboard(Paths.get(args[3])) : null;
+        boolean autopilot = args.length > 4 && args[4].equals("autopilot");
+        host.setLeaderboard(leaderboard);
+        KeyCode[] keys = {KeyCode.UP, KeyCode.DOWN, KeyCode.LEFT, KeyCode.RIGHT, KeyCode.Q, KeyCode.V, KeyCode.SPACE};
+        for (int i = 0; i < count; i++) {
+            Session session = host.open(i);
+            session.submitInput(KeyCode.SPACE);
+            if (autopilot) {
+                // 自动驾驶：按固定节点预算搜索，游戏结束后按空格重开
+                Autopilot bot = new Autopilot(Autopilot.DEFAULT_NODE_BUDGET);
+                session.setInputSource(() -> bot.decide(session.getEngine()));
+            } else {
+                // 机器人：平均每半秒随机按一次键，游戏结束后按空格重开
+                GameRandom bot = new GameRandom(~i);
+                session.setInputSource(() -> bot.nextInt(30) == 0 ? keys[bot.nextInt(keys.length)] : null);
+            }
+        }
+        System.gc();
+        long usedAfter = runtime.totalMemory() - runtime.freeMemory();
+        System.out.printf("会话 %d, 线程 %d, 每会话内存约 %.1f KB%n",
+                count, threads, (usedAfter - usedBefore) / 1024.0 / count);
+
+        long expectedPerSecond = count * 1000L / GameEngine.TICK_MILLIS;
+        long lastTicks = host.getTicks();
+        double perSecond = 0;
+        for (int elapsed = 5; elapsed <= seconds; elapsed += 5) {
+            host.getTickTime().reset();
+            host.getTickLag().reset();
+            Thread.sleep(5000);
+            long now = host.getTicks();
+            perSecond = (now - lastTicks) / 5.0;
+            lastTicks = now;
+            LatencyHistogram time = host.getTickTime();
+            LatencyHistogram lag = host.getTickLag();
+            System.out.printf("[%3ds] %.0f 帧/秒 (需要 %d, %.0f%%), 单帧耗时 p50 %.1f us p99 %.1f us p99.9 %.1f us max %.1f us,"
+                            + " 调度延迟 p50 %.2f ms p99 %.2f ms max %.2f ms%n",
+                    elapsed, perSecond, expectedPerSecond, perSecond * 100.0 / expectedPerSecond,
+                    time.percentile(50) / 1e3, time.percentile(99) / 1e3, time.percentile(99.9) / 1e3, time.getMax() / 1e3,
+                    lag.percentile(50) / 1e6, lag.percentile(99) / 1e6, lag.getMax() / 1e6);
+        }
+        // 按最后一个统计周期的实际帧率折算每个核心能按时驱动的会话数
+        double sustainable = Math.min(count, perSecond * GameEngine.TICK_MILLIS / 1000.0);
+        System.out.printf("每核心会话数 %.0f%n", sustainable / threads);
+        host.shutdown();
+        if (leaderboard != null) {
+            System.out.printf("排行榜提交 %d 次, 玩家 %d%n", leaderboard.getSubmissions(), leaderboard.size());
+            leaderboard.close();
+        }
+    }
+}
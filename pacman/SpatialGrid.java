@@ -0,0 +1,147 @@
+package pacman;
+
+import java.util.Arrays;
+
+/**
+ * 均匀网格空间索引
+ * 把实体按左上角所在的格子挂到格子链表上，矩形查询只检查周围几个格子里的实体，
+ * 代替逐个实体两两测试，实体数量上百时碰撞检测的开销不再按平方增长
+ *
+ * 实体用调用方的列表下标标识；每个格子是一条双向链表，实体移动后 put 一次即可挂到新格子，
+ * 不分配内存。查询结果按下标升序排列，与按列表顺序遍历的处理顺序一致。
+ * 实体尺寸不能超过格子边长；地图外的坐标归到边缘格子
+ *
+ * 网格只能由驱动引擎的线程使用
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public final class SpatialGrid {
+    private static final int NONE = -1;
+
+    private final int cols;
+    private final int rows;
+    private final double cellSize;
+    private final int[] heads;
+    // 每个实体所在的格子和链表前后节点
+    private int[] cells = new int[0];
+    private int[] next = new int[0];
+    private int[] prev = new int[0];
+    private int[] results = new int[16];
+
+    /**
+     * 构造方法
+     * @param cols 列数
+     * @param rows 行数
+     * @param cellSize 格子边长（像素），不小于实体尺寸
+     */
+    public SpatialGrid(int cols, int rows, double cellSize) {
+        this.cols = cols;
+        this.rows = rows;
+        this.cellSize = cellSize;
+        this.heads = new int[cols * rows];
+        Arrays.fill(heads, NONE);
+    }
+
+    /**
+     * 清空网格，并保证可以容纳指定数量的实体
+     * @param capacity 实体数量（下标范围 0 到 capacity-1）
+     */
+    public void clear(int capacity) {
+        Arrays.fill(heads, NONE);
+        if (cells.length < capacity) {
+            cells = new int[capacity];
+            next = new int[capacity];
+            prev = new int[capacity];
+        }
+        Arrays.fill(cells, NONE);
+    }
+
+    /**
+     * 放入实体或把实体移到新位置
+     * @param id 实体下标
+     * @param x 左上角X坐标（像素）
+     * @param y 左上角Y坐标（像素）
+     */
+    public void put(int id, double x, double y) {
+        int cell = row(y) * cols + col(x);
+        int old = cells[id];
+        if (old == cell) {
+            return;
+        }
+        if (old != NONE) {
+            if (prev[id] != NONE) {
+                next[prev[id]] = next[id];
+            } else {
+                heads[old] = next[id];
+            }
+            if (next[id] != NONE) {
+                prev[next[id]] = prev[id];
+            }
+        }
+        cells[id] = cell;
+        prev[id] = NONE;
+        next[id] = heads[cell];
+        if (heads[cell] != NONE) {
+            prev[heads[cell]] = id;
+        }
+        heads[cell] = id;
+    }
+
+    /**
+     * 查询可能与矩形重叠的实体
+     * 结果是候选集合，调用方仍需做精确的矩形相交测试
+     * @param x 左上角X坐标（像素）
+     * @param y 左上角Y坐标（像素）
+     * @param width 宽度
+     * @param height 高度
+     * @return 候选数量，用 resultAt 读取
+     */
+    public int query(double x, double y, double width, double height) {
+        // 与矩形重叠的实体左上角落在 (x - 格子边长, x + width) 之内
+        int fromCol = col(x - cellSize);
+        int toCol = col(x + width);
+        int fromRow = row(y - cellSize);
+        int toRow = row(y + height);
+        int count = 0;
+        for (int row = fromRow; row <= toRow; row++) {
+            for (int col = fromCol; col <= toCol; col++) {
+                for (int id = heads[row * cols + col]; id != NONE; id = next[id]) {
+                    if (count == results.length) {
+                        results = Arrays.copyOf(results, count * 2);
+                    }
+                    results[count++] = id;
+                }
+            }
+        }
+        // 候选通常只有几个，插入排序即可
+        for (int i = 1; i < count; i++) {
+            int id = results[i];
+            int j = i - 1;
+            while (j >= 0 && results[j] > id) {
+                results[j + 1] = results[j];
+                j--;
+            }
+            results[j + 1] = id;
+        }
+        return count;
+    }
+
+    /**
+     * 读取最近一次查询的结果
+     * @param index 结果序号（0 到 query 返回值-1）
+     * @return 实体下标
+     */
+    public int resultAt(int index) {
+        return results[index];
+    }
+
+    private int col(double x) {
+        return Math.max(0, Math.min(cols - 1, (int) Math.floor(x / cellSize)));
+    }
+
+    private int row(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor(y / cellSize)));
+    }
+}
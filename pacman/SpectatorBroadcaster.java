@@ -0,0 +1,127 @@
+package pacman;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * 观战广播器（服务器端，每个对局一个）
+ * 保存最近 HISTORY 帧的观战帧作为增量基准。每个逻辑帧采集一次当前帧，
+ * 再为每个观战者写入相对其最后确认帧的增量。确认帧相同的观战者共用同一份编码结果，
+ * 观战者通常都确认到最近的几帧，所以每帧只需编码少数几次，
+ * 其余观战者只是复制已编码好的字节
+ *
+ * 只能在对局所在的事件循环线程上使用
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public final class SpectatorBroadcaster {
+    // 基准历史长度（逻辑帧），约 1 秒；确认更早帧的观战者按空帧重新发送完整状态
+    public static final int HISTORY = 64;
+
+    private static final int INITIAL_ENCODE_SIZE = 1024;
+
+    private final SpectatorFrame[] history;
+    private final SpectatorFrame empty;
+    private SpectatorFrame current;
+
+    // 当前帧按基准帧缓存的编码结果
+    private final int[] cachedBaseTicks;
+    private final ByteBuffer[] cachedMessages;
+    private int cachedCount;
+
+    private long encodeCount;
+    private long deltaCount;
+
+    /**
+     * 构造方法
+     */
+    public SpectatorBroadcaster() {
+        this.history = new SpectatorFrame[HISTORY];
+        for (int i = 0; i < HISTORY; i++) {
+            history[i] = new SpectatorFrame();
+        }
+        this.empty = new SpectatorFrame();
+        this.cachedBaseTicks = new int[HISTORY + 1];
+        this.cachedMessages = new ByteBuffer[HISTORY + 1];
+    }
+
+    /**
+     * 采集对局当前状态，作为本帧要发送的内容，同时清空上一帧的编码缓存
+     * @param engine 对局引擎
+     */
+    public void capture(GameEngine engine) {
+        current = history[(int) (engine.getTick() % HISTORY)];
+        current.capture(engine);
+        cachedCount = 0;
+    }
+
+    /**
+     * 为一个观战者写入本帧的增量消息
+     * @param out 观战者的发送缓冲区
+     * @param ackedTick 观战者最后确认的逻辑帧，-1 表示还没有确认过
+     * @return 已写入（或与基准相同无需发送）返回 true；缓冲区空间不足返回 false，
+     *         此时观战者的基准不变，下一帧的增量仍然可以正确应用
+     */
+    public boolean writeDelta(ByteBuffer out, int ackedTick) {
+        SpectatorFrame base = baseFor(ackedTick);
+        ByteBuffer message = cachedMessage(base);
+        if (out.remaining() < message.position()) {
+            return false;
+        }
+        out.put(message.array(), 0, message.position());
+        deltaCount++;
+        return true;
+    }
+
+    private SpectatorFrame baseFor(int ackedTick) {
+        if (ackedTick < 0 || ackedTick >= current.tick) {
+            return empty;
+        }
+        SpectatorFrame frame = history[ackedTick % HISTORY];
+        return frame.tick == ackedTick ? frame : empty;
+    }
+
+    private ByteBuffer cachedMessage(SpectatorFrame base) {
+        for (int i = 0; i < cachedCount; i++) {
+            if (cachedBaseTicks[i] == base.tick) {
+                return cachedMessages[i];
+            }
+        }
+        int slot = cachedCount++;
+        ByteBuffer message = cachedMessages[slot];
+        if (message == null) {
+            message = ByteBuffer.allocate(INITIAL_ENCODE_SIZE);
+        }
+        while (true) {
+            message.clear();
+            try {
+                DeltaCodec.encode(message, base, current);
+                break;
+            } catch (BufferOverflowException e) {
+                message = ByteBuffer.allocate(message.capacity() * 2);
+            }
+        }
+        cachedMessages[slot] = message;
+        cachedBaseTicks[slot] = base.tick;
+        encodeCount++;
+        return message;
+    }
+
+    /**
+     * 获取累计编码次数（每帧每个不同的基准一次）
+     * @return 次数
+     */
+    public long getEncodeCount() {
+        return encodeCount;
+    }
+
+    /**
+     * 获取累计写入的增量消息数（每帧每个观战者一次）
+     * @return 次数
+     */
+    public long getDeltaCount() {
+        return deltaCount;
+    }
+}
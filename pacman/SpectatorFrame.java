@@ -0,0 +1,168 @@
+package pacman;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 观战帧
+ * 某一逻辑帧上观战者可见的状态：分数、生命、关卡、实体（Pac-Man 在前，之后是鬼魂）的
+ * 量化坐标、方向和标志，以及剩余食物位图。所有数组都可以复用，
+ * 服务器和观战客户端各自用一个环形缓冲区保存最近的若干帧作为增量基准
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public final class SpectatorFrame {
+    public static final int MAX_ENTITIES = 255;
+
+    // 实体标志位
+    public static final int ENTITY_VISIBLE = 1;
+    public static final int ENTITY_SCARED = 2;
+
+    int tick;
+    int score;
+    int lives;
+    int level;
+    int flags;
+    int entityCount;
+    final short[] x = new short[MAX_ENTITIES];
+    final short[] y = new short[MAX_ENTITIES];
+    final byte[] direction = new byte[MAX_ENTITIES];
+    final byte[] entityFlags = new byte[MAX_ENTITIES];
+    long[] pellets = new long[0];
+
+    /**
+     * 构造方法，创建空帧（没有实体和食物），作为首次发送的基准
+     */
+    public SpectatorFrame() {
+        this.tick = -1;
+    }
+
+    /**
+     * 从引擎采集当前状态
+     * @param engine 游戏引擎
+     */
+    public void capture(GameEngine engine) {
+        tick = (int) engine.getTick();
+        score = engine.getScore();
+        lives = engine.getLives();
+        level = engine.getLevel();
+        flags = engine.isGameOver() ? NetProtocol.FLAG_GAME_OVER : 0;
+        PacMan pacman = engine.getPacman();
+        set(0, pacman, 0);
+        List<Ghost> ghosts = engine.getGhosts();
+        int count = Math.min(ghosts.size(), MAX_ENTITIES - 1);
+        for (int i = 0; i < count; i++) {
+            Ghost ghost = ghosts.get(i);
+            set(i + 1, ghost, ghost.isScared() ? ENTITY_SCARED : 0);
+        }
+        entityCount = count + 1;
+        pellets = engine.getPelletBits(pellets);
+    }
+
+    private void set(int index, Entity entity, int extraFlags) {
+        x[index] = NetProtocol.quantize(entity.getX());
+        y[index] = NetProtocol.quantize(entity.getY());
+        direction[index] = Direction.toCode(entity.getDirection());
+        entityFlags[index] = (byte) ((entity.isVisible() ? ENTITY_VISIBLE : 0) | extraFlags);
+    }
+
+    /**
+     * 复制另一帧的全部内容
+     * @param other 源帧
+     */
+    public void copyFrom(SpectatorFrame other) {
+        tick = other.tick;
+        score = other.score;
+        lives = other.lives;
+        level = other.level;
+        flags = other.flags;
+        entityCount = other.entityCount;
+        System.arraycopy(other.x, 0, x, 0, entityCount);
+        System.arraycopy(other.y, 0, y, 0, entityCount);
+        System.arraycopy(other.direction, 0, direction, 0, entityCount);
+        System.arraycopy(other.entityFlags, 0, entityFlags, 0, entityCount);
+        if (pellets.length != other.pellets.length) {
+            pellets = new long[other.pellets.length];
+        }
+        System.arraycopy(other.pellets, 0, pellets, 0, pellets.length);
+    }
+
+    /**
+     * 比较两帧的可见状态（不比较逻辑帧序号）
+     * @param other 另一帧
+     * @return 相同返回 true
+     */
+    public boolean sameState(SpectatorFrame other) {
+        if (score != other.score || lives != other.lives || level != other.level
+                || flags != other.flags || entityCount != other.entityCount) {
+            return false;
+        }
+        for (int i = 0; i < entityCount; i++) {
+            if (x[i] != other.x[i] || y[i] != other.y[i]
+                    || direction[i] != other.direction[i] || entityFlags[i] != other.entityFlags[i]) {
+                return false;
+            }
+        }
+        return Arrays.equals(pellets, other.pellets);
+    }
+
+    public int getTick() {
+        return tick;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getLives() {
+        return lives;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getEntityCount() {
+        return entityCount;
+    }
+
+    /**
+     * 获取实体 X 坐标
+     * @param index 实体下标，0 为 Pac-Man
+     * @return 坐标（像素）
+     */
+    public double getX(int index) {
+        return NetProtocol.dequantize(x[index]);
+    }
+
+    /**
+     * 获取实体 Y 坐标
+     * @param index 实体下标，0 为 Pac-Man
+     * @return 坐标（像素）
+     */
+    public double getY(int index) {
+        return NetProtocol.dequantize(y[index]);
+    }
+
+    public Direction getDirection(int index) {
+        return Direction.fromCode(direction[index]);
+    }
+
+    public int getEntityFlags(int index) {
+        return entityFlags[index];
+    }
+
+    /**
+     * 获取剩余食物数量
+     * @return 数量
+     */
+    public int getRemainingPellets() {
+        int count = 0;
+        for (long word : pellets) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,59 @@
+package pacman;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 观战视图（客户端）
+ * 保存最近收到的观战帧，把服务器发来的增量应用到消息声明的基准帧上，
+ * 得到新的当前帧。每应用一帧都应向服务器确认该帧，服务器随后以它为基准
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public final class SpectatorView {
+    private final SpectatorFrame[] frames;
+    private final SpectatorFrame empty;
+    private SpectatorFrame latest;
+
+    /**
+     * 构造方法
+     */
+    public SpectatorView() {
+        this.frames = new SpectatorFrame[SpectatorBroadcaster.HISTORY];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new SpectatorFrame();
+        }
+        this.empty = new SpectatorFrame();
+        this.latest = empty;
+    }
+
+    /**
+     * 应用一条增量消息
+     * @param in 源缓冲区，位置在消息开头，处理后位于消息末尾
+     * @return 需要确认的逻辑帧；基准帧已不在本地时丢弃该消息并返回 -1
+     */
+    public int apply(ByteBuffer in) {
+        int end = in.position() + (in.getShort(in.position()) & 0xFFFF) + 2;
+        int baseTick = DeltaCodec.baseTickOf(in);
+        int tick = DeltaCodec.tickOf(in);
+        SpectatorFrame base = baseTick < 0 ? empty : frames[baseTick % frames.length];
+        if (base.tick != baseTick || tick < 0) {
+            in.position(end);
+            return -1;
+        }
+        SpectatorFrame target = frames[tick % frames.length];
+        DeltaCodec.decode(in, base, target);
+        in.position(end);
+        latest = target;
+        return tick;
+    }
+
+    /**
+     * 获取最近一次应用后的观战帧
+     * @return 观战帧，尚未收到任何消息时为空帧
+     */
+    public SpectatorFrame getLatest() {
+        return latest;
+    }
+}
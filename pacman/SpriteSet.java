@@ -0,0 +1,167 @@
+package pacman;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+/**
+ * 精灵图集
+ * 一个关卡所需的全部图像资源，墙壁按关卡生成不同色调的变体
+ * 图像在后台线程同步加载完成后才交给游戏引擎使用
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public final class SpriteSet {
+    // 墙壁色调变体数量，每个变体旋转60度色相
+    public static final int VARIANT_COUNT = 6;
+
+    // 无图像的图集，供无界面运行（录像回放等）使用
+    private static final SpriteSet BLANK = new SpriteSet();
+
+    private final int variant;
+    private final Image pacmanUpImage;
+    private final Image pacmanDownImage;
+    private final Image pacmanLeftImage;
+    private final Image pacmanRightImage;
+    private final Image redGhostImage;
+    private final Image pinkGhostImage;
+    private final Image blueGhostImage;
+    private final Image orangeGhostImage;
+    private final Image wallImage;
+    private final Image foodImage;
+    private final Image powerFoodImage;
+
+    private SpriteSet(int variant) {
+        this.variant = variant;
+        this.pacmanUpImage = new Image("file:pacmanUp.png");
+        this.pacmanDownImage = new Image("file:pacmanDown.png");
+        this.pacmanLeftImage = new Image("file:pacmanLeft.png");
+        this.pacmanRightImage = new Image("file:pacmanRight.png");
+        this.redGhostImage = new Image("file:redGhost.png");
+        this.pinkGhostImage = new Image("file:pinkGhost.png");
+        this.blueGhostImage = new Image("file:blueGhost.png");
+        this.orangeGhostImage = new Image("file:orangeGhost.png");
+        this.wallImage = tint(new Image("file:wall.png"), variant * 360.0 / VARIANT_COUNT);
+        // 使用powerFood.png作为普通食物，power food-1.png作为强化技能食物
+        this.foodImage = new Image("file:powerFood.png");
+        this.powerFoodImage = new Image("file:power food-1.png.png");
+    }
+
+    private SpriteSet() {
+        this.variant = 0;
+        this.pacmanUpImage = null;
+        this.pacmanDownImage = null;
+        this.pacmanLeftImage = null;
+        this.pacmanRightImage = null;
+        this.redGhostImage = null;
+        this.pinkGhostImage = null;
+        this.blueGhostImage = null;
+        this.orangeGhostImage = null;
+        this.wallImage = null;
+        this.foodImage = null;
+        this.powerFoodImage = null;
+    }
+
+    /**
+     * 获取无图像的图集
+     * 无界面运行时不初始化 JavaFX 图形工具包，实体的渲染方法会跳过空图像
+     * @return 共享的空图集
+     */
+    public static SpriteSet blank() {
+        return BLANK;
+    }
+
+    /**
+     * 加载指定变体的图集（阻塞，适合在后台线程调用）
+     * @param variant 变体索引
+     * @return 图集
+     */
+    public static SpriteSet load(int variant) {
+        return new SpriteSet(variant);
+    }
+
+    /**
+     * 根据关卡编号计算变体索引
+     * @param levelNumber 关卡编号（从1开始）
+     * @return 变体索引
+     */
+    public static int variantFor(int levelNumber) {
+        return Math.floorMod(levelNumber - 1, VARIANT_COUNT);
+    }
+
+    /**
+     * 生成旋转色相后的图像副本
+     * @param source 原始图像
+     * @param hueShift 色相偏移（度）
+     * @return 着色后的图像，原图加载失败或无需偏移时返回原图
+     */
+    private static Image tint(Image source, double hueShift) {
+        PixelReader reader = source.getPixelReader();
+        if (hueShift == 0 || source.isError() || reader == null) {
+            return source;
+        }
+        int w = (int) source.getWidth();
+        int h = (int) source.getHeight();
+        WritableImage result = new WritableImage(w, h);
+        PixelWriter writer = result.getPixelWriter();
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                Color color = reader.getColor(x, y);
+                writer.setColor(x, y, color.deriveColor(hueShift, 1.0, 1.0, 1.0));
+            }
+        }
+        return result;
+    }
+
+    public int getVariant() {
+        return variant;
+    }
+
+    public Image getPacmanUpImage() {
+        return pacmanUpImage;
+    }
+
+    public Image getPacmanDownImage() {
+        return pacmanDownImage;
+    }
+
+    public Image getPacmanLeftImage() {
+        return pacmanLeftImage;
+    }
+
+    public Image getPacmanRightImage() {
+        return pacmanRightImage;
+    }
+
+    public Image getRedGhostImage() {
+        return redGhostImage;
+    }
+
+    public Image getPinkGhostImage() {
+        return pinkGhostImage;
+    }
+
+    public Image getBlueGhostImage() {
+        return blueGhostImage;
+    }
+
+    public Image getOrangeGhostImage() {
+        return orangeGhostImage;
+    }
+
+    public Image getWallImage() {
+        return wallImage;
+    }
+
+    public Image getFoodImage() {
+        return foodImage;
+    }
+
+    public Image getPowerFoodImage() {
+        return powerFoodImage;
+    }
+}
@@ -0,0 +1,338 @@
+package pacman;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 平衡参数扫描
+ * 对若干 GameRules 参数的取值网格做笛卡尔积，每个组合用自动驾驶机器人在无界面引擎上玩若干局，
+ * 汇总胜率和存活时间等统计，写成 CSV，代替逐组合的人工试玩
+ *
+ * 所有组合使用同一组种子（基础种子 + 局号），组合之间的差异只来自参数本身。
+ * 一局打到游戏结束或达到时间上限为止；通过第一关（关卡号大于 1）记为胜利。
+ * 每局是线程池中的一个独立任务，结果按组合和局号的固定顺序汇总，输出与线程数无关
+ *
+ * 用法：java pacman.SweepRunner [输出CSV] [每组局数] [参数名=值1,值2,...]...
+ * 例如：java pacman.SweepRunner sweep.csv 20 ghostSpeed=1.5,2,2.5 scaredDuration=3000,5000,8000
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public class SweepRunner {
+    // 每局最多 5 分钟游戏时间
+    public static final long DEFAULT_MAX_TICKS = 5 * 60 * 1000 / GameEngine.TICK_MILLIS;
+
+    private final List<String> names = new ArrayList<>();
+    private final List<double[]> values = new ArrayList<>();
+    private final int games;
+    private final long maxTicks;
+    private final int threads;
+    private long baseSeed;
+    private int nodeBudget = Autopilot.DEFAULT_NODE_BUDGET;
+
+    /**
+     * 单局结果
+     */
+    private static final class GameResult {
+        private boolean won;
+        private boolean survived;
+        private long ticks;
+        private int score;
+        private long pellets;
+        private long ghostsEaten;
+        private long deaths;
+        private int level;
+    }
+
+    /**
+     * 一个参数组合的汇总结果
+     */
+    public static final class Result {
+        private final GameRules rules;
+        private final double[] parameters;
+        private int games;
+        private int wins;
+        private int survived;
+        private double survivalSeconds;
+        private double score;
+        private double pellets;
+        private double ghostsEaten;
+        private double deaths;
+        private double level;
+
+        private Result(GameRules rules, double[] parameters) {
+            this.rules = rules;
+            this.parameters = parameters;
+        }
+
+        private void add(GameResult game) {
+            games++;
+            if (game.won) {
+                wins++;
+            }
+            if (game.survived) {
+                survived++;
+            }
+            survivalSeconds += game.ticks * GameEngine.TICK_MILLIS / 1000.0;
+            score += game.score;
+            pellets += game.pellets;
+            ghostsEaten += game.ghostsEaten;
+            deaths += game.deaths;
+            level += game.level;
+        }
+
+        public GameRules getRules() {
+            return rules;
+        }
+
+        public int getGames() {
+            return games;
+        }
+
+        public double getWinRate() {
+            return games == 0 ? 0 : (double) wins / games;
+        }
+
+        /**
+         * 获取到达时间上限时仍未结束的局所占比例
+         * @return 比例
+         */
+        public double getSurvivalRate() {
+            return games == 0 ? 0 : (double) survived / games;
+        }
+
+        public double getMeanSurvivalSeconds() {
+            return games == 0 ? 0 : survivalSeconds / games;
+        }
+
+        public double getMeanScore() {
+            return games == 0 ? 0 : score / games;
+        }
+    }
+
+    /**
+     * 构造方法
+     * @param games 每个参数组合玩的局数
+     * @param maxTicks 每局逻辑帧上限
+     * @param threads 并行线程数
+     */
+    public SweepRunner(int games, long maxTicks, int threads) {
+        if (games < 1) {
+            throw new IllegalArgumentException("每组局数必须大于 0: " + games);
+        }
+        this.games = games;
+        this.maxTicks = maxTicks;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * 添加一个扫描维度
+     * @param name 参数名（GameRules.NAMES 之一）
+     * @param candidates 取值
+     */
+    public void addParameter(String name, double... candidates) {
+        if (!GameRules.NAMES.contains(name)) {
+            throw new IllegalArgumentException("未知的规则参数: " + name + "，可用参数: " + GameRules.NAMES);
+        }
+        if (candidates.length == 0) {
+            throw new IllegalArgumentException("参数没有取值: " + name);
+        }
+        names.add(name);
+        values.add(candidates.clone());
+    }
+
+    /**
+     * 按 "名称=值1,值2,..." 的形式添加扫描维度
+     * @param spec 参数描述
+     */
+    public void addParameter(String spec) {
+        int separator = spec.indexOf('=');
+        if (separator <= 0) {
+            throw new IllegalArgumentException("参数格式应为 名称=值1,值2,...: " + spec);
+        }
+        String[] parts = spec.substring(separator + 1).split(",");
+        double[] candidates = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            candidates[i] = Double.parseDouble(parts[i].trim());
+        }
+        addParameter(spec.substring(0, separator).trim(), candidates);
+    }
+
+    public void setBaseSeed(long baseSeed) {
+        this.baseSeed = baseSeed;
+    }
+
+    public void setNodeBudget(int nodeBudget) {
+        this.nodeBudget = nodeBudget;
+    }
+
+    /**
+     * 获取参数组合总数
+     * @return 各维度取值个数的乘积
+     */
+    public int getCombinationCount() {
+        int count = 1;
+        for (double[] candidates : values) {
+            count *= candidates.length;
+        }
+        return count;
+    }
+
+    /**
+     * 运行所有组合
+     * @return 各组合的结果，按网格顺序（最后一个参数变化最快）
+     * @throws InterruptedException 等待时被中断
+     */
+    public List<Result> run() throws InterruptedException {
+        int combinations = getCombinationCount();
+        List<Result> results = new ArrayList<>(combinations);
+        for (int combination = 0; combination < combinations; combination++) {
+            double[] parameters = parametersOf(combination);
+            GameRules rules = new GameRules();
+            for (int i = 0; i < names.size(); i++) {
+                rules.set(names.get(i), parameters[i]);
+            }
+            results.add(new Result(rules, parameters));
+        }
+
+        List<Callable<GameResult>> tasks = new ArrayList<>(combinations * games);
+        for (Result result : results) {
+            for (int game = 0; game < games; game++) {
+                long seed = baseSeed + game;
+                tasks.add(() -> play(result.rules, seed));
+            }
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "sweep-runner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<GameResult>> futures = pool.invokeAll(tasks);
+            for (int i = 0; i < futures.size(); i++) {
+                results.get(i / games).add(futures.get(i).get());
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("参数扫描对局失败", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return results;
+    }
+
+    private double[] parametersOf(int combination) {
+        double[] parameters = new double[names.size()];
+        for (int i = names.size() - 1; i >= 0; i--) {
+            double[] candidates = values.get(i);
+            parameters[i] = candidates[combination % candidates.length];
+            combination /= candidates.length;
+        }
+        return parameters;
+    }
+
+    /**
+     * 用自动驾驶机器人玩一局
+     */
+    private GameResult play(GameRules rules, long seed) {
+        GameEngine engine = new GameEngine(seed, rules);
+        engine.setKeyframeInterval(0);
+        engine.initialize();
+        Autopilot bot = new Autopilot(nodeBudget);
+        bot.setRestartOnGameOver(false);
+        GameResult result = new GameResult();
+        while (!engine.isGameOver() && engine.getTick() < maxTicks) {
+            bot.drive(engine);
+            engine.update(GameEngine.TICK_MILLIS);
+            if (engine.getLevel() > 1) {
+                result.won = true;
+            }
+        }
+        result.survived = !engine.isGameOver();
+        result.ticks = engine.getTick();
+        result.score = engine.getScore();
+        result.pellets = engine.getPelletsEaten() + engine.getPowerPelletsEaten();
+        result.ghostsEaten = engine.getGhostsEaten();
+        result.deaths = engine.getDeaths();
+        result.level = engine.getLevel();
+        return result;
+    }
+
+    /**
+     * 把结果写成 CSV：每个扫描参数一列，然后是局数和各项统计
+     * @param path 输出文件
+     * @param results run 的返回值
+     * @throws IOException 写入失败
+     */
+    public void writeCsv(Path path, List<Result> results) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            for (String name : names) {
+                writer.write(name);
+                writer.write(',');
+            }
+            writer.write("games,win_rate,survival_rate,mean_survival_s,mean_score,mean_pellets,"
+                    + "mean_ghosts_eaten,mean_deaths,mean_level");
+            writer.newLine();
+            for (Result result : results) {
+                for (double parameter : result.parameters) {
+                    writer.write(GameRules.format(parameter));
+                    writer.write(',');
+                }
+                int n = Math.max(1, result.games);
+                writer.write(String.format("%d,%.4f,%.4f,%.2f,%.1f,%.1f,%.2f,%.2f,%.2f",
+                        result.games, result.getWinRate(), result.getSurvivalRate(),
+                        result.getMeanSurvivalSeconds(), result.getMeanScore(), result.pellets / n,
+                        result.ghostsEaten / n, result.deaths / n, result.level / n));
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * 主方法：按命令行给出的网格扫描并写出 CSV
+     * @param args [输出CSV] [每组局数] [参数名=值1,值2,...]...
+     * @throws Exception 运行或写入失败
+     */
+    public static void main(String[] args) throws Exception {
+        Path output = Paths.get(args.length > 0 ? args[0] : "sweep.csv");
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        SweepRunner runner = new SweepRunner(games, DEFAULT_MAX_TICKS, threads);
+        if (args.length > 2) {
+            for (String spec : Arrays.copyOfRange(args, 2, args.length)) {
+                runner.addParameter(spec);
+            }
+        } else {
+            runner.addParameter(GameRules.GHOST_SPEED, 1.5, 2.0, 2.5);
+            runner.addParameter(GameRules.SCARED_DURATION, 3000, 5000, 8000);
+        }
+        LevelLoader.headless().load(1);
+
+        long start = System.nanoTime();
+        List<Result> results = runner.run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        runner.writeCsv(output, results);
+
+        int total = runner.getCombinationCount() * games;
+        System.out.printf("%d 个组合 x %d 局, 线程 %d: 用时 %.1f 秒, %.1f 局/秒, 结果写入 %s%n",
+                runner.getCombinationCount(), games, threads, seconds, total / seconds, output);
+        for (Result result : results) {
+            System.out.printf("  %-40s 胜率 %5.1f%%, 平均存活 %6.1f 秒, 平均得分 %6.0f%n",
+                    result.getRules(), result.getWinRate() * 100, result.getMeanSurvivalSeconds(),
+                    result.getMeanScore());
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package pacman;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 向量化环境
+ * 同步推进 N 个 PacManEnv：一次 step 传入所有环境的动作，得到连续存放的观察、奖励和结束标志，
+ * 便于训练端整批读取。某个环境一局结束时在同一步内自动开始下一局，
+ * 此时该环境返回的观察属于新的一局，结束标志仍指示上一局已结束
+ *
+ * 数据布局（均按环境顺序连续存放）：
+ * 动作 int[N * AGENTS]，观察 float[N * OBSERVATION_SIZE]，奖励 float[N * AGENTS]，结束 boolean[N]
+ *
+ * 可以另外设置一块批量观察张量缓冲区（见 ObservationTensor），第 i 个环境的张量从 i * SIZE 开始，
+ * 每步增量更新，训练端直接读取该缓冲区
+ *
+ * 环境之间互不共享可变状态，线程数大于 1 时按连续分块并行推进
+ *
+ * 用法（吞吐量测试）：java pacman.VectorEnv [环境数] [步数] [线程数] [frameSkip] [tensor]
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public class VectorEnv {
+    /** 相邻两个环境的种子区间间隔 */
+    public static final long EPISODE_SEED_STRIDE = 1L << 32;
+
+    private final PacManEnv[] envs;
+    private final float[] observations;
+    private final float[] rewards;
+    private final boolean[] dones;
+    private final boolean[] truncated;
+    private final long[] episodeSeeds;
+    private final float[] episodeReturns;
+    private final long seed;
+    // 每个环境各自的局数，种子只取决于环境下标和该环境的局数，与线程调度顺序无关
+    private final long[] envEpisodes;
+    private long steps;
+    private double completedReturn;
+    private long completedEpisodes;
+
+    private ObservationTensor[] tensors;
+
+    private final ExecutorService workers;
+    private final List<Callable<Void>> chunks;
+    private int[] currentActions;
+
+    /**
+     * 构造方法
+     * @param count 环境数量
+     * @param frameSkip 每步推进的逻辑帧数
+     * @param maxSteps 每局最大步数，0 表示不限
+     * @param threads 推进环境的线程数，1 表示在调用线程中推进
+     * @param seed 基础种子，第 i 个环境第 n 局的种子为 seed + i * EPISODE_SEED_STRIDE + n
+     */
+    public VectorEnv(int count, int frameSkip, int maxSteps, int threads, long seed) {
+        this.envs = new PacManEnv[count];
+        for (int i = 0; i < count; i++) {
+            envs[i] = new PacManEnv(frameSkip, maxSteps);
+        }
+        this.observations = new float[count * PacManEnv.OBSERVATION_SIZE];
+        this.rewards = new float[count * PacManEnv.AGENTS];
+        this.dones = new boolean[count];
+        this.truncated = new boolean[count];
+        this.episodeSeeds = new long[count];
+        this.envEpisodes = new long[count];
+        this.episodeReturns = new float[count];
+        this.seed = seed;
+
+        int workerCount = Math.max(1, Math.min(threads, count));
+        this.chunks = new ArrayList<>(workerCount);
+        if (workerCount > 1) {
+            this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+                Thread thread = new Thread(runnable, "vector-env");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.workers = null;
+        }
+        for (int w = 0; w < workerCount; w++) {
+            int from = (int) ((long) count * w / workerCount);
+            int to = (int) ((long) count * (w + 1) / workerCount);
+            chunks.add(() -> {
+                stepRange(from, to);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * 设置批量浮点观察张量，立即按各环境当前状态写入
+     * @param batch 缓冲区，容量至少为 N * ObservationTensor.SIZE
+     */
+    public void setObservationTensors(FloatBuffer batch) {
+        ObservationTensor[] created = new ObservationTensor[envs.length];
+        for (int i = 0; i < envs.length; i++) {
+            created[i] = new ObservationTensor(batch, i * ObservationTensor.SIZE);
+        }
+        attachTensors(created);
+    }
+
+    /**
+     * 设置批量字节观察张量，立即按各环境当前状态写入
+     * @param batch 缓冲区，容量至少为 N * ObservationTensor.SIZE
+     */
+    public void setObservationTensors(ByteBuffer batch) {
+        ObservationTensor[] created = new ObservationTensor[envs.length];
+        for (int i = 0; i < envs.length; i++) {
+            created[i] = new ObservationTensor(batch, i * ObservationTensor.SIZE);
+        }
+        attachTensors(created);
+    }
+
+    private void attachTensors(ObservationTensor[] created) {
+        tensors = created;
+        for (int i = 0; i < envs.length; i++) {
+            if (envs[i].getEngine() != null) {
+                created[i].update(envs[i].getEngine());
+            }
+        }
+    }
+
+    public ObservationTensor getTensor(int index) {
+        return tensors != null ? tensors[index] : null;
+    }
+
+    /**
+     * 所有环境开始新的一局
+     * @return 观察数组（内部数组，之后的 step 会覆盖）
+     */
+    public float[] reset() {
+        for (int i = 0; i < envs.length; i++) {
+            resetEnv(i);
+        }
+        return observations;
+    }
+
+    private void resetEnv(int index) {
+        // 修改原因：原来所有环境共用一个局数计数器，多线程推进时哪个环境先结束就拿到哪个种子，
+        // 同一基础种子的两次运行种子分配不同；改为按环境下标划分种子区间，每个环境只由一个线程推进
+        long episodeSeed = seed + index * EPISODE_SEED_STRIDE + envEpisodes[index]++;
+        episodeSeeds[index] = episodeSeed;
+        episodeReturns[index] = 0;
+        float[] observation = envs[index].reset(episodeSeed);
+        System.arraycopy(observation, 0, observations, index * PacManEnv.OBSERVATION_SIZE,
+                PacManEnv.OBSERVATION_SIZE);
+        if (tensors != null) {
+            tensors[index].update(envs[index].getEngine());
+        }
+    }
+
+    /**
+     * 所有环境同步推进一步
+     * @param actions 动作数组，长度 N * AGENTS
+     */
+    public void step(int[] actions) {
+        if (actions.length < envs.length * PacManEnv.AGENTS) {
+            throw new IllegalArgumentException("动作数组长度不足: " + actions.length);
+        }
+        currentActions = actions;
+        if (workers == null) {
+            stepRange(0, envs.length);
+        } else {
+            try {
+                for (Future<Void> future : workers.invokeAll(chunks)) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("向量化环境推进被中断", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("环境推进失败", e.getCause());
+            }
+        }
+        steps++;
+    }
+
+    private void stepRange(int from, int to) {
+        int[] actions = currentActions;
+        for (int i = from; i < to; i++) {
+            PacManEnv.Step result = envs[i].step(actions, i * PacManEnv.AGENTS);
+            System.arraycopy(result.getRewards(), 0, rewards, i * PacManEnv.AGENTS, PacManEnv.AGENTS);
+            episodeReturns[i] += result.getReward();
+            dones[i] = result.isDone();
+            truncated[i] = result.isTruncated();
+            if (result.isDone() || result.isTruncated()) {
+                synchronized (this) {
+                    completedReturn += episodeReturns[i];
+                    completedEpisodes++;
+                }
+                resetEnv(i);
+            } else {
+                System.arraycopy(result.getObservation(), 0, observations, i * PacManEnv.OBSERVATION_SIZE,
+                        PacManEnv.OBSERVATION_SIZE);
+                if (tensors != null) {
+                    tensors[i].update(envs[i].getEngine());
+                }
+            }
+        }
+    }
+
+    /**
+     * 停止工作线程
+     */
+    public void close() {
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    public int size() {
+        return envs.length;
+    }
+
+    public PacManEnv getEnv(int index) {
+        return envs[index];
+    }
+
+    public float[] getObservations() {
+        return observations;
+    }
+
+    public float[] getRewards() {
+        return rewards;
+    }
+
+    public boolean[] getDones() {
+        return dones;
+    }
+
+    public boolean[] getTruncated() {
+        return truncated;
+    }
+
+    /**
+     * 获取某个环境当前一局使用的种子
+     * @param index 环境下标
+     * @return 种子
+     */
+    public long getEpisodeSeed(int index) {
+        return episodeSeeds[index];
+    }
+
+    public long getSteps() {
+        return steps;
+    }
+
+    public synchronized long getCompletedEpisodes() {
+        return completedEpisodes;
+    }
+
+    /**
+     * 获取已完成各局 Pac-Man 累计奖励的平均值
+     * @return 平均值，没有完成的局时为 0
+     */
+    public synchronized double getMeanReturn() {
+        return completedEpisodes == 0 ? 0 : completedReturn / completedEpisodes;
+    }
+
+    /**
+     * 主方法：随机动作推进向量化环境，输出每秒步数和每核心每秒步数
+     * @param args [环境数] [步数] [线程数] [frameSkip] [tensor：同时更新浮点观察张量]
+     */
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int totalSteps = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int frameSkip = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        boolean tensor = args.length > 4 && args[4].equals("tensor");
+
+        LevelLoader.headless().load(1);
+        VectorEnv env = new VectorEnv(count, frameSkip, 5000, threads, 1);
+        GameRandom policy = new GameRandom(42);
+        int[] actions = new int[count * PacManEnv.AGENTS];
+        env.reset();
+        if (tensor) {
+            env.setObservationTensors(ByteBuffer.allocateDirect(count * ObservationTensor.SIZE * 4)
+                    .order(ByteOrder.nativeOrder()).asFloatBuffer());
+        }
+        long start = 0;
+        int warmup = Math.min(totalSteps / 5, 500);
+        for (int step = 0; step < warmup + totalSteps; step++) {
+            if (step == warmup) {
+                start = System.nanoTime();
+            }
+            for (int i = 0; i < count; i++) {
+                int base = i * PacManEnv.AGENTS;
+                // Pac-Man 随机走动，鬼魂交给内置 AI
+                actions[base] = policy.nextInt(8) == 0 ? 1 + policy.nextInt(4) : PacManEnv.ACTION_NONE;
+            }
+            env.step(actions);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double stepsPerSecond = (double) count * totalSteps / seconds;
+        int workerCount = Math.max(1, Math.min(threads, count));
+        System.out.printf("环境 %d, 线程 %d, frameSkip %d: %.0f 步/秒, 每核心 %.0f 步/秒 (%.0f 逻辑帧/秒/核心)%n",
+                count, workerCount, frameSkip, stepsPerSecond, stepsPerSecond / workerCount,
+                stepsPerSecond * frameSkip / workerCount);
+        System.out.printf("完成 %d 局, 平均回报 %.1f%n", env.getCompletedEpisodes(), env.getMeanReturn());
+        if (tensor) {
+            long writes = 0;
+            for (int i = 0; i < count; i++) {
+                writes += env.getTensor(i).getWrites();
+            }
+            System.out.printf("观察张量 %d 通道 x %d x %d, 平均每步写入 %.1f 格（整张 %d 格）%n",
+                    ObservationTensor.CHANNELS, ObservationTensor.HEIGHT, ObservationTensor.WIDTH,
+                    (double) writes / ((double) count * (warmup + totalSteps)), ObservationTensor.SIZE);
+        }
+        env.close();
+    }
+}
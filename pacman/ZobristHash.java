@@ -0,0 +1,90 @@
+package pacman;
+
+import java.util.Arrays;
+
+/**
+ * 增量维护的 64 位 Zobrist 哈希
+ * 哈希值是若干"分量"键的异或：每个剩余的食物一个键，每个状态槽位按当前取值一个键。
+ * 吃掉一个食物时异或掉它的键；槽位取值变化时异或掉旧键、异或上新键，
+ * 两种更新都是 O(1)，不需要重新遍历整个状态
+ *
+ * 键由分量编号经 SplitMix64 混合得到，相当于一张按需计算的随机键表，不占内存，
+ * 不同进程、不同机器上得到的哈希一致，可以直接比较
+ *
+ * @author PacMan Development Team
+ * @version 2.0
+ * @since 2024
+ */
+public final class ZobristHash {
+    // 槽位尚未设置时的取值，对应的键为 0
+    private static final long ABSENT = Long.MIN_VALUE;
+    private static final long PELLET_SALT = 0x5DEECE66DL;
+    private static final long SLOT_SALT = 0x9E3779B97F4A7C15L;
+
+    private long hash;
+    private long[] slots;
+
+    /**
+     * 构造方法
+     * @param slotCount 状态槽位数
+     */
+    public ZobristHash(int slotCount) {
+        this.slots = new long[slotCount];
+        clear(slotCount);
+    }
+
+    /**
+     * 清空所有分量，哈希回到 0
+     * @param slotCount 新的槽位数
+     */
+    public void clear(int slotCount) {
+        if (slots.length != slotCount) {
+            slots = new long[slotCount];
+        }
+        Arrays.fill(slots, ABSENT);
+        hash = 0;
+    }
+
+    /**
+     * 加入或移除一个食物（异或是自身的逆运算）
+     * @param tile 格子索引
+     * @param kind 食物种类（GameEngine.PELLET_FOOD 等）
+     */
+    public void togglePellet(int tile, int kind) {
+        hash ^= mix(PELLET_SALT + ((long) tile << 2 | kind));
+    }
+
+    /**
+     * 设置槽位取值，取值不变时不做任何事
+     * @param slot 槽位
+     * @param value 新取值
+     */
+    public void set(int slot, long value) {
+        long old = slots[slot];
+        if (old != value) {
+            hash ^= key(slot, old) ^ key(slot, value);
+            slots[slot] = value;
+        }
+    }
+
+    public long get() {
+        return hash;
+    }
+
+    public int getSlotCount() {
+        return slots.length;
+    }
+
+    private static long key(int slot, long value) {
+        return value == ABSENT ? 0 : mix(mix(value) ^ (slot + 1) * SLOT_SALT);
+    }
+
+    /**
+     * SplitMix64 的输出混合函数
+     */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}